@@ -2,6 +2,10 @@ package gr.uom.java.xmi.decomposition;
 
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -13,6 +17,7 @@ import org.refactoringminer.util.PrefixSuffixUtils;
 
 import gr.uom.java.xmi.UMLOperation;
 import gr.uom.java.xmi.UMLParameter;
+import gr.uom.java.xmi.UMLType;
 import gr.uom.java.xmi.LocationInfo.CodeElementType;
 import gr.uom.java.xmi.UMLAttribute;
 import gr.uom.java.xmi.decomposition.replacement.ConsistentReplacementDetector;
@@ -57,6 +62,23 @@ public class VariableReplacementAnalysis {
 	private Set<CandidateAttributeRefactoring> candidateAttributeRenames = new LinkedHashSet<CandidateAttributeRefactoring>();
 	private Set<CandidateMergeVariableRefactoring> candidateAttributeMerges = new LinkedHashSet<CandidateMergeVariableRefactoring>();
 	private Set<CandidateSplitVariableRefactoring> candidateAttributeSplits = new LinkedHashSet<CandidateSplitVariableRefactoring>();
+	//index of the mapper, built once per analysis; the parts not needed by most mappers are built on first use
+	private Map<Replacement, List<AbstractCodeMapping>> mappingsWithReplacement = new HashMap<Replacement, List<AbstractCodeMapping>>();
+	private Map<String, VariableDeclaration> parameters1;
+	private Map<String, VariableDeclaration> parameters2;
+	private Map<String, VariableDeclaration> callSiteParameters;
+	private List<String> parameterNames1;
+	private List<String> parameterNames2;
+	private Map<String, List<VariableDeclaration>> nonMappedLeafDeclarationsT1;
+	private Map<String, List<VariableDeclaration>> nonMappedLeafDeclarationsT2;
+	private Map<VariableDeclaration, List<AbstractCodeMapping>> mappingsDeclaringVariable1;
+	private Map<VariableDeclaration, List<AbstractCodeMapping>> mappingsDeclaringVariable2;
+	private Map<String, List<AbstractCodeMapping>> exactMappingsUsingVariable;
+	private Map<AbstractCodeFragment, List<String>> linesOutsideMethodSignatures = new IdentityHashMap<AbstractCodeFragment, List<String>>();
+	private Set<String> variableDeclarationNames1;
+	private Set<String> variableDeclarationNames2;
+	private Map<String, List<VariableDeclaration>> variableDeclarations2;
+	private Map<String, UMLType> variableTypeMap2;
 
 	public VariableReplacementAnalysis(UMLOperationBodyMapper mapper, Set<Refactoring> refactorings, UMLClassBaseDiff classDiff) {
 		this.mappings = mapper.getMappings();
@@ -76,6 +98,21 @@ public class VariableReplacementAnalysis {
 		this.callSiteOperation = mapper.getCallSiteOperation();
 		this.operationDiff = classDiff != null ? classDiff.getOperationDiff(operation1, operation2) : null;
 		this.classDiff = classDiff;
+		for(AbstractCodeMapping mapping : mappings) {
+			for(Replacement replacement : mapping.getReplacements()) {
+				List<AbstractCodeMapping> list = mappingsWithReplacement.get(replacement);
+				if(list == null) {
+					list = new ArrayList<AbstractCodeMapping>();
+					mappingsWithReplacement.put(replacement, list);
+				}
+				list.add(mapping);
+			}
+		}
+		this.parameters1 = parameterDeclarations(operation1);
+		this.parameters2 = parameterDeclarations(operation2);
+		this.callSiteParameters = parameterDeclarations(callSiteOperation);
+		this.parameterNames1 = operation1.getParameterNameList();
+		this.parameterNames2 = operation2.getParameterNameList();
 		findVariableSplits();
 		findVariableMerges();
 		findConsistentVariableRenames();
@@ -179,16 +216,16 @@ public class VariableReplacementAnalysis {
 					processVariableReplacementWithMethodInvocation(variableReplacement, mapping, variableInvocationExpressionMap, Direction.INVOCATION_TO_VARIABLE);
 				}
 				else if(replacement.getType().equals(ReplacementType.VARIABLE_NAME)) {
-					for(StatementObject statement : nonMappedLeavesT1) {
-						VariableDeclaration variableDeclaration = statement.getVariableDeclaration(replacement.getBefore());
-						if(variableDeclaration != null) {
-							AbstractExpression initializer = variableDeclaration.getInitializer();
-							if(initializer != null) {
-								OperationInvocation invocation = initializer.invocationCoveringEntireFragment();
-								if(invocation != null) {
-									VariableReplacementWithMethodInvocation variableReplacement = new VariableReplacementWithMethodInvocation(initializer.getString(), replacement.getAfter(), invocation, Direction.INVOCATION_TO_VARIABLE);
-									processVariableReplacementWithMethodInvocation(variableReplacement, mapping, variableInvocationExpressionMap, Direction.INVOCATION_TO_VARIABLE);
-								}
+					if(nonMappedLeafDeclarationsT1 == null) {
+						nonMappedLeafDeclarationsT1 = declarationsByName(nonMappedLeavesT1);
+					}
+					for(VariableDeclaration variableDeclaration : declarationsWithName(nonMappedLeafDeclarationsT1, replacement.getBefore())) {
+						AbstractExpression initializer = variableDeclaration.getInitializer();
+						if(initializer != null) {
+							OperationInvocation invocation = initializer.invocationCoveringEntireFragment();
+							if(invocation != null) {
+								VariableReplacementWithMethodInvocation variableReplacement = new VariableReplacementWithMethodInvocation(initializer.getString(), replacement.getAfter(), invocation, Direction.INVOCATION_TO_VARIABLE);
+								processVariableReplacementWithMethodInvocation(variableReplacement, mapping, variableInvocationExpressionMap, Direction.INVOCATION_TO_VARIABLE);
 							}
 						}
 					}
@@ -196,7 +233,7 @@ public class VariableReplacementAnalysis {
 			}
 		}
 		for(StatementObject statement : nonMappedLeavesT1) {
-			for(String parameterName : operation2.getParameterNameList()) {
+			for(String parameterName : parameterNames2) {
 				VariableDeclaration variableDeclaration = statement.getVariableDeclaration(parameterName);
 				if(variableDeclaration != null) {
 					AbstractExpression initializer = variableDeclaration.getInitializer();
@@ -307,16 +344,16 @@ public class VariableReplacementAnalysis {
 					processVariableReplacementWithMethodInvocation(variableReplacement, mapping, variableInvocationExpressionMap, Direction.VARIABLE_TO_INVOCATION);
 				}
 				else if(replacement.getType().equals(ReplacementType.VARIABLE_NAME)) {
-					for(StatementObject statement : nonMappedLeavesT2) {
-						VariableDeclaration variableDeclaration = statement.getVariableDeclaration(replacement.getBefore());
-						if(variableDeclaration != null) {
-							AbstractExpression initializer = variableDeclaration.getInitializer();
-							if(initializer != null) {
-								OperationInvocation invocation = initializer.invocationCoveringEntireFragment();
-								if(invocation != null) {
-									VariableReplacementWithMethodInvocation variableReplacement = new VariableReplacementWithMethodInvocation(replacement.getBefore(), initializer.getString(), invocation, Direction.VARIABLE_TO_INVOCATION);
-									processVariableReplacementWithMethodInvocation(variableReplacement, mapping, variableInvocationExpressionMap, Direction.VARIABLE_TO_INVOCATION);
-								}
+					if(nonMappedLeafDeclarationsT2 == null) {
+						nonMappedLeafDeclarationsT2 = declarationsByName(nonMappedLeavesT2);
+					}
+					for(VariableDeclaration variableDeclaration : declarationsWithName(nonMappedLeafDeclarationsT2, replacement.getBefore())) {
+						AbstractExpression initializer = variableDeclaration.getInitializer();
+						if(initializer != null) {
+							OperationInvocation invocation = initializer.invocationCoveringEntireFragment();
+							if(invocation != null) {
+								VariableReplacementWithMethodInvocation variableReplacement = new VariableReplacementWithMethodInvocation(replacement.getBefore(), initializer.getString(), invocation, Direction.VARIABLE_TO_INVOCATION);
+								processVariableReplacementWithMethodInvocation(variableReplacement, mapping, variableInvocationExpressionMap, Direction.VARIABLE_TO_INVOCATION);
 							}
 						}
 					}
@@ -351,7 +388,7 @@ public class VariableReplacementAnalysis {
 			}
 		}
 		for(StatementObject statement : nonMappedLeavesT2) {
-			for(String parameterName : operation1.getParameterNameList()) {
+			for(String parameterName : parameterNames1) {
 				VariableDeclaration variableDeclaration = statement.getVariableDeclaration(parameterName);
 				if(variableDeclaration != null) {
 					AbstractExpression initializer = variableDeclaration.getInitializer();
@@ -459,7 +496,7 @@ public class VariableReplacementAnalysis {
 				finalConsistentRenames.put(replacement, set);
 			}
 			if(v1 != null && !v1.getKey().isParameter() && v2 != null && v2.getKey().isParameter() && consistencyCheck(v1.getKey(), v2.getKey(), set) &&
-					!operation1.getParameterNameList().contains(v2.getKey().getVariableName())) {
+					!parameterNames1.contains(v2.getKey().getVariableName())) {
 				finalConsistentRenames.put(replacement, set);
 			}
 		}
@@ -525,7 +562,7 @@ public class VariableReplacementAnalysis {
 			if(fragment1.contains("=") && fragment1.endsWith(";\n") && fragment2.contains("=") && fragment2.endsWith(";\n")) {
 				String value1 = fragment1.substring(fragment1.indexOf("=")+1, fragment1.lastIndexOf(";\n"));
 				String value2 = fragment2.substring(fragment2.indexOf("=")+1, fragment2.lastIndexOf(";\n"));
-				if(operation1.getParameterNameList().contains(value1) && operation2.getParameterNameList().contains(value1) && operationDiff != null) {
+				if(parameterNames1.contains(value1) && parameterNames2.contains(value1) && operationDiff != null) {
 					for(UMLParameter addedParameter : operationDiff.getAddedParameters()) {
 						if(addedParameter.getName().equals(value2)) {
 							return true;
@@ -688,21 +725,15 @@ public class VariableReplacementAnalysis {
 		List<AnonymousClassDeclarationObject> anonymousClassDeclarations2 = fragment2.getAnonymousClassDeclarations();
 		if(anonymousClassDeclarations1.size() > 0 && anonymousClassDeclarations2.size() > 0) {
 			boolean replacementBeforeNotFoundInMethodSignature = false;
-			String[] lines1 = fragment1.getString().split("\\n");
-			for(String line : lines1) {
-				line = prepareLine(line);
-				if(!Visitor.METHOD_SIGNATURE_PATTERN.matcher(line).matches() &&
-						ReplacementUtil.contains(line, replacement.getBefore())) {
+			for(String line : getLinesOutsideMethodSignatures(fragment1)) {
+				if(ReplacementUtil.contains(line, replacement.getBefore())) {
 					replacementBeforeNotFoundInMethodSignature = true;
 					break;
 				}
 			}
 			boolean replacementAfterNotFoundInMethodSignature = false;
-			String[] lines2 = fragment2.getString().split("\\n");
-			for(String line : lines2) {
-				line = prepareLine(line);
-				if(!Visitor.METHOD_SIGNATURE_PATTERN.matcher(line).matches() &&
-						ReplacementUtil.contains(line, replacement.getAfter())) {
+			for(String line : getLinesOutsideMethodSignatures(fragment2)) {
+				if(ReplacementUtil.contains(line, replacement.getAfter())) {
 					replacementAfterNotFoundInMethodSignature = true;
 					break;
 				}
@@ -712,6 +743,21 @@ public class VariableReplacementAnalysis {
 		return true;
 	}
 
+	private List<String> getLinesOutsideMethodSignatures(AbstractCodeFragment fragment) {
+		List<String> lines = linesOutsideMethodSignatures.get(fragment);
+		if(lines == null) {
+			lines = new ArrayList<String>();
+			for(String line : fragment.getString().split("\\n")) {
+				line = prepareLine(line);
+				if(!Visitor.METHOD_SIGNATURE_PATTERN.matcher(line).matches()) {
+					lines.add(line);
+				}
+			}
+			linesOutsideMethodSignatures.put(fragment, lines);
+		}
+		return lines;
+	}
+
 	public static String prepareLine(String line) {
 		line = line.trim();
 		if(line.startsWith("@Nullable")) {
@@ -749,21 +795,15 @@ public class VariableReplacementAnalysis {
 
 	private boolean replacementInLocalVariableDeclaration(Replacement replacement, Set<AbstractCodeMapping> set) {
 		VariableDeclaration v1 = null;
-		for(AbstractCodeMapping mapping : mappings) {
-			if(mapping.getReplacements().contains(replacement)) {
-				v1 = mapping.getFragment1().searchVariableDeclaration(replacement.getBefore());
-				break;
-			}
-		}
 		VariableDeclaration v2 = null;
-		for(AbstractCodeMapping mapping : mappings) {
-			if(mapping.getReplacements().contains(replacement)) {
-				v2 = mapping.getFragment2().searchVariableDeclaration(replacement.getAfter());
-				break;
-			}
-		}
-		Set<VariableDeclaration> allVariableDeclarations1 = new LinkedHashSet<VariableDeclaration>();
-		Set<VariableDeclaration> allVariableDeclarations2 = new LinkedHashSet<VariableDeclaration>();
+		List<AbstractCodeMapping> mappingsWithReplacement = getMappingsWithReplacement(replacement);
+		if(!mappingsWithReplacement.isEmpty()) {
+			AbstractCodeMapping mapping = mappingsWithReplacement.get(0);
+			v1 = mapping.getFragment1().searchVariableDeclaration(replacement.getBefore());
+			v2 = mapping.getFragment2().searchVariableDeclaration(replacement.getAfter());
+		}
+		Set<String> allVariableDeclarationNames1 = new HashSet<String>();
+		Set<String> allVariableDeclarationNames2 = new HashSet<String>();
 		for(AbstractCodeMapping referenceMapping : set) {
 			AbstractCodeFragment statement1 = referenceMapping.getFragment1();
 			AbstractCodeFragment statement2 = referenceMapping.getFragment2();
@@ -771,19 +811,25 @@ public class VariableReplacementAnalysis {
 					statement1.getLocationInfo().getCodeElementType().equals(CodeElementType.ENHANCED_FOR_STATEMENT)) {
 				CompositeStatementObject comp1 = (CompositeStatementObject)statement1;
 				CompositeStatementObject comp2 = (CompositeStatementObject)statement2;
-				allVariableDeclarations1.addAll(comp1.getAllVariableDeclarations());
-				allVariableDeclarations2.addAll(comp2.getAllVariableDeclarations());
+				addVariableNames(allVariableDeclarationNames1, comp1.getAllVariableDeclarations());
+				addVariableNames(allVariableDeclarationNames2, comp2.getAllVariableDeclarations());
 			}
 			else {
-				allVariableDeclarations1.addAll(operation1.getAllVariableDeclarations());
-				allVariableDeclarations2.addAll(operation2.getAllVariableDeclarations());
+				if(variableDeclarationNames1 == null) {
+					variableDeclarationNames1 = new HashSet<String>();
+					addVariableNames(variableDeclarationNames1, operation1.getAllVariableDeclarations());
+					variableDeclarationNames2 = new HashSet<String>();
+					addVariableNames(variableDeclarationNames2, operation2.getAllVariableDeclarations());
+				}
+				allVariableDeclarationNames1.addAll(variableDeclarationNames1);
+				allVariableDeclarationNames2.addAll(variableDeclarationNames2);
 				break;
 			}
 		}
 		return v1 != null && v2 != null &&
 				v1.equalVariableDeclarationType(v2) &&
-				!containsVariableDeclarationWithName(allVariableDeclarations1, v2.getVariableName()) &&
-				(!containsVariableDeclarationWithName(allVariableDeclarations2, v1.getVariableName()) || operation2.loopWithVariables(v1.getVariableName(), v2.getVariableName()) != null) &&
+				!allVariableDeclarationNames1.contains(v2.getVariableName()) &&
+				(!allVariableDeclarationNames2.contains(v1.getVariableName()) || operation2.loopWithVariables(v1.getVariableName(), v2.getVariableName()) != null) &&
 				consistencyCheck(v1, v2, set);
 	}
 
@@ -833,87 +879,156 @@ public class VariableReplacementAnalysis {
 
 	private boolean inconsistentVariableMapping(VariableDeclaration v1, VariableDeclaration v2, Set<AbstractCodeMapping> set) {
 		if(v1 != null && v2 != null) {
-			for(AbstractCodeMapping mapping : mappings) {
-				List<VariableDeclaration> variableDeclarations1 = mapping.getFragment1().getVariableDeclarations();
+			if(mappingsDeclaringVariable1 == null) {
+				indexMappingsByVariable();
+			}
+			for(AbstractCodeMapping mapping : getMappings(mappingsDeclaringVariable1, v1)) {
 				List<VariableDeclaration> variableDeclarations2 = mapping.getFragment2().getVariableDeclarations();
-				if(variableDeclarations1.contains(v1)) {
-					if(variableDeclarations2.size() > 0 && !variableDeclarations2.contains(v2)) {
-						return true;
-					}
-					else if(variableDeclarations2.size() == 0 && v1.getInitializer() != null &&
-							mapping.getFragment2().getString().startsWith(v1.getInitializer().getString())) {
-						return true;
-					}
+				if(variableDeclarations2.size() > 0 && !variableDeclarations2.contains(v2)) {
+					return true;
 				}
-				if(variableDeclarations2.contains(v2)) {
-					if(variableDeclarations1.size() > 0 && !variableDeclarations1.contains(v1)) {
-						return true;
+				else if(variableDeclarations2.size() == 0 && v1.getInitializer() != null &&
+						mapping.getFragment2().getString().startsWith(v1.getInitializer().getString())) {
+					return true;
+				}
+			}
+			for(AbstractCodeMapping mapping : getMappings(mappingsDeclaringVariable2, v2)) {
+				List<VariableDeclaration> variableDeclarations1 = mapping.getFragment1().getVariableDeclarations();
+				if(variableDeclarations1.size() > 0 && !variableDeclarations1.contains(v1)) {
+					return true;
+				}
+				else if(variableDeclarations1.size() == 0 && v2.getInitializer() != null &&
+						mapping.getFragment1().getString().startsWith(v2.getInitializer().getString())) {
+					return true;
+				}
+			}
+			Set<AbstractCodeMapping> exactMappings = new LinkedHashSet<AbstractCodeMapping>(getMappings(exactMappingsUsingVariable, v1.getVariableName()));
+			exactMappings.addAll(getMappings(exactMappingsUsingVariable, v2.getVariableName()));
+			for(AbstractCodeMapping mapping : exactMappings) {
+				for(AbstractCodeMapping referenceMapping : set) {
+					AbstractCodeFragment statement1 = referenceMapping.getFragment1();
+					AbstractCodeFragment statement2 = referenceMapping.getFragment2();
+					boolean containsMapping = true;
+					if(statement1 instanceof CompositeStatementObject && statement2 instanceof CompositeStatementObject &&
+							statement1.getLocationInfo().getCodeElementType().equals(CodeElementType.ENHANCED_FOR_STATEMENT)) {
+						CompositeStatementObject comp1 = (CompositeStatementObject)statement1;
+						CompositeStatementObject comp2 = (CompositeStatementObject)statement2;
+						containsMapping = comp1.contains(mapping.getFragment1()) && comp2.contains(mapping.getFragment2());
 					}
-					else if(variableDeclarations1.size() == 0 && v2.getInitializer() != null &&
-							mapping.getFragment1().getString().startsWith(v2.getInitializer().getString())) {
+					if(containsMapping && operation2.loopWithVariables(v1.getVariableName(), v2.getVariableName()) == null) {
 						return true;
 					}
 				}
-				if(mapping.isExact()) {
-					for(AbstractCodeMapping referenceMapping : set) {
-						AbstractCodeFragment statement1 = referenceMapping.getFragment1();
-						AbstractCodeFragment statement2 = referenceMapping.getFragment2();
-						boolean containsMapping = true;
-						if(statement1 instanceof CompositeStatementObject && statement2 instanceof CompositeStatementObject &&
-								statement1.getLocationInfo().getCodeElementType().equals(CodeElementType.ENHANCED_FOR_STATEMENT)) {
-							CompositeStatementObject comp1 = (CompositeStatementObject)statement1;
-							CompositeStatementObject comp2 = (CompositeStatementObject)statement2;
-							containsMapping = comp1.contains(mapping.getFragment1()) && comp2.contains(mapping.getFragment2());
-						}
-						if(containsMapping && (bothFragmentsUseVariable(v1, mapping) || bothFragmentsUseVariable(v2, mapping)) &&
-								operation2.loopWithVariables(v1.getVariableName(), v2.getVariableName()) == null) {
-							return true;
-						}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indexes the mappings declaring each variable, and the exact mappings with both fragments using each variable,
+	 * so that the checks for a pair of variables look only at the mappings that can involve them.
+	 */
+	private void indexMappingsByVariable() {
+		mappingsDeclaringVariable1 = new HashMap<VariableDeclaration, List<AbstractCodeMapping>>();
+		mappingsDeclaringVariable2 = new HashMap<VariableDeclaration, List<AbstractCodeMapping>>();
+		exactMappingsUsingVariable = new HashMap<String, List<AbstractCodeMapping>>();
+		for(AbstractCodeMapping mapping : mappings) {
+			for(VariableDeclaration declaration : mapping.getFragment1().getVariableDeclarations()) {
+				addMapping(mappingsDeclaringVariable1, declaration, mapping);
+			}
+			for(VariableDeclaration declaration : mapping.getFragment2().getVariableDeclarations()) {
+				addMapping(mappingsDeclaringVariable2, declaration, mapping);
+			}
+			if(mapping.isExact()) {
+				List<String> variables2 = mapping.getFragment2().getVariables();
+				for(String variable : mapping.getFragment1().getVariables()) {
+					if(variables2.contains(variable)) {
+						addMapping(exactMappingsUsingVariable, variable, mapping);
 					}
 				}
 			}
 		}
-		return false;
 	}
 
-	public static boolean bothFragmentsUseVariable(VariableDeclaration v1, AbstractCodeMapping mapping) {
-		return mapping.getFragment1().getVariables().contains(v1.getVariableName()) &&
-				mapping.getFragment2().getVariables().contains(v1.getVariableName());
+	private static <K> void addMapping(Map<K, List<AbstractCodeMapping>> map, K key, AbstractCodeMapping mapping) {
+		List<AbstractCodeMapping> list = map.get(key);
+		if(list == null) {
+			list = new ArrayList<AbstractCodeMapping>();
+			map.put(key, list);
+		}
+		if(list.isEmpty() || list.get(list.size()-1) != mapping) {
+			list.add(mapping);
+		}
 	}
 
-	private static boolean containsVariableDeclarationWithName(Set<VariableDeclaration> variableDeclarations, String variableName) {
-		for(VariableDeclaration declaration : variableDeclarations) {
-			if(declaration.getVariableName().equals(variableName)) {
-				return true;
+	private static <K> List<AbstractCodeMapping> getMappings(Map<K, List<AbstractCodeMapping>> map, K key) {
+		List<AbstractCodeMapping> list = map.get(key);
+		return list != null ? list : Collections.<AbstractCodeMapping>emptyList();
+	}
+
+	private List<AbstractCodeMapping> getMappingsWithReplacement(Replacement replacement) {
+		return getMappings(mappingsWithReplacement, replacement);
+	}
+
+	private static Map<String, VariableDeclaration> parameterDeclarations(UMLOperation operation) {
+		Map<String, VariableDeclaration> map = new HashMap<String, VariableDeclaration>();
+		if(operation != null) {
+			for(UMLParameter parameter : operation.getParameters()) {
+				VariableDeclaration vd = parameter.getVariableDeclaration();
+				if(vd != null && !map.containsKey(vd.getVariableName())) {
+					map.put(vd.getVariableName(), vd);
+				}
 			}
 		}
-		return false;
+		return map;
 	}
 
-	private SimpleEntry<VariableDeclaration, UMLOperation> getVariableDeclaration1(Replacement replacement) {
-		for(AbstractCodeMapping mapping : mappings) {
-			if(mapping.getReplacements().contains(replacement)) {
-				VariableDeclaration vd = mapping.getFragment1().searchVariableDeclaration(replacement.getBefore());
-				if(vd != null) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, mapping.getOperation1());
+	/**
+	 * The declarations of the statements with the given name, at most one per statement as in StatementObject.getVariableDeclaration(),
+	 * in the order of the statements.
+	 */
+	private static Map<String, List<VariableDeclaration>> declarationsByName(List<StatementObject> statements) {
+		Map<String, List<VariableDeclaration>> map = new HashMap<String, List<VariableDeclaration>>();
+		for(StatementObject statement : statements) {
+			Set<String> names = new HashSet<String>();
+			for(VariableDeclaration declaration : statement.getVariableDeclarations()) {
+				if(names.add(declaration.getVariableName())) {
+					List<VariableDeclaration> list = map.get(declaration.getVariableName());
+					if(list == null) {
+						list = new ArrayList<VariableDeclaration>();
+						map.put(declaration.getVariableName(), list);
+					}
+					list.add(declaration);
 				}
 			}
 		}
-		for(UMLParameter parameter : operation1.getParameters()) {
-			VariableDeclaration vd = parameter.getVariableDeclaration();
-			if(vd != null && vd.getVariableName().equals(replacement.getBefore())) {
-				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation1);
-			}
+		return map;
+	}
+
+	private static List<VariableDeclaration> declarationsWithName(Map<String, List<VariableDeclaration>> map, String variableName) {
+		List<VariableDeclaration> list = map.get(variableName);
+		return list != null ? list : Collections.<VariableDeclaration>emptyList();
+	}
+
+	private static void addVariableNames(Set<String> names, List<VariableDeclaration> variableDeclarations) {
+		for(VariableDeclaration declaration : variableDeclarations) {
+			names.add(declaration.getVariableName());
 		}
-		if(callSiteOperation != null) {
-			for(UMLParameter parameter : callSiteOperation.getParameters()) {
-				VariableDeclaration vd = parameter.getVariableDeclaration();
-				if(vd != null && vd.getVariableName().equals(replacement.getBefore())) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
-				}
+	}
+
+	public static boolean bothFragmentsUseVariable(VariableDeclaration v1, AbstractCodeMapping mapping) {
+		return mapping.getFragment1().getVariables().contains(v1.getVariableName()) &&
+				mapping.getFragment2().getVariables().contains(v1.getVariableName());
+	}
+
+	private SimpleEntry<VariableDeclaration, UMLOperation> getVariableDeclaration1(Replacement replacement) {
+		for(AbstractCodeMapping mapping : getMappingsWithReplacement(replacement)) {
+			VariableDeclaration vd = mapping.getFragment1().searchVariableDeclaration(replacement.getBefore());
+			if(vd != null) {
+				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, mapping.getOperation1());
 			}
 		}
-		return null;
+		return getParameterDeclaration1(replacement.getBefore());
 	}
 
 	private SimpleEntry<VariableDeclaration, UMLOperation> getVariableDeclaration1(MergeVariableReplacement replacement, String variableName) {
@@ -931,81 +1046,27 @@ public class VariableReplacementAnalysis {
 				}
 			}
 		}
-		for(UMLParameter parameter : operation1.getParameters()) {
-			VariableDeclaration vd = parameter.getVariableDeclaration();
-			if(vd != null && vd.getVariableName().equals(variableName)) {
-				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation1);
-			}
-		}
-		if(callSiteOperation != null) {
-			for(UMLParameter parameter : callSiteOperation.getParameters()) {
-				VariableDeclaration vd = parameter.getVariableDeclaration();
-				if(vd != null && vd.getVariableName().equals(variableName)) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
-				}
-			}
-		}
-		return null;
+		return getParameterDeclaration1(variableName);
 	}
 
 	private SimpleEntry<VariableDeclaration, UMLOperation> getVariableDeclaration2(Replacement replacement) {
-		for(AbstractCodeMapping mapping : mappings) {
-			if(mapping.getReplacements().contains(replacement)) {
-				VariableDeclaration vd = mapping.getFragment2().searchVariableDeclaration(replacement.getAfter());
-				if(vd != null) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, mapping.getOperation2());
-				}
-			}
-		}
-		for(UMLParameter parameter : operation2.getParameters()) {
-			VariableDeclaration vd = parameter.getVariableDeclaration();
-			if(vd != null && vd.getVariableName().equals(replacement.getAfter())) {
-				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation2);
-			}
-		}
-		if(callSiteOperation != null) {
-			for(UMLParameter parameter : callSiteOperation.getParameters()) {
-				VariableDeclaration vd = parameter.getVariableDeclaration();
-				if(vd != null && vd.getVariableName().equals(replacement.getAfter())) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
-				}
+		for(AbstractCodeMapping mapping : getMappingsWithReplacement(replacement)) {
+			VariableDeclaration vd = mapping.getFragment2().searchVariableDeclaration(replacement.getAfter());
+			if(vd != null) {
+				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, mapping.getOperation2());
 			}
 		}
-		return null;
+		return getParameterDeclaration2(replacement.getAfter());
 	}
 
 	private SimpleEntry<VariableDeclaration, UMLOperation> getVariableDeclaration2(SplitVariableReplacement replacement, String variableName) {
-		for(AbstractCodeMapping mapping : mappings) {
-			if(mapping.getReplacements().contains(replacement)) {
-				Set<String> foundSplitVariables = new LinkedHashSet<String>();
-				for(Replacement r : mapping.getReplacements()) {
-					if(replacement.getSplitVariables().contains(r.getAfter())) {
-						foundSplitVariables.add(r.getAfter());
-					}
-				}
-				if(mapping.getReplacements().contains(replacement) || foundSplitVariables.equals(replacement.getSplitVariables())) {
-					VariableDeclaration vd = mapping.getFragment2().searchVariableDeclaration(variableName);
-					if(vd != null) {
-						return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, mapping.getOperation2());
-					}
-				}
-			}
-		}
-		for(UMLParameter parameter : operation2.getParameters()) {
-			VariableDeclaration vd = parameter.getVariableDeclaration();
-			if(vd != null && vd.getVariableName().equals(variableName)) {
-				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation2);
-			}
-		}
-		if(callSiteOperation != null) {
-			for(UMLParameter parameter : callSiteOperation.getParameters()) {
-				VariableDeclaration vd = parameter.getVariableDeclaration();
-				if(vd != null && vd.getVariableName().equals(variableName)) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
-				}
+		for(AbstractCodeMapping mapping : getMappingsWithReplacement(replacement)) {
+			VariableDeclaration vd = mapping.getFragment2().searchVariableDeclaration(variableName);
+			if(vd != null) {
+				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, mapping.getOperation2());
 			}
 		}
-		return null;
+		return getParameterDeclaration2(variableName);
 	}
 
 	private SimpleEntry<VariableDeclaration, UMLOperation> getVariableDeclaration2(MergeVariableReplacement replacement) {
@@ -1023,21 +1084,7 @@ public class VariableReplacementAnalysis {
 				}
 			}
 		}
-		for(UMLParameter parameter : operation2.getParameters()) {
-			VariableDeclaration vd = parameter.getVariableDeclaration();
-			if(vd != null && vd.getVariableName().equals(replacement.getAfter())) {
-				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation2);
-			}
-		}
-		if(callSiteOperation != null) {
-			for(UMLParameter parameter : callSiteOperation.getParameters()) {
-				VariableDeclaration vd = parameter.getVariableDeclaration();
-				if(vd != null && vd.getVariableName().equals(replacement.getAfter())) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
-				}
-			}
-		}
-		return null;
+		return getParameterDeclaration2(replacement.getAfter());
 	}
 
 	private boolean variableAppearsInExtractedMethod(VariableDeclaration v1, VariableDeclaration v2) {
@@ -1050,19 +1097,19 @@ public class VariableReplacementAnalysis {
 							Map<String, List<OperationInvocation>> methodInvocationMap = v2.getInitializer().getMethodInvocationMap();
 							for(String key : methodInvocationMap.keySet()) {
 								for(OperationInvocation invocation : methodInvocationMap.get(key)) {
-									if(invocation.matchesOperation(extractedMethod, operation2.variableTypeMap(), null)) {
+									if(invocation.matchesOperation(extractedMethod, getVariableTypeMap2(), null)) {
 										return false;
 									}
 									else {
 										//check if the extracted method is called in the initializer of a variable used in the initializer of v2
 										List<String> initializerVariables = v2.getInitializer().getVariables();
 										for(String variable : initializerVariables) {
-											for(VariableDeclaration declaration : operation2.getAllVariableDeclarations()) {
-												if(declaration.getVariableName().equals(variable) && declaration.getInitializer() != null) {
+											for(VariableDeclaration declaration : declarationsWithName(getVariableDeclarations2(), variable)) {
+												if(declaration.getInitializer() != null) {
 													Map<String, List<OperationInvocation>> methodInvocationMap2 = declaration.getInitializer().getMethodInvocationMap();
 													for(String key2 : methodInvocationMap2.keySet()) {
 														for(OperationInvocation invocation2 : methodInvocationMap2.get(key2)) {
-															if(invocation2.matchesOperation(extractedMethod, operation2.variableTypeMap(), null)) {
+															if(invocation2.matchesOperation(extractedMethod, getVariableTypeMap2(), null)) {
 																return false;
 															}
 														}
@@ -1101,6 +1148,28 @@ public class VariableReplacementAnalysis {
 		return false;
 	}
 
+	private Map<String, UMLType> getVariableTypeMap2() {
+		if(variableTypeMap2 == null) {
+			variableTypeMap2 = operation2.variableTypeMap();
+		}
+		return variableTypeMap2;
+	}
+
+	private Map<String, List<VariableDeclaration>> getVariableDeclarations2() {
+		if(variableDeclarations2 == null) {
+			variableDeclarations2 = new HashMap<String, List<VariableDeclaration>>();
+			for(VariableDeclaration declaration : operation2.getAllVariableDeclarations()) {
+				List<VariableDeclaration> list = variableDeclarations2.get(declaration.getVariableName());
+				if(list == null) {
+					list = new ArrayList<VariableDeclaration>();
+					variableDeclarations2.put(declaration.getVariableName(), list);
+				}
+				list.add(declaration);
+			}
+		}
+		return variableDeclarations2;
+	}
+
 	private boolean existsConflictingParameterRenameInOperationDiff(MergeVariableRefactoring ref) {
 		if(operationDiff != null) {
 			for(UMLParameterDiff parameterDiff : operationDiff.getParameterDiffList()) {
@@ -1206,6 +1275,30 @@ public class VariableReplacementAnalysis {
 		return index1 >= 0 && index1 == index2;
 	}
 
+	private SimpleEntry<VariableDeclaration, UMLOperation> getParameterDeclaration1(String variableName) {
+		VariableDeclaration vd = parameters1.get(variableName);
+		if(vd != null) {
+			return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation1);
+		}
+		vd = callSiteParameters.get(variableName);
+		if(vd != null) {
+			return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
+		}
+		return null;
+	}
+
+	private SimpleEntry<VariableDeclaration, UMLOperation> getParameterDeclaration2(String variableName) {
+		VariableDeclaration vd = parameters2.get(variableName);
+		if(vd != null) {
+			return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation2);
+		}
+		vd = callSiteParameters.get(variableName);
+		if(vd != null) {
+			return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
+		}
+		return null;
+	}
+
 	private SimpleEntry<VariableDeclaration, UMLOperation> getVariableDeclaration1(Replacement replacement, AbstractCodeMapping mapping) {
 		if(mapping.getReplacements().contains(replacement)) {
 			VariableDeclaration vd = mapping.getFragment1().searchVariableDeclaration(replacement.getBefore());
@@ -1213,21 +1306,7 @@ public class VariableReplacementAnalysis {
 				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, mapping.getOperation1());
 			}
 		}
-		for(UMLParameter parameter : operation1.getParameters()) {
-			VariableDeclaration vd = parameter.getVariableDeclaration();
-			if(vd != null && vd.getVariableName().equals(replacement.getBefore())) {
-				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation1);
-			}
-		}
-		if(callSiteOperation != null) {
-			for(UMLParameter parameter : callSiteOperation.getParameters()) {
-				VariableDeclaration vd = parameter.getVariableDeclaration();
-				if(vd != null && vd.getVariableName().equals(replacement.getBefore())) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
-				}
-			}
-		}
-		return null;
+		return getParameterDeclaration1(replacement.getBefore());
 	}
 
 	private SimpleEntry<VariableDeclaration, UMLOperation> getVariableDeclaration2(Replacement replacement, AbstractCodeMapping mapping) {
@@ -1237,20 +1316,6 @@ public class VariableReplacementAnalysis {
 				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, mapping.getOperation2());
 			}
 		}
-		for(UMLParameter parameter : operation2.getParameters()) {
-			VariableDeclaration vd = parameter.getVariableDeclaration();
-			if(vd != null && vd.getVariableName().equals(replacement.getAfter())) {
-				return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, operation2);
-			}
-		}
-		if(callSiteOperation != null) {
-			for(UMLParameter parameter : callSiteOperation.getParameters()) {
-				VariableDeclaration vd = parameter.getVariableDeclaration();
-				if(vd != null && vd.getVariableName().equals(replacement.getAfter())) {
-					return new SimpleEntry<VariableDeclaration, UMLOperation>(vd, callSiteOperation);
-				}
-			}
-		}
-		return null;
+		return getParameterDeclaration2(replacement.getAfter());
 	}
 }
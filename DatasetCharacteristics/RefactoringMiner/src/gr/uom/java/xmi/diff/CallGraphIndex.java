@@ -0,0 +1,98 @@
+package gr.uom.java.xmi.diff;
+
+import gr.uom.java.xmi.UMLOperation;
+import gr.uom.java.xmi.UMLType;
+import gr.uom.java.xmi.decomposition.OperationInvocation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The call sites of the operations of both models by the name of the invoked method, computed
+ * once per operation for a UMLModelDiff and shared by the extract and inline operation detections.
+ *
+ * An invocation matches an operation only if it has the name of the operation, so only the
+ * call sites with that name are matched, in the order of the invocations.
+ */
+public class CallGraphIndex {
+	private UMLModelDiff modelDiff;
+	private Map<UMLOperation, CallSites> callSites = new IdentityHashMap<UMLOperation, CallSites>();
+	private Map<UMLOperation, Map<String, UMLType>> variableTypeMaps = new IdentityHashMap<UMLOperation, Map<String, UMLType>>();
+
+	public CallGraphIndex(UMLModelDiff modelDiff) {
+		this.modelDiff = modelDiff;
+	}
+
+	public static class CallSites {
+		private List<OperationInvocation> invocations;
+		private Map<String, List<OperationInvocation>> invocationsByMethodName = new LinkedHashMap<String, List<OperationInvocation>>();
+
+		public CallSites(List<OperationInvocation> invocations) {
+			this.invocations = invocations;
+			for(OperationInvocation invocation : invocations) {
+				List<OperationInvocation> list = invocationsByMethodName.get(invocation.getMethodName());
+				if(list == null) {
+					list = new ArrayList<OperationInvocation>();
+					invocationsByMethodName.put(invocation.getMethodName(), list);
+				}
+				list.add(invocation);
+			}
+		}
+
+		public List<OperationInvocation> getInvocations() {
+			return invocations;
+		}
+
+		public List<OperationInvocation> getInvocations(String methodName) {
+			List<OperationInvocation> list = invocationsByMethodName.get(methodName);
+			return list != null ? list : Collections.<OperationInvocation>emptyList();
+		}
+	}
+
+	/**
+	 * The call sites in the body of the operation, which must not be modified.
+	 */
+	public CallSites getCallSites(UMLOperation operation) {
+		CallSites operationCallSites = callSites.get(operation);
+		if(operationCallSites == null) {
+			operationCallSites = new CallSites(operation.getAllOperationInvocations());
+			callSites.put(operation, operationCallSites);
+		}
+		return operationCallSites;
+	}
+
+	/**
+	 * The variable type map of the operation, which must not be modified.
+	 */
+	public Map<String, UMLType> variableTypeMap(UMLOperation operation) {
+		Map<String, UMLType> variableTypeMap = variableTypeMaps.get(operation);
+		if(variableTypeMap == null) {
+			variableTypeMap = operation.variableTypeMap();
+			variableTypeMaps.put(operation, variableTypeMap);
+		}
+		return variableTypeMap;
+	}
+
+	public List<OperationInvocation> matchingInvocations(UMLOperation operation, CallSites callSites, Map<String, UMLType> variableTypeMap) {
+		List<OperationInvocation> matchingInvocations = new ArrayList<OperationInvocation>();
+		for(OperationInvocation invocation : callSites.getInvocations(operation.getName())) {
+			if(invocation.matchesOperation(operation, variableTypeMap, modelDiff)) {
+				matchingInvocations.add(invocation);
+			}
+		}
+		return matchingInvocations;
+	}
+
+	public boolean invokes(CallSites callSites, UMLOperation operation, Map<String, UMLType> variableTypeMap) {
+		for(OperationInvocation invocation : callSites.getInvocations(operation.getName())) {
+			if(invocation.matchesOperation(operation, variableTypeMap, modelDiff)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
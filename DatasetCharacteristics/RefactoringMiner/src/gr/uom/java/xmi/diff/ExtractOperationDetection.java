@@ -26,6 +26,9 @@ public class ExtractOperationDetection {
 	private UMLClassBaseDiff classDiff;
 	private UMLModelDiff modelDiff;
 	private List<OperationInvocation> operationInvocations;
+	private CallGraphIndex callGraphIndex;
+	private CallGraphIndex.CallSites operationCallSites;
+	private Map<String, UMLType> variableTypeMap;
 	private Map<CallTreeNode, CallTree> callTreeMap = new LinkedHashMap<CallTreeNode, CallTree>();
 
 	public ExtractOperationDetection(UMLOperationBodyMapper mapper, List<UMLOperation> addedOperations, UMLClassBaseDiff classDiff, UMLModelDiff modelDiff) {
@@ -34,19 +37,21 @@ public class ExtractOperationDetection {
 		this.classDiff = classDiff;
 		this.modelDiff = modelDiff;
 		this.operationInvocations = getInvocationsInSourceOperationAfterExtraction(mapper);
+		this.callGraphIndex = modelDiff != null ? modelDiff.getCallGraphIndex() : new CallGraphIndex(null);
+		this.operationCallSites = new CallGraphIndex.CallSites(operationInvocations);
+		this.variableTypeMap = callGraphIndex.variableTypeMap(mapper.getOperation2());
 	}
 
 	public List<ExtractOperationRefactoring> check(UMLOperation addedOperation) throws RefactoringMinerTimedOutException {
 		List<ExtractOperationRefactoring> refactorings = new ArrayList<ExtractOperationRefactoring>();
 		if(!mapper.getNonMappedLeavesT1().isEmpty() || !mapper.getNonMappedInnerNodesT1().isEmpty() ||
 			!mapper.getReplacementsInvolvingMethodInvocation().isEmpty()) {
-			List<OperationInvocation> addedOperationInvocations = matchingInvocations(addedOperation, operationInvocations, mapper.getOperation2().variableTypeMap());
+			List<OperationInvocation> addedOperationInvocations = callGraphIndex.matchingInvocations(addedOperation, operationCallSites, variableTypeMap);
 			if(addedOperationInvocations.size() > 0) {
 				int otherAddedMethodsCalled = 0;
 				for(UMLOperation addedOperation2 : this.addedOperations) {
 					if(!addedOperation.equals(addedOperation2)) {
-						List<OperationInvocation> addedOperationInvocations2 = matchingInvocations(addedOperation2, operationInvocations, mapper.getOperation2().variableTypeMap());
-						if(addedOperationInvocations2.size() > 0) {
+						if(callGraphIndex.invokes(operationCallSites, addedOperation2, variableTypeMap)) {
 							otherAddedMethodsCalled++;
 						}
 					}
@@ -84,12 +89,13 @@ public class ExtractOperationDetection {
 			List<CallTreeNode> nodesInBreadthFirstOrder = callTree.getNodesInBreadthFirstOrder();
 			for(int i=1; i<nodesInBreadthFirstOrder.size(); i++) {
 				CallTreeNode node = nodesInBreadthFirstOrder.get(i);
-				if(matchingInvocations(node.getInvokedOperation(), operationInvocations, mapper.getOperation2().variableTypeMap()).size() == 0) {
+				if(!callGraphIndex.invokes(operationCallSites, node.getInvokedOperation(), variableTypeMap)) {
 					UMLOperationBodyMapper nestedMapper = createMapperForExtractedMethod(mapper, node.getOriginalOperation(), node.getInvokedOperation(), node.getInvocation());
 					if(nestedMapper != null) {
 						additionalExactMatches.addAll(nestedMapper.getExactMatches());
 						if(extractMatchCondition(nestedMapper, new ArrayList<AbstractCodeMapping>()) && extractMatchCondition(operationBodyMapper, additionalExactMatches)) {
-							List<OperationInvocation> nestedMatchingInvocations = matchingInvocations(node.getInvokedOperation(), node.getOriginalOperation().getAllOperationInvocations(), node.getOriginalOperation().variableTypeMap());
+							List<OperationInvocation> nestedMatchingInvocations = callGraphIndex.matchingInvocations(node.getInvokedOperation(),
+									callGraphIndex.getCallSites(node.getOriginalOperation()), callGraphIndex.variableTypeMap(node.getOriginalOperation()));
 							ExtractOperationRefactoring nestedRefactoring = new ExtractOperationRefactoring(nestedMapper, mapper.getOperation2(), nestedMatchingInvocations);
 							refactorings.add(nestedRefactoring);
 							operationBodyMapper.addChildMapper(nestedMapper);
@@ -174,27 +180,15 @@ public class ExtractOperationDetection {
 		return false;
 	}
 
-	private List<OperationInvocation> matchingInvocations(UMLOperation operation,
-			List<OperationInvocation> operationInvocations, Map<String, UMLType> variableTypeMap) {
-		List<OperationInvocation> addedOperationInvocations = new ArrayList<OperationInvocation>();
-		for(OperationInvocation invocation : operationInvocations) {
-			if(invocation.matchesOperation(operation, variableTypeMap, modelDiff)) {
-				addedOperationInvocations.add(invocation);
-			}
-		}
-		return addedOperationInvocations;
-	}
-
 	private void generateCallTree(UMLOperation operation, CallTreeNode parent, CallTree callTree) {
-		List<OperationInvocation> invocations = operation.getAllOperationInvocations();
+		CallGraphIndex.CallSites callSites = callGraphIndex.getCallSites(operation);
+		Map<String, UMLType> operationVariableTypeMap = callGraphIndex.variableTypeMap(operation);
 		for(UMLOperation addedOperation : addedOperations) {
-			for(OperationInvocation invocation : invocations) {
-				if(invocation.matchesOperation(addedOperation, operation.variableTypeMap(), modelDiff)) {
-					if(!callTree.contains(addedOperation)) {
-						CallTreeNode node = new CallTreeNode(operation, addedOperation, invocation);
-						parent.addChild(node);
-						generateCallTree(addedOperation, node, callTree);
-					}
+			for(OperationInvocation invocation : callGraphIndex.matchingInvocations(addedOperation, callSites, operationVariableTypeMap)) {
+				if(!callTree.contains(addedOperation)) {
+					CallTreeNode node = new CallTreeNode(operation, addedOperation, invocation);
+					parent.addChild(node);
+					generateCallTree(addedOperation, node, callTree);
 				}
 			}
 		}
@@ -276,9 +270,9 @@ public class ExtractOperationDetection {
 
 	private UMLOperation findDelegateMethod(UMLOperation originalOperation, UMLOperation addedOperation, OperationInvocation addedOperationInvocation) {
 		OperationInvocation delegateMethodInvocation = addedOperation.isDelegate();
-		if(originalOperation.isDelegate() == null && delegateMethodInvocation != null && !originalOperation.getAllOperationInvocations().contains(addedOperationInvocation)) {
+		if(originalOperation.isDelegate() == null && delegateMethodInvocation != null && !callGraphIndex.getCallSites(originalOperation).getInvocations().contains(addedOperationInvocation)) {
 			for(UMLOperation operation : addedOperations) {
-				if(delegateMethodInvocation.matchesOperation(operation, addedOperation.variableTypeMap(), modelDiff)) {
+				if(delegateMethodInvocation.matchesOperation(operation, callGraphIndex.variableTypeMap(addedOperation), modelDiff)) {
 					return operation;
 				}
 			}
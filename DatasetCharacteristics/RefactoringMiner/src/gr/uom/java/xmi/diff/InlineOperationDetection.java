@@ -21,6 +21,9 @@ public class InlineOperationDetection {
 	private UMLClassBaseDiff classDiff;
 	private UMLModelDiff modelDiff;
 	private List<OperationInvocation> operationInvocations;
+	private CallGraphIndex callGraphIndex;
+	private CallGraphIndex.CallSites operationCallSites;
+	private Map<String, UMLType> variableTypeMap;
 	private Map<CallTreeNode, CallTree> callTreeMap = new LinkedHashMap<CallTreeNode, CallTree>();
 	
 	public InlineOperationDetection(UMLOperationBodyMapper mapper, List<UMLOperation> removedOperations, UMLClassBaseDiff classDiff, UMLModelDiff modelDiff) {
@@ -29,14 +32,17 @@ public class InlineOperationDetection {
 		this.classDiff = classDiff;
 		this.modelDiff = modelDiff;
 		this.operationInvocations = getInvocationsInTargetOperationBeforeInline(mapper);
+		this.callGraphIndex = modelDiff != null ? modelDiff.getCallGraphIndex() : new CallGraphIndex(null);
+		this.operationCallSites = new CallGraphIndex.CallSites(operationInvocations);
+		this.variableTypeMap = callGraphIndex.variableTypeMap(mapper.getOperation1());
 	}
 
 	public List<InlineOperationRefactoring> check(UMLOperation removedOperation) throws RefactoringMinerTimedOutException {
 		List<InlineOperationRefactoring> refactorings = new ArrayList<InlineOperationRefactoring>();
 		if(!mapper.getNonMappedLeavesT2().isEmpty() || !mapper.getNonMappedInnerNodesT2().isEmpty() ||
 			!mapper.getReplacementsInvolvingMethodInvocation().isEmpty()) {
-			List<OperationInvocation> removedOperationInvocations = matchingInvocations(removedOperation, operationInvocations, mapper.getOperation1().variableTypeMap());
-			if(removedOperationInvocations.size() > 0 && !invocationMatchesWithAddedOperation(removedOperationInvocations.get(0), mapper.getOperation1().variableTypeMap(), mapper.getOperation2().getAllOperationInvocations())) {
+			List<OperationInvocation> removedOperationInvocations = callGraphIndex.matchingInvocations(removedOperation, operationCallSites, variableTypeMap);
+			if(removedOperationInvocations.size() > 0 && !invocationMatchesWithAddedOperation(removedOperationInvocations.get(0), variableTypeMap, callGraphIndex.getCallSites(mapper.getOperation2()).getInvocations())) {
 				OperationInvocation removedOperationInvocation = removedOperationInvocations.get(0);
 				CallTreeNode root = new CallTreeNode(mapper.getOperation1(), removedOperation, removedOperationInvocation);
 				CallTree callTree = null;
@@ -53,11 +59,12 @@ public class InlineOperationDetection {
 				List<CallTreeNode> nodesInBreadthFirstOrder = callTree.getNodesInBreadthFirstOrder();
 				for(int i=1; i<nodesInBreadthFirstOrder.size(); i++) {
 					CallTreeNode node = nodesInBreadthFirstOrder.get(i);
-					if(matchingInvocations(node.getInvokedOperation(), operationInvocations, mapper.getOperation1().variableTypeMap()).size() == 0) {
+					if(!callGraphIndex.invokes(operationCallSites, node.getInvokedOperation(), variableTypeMap)) {
 						UMLOperationBodyMapper nestedMapper = createMapperForInlinedMethod(mapper, node.getInvokedOperation(), node.getInvocation());
 						additionalExactMatches.addAll(nestedMapper.getExactMatches());
 						if(inlineMatchCondition(nestedMapper)) {
-							List<OperationInvocation> nestedMatchingInvocations = matchingInvocations(node.getInvokedOperation(), node.getOriginalOperation().getAllOperationInvocations(), node.getOriginalOperation().variableTypeMap());
+							List<OperationInvocation> nestedMatchingInvocations = callGraphIndex.matchingInvocations(node.getInvokedOperation(),
+									callGraphIndex.getCallSites(node.getOriginalOperation()), callGraphIndex.variableTypeMap(node.getOriginalOperation()));
 							InlineOperationRefactoring nestedRefactoring = new InlineOperationRefactoring(nestedMapper, mapper.getOperation1(), nestedMatchingInvocations);
 							refactorings.add(nestedRefactoring);
 							operationBodyMapper.addChildMapper(nestedMapper);
@@ -73,16 +80,6 @@ public class InlineOperationDetection {
 		return refactorings;
 	}
 
-	private List<OperationInvocation> matchingInvocations(UMLOperation removedOperation, List<OperationInvocation> operationInvocations, Map<String, UMLType> variableTypeMap) {
-		List<OperationInvocation> removedOperationInvocations = new ArrayList<OperationInvocation>();
-		for(OperationInvocation invocation : operationInvocations) {
-			if(invocation.matchesOperation(removedOperation, variableTypeMap, modelDiff)) {
-				removedOperationInvocations.add(invocation);
-			}
-		}
-		return removedOperationInvocations;
-	}
-
 	private UMLOperationBodyMapper createMapperForInlinedMethod(UMLOperationBodyMapper mapper,
 			UMLOperation removedOperation, OperationInvocation removedOperationInvocation) throws RefactoringMinerTimedOutException {
 		List<String> arguments = removedOperationInvocation.getArguments();
@@ -98,15 +95,14 @@ public class InlineOperationDetection {
 	}
 
 	private void generateCallTree(UMLOperation operation, CallTreeNode parent, CallTree callTree) {
-		List<OperationInvocation> invocations = operation.getAllOperationInvocations();
+		CallGraphIndex.CallSites callSites = callGraphIndex.getCallSites(operation);
+		Map<String, UMLType> operationVariableTypeMap = callGraphIndex.variableTypeMap(operation);
 		for(UMLOperation removedOperation : removedOperations) {
-			for(OperationInvocation invocation : invocations) {
-				if(invocation.matchesOperation(removedOperation, operation.variableTypeMap(), modelDiff)) {
-					if(!callTree.contains(removedOperation)) {
-						CallTreeNode node = new CallTreeNode(operation, removedOperation, invocation);
-						parent.addChild(node);
-						generateCallTree(removedOperation, node, callTree);
-					}
+			for(OperationInvocation invocation : callGraphIndex.matchingInvocations(removedOperation, callSites, operationVariableTypeMap)) {
+				if(!callTree.contains(removedOperation)) {
+					CallTreeNode node = new CallTreeNode(operation, removedOperation, invocation);
+					parent.addChild(node);
+					generateCallTree(removedOperation, node, callTree);
 				}
 			}
 		}
@@ -0,0 +1,283 @@
+package gr.uom.java.xmi.diff;
+
+import gr.uom.java.xmi.UMLOperation;
+import gr.uom.java.xmi.decomposition.AbstractCodeFragment;
+import gr.uom.java.xmi.decomposition.CompositeStatementObject;
+import gr.uom.java.xmi.decomposition.ObjectCreation;
+import gr.uom.java.xmi.decomposition.OperationBody;
+import gr.uom.java.xmi.decomposition.OperationInvocation;
+import gr.uom.java.xmi.decomposition.StatementObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The statements of an operation body as sets of keys, used to rule out operation
+ * pairs whose body mapper cannot consist of exact matches, or cannot have enough
+ * exact matches, before building the mapper.
+ *
+ * Two statements mapped as an exact match share a key: they are equal once the
+ * qualifiers removed by replacing parameters with arguments are removed, the
+ * invocations or creations covering them are equal, or one calls the method
+ * covering the other with the same arguments. Statements with types can be mapped
+ * with type replacements and statements with braces can have array initializers
+ * matching invocation arguments, so they are not checked. The mappings of lambda
+ * bodies are added to the mapper, so bodies with lambdas are not ruled out.
+ */
+public class OperationBodySignature {
+	private List<Statement> countableStatements = new ArrayList<Statement>();
+	private Set<String> keys = new HashSet<String>();
+	private int nonCountableStatements;
+	private int typedStatements;
+	private int statementsWithBraces;
+	private boolean containsLambdas;
+	private int initializedVariableDeclarations;
+	private Map<String, Integer> variableDeclarationsByName = new HashMap<String, Integer>();
+	private List<Set<String>> loopVariables = new ArrayList<Set<String>>();
+
+	public OperationBodySignature(UMLOperation operation) {
+		OperationBody body = operation.getBody();
+		if(body != null) {
+			CompositeStatementObject composite = body.getCompositeStatement();
+			List<AbstractCodeFragment> statements = new ArrayList<AbstractCodeFragment>(composite.getLeaves());
+			List<CompositeStatementObject> innerNodes = composite.getInnerNodes();
+			innerNodes.remove(composite);
+			statements.addAll(innerNodes);
+			for(AbstractCodeFragment fragment : statements) {
+				if(!fragment.getLambdas().isEmpty()) {
+					containsLambdas = true;
+				}
+				if(fragment instanceof StatementObject && fragment.getVariableDeclarations().size() == 1) {
+					String variableName = fragment.getVariableDeclarations().get(0).getVariableName();
+					Integer count = variableDeclarationsByName.get(variableName);
+					variableDeclarationsByName.put(variableName, count == null ? 1 : count + 1);
+					if(fragment.getVariableDeclarations().get(0).getInitializer() != null) {
+						initializedVariableDeclarations++;
+					}
+				}
+				if(fragment instanceof CompositeStatementObject && ((CompositeStatementObject)fragment).isLoop()) {
+					loopVariables.add(new HashSet<String>(fragment.getVariables()));
+				}
+				if(fragment.countableStatement()) {
+					Statement statement = new Statement(fragment);
+					countableStatements.add(statement);
+					keys.addAll(statement.keys);
+					if(statement.typed)
+						typedStatements++;
+					if(statement.withBraces)
+						statementsWithBraces++;
+				}
+				else {
+					nonCountableStatements++;
+				}
+			}
+		}
+	}
+
+	private static class Statement {
+		private Set<String> keys = new HashSet<String>();
+		private boolean typed;
+		private boolean withBraces;
+		private boolean variableDeclaration;
+		private boolean coveredByInvocation;
+
+		private Statement(AbstractCodeFragment fragment) {
+			String string = fragment.getString();
+			keys.add("A" + removeQualifiers(string));
+			OperationInvocation invocation = fragment.invocationCoveringEntireFragment();
+			if(invocation != null) {
+				coveredByInvocation = true;
+				keys.add("I" + invocation.actualString());
+				keys.add("N" + invocation.getMethodName() + invocation.getArguments());
+			}
+			ObjectCreation creation = fragment.creationCoveringEntireFragment();
+			if(creation != null) {
+				keys.add("C" + creation.actualString());
+			}
+			for(List<OperationInvocation> invocations : fragment.getMethodInvocationMap().values()) {
+				for(OperationInvocation call : invocations) {
+					keys.add("N" + call.getMethodName() + call.getArguments());
+				}
+			}
+			typed = !fragment.getTypes().isEmpty();
+			withBraces = string.indexOf('{') != -1;
+			variableDeclaration = fragment instanceof StatementObject && !fragment.getVariableDeclarations().isEmpty();
+		}
+	}
+
+	/**
+	 * Removes the qualifiers at the positions where parameters are replaced with
+	 * arguments, so that statements with equal argumentized strings get equal results.
+	 */
+	private static String removeQualifiers(String statement) {
+		StringBuilder sb = new StringBuilder(statement.length());
+		int i = 0;
+		while(i < statement.length()) {
+			char c = statement.charAt(i);
+			if(Character.isJavaIdentifierStart(c) && (sb.length() == 0 || isArgumentStart(sb.charAt(sb.length()-1)))) {
+				int end = i + 1;
+				while(end < statement.length() && Character.isJavaIdentifierPart(statement.charAt(end)))
+					end++;
+				if(end < statement.length() && statement.charAt(end) == '.') {
+					i = end + 1;
+				}
+				else {
+					sb.append(statement, i, end);
+					i = end;
+				}
+			}
+			else {
+				sb.append(c);
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isArgumentStart(char previousChar) {
+		return previousChar == '(' || previousChar == ',' || previousChar == ' ' || previousChar == '=';
+	}
+
+	public boolean isEmpty() {
+		return countableStatements.isEmpty();
+	}
+
+	/**
+	 * Whether a mapper of the two bodies can have exact matches only with at most one
+	 * non-mapped element on one side, as UMLClassBaseDiff.exactMappings() requires.
+	 * At least one statement must have an exact match. Statements of one side can be
+	 * mapped to non-countable statements of the other, mappings counted both as exact
+	 * and with a type replacement allow one other mapping each, and variable
+	 * declarations of the second side need not be mapped if they are extracted variables.
+	 */
+	public boolean mayHaveExactMappings(OperationBodySignature other) {
+		if(this.containsLambdas || other.containsLambdas) {
+			return true;
+		}
+		if(this.isEmpty() || other.isEmpty() || !this.mayHaveExactMatch(other)) {
+			return false;
+		}
+		int typeReplacements = Math.min(this.typedStatements, other.typedStatements);
+		return this.statementsWithoutMatch(other, false) <= 1 + other.nonCountableStatements + other.statementsWithBraces + typeReplacements ||
+				other.statementsWithoutMatch(this, true) <= 1 + this.nonCountableStatements + this.statementsWithBraces + typeReplacements;
+	}
+
+	/**
+	 * An upper bound of the exact matches of a mapper of the two bodies, as each exact
+	 * match maps statements sharing a key. With initializersMatchingAttributes, the
+	 * initializers of variable declarations of this body can also be mapped to the
+	 * initializers of attributes, as in UMLModelDiff.checkForOperationMoves().
+	 */
+	public int exactMatchesUpperBound(OperationBodySignature other, boolean initializersMatchingAttributes) {
+		if(this.containsLambdas || other.containsLambdas) {
+			return Integer.MAX_VALUE;
+		}
+		int upperBound = Math.min(this.statementsWithPossibleExactMatch(other), other.statementsWithPossibleExactMatch(this));
+		if(initializersMatchingAttributes) {
+			upperBound += this.initializedVariableDeclarations;
+		}
+		return upperBound;
+	}
+
+	/**
+	 * Whether a mapper of the two bodies can have more mapped than non-mapped elements, as
+	 * UMLModelDiff.mappedElementsMoreThanNonMappedT1AndT2() requires. The countable statements
+	 * of each side are mapped at most once, and the non-mapped elements can be reduced by the
+	 * pairs of variable declarations with the same name, the pairs of loops sharing variables
+	 * and, with initializersMatchingAttributes, the variable initializers matching attributes.
+	 */
+	public boolean mayHaveMoreMappedThanNonMappedElements(OperationBodySignature other, boolean initializersMatchingAttributes) {
+		if(this.containsLambdas || other.containsLambdas) {
+			return true;
+		}
+		int mappings = Math.min(this.countableStatements.size(), other.countableStatements.size());
+		if(mappings == 0) {
+			return false;
+		}
+		int nonMappedElementsT1 = Math.max(0, this.countableStatements.size() - mappings - other.nonCountableStatements);
+		int nonMappedElementsT2 = Math.max(0, other.countableStatements.size() - mappings - this.nonCountableStatements);
+		int matchingNonMappedElements = this.variableDeclarationPairs(other) + this.loopPairs(other);
+		if(initializersMatchingAttributes) {
+			matchingNonMappedElements += this.initializedVariableDeclarations;
+		}
+		return (mappings > nonMappedElementsT1 - matchingNonMappedElements && mappings > nonMappedElementsT2 - matchingNonMappedElements) ||
+				(nonMappedElementsT1 <= matchingNonMappedElements && mappings > Math.floor(nonMappedElementsT2/2.0)) ||
+				(nonMappedElementsT2 <= matchingNonMappedElements && mappings > Math.floor(nonMappedElementsT1/2.0));
+	}
+
+	private int variableDeclarationPairs(OperationBodySignature other) {
+		int pairs = 0;
+		for(Map.Entry<String, Integer> entry : variableDeclarationsByName.entrySet()) {
+			Integer otherCount = other.variableDeclarationsByName.get(entry.getKey());
+			if(otherCount != null) {
+				pairs += entry.getValue() * otherCount;
+			}
+		}
+		return pairs;
+	}
+
+	private int loopPairs(OperationBodySignature other) {
+		int pairs = 0;
+		for(Set<String> variables : loopVariables) {
+			for(Set<String> otherVariables : other.loopVariables) {
+				if(!Collections.disjoint(variables, otherVariables)) {
+					pairs++;
+				}
+			}
+		}
+		return pairs;
+	}
+
+	private int statementsWithPossibleExactMatch(OperationBodySignature other) {
+		int count = 0;
+		for(Statement statement : countableStatements) {
+			if(statement.withBraces || (statement.coveredByInvocation && other.statementsWithBraces > 0) ||
+					shareKey(statement.keys, other.keys)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean mayHaveExactMatch(OperationBodySignature other) {
+		if(this.statementsWithBraces > 0 || other.statementsWithBraces > 0) {
+			return true;
+		}
+		for(Statement statement : countableStatements) {
+			if(shareKey(statement.keys, other.keys)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int statementsWithoutMatch(OperationBodySignature other, boolean skipVariableDeclarations) {
+		int count = 0;
+		for(Statement statement : countableStatements) {
+			if(skipVariableDeclarations && statement.variableDeclaration) {
+				continue;
+			}
+			if(statement.withBraces || (statement.typed && other.typedStatements > 0)) {
+				continue;
+			}
+			if(!shareKey(statement.keys, other.keys)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static boolean shareKey(Set<String> keys, Set<String> otherKeys) {
+		for(String key : keys) {
+			if(otherKeys.contains(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -2,6 +2,7 @@ package gr.uom.java.xmi.diff;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -9,6 +10,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.refactoringminer.api.Refactoring;
 import org.refactoringminer.api.RefactoringMinerTimedOutException;
@@ -36,6 +41,7 @@ import gr.uom.java.xmi.decomposition.replacement.MergeVariableReplacement;
 public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 
 	public static final double MAX_OPERATION_NAME_DISTANCE = 0.4;
+	private static ExecutorService mapperAnalysisPool;
 	protected UMLClass originalClass;
 	protected UMLClass nextClass;
 	protected List<UMLOperation> addedOperations;
@@ -67,6 +73,7 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 	private Map<MergeVariableReplacement, Set<CandidateMergeVariableRefactoring>> mergeMap = new LinkedHashMap<MergeVariableReplacement, Set<CandidateMergeVariableRefactoring>>();
 	private Map<SplitVariableReplacement, Set<CandidateSplitVariableRefactoring>> splitMap = new LinkedHashMap<SplitVariableReplacement, Set<CandidateSplitVariableRefactoring>>();
 	private UMLModelDiff modelDiff;
+	private Map<UMLOperation, OperationBodySignature> bodySignatures = new IdentityHashMap<UMLOperation, OperationBodySignature>();
 
 	public UMLClassBaseDiff(UMLClass originalClass, UMLClass nextClass, UMLModelDiff modelDiff) {
 		this.originalClass = originalClass;
@@ -470,10 +477,12 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 
 	public List<Refactoring> getRefactorings() {
 		List<Refactoring> refactorings = new ArrayList<Refactoring>(this.refactorings);
-		for(UMLOperationBodyMapper mapper : operationBodyMapperList) {
+		List<Set<Refactoring>> mapperRefactorings = getMapperRefactorings();
+		for(int i=0; i<operationBodyMapperList.size(); i++) {
+			UMLOperationBodyMapper mapper = operationBodyMapperList.get(i);
 			UMLOperationDiff operationSignatureDiff = new UMLOperationDiff(mapper.getOperation1(), mapper.getOperation2(), mapper.getMappings());
 			refactorings.addAll(operationSignatureDiff.getRefactorings());
-			processMapperRefactorings(mapper, refactorings);
+			processMapperRefactorings(mapper, mapperRefactorings.get(i), refactorings);
 		}
 		refactorings.addAll(inferAttributeMergesAndSplits(renameMap, refactorings));
 		for(MergeVariableReplacement merge : mergeMap.keySet()) {
@@ -603,8 +612,68 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 		return refactorings;
 	}
 
+	/**
+	 * The refactorings of the variable replacement analysis of each mapper, in the order of the mappers.
+	 * The analyses of different mappers only read the mappers and the class diff, and write to the
+	 * refactorings of their own mapper, so they run concurrently when there are more processors.
+	 */
+	private List<Set<Refactoring>> getMapperRefactorings() {
+		List<Set<Refactoring>> mapperRefactorings = new ArrayList<Set<Refactoring>>();
+		Set<UMLOperationBodyMapper> distinctMappers = Collections.newSetFromMap(new IdentityHashMap<UMLOperationBodyMapper, Boolean>());
+		distinctMappers.addAll(operationBodyMapperList);
+		if(Runtime.getRuntime().availableProcessors() < 2 || operationBodyMapperList.size() < 2 ||
+				distinctMappers.size() < operationBodyMapperList.size()) {
+			for(UMLOperationBodyMapper mapper : operationBodyMapperList) {
+				mapperRefactorings.add(mapper.getRefactorings());
+			}
+			return mapperRefactorings;
+		}
+		List<Future<Set<Refactoring>>> futures = new ArrayList<Future<Set<Refactoring>>>();
+		for(UMLOperationBodyMapper mapper : operationBodyMapperList) {
+			futures.add(getMapperAnalysisPool().submit(() -> mapper.getRefactorings()));
+		}
+		boolean interrupted = false;
+		for(Future<Set<Refactoring>> future : futures) {
+			while(true) {
+				try {
+					mapperRefactorings.add(future.get());
+					break;
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
+				catch(ExecutionException e) {
+					if(e.getCause() instanceof RuntimeException)
+						throw (RuntimeException)e.getCause();
+					if(e.getCause() instanceof Error)
+						throw (Error)e.getCause();
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return mapperRefactorings;
+	}
+
+	private static synchronized ExecutorService getMapperAnalysisPool() {
+		if(mapperAnalysisPool == null) {
+			mapperAnalysisPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable, "mapper-analysis");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return mapperAnalysisPool;
+	}
+
 	private void processMapperRefactorings(UMLOperationBodyMapper mapper, List<Refactoring> refactorings) {
-		for(Refactoring refactoring : mapper.getRefactorings()) {
+		processMapperRefactorings(mapper, mapper.getRefactorings(), refactorings);
+	}
+
+	private void processMapperRefactorings(UMLOperationBodyMapper mapper, Set<Refactoring> mapperRefactorings, List<Refactoring> refactorings) {
+		for(Refactoring refactoring : mapperRefactorings) {
 			if(refactorings.contains(refactoring)) {
 				//special handling for replacing rename variable refactorings having statement mapping information
 				int index = refactorings.indexOf(refactoring);
@@ -1095,6 +1164,10 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 	}
 
 	private void updateMapperSet(TreeSet<UMLOperationBodyMapper> mapperSet, UMLOperation removedOperation, UMLOperation addedOperation, int differenceInPosition) throws RefactoringMinerTimedOutException {
+		if(!mayBeAddedToMapperSet(removedOperation, addedOperation, addedOperation, differenceInPosition) &&
+				!isConsistentMethodInvocationRename(removedOperation, addedOperation)) {
+			return;
+		}
 		UMLOperationBodyMapper operationBodyMapper = new UMLOperationBodyMapper(removedOperation, addedOperation, this);
 		List<AbstractCodeMapping> totalMappings = new ArrayList<AbstractCodeMapping>(operationBodyMapper.getMappings());
 		int mappings = operationBodyMapper.mappingsWithoutBlocks();
@@ -1119,14 +1192,8 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 				mapperSet.add(operationBodyMapper);
 			}
 		}
-		else {
-			for(MethodInvocationReplacement replacement : consistentMethodInvocationRenames) {
-				if(replacement.getInvokedOperationBefore().matchesOperation(removedOperation) &&
-						replacement.getInvokedOperationAfter().matchesOperation(addedOperation)) {
-					mapperSet.add(operationBodyMapper);
-					break;
-				}
-			}
+		else if(isConsistentMethodInvocationRename(removedOperation, addedOperation)) {
+			mapperSet.add(operationBodyMapper);
 		}
 		if(totalMappings.size() > 0) {
 			int absoluteDifferenceInPosition = computeAbsoluteDifferenceInPositionWithinClass(removedOperation, addedOperation);
@@ -1139,6 +1206,9 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 	}
 
 	private void updateMapperSet(TreeSet<UMLOperationBodyMapper> mapperSet, UMLOperation removedOperation, UMLOperation operationInsideAnonymousClass, UMLOperation addedOperation, int differenceInPosition) throws RefactoringMinerTimedOutException {
+		if(!mayBeAddedToMapperSet(removedOperation, operationInsideAnonymousClass, addedOperation, differenceInPosition)) {
+			return;
+		}
 		UMLOperationBodyMapper operationBodyMapper = new UMLOperationBodyMapper(removedOperation, operationInsideAnonymousClass, this);
 		int mappings = operationBodyMapper.mappingsWithoutBlocks();
 		if(mappings > 0) {
@@ -1164,6 +1234,46 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 		}
 	}
 
+	/**
+	 * Rules out the pairs for which updateMapperSet would not add the mapper, before building it:
+	 * apart from exact mappings, the mapper is only added if the operations are close enough in
+	 * their classes and have compatible signatures, or one is part of an extracted or inlined method.
+	 */
+	private boolean mayBeAddedToMapperSet(UMLOperation removedOperation, UMLOperation operation, UMLOperation addedOperation, int differenceInPosition) {
+		if(getBodySignature(removedOperation).mayHaveExactMappings(getBodySignature(operation))) {
+			return true;
+		}
+		if(removedOperation.getBody() == null || operation.getBody() == null) {
+			return false;
+		}
+		int absoluteDifferenceInPosition = computeAbsoluteDifferenceInPositionWithinClass(removedOperation, addedOperation);
+		if(absoluteDifferenceInPosition > differenceInPosition) {
+			return false;
+		}
+		return compatibleSignatures(removedOperation, addedOperation, absoluteDifferenceInPosition) ||
+				isPartOfMethodExtracted(removedOperation, addedOperation) ||
+				isPartOfMethodInlined(removedOperation, addedOperation);
+	}
+
+	private OperationBodySignature getBodySignature(UMLOperation operation) {
+		OperationBodySignature signature = bodySignatures.get(operation);
+		if(signature == null) {
+			signature = new OperationBodySignature(operation);
+			bodySignatures.put(operation, signature);
+		}
+		return signature;
+	}
+
+	private boolean isConsistentMethodInvocationRename(UMLOperation removedOperation, UMLOperation addedOperation) {
+		for(MethodInvocationReplacement replacement : consistentMethodInvocationRenames) {
+			if(replacement.getInvokedOperationBefore().matchesOperation(removedOperation) &&
+					replacement.getInvokedOperationAfter().matchesOperation(addedOperation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private boolean exactMappings(UMLOperationBodyMapper operationBodyMapper) {
 		if(allMappingsAreExactMatches(operationBodyMapper)) {
 			if(operationBodyMapper.nonMappedElementsT1() == 0 && operationBodyMapper.nonMappedElementsT2() == 0)
@@ -1398,11 +1508,12 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 		int numberOfInvocationsMissingFromRemovedOperation = new LinkedHashSet<OperationInvocation>(removedOperationInvocations).size() - intersection.size();
 		
 		Set<OperationInvocation> operationInvocationsInMethodsCalledByAddedOperation = new LinkedHashSet<OperationInvocation>();
+		Map<String, UMLType> variableTypeMap = addedOperation.variableTypeMap();
 		for(OperationInvocation addedOperationInvocation : addedOperationInvocations) {
 			if(!intersection.contains(addedOperationInvocation)) {
 				for(UMLOperation operation : addedOperations) {
 					if(!operation.equals(addedOperation) && operation.getBody() != null) {
-						if(addedOperationInvocation.matchesOperation(operation, addedOperation.variableTypeMap(), modelDiff)) {
+						if(addedOperationInvocation.matchesOperation(operation, variableTypeMap, modelDiff)) {
 							//addedOperation calls another added method
 							operationInvocationsInMethodsCalledByAddedOperation.addAll(operation.getAllOperationInvocations());
 						}
@@ -1436,11 +1547,12 @@ public abstract class UMLClassBaseDiff implements Comparable<UMLClassBaseDiff> {
 		int numberOfInvocationsMissingFromAddedOperation = new LinkedHashSet<OperationInvocation>(addedOperationInvocations).size() - intersection.size();
 		
 		Set<OperationInvocation> operationInvocationsInMethodsCalledByRemovedOperation = new LinkedHashSet<OperationInvocation>();
+		Map<String, UMLType> variableTypeMap = removedOperation.variableTypeMap();
 		for(OperationInvocation removedOperationInvocation : removedOperationInvocations) {
 			if(!intersection.contains(removedOperationInvocation)) {
 				for(UMLOperation operation : removedOperations) {
 					if(!operation.equals(removedOperation) && operation.getBody() != null) {
-						if(removedOperationInvocation.matchesOperation(operation, removedOperation.variableTypeMap(), modelDiff)) {
+						if(removedOperationInvocation.matchesOperation(operation, variableTypeMap, modelDiff)) {
 							//removedOperation calls another removed method
 							operationInvocationsInMethodsCalledByRemovedOperation.addAll(operation.getAllOperationInvocations());
 						}
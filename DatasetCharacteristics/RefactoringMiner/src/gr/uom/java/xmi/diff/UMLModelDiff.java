@@ -26,6 +26,7 @@ import gr.uom.java.xmi.decomposition.replacement.Replacement.ReplacementType;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -59,6 +60,10 @@ public class UMLModelDiff {
    private List<UMLClassRenameDiff> classRenameDiffList;
    private List<Refactoring> refactorings;
    private Set<String> deletedFolderPaths;
+   private Map<UMLOperation, OperationBodySignature> operationBodySignatures;
+   private int createdOperationBodyMappers;
+   private int avoidedOperationBodyMappers;
+   private CallGraphIndex callGraphIndex;
    
    public UMLModelDiff() {
       this.addedClasses = new ArrayList<UMLClass>();
@@ -75,6 +80,12 @@ public class UMLModelDiff {
       this.classRenameDiffList = new ArrayList<UMLClassRenameDiff>();
       this.refactorings = new ArrayList<Refactoring>();
       this.deletedFolderPaths = new LinkedHashSet<String>();
+      this.operationBodySignatures = new IdentityHashMap<UMLOperation, OperationBodySignature>();
+      this.callGraphIndex = new CallGraphIndex(this);
+   }
+
+   public CallGraphIndex getCallGraphIndex() {
+      return callGraphIndex;
    }
 
    public void reportAddedClass(UMLClass umlClass) {
@@ -1135,7 +1146,7 @@ public class UMLModelDiff {
 	   for(OperationInvocation newInvocation : newInvocations) {
 		   for(UMLOperation operation : addedClass.getOperations()) {
 			   if(!operation.isAbstract() && !operation.hasEmptyBody() &&
-					   newInvocation.matchesOperation(operation, addedOperation.variableTypeMap(), this)) {
+					   newInvocation.matchesOperation(operation, callGraphIndex.variableTypeMap(addedOperation), this)) {
 				   ExtractOperationDetection detection = new ExtractOperationDetection(movedMethodMapper, addedClass.getOperations(), getUMLClassDiff(operation.getClassName()), this);
 				   List<ExtractOperationRefactoring> refs = detection.check(operation);
 				   this.refactorings.addAll(refs);
@@ -1734,14 +1745,9 @@ public class UMLModelDiff {
 		   UMLOperation removedOperation = removedOperationIterator.next();
 		   for(UMLOperationBodyMapper mapper : mappers) {
 			   if(!mapper.getNonMappedLeavesT2().isEmpty() || !mapper.getNonMappedInnerNodesT2().isEmpty() || !mapper.getReplacementsInvolvingMethodInvocation().isEmpty()) {
-				   List<OperationInvocation> operationInvocations = mapper.getOperation1().getAllOperationInvocations();
-				   List<OperationInvocation> removedOperationInvocations = new ArrayList<OperationInvocation>();
-				   for(OperationInvocation invocation : operationInvocations) {
-					   if(invocation.matchesOperation(removedOperation, mapper.getOperation1().variableTypeMap(), this)) {
-						   removedOperationInvocations.add(invocation);
-					   }
-				   }
-				   if(removedOperationInvocations.size() > 0 && !invocationMatchesWithAddedOperation(removedOperationInvocations.get(0), mapper.getOperation1().variableTypeMap(), mapper.getOperation2().getAllOperationInvocations())) {
+				   Map<String, UMLType> variableTypeMap = callGraphIndex.variableTypeMap(mapper.getOperation1());
+				   List<OperationInvocation> removedOperationInvocations = callGraphIndex.matchingInvocations(removedOperation, callGraphIndex.getCallSites(mapper.getOperation1()), variableTypeMap);
+				   if(removedOperationInvocations.size() > 0 && !invocationMatchesWithAddedOperation(removedOperationInvocations.get(0), variableTypeMap, callGraphIndex.getCallSites(mapper.getOperation2()).getInvocations())) {
 						OperationInvocation removedOperationInvocation = removedOperationInvocations.get(0);
 						List<String> arguments = removedOperationInvocation.getArguments();
 						List<String> parameters = removedOperation.getParameterNameList();
@@ -1815,12 +1821,8 @@ public class UMLModelDiff {
     	  for(UMLOperationBodyMapper mapper : mappers) {
     		  if((mapper.nonMappedElementsT1() > 0 || !mapper.getReplacementsInvolvingMethodInvocation().isEmpty()) && !mapper.containsExtractOperationRefactoring(addedOperation)) {
                List<OperationInvocation> operationInvocations = ExtractOperationDetection.getInvocationsInSourceOperationAfterExtraction(mapper);
-               List<OperationInvocation> addedOperationInvocations = new ArrayList<OperationInvocation>();
-               for(OperationInvocation invocation : operationInvocations) {
-                  if(invocation.matchesOperation(addedOperation, mapper.getOperation2().variableTypeMap(), this)) {
-                     addedOperationInvocations.add(invocation);
-                  }
-               }
+               List<OperationInvocation> addedOperationInvocations = callGraphIndex.matchingInvocations(addedOperation,
+                     new CallGraphIndex.CallSites(operationInvocations), callGraphIndex.variableTypeMap(mapper.getOperation2()));
                if(addedOperationInvocations.size() > 0) {
             	  OperationInvocation addedOperationInvocation = addedOperationInvocations.get(0);
             	  List<String> arguments = addedOperationInvocation.getArguments();
@@ -2078,25 +2080,7 @@ public class UMLModelDiff {
 	   if(addedOperations.size() <= removedOperations.size()) {
 	      for(Iterator<UMLOperation> addedOperationIterator = addedOperations.iterator(); addedOperationIterator.hasNext();) {
 	         UMLOperation addedOperation = addedOperationIterator.next();
-	         TreeMap<Integer, List<UMLOperationBodyMapper>> operationBodyMapperMap = new TreeMap<Integer, List<UMLOperationBodyMapper>>();
-	         for(Iterator<UMLOperation> removedOperationIterator = removedOperations.iterator(); removedOperationIterator.hasNext();) {
-	            UMLOperation removedOperation = removedOperationIterator.next();
-	            
-	            UMLOperationBodyMapper operationBodyMapper = new UMLOperationBodyMapper(removedOperation, addedOperation, null);
-	            int mappings = operationBodyMapper.mappingsWithoutBlocks();
-	            if(mappings > 0 && mappedElementsMoreThanNonMappedT1AndT2(mappings, operationBodyMapper)) {
-	               int exactMatches = operationBodyMapper.exactMatches();
-	               if(operationBodyMapperMap.containsKey(exactMatches)) {
-	                  List<UMLOperationBodyMapper> mapperList = operationBodyMapperMap.get(exactMatches);
-	                  mapperList.add(operationBodyMapper);
-	               }
-	               else {
-	                  List<UMLOperationBodyMapper> mapperList = new ArrayList<UMLOperationBodyMapper>();
-	                  mapperList.add(operationBodyMapper);
-	                  operationBodyMapperMap.put(exactMatches, mapperList);
-	               }
-	            }
-	         }
+	         TreeMap<Integer, List<UMLOperationBodyMapper>> operationBodyMapperMap = createOperationBodyMapperMap(removedOperations, Collections.singletonList(addedOperation));
 	         if(!operationBodyMapperMap.isEmpty()) {
 	            List<UMLOperationBodyMapper> firstMappers = firstMappers(operationBodyMapperMap);
 	            Collections.sort(firstMappers, new UMLOperationBodyMapperComparator());
@@ -2163,25 +2147,7 @@ public class UMLModelDiff {
       else {
     	  for(Iterator<UMLOperation> removedOperationIterator = removedOperations.iterator(); removedOperationIterator.hasNext();) {
 	         UMLOperation removedOperation = removedOperationIterator.next();
-	         TreeMap<Integer, List<UMLOperationBodyMapper>> operationBodyMapperMap = new TreeMap<Integer, List<UMLOperationBodyMapper>>();
-	         for(Iterator<UMLOperation> addedOperationIterator = addedOperations.iterator(); addedOperationIterator.hasNext();) {
-	            UMLOperation addedOperation = addedOperationIterator.next();
-	            
-	            UMLOperationBodyMapper operationBodyMapper = new UMLOperationBodyMapper(removedOperation, addedOperation, null);
-	            int mappings = operationBodyMapper.mappingsWithoutBlocks();
-	            if(mappings > 0 && mappedElementsMoreThanNonMappedT1AndT2(mappings, operationBodyMapper)) {
-	               int exactMatches = operationBodyMapper.exactMatches();
-	               if(operationBodyMapperMap.containsKey(exactMatches)) {
-	                  List<UMLOperationBodyMapper> mapperList = operationBodyMapperMap.get(exactMatches);
-	                  mapperList.add(operationBodyMapper);
-	               }
-	               else {
-	                  List<UMLOperationBodyMapper> mapperList = new ArrayList<UMLOperationBodyMapper>();
-	                  mapperList.add(operationBodyMapper);
-	                  operationBodyMapperMap.put(exactMatches, mapperList);
-	               }
-	            }
-	         }
+	         TreeMap<Integer, List<UMLOperationBodyMapper>> operationBodyMapperMap = createOperationBodyMapperMap(Collections.singletonList(removedOperation), addedOperations);
 	         if(!operationBodyMapperMap.isEmpty()) {
 	            List<UMLOperationBodyMapper> firstMappers = firstMappers(operationBodyMapperMap);
 	            Collections.sort(firstMappers, new UMLOperationBodyMapperComparator());
@@ -2243,6 +2209,95 @@ public class UMLModelDiff {
       }
    }
 
+   /**
+    * The mappers of the pairs of removed and added operations with more mapped than non-mapped elements, by their exact matches.
+    * The pairs whose bodies are too different in size to have more mapped than non-mapped elements are not mapped.
+    * Only the mappers with the most exact matches and the mappers of operations with equal signatures are used by
+    * checkForOperationMoves, so the pairs are mapped in decreasing order of their upper bound of exact matches, and
+    * the other pairs that cannot reach the most exact matches found are not mapped.
+    */
+   private TreeMap<Integer, List<UMLOperationBodyMapper>> createOperationBodyMapperMap(List<UMLOperation> removedOperations, List<UMLOperation> addedOperations) throws RefactoringMinerTimedOutException {
+	   List<UMLOperation[]> pairs = new ArrayList<UMLOperation[]>();
+	   TreeMap<Integer, List<Integer>> pairsByExactMatchesUpperBound = new TreeMap<Integer, List<Integer>>();
+	   for(UMLOperation removedOperation : removedOperations) {
+		   for(UMLOperation addedOperation : addedOperations) {
+			   boolean initializersMatchingAttributes = getAddedClass(addedOperation.getClassName()) != null;
+			   OperationBodySignature removedOperationSignature = getOperationBodySignature(removedOperation);
+			   OperationBodySignature addedOperationSignature = getOperationBodySignature(addedOperation);
+			   if(!removedOperationSignature.mayHaveMoreMappedThanNonMappedElements(addedOperationSignature, initializersMatchingAttributes)) {
+				   avoidedOperationBodyMappers++;
+				   continue;
+			   }
+			   int upperBound = removedOperationSignature.exactMatchesUpperBound(addedOperationSignature, initializersMatchingAttributes);
+			   if(!pairsByExactMatchesUpperBound.containsKey(upperBound)) {
+				   pairsByExactMatchesUpperBound.put(upperBound, new ArrayList<Integer>());
+			   }
+			   pairsByExactMatchesUpperBound.get(upperBound).add(pairs.size());
+			   pairs.add(new UMLOperation[] {removedOperation, addedOperation});
+		   }
+	   }
+	   UMLOperationBodyMapper[] mappers = new UMLOperationBodyMapper[pairs.size()];
+	   int[] exactMatches = new int[pairs.size()];
+	   int maxExactMatches = 0;
+	   for(Map.Entry<Integer, List<Integer>> entry : pairsByExactMatchesUpperBound.descendingMap().entrySet()) {
+		   for(int i : entry.getValue()) {
+			   UMLOperation removedOperation = pairs.get(i)[0];
+			   UMLOperation addedOperation = pairs.get(i)[1];
+			   if(entry.getKey() < maxExactMatches && !removedOperation.equalSignature(addedOperation)) {
+				   avoidedOperationBodyMappers++;
+				   continue;
+			   }
+			   UMLOperationBodyMapper operationBodyMapper = new UMLOperationBodyMapper(removedOperation, addedOperation, null);
+			   createdOperationBodyMappers++;
+			   int mappings = operationBodyMapper.mappingsWithoutBlocks();
+			   if(mappings > 0 && mappedElementsMoreThanNonMappedT1AndT2(mappings, operationBodyMapper)) {
+				   mappers[i] = operationBodyMapper;
+				   exactMatches[i] = operationBodyMapper.exactMatches();
+				   maxExactMatches = Math.max(maxExactMatches, exactMatches[i]);
+			   }
+		   }
+	   }
+	   TreeMap<Integer, List<UMLOperationBodyMapper>> operationBodyMapperMap = new TreeMap<Integer, List<UMLOperationBodyMapper>>();
+	   for(int i=0; i<mappers.length; i++) {
+		   if(mappers[i] != null) {
+			   if(operationBodyMapperMap.containsKey(exactMatches[i])) {
+				   List<UMLOperationBodyMapper> mapperList = operationBodyMapperMap.get(exactMatches[i]);
+				   mapperList.add(mappers[i]);
+			   }
+			   else {
+				   List<UMLOperationBodyMapper> mapperList = new ArrayList<UMLOperationBodyMapper>();
+				   mapperList.add(mappers[i]);
+				   operationBodyMapperMap.put(exactMatches[i], mapperList);
+			   }
+		   }
+	   }
+	   return operationBodyMapperMap;
+   }
+
+   private OperationBodySignature getOperationBodySignature(UMLOperation operation) {
+	   OperationBodySignature signature = operationBodySignatures.get(operation);
+	   if(signature == null) {
+		   signature = new OperationBodySignature(operation);
+		   operationBodySignatures.put(operation, signature);
+	   }
+	   return signature;
+   }
+
+   /**
+    * The number of body mappers created while checking for moved operations.
+    */
+   public int getCreatedOperationBodyMappers() {
+	   return createdOperationBodyMappers;
+   }
+
+   /**
+    * The number of pairs of removed and added operations not mapped while checking for moved operations,
+    * as they could not have more mapped than non-mapped elements or the most exact matches.
+    */
+   public int getAvoidedOperationBodyMappers() {
+	   return avoidedOperationBodyMappers;
+   }
+
 	private List<UMLOperationBodyMapper> firstMappers(TreeMap<Integer, List<UMLOperationBodyMapper>> operationBodyMapperMap) {
 		List<UMLOperationBodyMapper> firstMappers = new ArrayList<UMLOperationBodyMapper>(operationBodyMapperMap.get(operationBodyMapperMap.lastKey()));
 		List<UMLOperationBodyMapper> extraMappers = operationBodyMapperMap.get(0);
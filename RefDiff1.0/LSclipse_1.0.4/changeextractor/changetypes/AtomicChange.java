@@ -84,7 +84,9 @@ public class AtomicChange {
 	}
 
 	public int hashCode() {
-		return type.ordinal();
+		// same as Fact: the changes in a ChangeSet all have the same type
+		// otherwise end up in one bucket per type
+		return params.hashCode()+type.ordinal()*1000;
 	}
 	public boolean equals(Object o) {
 		if (o.getClass()!=this.getClass()) return false;
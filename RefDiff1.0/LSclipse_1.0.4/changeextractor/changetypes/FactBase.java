@@ -1,8 +1,13 @@
 package changetypes;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
@@ -282,52 +287,49 @@ public class FactBase extends HashSet<Fact> {
 	public ChangeSet diff(FactBase oldfacts) {
 
 		ChangeSet res = new ChangeSet();
-		FactBase added = new FactBase(this);
-		added.removeAll(oldfacts);
-		FactBase deleted = new FactBase(oldfacts);
-		deleted.removeAll(this);
-		// Set<Fact> addedMethodDeclarations = new HashSet<Fact>();
-		Set<Fact> before_parameters = new HashSet<Fact>();
-		Set<Fact> after_parameters = new HashSet<Fact>();
+		diff(oldfacts, res);
+		res.normalize();
+		return res;
+	}
+
+	// adds the changes to res as they are found, without copying either
+	// factbase (res may e.g. write out each change as it is added)
+	public void diff(FactBase oldfacts, ChangeSet res) {
+		List<Fact> addedParameters = new ArrayList<Fact>();
+		// deleted parameter facts by method full name
+		Map<String, List<Fact>> deletedParameters = new HashMap<String, List<Fact>>();
 
 		// scan for additive changes (and modifications)
-		for (Fact f : added) {
+		for (Fact f : this) {
+			if (oldfacts.contains(f))
+				continue;
 			if (f.type == Fact.FactTypes.PARAMETER) {
-				before_parameters.add(f);
+				addedParameters.add(f);
 			} else {
 				makeChangeFromFact(res, f, 'A');
 			}
 		}
 		// scan for depletive changes
-		for (Fact f : deleted) {
+		for (Fact f : oldfacts) {
+			if (this.contains(f))
+				continue;
 			if (f.type == Fact.FactTypes.PARAMETER) {
-				after_parameters.add(f);
+				addToIndex(deletedParameters, f.params.get(0), f);
 			} else {
 				makeChangeFromFact(res, f, 'D');
 			}
 		}
 
-		for (Fact f : before_parameters) {
-			// Loop thru deleted; find matching method decl by name; compare
+		for (Fact f : addedParameters) {
+			// Find the deleted method decls with the same name; compare
 			// params - actually diff = add/delete param fact.
-			for (Fact fd : after_parameters) {
-				// Compare method names
-				if (!fd.params.get(0).equals(f.params.get(0))) {
-					continue;
-				}
+			List<Fact> sameMethod = deletedParameters.get(f.params.get(0));
+			if (sameMethod == null)
+				continue;
+			Set<String> tempNew = getParameterNames(f);
+			for (Fact fd : sameMethod) {
 				// Found a match, compare parameter lists
-				String[] new_params = f.params.get(1).split(",");
-				String[] old_params = fd.params.get(1).split(",");
-
-				Set<String> tempNew = new HashSet<String>();
-				Set<String> tempOld = new HashSet<String>();
-
-				for (String s : new_params)
-					if (!s.equals(""))
-						tempNew.add(s);
-				for (String s : old_params)
-					if (!s.equals(""))
-						tempOld.add(s);
+				Set<String> tempOld = getParameterNames(fd);
 
 				if (tempNew.equals(tempOld))
 					break;
@@ -351,9 +353,32 @@ public class FactBase extends HashSet<Fact> {
 				}
 			}
 		}
+	}
 
-		res.normalize();
-		return res;
+	private static Set<String> getParameterNames(Fact parameterFact) {
+		Set<String> names = new HashSet<String>();
+		for (String s : parameterFact.params.get(1).split(","))
+			if (!s.equals(""))
+				names.add(s);
+		return names;
+	}
+
+	private static void addToIndex(Map<String, List<Fact>> index, String key,
+			Fact f) {
+		List<Fact> facts = index.get(key);
+		if (facts == null) {
+			facts = new ArrayList<Fact>();
+			index.put(key, facts);
+		}
+		facts.add(f);
+	}
+
+	private static List<Fact> getFromIndex(Map<String, List<Fact>> index,
+			String key) {
+		List<Fact> facts = index.get(key);
+		if (facts == null)
+			return Collections.emptyList();
+		return facts;
 	}
 
 	// generate derived facts
@@ -396,19 +421,18 @@ public class FactBase extends HashSet<Fact> {
 				methodfacts.add(f);
 		}
 
+		// types that declare a constructor
+		Set<String> constructedtypes = new HashSet<String>();
+		for (Fact f2 : methodfacts) {
+			if (f2.params.get(1).startsWith("<init>("))
+				constructedtypes.add(f2.params.get(2));
+		}
+
 		// iterate over types
 		for (Fact f : typefacts) {
-			boolean found = false;
 			if (f.params.get(3).equals(Fact.INTERFACE))
 				continue;
-			for (Fact f2 : methodfacts) {
-				if (f2.params.get(1).startsWith("<init>(")
-						&& f2.params.get(2).equals(f.params.get(0))) {
-					found = true;
-					break;
-				}
-			}
-			if (!found) {
+			if (!constructedtypes.contains(f.params.get(0))) {
 				Fact constfact = Fact
 						.makeMethodFact(f.params.get(0) + "#<init>()",
 								"<init>()", f.params.get(0), Fact.PUBLIC);
@@ -448,6 +472,11 @@ public class FactBase extends HashSet<Fact> {
 			else if (f.type == Fact.FactTypes.FIELD)
 				fieldfacts.add(f);
 		}
+		// subtype facts by supertype
+		Map<String, List<Fact>> subtypesof = new HashMap<String, List<Fact>>();
+		for (Fact f : subtypefacts) {
+			addToIndex(subtypesof, f.params.get(0), f);
+		}
 
 		Queue<Fact> worklist = new LinkedList<Fact>();
 		// check 1. method(m, ms, t, pb|pt) & subtype(t, t2) & !method(m2, ms,
@@ -458,9 +487,7 @@ public class FactBase extends HashSet<Fact> {
 				continue;
 			if (a1.params.get(1).startsWith("<init>("))
 				continue;
-			for (Fact a2 : subtypefacts) {
-				if (!a2.params.get(0).equals(a1.params.get(2)))
-					continue;
+			for (Fact a2 : getFromIndex(subtypesof, a1.params.get(2))) {
 				Fact b1 = Fact.makeMethodFact("*", a1.params.get(1),
 						a2.params.get(1), "*");
 				if (methodfacts.contains(b1))
@@ -478,9 +505,7 @@ public class FactBase extends HashSet<Fact> {
 		for (Fact a1 : fieldfacts) {
 			if (a1.params.get(3) == Fact.PRIVATE)
 				continue;
-			for (Fact a2 : subtypefacts) {
-				if (!a2.params.get(0).equals(a1.params.get(2)))
-					continue;
+			for (Fact a2 : getFromIndex(subtypesof, a1.params.get(2))) {
 				// Fact b1 = Fact.makeFieldFact("*", a1.params.get(1),
 				// a2.params.get(1), "*");
 				// if (fieldfacts.contains(b1)) continue;
@@ -501,9 +526,7 @@ public class FactBase extends HashSet<Fact> {
 		}
 		while (worklist.size() > 0) {
 			Fact a1 = worklist.poll();
-			for (Fact a2 : subtypefacts) {
-				if (!a2.params.get(0).equals(a1.params.get(2)))
-					continue;
+			for (Fact a2 : getFromIndex(subtypesof, a1.params.get(2))) {
 				Fact b1 = Fact.makeMethodFact("*", a1.params.get(0),
 						a2.params.get(1), "*");
 				if (methodfacts.contains(b1))
@@ -530,9 +553,7 @@ public class FactBase extends HashSet<Fact> {
 		}
 		while (worklist.size() > 0) {
 			Fact a1 = worklist.poll();
-			for (Fact a2 : subtypefacts) {
-				if (!a2.params.get(0).equals(a1.params.get(2)))
-					continue;
+			for (Fact a2 : getFromIndex(subtypesof, a1.params.get(2))) {
 				Fact b1 = Fact.makeMethodFact("*", a1.params.get(0),
 						a2.params.get(1), "*");
 				if (methodfacts.contains(b1))
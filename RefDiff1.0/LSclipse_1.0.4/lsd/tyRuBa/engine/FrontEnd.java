@@ -20,6 +20,7 @@ import tyRuBa.engine.factbase.FactLibraryManager;
 import tyRuBa.engine.factbase.FileBasedValidatorManager;
 import tyRuBa.engine.factbase.NamePersistenceManager;
 import tyRuBa.engine.factbase.ValidatorManager;
+import tyRuBa.engine.factbase.hashtable.IndexPageFormat;
 import tyRuBa.modes.ConstructorType;
 import tyRuBa.modes.PredInfo;
 import tyRuBa.modes.TypeModeError;
@@ -86,7 +87,7 @@ implements SynchResource {
         if (clean) {
             deleteDirectory(path);
         }
-        pager = new Pager(defaultPagerCacheSize,defaultPagerQueueSize, lastBackupTime, enableBackgroundCleaning);
+        pager = new Pager(defaultPagerCacheSize,defaultPagerQueueSize, lastBackupTime, enableBackgroundCleaning, new IndexPageFormat());
 
         if (!path.exists()) {
         		path.mkdirs();
@@ -638,6 +639,11 @@ implements SynchResource {
     public Pager getPager() {
         return pager;
     }
+
+    /** Hit, miss and eviction counts of the global pager. */
+    public Pager.Stats getPagerStats() {
+        return pager.getStats();
+    }
 	
 	public String getIdentifier() {
 	    return identifier;
@@ -125,6 +125,11 @@ public class ModedRuleBaseCollection {
 		}
 	}
 	
+	/** insert ground facts, already typechecked, in the factbase all at once */
+	public void insertFacts(ArrayList/*<RBComponent>*/ groundFacts) {
+		facts.insertAll(groundFacts);
+	}
+	
 	/** return the ModedRuleBase in this collection that has the "best"
 	 *  mode of execution that allow for bindings */
 	public RuleBase getBest(BindingList bindings) {
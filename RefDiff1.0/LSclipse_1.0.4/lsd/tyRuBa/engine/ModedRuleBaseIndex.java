@@ -8,6 +8,10 @@ package tyRuBa.engine;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import tyRuBa.modes.BindingList;
 import tyRuBa.modes.CompositeType;
@@ -57,6 +61,40 @@ public abstract class ModedRuleBaseIndex implements PredInfoProvider {
 		rulebases.insertInEach(converted, this, resultTypes);
 	}
 
+	/** typecheck ground facts of predicate predID, then insert them all at
+	 *  once in the factbase of predID */
+	public final void insertFacts(PredicateIdentifier predID, ArrayList/*<RBComponent>*/ facts) 
+	throws TypeModeError {
+		ArrayList converted = new ArrayList(facts.size());
+		// The type of a java object term only depends on the class of the
+		// object, so the facts with the same classes of arguments only need
+		// to be typechecked once
+		Set/*<List<Class>>*/ typechecked = new HashSet();
+		for (int i = 0; i < facts.size(); i++) {
+			RBComponent f = ((RBComponent) facts.get(i)).convertToNormalForm();
+			if (!f.isGroundFact() || !f.getPredId().equals(predID))
+				throw new Error("Only ground facts of " + predID + " can be inserted: " + f);
+			List argClasses = javaObjectClasses(f.getArgs());
+			if (argClasses == null || typechecked.add(argClasses))
+				f.typecheck(this);
+			converted.add(f);
+		}
+		getModedRuleBases(predID).insertFacts(converted);
+	}
+
+	/** The classes of the objects of args, or null if some of them are not
+	 *  plain java object terms */
+	private static List javaObjectClasses(RBTuple args) {
+		Class[] classes = new Class[args.getNumSubterms()];
+		for (int i = 0; i < classes.length; i++) {
+			RBTerm arg = args.getSubterm(i);
+			if (arg.getClass() != RBJavaObjectCompoundTerm.class)
+				return null;
+			classes[i] = ((RBJavaObjectCompoundTerm) arg).getObject().getClass();
+		}
+		return Arrays.asList(classes);
+	}
+
 	public abstract void dumpFacts(PrintStream out) ;
 
 	public CompositeType addType(CompositeType type) throws TypeModeError {
@@ -20,6 +20,7 @@ import tyRuBa.modes.TypeConstructor;
 import tyRuBa.modes.TypeEnv;
 import tyRuBa.modes.TypeMapping;
 import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.FactParser;
 import tyRuBa.parser.ParseException;
 import tyRuBa.parser.TyRuBaParser;
 import tyRuBa.tdbc.PreparedInsert;
@@ -39,6 +40,21 @@ public abstract class QueryEngine {
 	/** Every query engine has a logger. The default logger does nothing. */
 	private QueryLogger logger = NullQueryLogger.the;
 	
+	/** If true the facts of non persistent predicates are tabled: the answers
+	  * to a call are looked up by the values of its bound arguments, in a table
+	  * built the first time a call with those arguments bound is made. A table
+	  * lasts until facts are added to its predicate. The setting is kept by
+	  * the frontend, so it is shared by all of its buckets. */
+	boolean tabling = false;
+	
+	public void setTabling(boolean tabling) {
+		frontend().tabling = tabling;
+	}
+	
+	public boolean isTabling() {
+		return frontend().tabling;
+	}
+	
 	public void setLogger(QueryLogger logger) {
 		if (logger==null) 
 			logger = NullQueryLogger.the;
@@ -61,6 +77,13 @@ public abstract class QueryEngine {
 		insert(new RBFact(exp));
 	}
 
+	/** Insert ground facts, all of predicate pred, in one go */
+	public void insertFacts(PredicateIdentifier pred, ArrayList/*<RBComponent>*/ facts) 
+	throws TypeModeError {
+		frontend().updateCounter++;
+		rulebase().insertFacts(pred, facts);
+	}
+
 	/** Every QueryEngine must have a frontend */
 	abstract FrontEnd frontend();
 
@@ -117,6 +140,15 @@ public abstract class QueryEngine {
 		TyRuBaParser.parse(this, fileName, output());
 	}
 
+	/** Load a file of ground facts into this database. The facts are
+	 inserted per predicate, without going through the parser. Files that
+	 contain anything else are parsed as by load(String). */
+	public void loadFacts(String fileName) throws ParseException, IOException,
+			TypeModeError {
+		System.err.println("** loading facts : " + fileName);
+		FactParser.parse(this, fileName, output());
+	}
+
 	/** Parse a file into this database */
 	public void load(InputStream input) throws IOException, ParseException,
 			TypeModeError {
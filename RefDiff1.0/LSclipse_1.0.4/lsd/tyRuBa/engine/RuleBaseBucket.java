@@ -1,6 +1,7 @@
 package tyRuBa.engine;
 
 import java.io.File;
+import java.util.ArrayList;
 
 import junit.framework.Assert;
 import tyRuBa.modes.TypeModeError;
@@ -73,6 +74,15 @@ public abstract class RuleBaseBucket extends QueryEngine {
 		super.insert(new ValidatorComponent(t, validator));
 	}
 
+	/** Add facts into this bucket */
+	public void insertFacts(PredicateIdentifier pred, ArrayList facts) throws TypeModeError {
+		ArrayList validated = new ArrayList(facts.size());
+		for (int i = 0; i < facts.size(); i++) {
+			validated.add(new ValidatorComponent((RBComponent) facts.get(i), validator));
+		}
+		super.insertFacts(pred, validated);
+	}
+
 //	/** Add a fact into this bucket */
 //	public void insert(RBRule r) {
 //		throw new Error("Not supported in this version");
@@ -3,6 +3,9 @@
  */
 package tyRuBa.engine.factbase;
 
+import java.util.Collection;
+import java.util.Iterator;
+
 import tyRuBa.engine.RBComponent;
 import tyRuBa.engine.compilation.CompilationContext;
 import tyRuBa.engine.compilation.Compiled;
@@ -31,6 +34,17 @@ public abstract class FactBase {
      */
     public abstract void insert(RBComponent f);
 
+    /**
+     * Adds many facts to the database. Subclasses can override this to build
+     * their storage for all the facts at once.
+     * @param facts the facts (RBComponents) to add to the factbase.
+     */
+    public void insertAll(Collection facts) {
+        for (Iterator iter = facts.iterator(); iter.hasNext();) {
+            insert((RBComponent) iter.next());
+        }
+    }
+
     /**
      * Returns true if this factbase is empty.
      */
@@ -4,12 +4,17 @@
 package tyRuBa.engine.factbase;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import tyRuBa.engine.Frame;
 import tyRuBa.engine.RBComponent;
 import tyRuBa.engine.RBContext;
+import tyRuBa.engine.RBJavaObjectCompoundTerm;
 import tyRuBa.engine.RBTuple;
+import tyRuBa.engine.QueryEngine;
 import tyRuBa.engine.compilation.CompilationContext;
 import tyRuBa.engine.compilation.Compiled;
 import tyRuBa.engine.compilation.SemiDetCompiled;
@@ -22,6 +27,9 @@ import tyRuBa.util.ElementSource;
 
 /**
  * A FactBase that uses an ArrayList to store facts. Inefficient, but simple.
+ * When {@link QueryEngine#isTabling() tabling} is on for its engine, the facts are also kept in tables by
+ * binding pattern, so that a call with bound arguments does not go through all
+ * the facts.
  * @category FactBase
  * @author riecken
  */
@@ -30,10 +38,24 @@ public class SimpleArrayListFactBase extends FactBase {
     /** All of the facts in this FactBase. */
     ArrayList facts = new ArrayList();
 
+    /**
+     * The tables of the facts by binding pattern (a bit for each bound
+     * argument). A table maps the values of the bound arguments to the facts
+     * that have these values. The tables are thrown away when facts are
+     * inserted.
+     */
+    private Map/*<Integer, Map<Object, ArrayList<RBComponent>>>*/ tables = new HashMap();
+
+    private static final ArrayList noFacts = new ArrayList();
+
+    /** The engine of the predicate, or null when it has none. */
+    private final QueryEngine engine;
+
     /**
      * Creates a new SimpleArrayListFactBase.
      */
     public SimpleArrayListFactBase(PredInfo info) {
+        engine = info.getQueryEngine();
     }
 
     /**
@@ -55,6 +77,81 @@ public class SimpleArrayListFactBase extends FactBase {
      */
     public void insert(RBComponent f) {
         facts.add(f);
+        clearTables();
+    }
+
+    /**
+     * @see tyRuBa.engine.factbase.FactBase#insertAll(java.util.Collection)
+     */
+    public void insertAll(Collection f) {
+        facts.addAll(f);
+        clearTables();
+    }
+
+    private synchronized void clearTables() {
+        tables.clear();
+    }
+
+    /**
+     * Removes an invalid fact found in a table from the facts, so that the
+     * tables built later leave it out. The other tables that have it drop it
+     * when they find it, as this one did.
+     */
+    private synchronized void prune(RBComponent fact) {
+        facts.remove(fact);
+    }
+
+    /**
+     * The facts that may unify with the goal: all the facts, or when tabling
+     * the facts that have the values of the bound arguments of the goal.
+     * Only java object arguments (strings, numbers...) are looked up, as they
+     * unify with equal terms only.
+     */
+    private ArrayList candidates(RBTuple goal) {
+        if (engine == null || !engine.isTabling())
+            return facts;
+        int pattern = 0;
+        for (int i = 0; i < goal.getNumSubterms() && i < 32; i++) {
+            if (goal.getSubterm(i).getClass() == RBJavaObjectCompoundTerm.class)
+                pattern |= 1 << i;
+        }
+        if (pattern == 0)
+            return facts;
+        ArrayList found = (ArrayList) table(pattern).get(key(goal, pattern));
+        return found == null ? noFacts : found;
+    }
+
+    /** The table for a binding pattern, built if needed. */
+    private synchronized Map table(int pattern) {
+        Integer patternKey = Integer.valueOf(pattern);
+        Map table = (Map) tables.get(patternKey);
+        if (table == null) {
+            table = new HashMap();
+            for (Iterator iter = facts.iterator(); iter.hasNext();) {
+                RBComponent fact = (RBComponent) iter.next();
+                Object key = key(fact.getArgs(), pattern);
+                ArrayList same = (ArrayList) table.get(key);
+                if (same == null) {
+                    same = new ArrayList(1);
+                    table.put(key, same);
+                }
+                same.add(fact);
+            }
+            tables.put(patternKey, table);
+        }
+        return table;
+    }
+
+    /** The arguments in a binding pattern. */
+    private static Object key(RBTuple args, int pattern) {
+        if ((pattern & (pattern - 1)) == 0)
+            return args.getSubterm(Integer.numberOfTrailingZeros(pattern));
+        ArrayList key = new ArrayList();
+        for (int i = 0; i < args.getNumSubterms() && i < 32; i++) {
+            if ((pattern & (1 << i)) != 0)
+                key.add(args.getSubterm(i));
+        }
+        return key;
     }
 
     /**
@@ -67,11 +164,14 @@ public class SimpleArrayListFactBase extends FactBase {
 
                 public Frame runSemiDet(Object input, RBContext context) {
                     final RBTuple goal = (RBTuple) input;
+                    ArrayList candidates = candidates(goal);
                     Frame result = null;
-                    for (Iterator iter = facts.iterator(); result == null && iter.hasNext();) {
+                    for (Iterator iter = candidates.iterator(); result == null && iter.hasNext();) {
                         RBComponent fact = (RBComponent) iter.next();
                         if (!fact.isValid()) {
                             iter.remove();
+                            if (candidates != facts)
+                                prune(fact);
                         } else
                             result = goal.unify(fact.getArgs(), new Frame());
                     }
@@ -84,7 +184,9 @@ public class SimpleArrayListFactBase extends FactBase {
 
                 public ElementSource runNonDet(Object input, RBContext context) {
                     final RBTuple goal = (RBTuple) input;
-                    return new ArrayListSource(facts).map(new Action() {
+                    // The facts are read lazily, so invalid ones are skipped
+                    // rather than removed, whether they come from a table or not
+                    return new ArrayListSource(candidates(goal)).map(new Action() {
 
                         public Object compute(Object arg) {
                             RBComponent fact = (RBComponent) arg;
@@ -4,6 +4,8 @@
 package tyRuBa.engine.factbase.hashtable;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -205,6 +207,32 @@ public class HashTableFactBase extends FactBase {
         }
     }
 
+    /**
+     * Builds each index with all of the facts at once, rather than adding
+     * each fact to every index in turn.
+     * @see tyRuBa.engine.factbase.FactBase#insertAll(java.util.Collection)
+     */
+    public void insertAll(Collection facts) {
+        ArrayList values = new ArrayList(facts.size());
+        for (Iterator iter = facts.iterator(); iter.hasNext();) {
+            RBComponent f = (RBComponent) iter.next();
+            Assert.assertTrue("Only ground facts should be insterted in to FactBases", f.isGroundFact());
+            values.add(IndexValue.make(f.getValidator(), f.getArgs()));
+        }
+        if (values.isEmpty())
+            return;
+        isEmpty = false;
+
+        for (Iterator iter = indexes.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            BindingList key = (BindingList) entry.getKey();
+            if (key.getNumFree() != 0) { //skip for all bound
+                Index index = (Index) entry.getValue();
+                index.addFacts(values);
+            }
+        }
+    }
+
     /**
      * @see tyRuBa.engine.factbase.FactBase#compile(tyRuBa.modes.PredicateMode,
      * tyRuBa.engine.compilation.CompilationContext)
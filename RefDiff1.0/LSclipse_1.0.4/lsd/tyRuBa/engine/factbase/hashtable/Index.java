@@ -4,9 +4,11 @@
 package tyRuBa.engine.factbase.hashtable;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import tyRuBa.engine.FrontEnd;
@@ -40,6 +42,23 @@ public final class Index {
 
         private long myLastCleanTime = System.currentTimeMillis();
 
+        HashMapResource() {
+        }
+
+        /** Creates a map with room for expectedSize keys. */
+        HashMapResource(int expectedSize) {
+            super(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+        }
+
+        /** Creates a map read back from disk, last cleaned at lastCleanTime. */
+        HashMapResource(long lastCleanTime) {
+            myLastCleanTime = lastCleanTime;
+        }
+
+        long getLastCleanTime() {
+            return myLastCleanTime;
+        }
+
         public boolean isClean(ValidatorManager vm) {
             long lastDirty = vm.getLastInvalidatedTime();
             return myLastCleanTime > lastDirty;
@@ -224,36 +243,7 @@ public final class Index {
                     map = new HashMapResource(); //new resource is
                 // automatically clean
 
-                Object whatIsThere = map.get(key);
-                if (whatIsThere == null) {
-                    map.put(key, value);
-                } else if (whatIsThere instanceof ArrayList) {
-                    ArrayList lstWhatIsThere = (ArrayList) whatIsThere;
-                    if (checkDet) { //SemiDet/Det uniqueness check
-                        for (Iterator iter = lstWhatIsThere.iterator(); iter.hasNext();) {
-                            IndexValue element = (IndexValue) iter.next();
-                            if (!element.getParts().equals(value.getParts())) {
-                                throw new Error(
-                                        "OOPS!! More than one fact has been inserted into a Det/SemiDet predicate ("+predicateName+") present = "
-                                                + element.getParts() + " ||| new = " + value.getParts() + key);
-                            }
-                        }
-                    }
-                    lstWhatIsThere.add(value);
-                } else { //It's an indexValue
-                    IndexValue idxWhatIsThere = (IndexValue) whatIsThere;
-                    if (checkDet) { //SemiDet/Det uniqueness check
-                        if (!idxWhatIsThere.getParts().equals(value.getParts())) {
-                            throw new Error(
-                            		"OOPS!! More than one fact has been inserted into a Det/SemiDet predicate ("+predicateName+") present = "
-                                            + idxWhatIsThere.getParts() + " ||| new = " + value.getParts() + key);
-                        }
-                    }
-                    ArrayList lstWhatIsThere = new ArrayList(2);
-                    lstWhatIsThere.add(whatIsThere);
-                    lstWhatIsThere.add(value);
-                    map.put(key, lstWhatIsThere);
-                }
+                addEntry(map, key, value);
 
                 this.changedResource(map);
                 return null;
@@ -273,6 +263,114 @@ public final class Index {
         });
     }
 
+    /**
+     * Adds many facts into the index. The facts are first grouped by the page
+     * they go to, so that each page (and the top-level keys) is paged in and
+     * changed only once, instead of once per fact.
+     * @param facts facts (IndexValues) to insert.
+     */
+    public void addFacts(Collection/*<IndexValue>*/ facts) {
+        // top-level key -> keys and values (alternating) to put in its page
+        final Map/*<String, ArrayList>*/ pages = new LinkedHashMap();
+        for (Iterator iter = facts.iterator(); iter.hasNext();) {
+            IndexValue fact = (IndexValue) iter.next();
+            RBTuple parts = fact.getParts();
+            RBTuple whole_key = extractBound(parts);
+            RBTuple free = extractFree(parts);
+
+            //Special Behaviour for the all free index
+            if (whole_key == RBTuple.theEmpty) {
+                whole_key = free;
+            }
+            String topLevelKey = whole_key.getFirst();
+            ArrayList entries = (ArrayList) pages.get(topLevelKey);
+            if (entries == null) {
+                entries = new ArrayList();
+                pages.put(topLevelKey, entries);
+            }
+            entries.add(whole_key.getSecond());
+            entries.add(IndexValue.make(fact.getValidatorHandle(), free));
+        }
+
+        for (Iterator iter = pages.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry page = (Map.Entry) iter.next();
+            final ArrayList entries = (ArrayList) page.getValue();
+
+            getPager().asynchDoTask(storageLocation.getResourceID(nameManager.getPersistentName((String) page.getKey())),
+                    new Pager.Task(true) {
+
+                public Object doIt(Resource map_rsrc) {
+                    HashMapResource map = (HashMapResource) map_rsrc;
+
+                    if (map != null && !map.isClean(validatorManager)) {
+                        map.clean(validatorManager);
+                    }
+
+                    if (map == null)
+                        map = new HashMapResource(entries.size() / 2);
+
+                    for (int i = 0; i < entries.size(); i += 2) {
+                        addEntry(map, entries.get(i), (IndexValue) entries.get(i + 1));
+                    }
+
+                    this.changedResource(map);
+                    return null;
+                }
+
+            });
+        }
+        if (!pages.isEmpty()) {
+            getPager().asynchDoTask(storageLocation.getResourceID("keys.data"), new Pager.Task(true) {
+
+                public Object doIt(Resource rsrc) {
+                    HashSetResource toplevelKeys = (HashSetResource) rsrc;
+                    if (toplevelKeys == null)
+                        toplevelKeys = new HashSetResource();
+                    if (toplevelKeys.addAll(pages.keySet()))
+                        changedResource(toplevelKeys);
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Puts a value under a key of a page, checking uniqueness for Det/SemiDet
+     * predicates.
+     */
+    private void addEntry(HashMapResource map, Object key, IndexValue value) {
+        Object whatIsThere = map.get(key);
+        if (whatIsThere == null) {
+            map.put(key, value);
+        } else if (whatIsThere instanceof ArrayList) {
+            ArrayList lstWhatIsThere = (ArrayList) whatIsThere;
+            if (checkDet) { //SemiDet/Det uniqueness check
+                for (Iterator iter = lstWhatIsThere.iterator(); iter.hasNext();) {
+                    IndexValue element = (IndexValue) iter.next();
+                    if (!element.getParts().equals(value.getParts())) {
+                        throw new Error(
+                                "OOPS!! More than one fact has been inserted into a Det/SemiDet predicate ("+predicateName+") present = "
+                                        + element.getParts() + " ||| new = " + value.getParts() + key);
+                    }
+                }
+            }
+            lstWhatIsThere.add(value);
+        } else { //It's an indexValue
+            IndexValue idxWhatIsThere = (IndexValue) whatIsThere;
+            if (checkDet) { //SemiDet/Det uniqueness check
+                if (!idxWhatIsThere.getParts().equals(value.getParts())) {
+                    throw new Error(
+                    		"OOPS!! More than one fact has been inserted into a Det/SemiDet predicate ("+predicateName+") present = "
+                                    + idxWhatIsThere.getParts() + " ||| new = " + value.getParts() + key);
+                }
+            }
+            ArrayList lstWhatIsThere = new ArrayList(2);
+            lstWhatIsThere.add(whatIsThere);
+            lstWhatIsThere.add(value);
+            map.put(key, lstWhatIsThere);
+        }
+    }
+
     /**
      * Creates a resourceId from a RBTuple.
      */
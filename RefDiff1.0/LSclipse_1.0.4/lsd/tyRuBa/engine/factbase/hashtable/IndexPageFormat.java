@@ -0,0 +1,293 @@
+/*
+ * Created on Oct 19, 2026
+ */
+package tyRuBa.engine.factbase.hashtable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import tyRuBa.engine.RBJavaObjectCompoundTerm;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.RBTuple;
+import tyRuBa.util.ObjectTuple;
+import tyRuBa.util.pager.PageFormat;
+import tyRuBa.util.pager.Pager.Resource;
+
+/**
+ * A binary format for the pages of an {@link Index}. Each string is written
+ * once per page and referred to by number afterwards, and the common keys and
+ * terms (strings, tuples of strings, java object terms) are written without
+ * class descriptors. Other objects are written with Java serialization.
+ * <br>
+ * Pages written with Java serialization (e.g. before this format was used, or
+ * in fact libraries) can still be read.
+ * @category FactBase
+ */
+public class IndexPageFormat extends PageFormat {
+
+	/** "TyPg" */
+	private static final int MAGIC = 0x54795067;
+
+	private static final int VERSION = 1;
+
+	/** First byte of a stream written with Java serialization. */
+	private static final int SERIALIZED_STREAM = 0xAC;
+
+	private static final int MAP_RESOURCE = 1;
+	private static final int SET_RESOURCE = 2;
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int INTEGER = 2;
+	private static final int LIST = 3;
+	private static final int INDEX_VALUE = 4;
+	private static final int OBJECT_TUPLE = 5;
+	private static final int TUPLE = 6;
+	private static final int JAVA_OBJECT_TERM = 7;
+	private static final int SERIALIZED = 8;
+
+	public void write(Resource rsrc, OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		Writer writer = new Writer(out);
+		if (rsrc instanceof Index.HashMapResource) {
+			Index.HashMapResource map = (Index.HashMapResource) rsrc;
+			out.writeByte(MAP_RESOURCE);
+			out.writeLong(map.getLastCleanTime());
+			writer.writeSize(map.size());
+			for (Iterator iter = map.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry entry = (Map.Entry) iter.next();
+				writer.writeValue(entry.getKey());
+				writer.writeValue(entry.getValue());
+			}
+		} else if (rsrc instanceof Index.HashSetResource) {
+			Index.HashSetResource set = (Index.HashSetResource) rsrc;
+			out.writeByte(SET_RESOURCE);
+			writer.writeSize(set.size());
+			for (Iterator iter = set.iterator(); iter.hasNext();) {
+				writer.writeValue(iter.next());
+			}
+		} else {
+			throw new Error("Not an index page: " + rsrc);
+		}
+		out.flush();
+	}
+
+	public Resource read(InputStream is) throws IOException {
+		PushbackInputStream pis = new PushbackInputStream(is);
+		int first = pis.read();
+		if (first == -1) {
+			throw new IOException("Empty page");
+		}
+		pis.unread(first);
+		if (first == SERIALIZED_STREAM) {
+			return PageFormat.serialized.read(pis);
+		}
+		DataInputStream in = new DataInputStream(pis);
+		if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+			throw new IOException("Not an index page");
+		}
+		Reader reader = new Reader(in);
+		int kind = in.readUnsignedByte();
+		if (kind == MAP_RESOURCE) {
+			Index.HashMapResource map = new Index.HashMapResource(in.readLong());
+			for (int i = reader.readSize(); i > 0; i--) {
+				Object key = reader.readValue();
+				map.put(key, reader.readValue());
+			}
+			return map;
+		} else if (kind == SET_RESOURCE) {
+			Index.HashSetResource set = new Index.HashSetResource();
+			for (int i = reader.readSize(); i > 0; i--) {
+				set.add(reader.readValue());
+			}
+			return set;
+		} else {
+			throw new IOException("Unknown index page kind: " + kind);
+		}
+	}
+
+	/** Writes the values of a page, remembering the strings written. */
+	private static class Writer {
+
+		private final DataOutputStream out;
+
+		private final Map/*<String, Integer>*/ strings = new HashMap();
+
+		Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void writeSize(int n) throws IOException {
+			// variable length: 7 bits per byte
+			while ((n & ~0x7F) != 0) {
+				out.writeByte((n & 0x7F) | 0x80);
+				n >>>= 7;
+			}
+			out.writeByte(n);
+		}
+
+		void writeString(String s) throws IOException {
+			Integer number = (Integer) strings.get(s);
+			if (number != null) {
+				writeSize(number.intValue() + 1);
+			} else {
+				strings.put(s, Integer.valueOf(strings.size()));
+				writeSize(0);
+				byte[] bytes = s.getBytes("UTF-8");
+				writeSize(bytes.length);
+				out.write(bytes);
+			}
+		}
+
+		void writeValue(Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(NULL);
+			} else if (value instanceof String) {
+				out.writeByte(STRING);
+				writeString((String) value);
+			} else if (value instanceof Integer) {
+				out.writeByte(INTEGER);
+				out.writeInt(((Integer) value).intValue());
+			} else if (value.getClass() == ArrayList.class) {
+				ArrayList list = (ArrayList) value;
+				out.writeByte(LIST);
+				writeSize(list.size());
+				for (int i = 0; i < list.size(); i++) {
+					writeValue(list.get(i));
+				}
+			} else if (value instanceof IndexValue) {
+				IndexValue indexValue = (IndexValue) value;
+				out.writeByte(INDEX_VALUE);
+				out.writeLong(indexValue.getValidatorHandle());
+				writeValue(indexValue.getParts());
+			} else if (value instanceof ObjectTuple && ((ObjectTuple) value).size() != 1) {
+				// (singleton tuples are rare and are written serialized)
+				ObjectTuple tuple = (ObjectTuple) value;
+				out.writeByte(OBJECT_TUPLE);
+				writeSize(tuple.size());
+				for (int i = 0; i < tuple.size(); i++) {
+					writeValue(tuple.get(i));
+				}
+			} else if (value.getClass() == RBTuple.class) {
+				RBTuple tuple = (RBTuple) value;
+				out.writeByte(TUPLE);
+				writeSize(tuple.getNumSubterms());
+				for (int i = 0; i < tuple.getNumSubterms(); i++) {
+					writeValue(tuple.getSubterm(i));
+				}
+			} else if (value.getClass() == RBJavaObjectCompoundTerm.class) {
+				out.writeByte(JAVA_OBJECT_TERM);
+				writeValue(((RBJavaObjectCompoundTerm) value).getObject());
+			} else {
+				out.writeByte(SERIALIZED);
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ObjectOutputStream oos = new ObjectOutputStream(bytes);
+				oos.writeObject(value);
+				oos.close();
+				writeSize(bytes.size());
+				bytes.writeTo(out);
+			}
+		}
+	}
+
+	/** Reads the values of a page, remembering the strings read. */
+	private static class Reader {
+
+		private final DataInputStream in;
+
+		private final ArrayList/*<String>*/ strings = new ArrayList();
+
+		Reader(DataInputStream in) {
+			this.in = in;
+		}
+
+		int readSize() throws IOException {
+			int n = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = in.readUnsignedByte();
+				n |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return n;
+				}
+			}
+		}
+
+		String readString() throws IOException {
+			int number = readSize();
+			if (number > 0) {
+				return (String) strings.get(number - 1);
+			}
+			byte[] bytes = new byte[readSize()];
+			in.readFully(bytes);
+			String s = new String(bytes, "UTF-8").intern();
+			strings.add(s);
+			return s;
+		}
+
+		Object readValue() throws IOException {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString();
+			case INTEGER:
+				return Integer.valueOf(in.readInt());
+			case LIST: {
+				int size = readSize();
+				ArrayList list = new ArrayList(size);
+				for (int i = 0; i < size; i++) {
+					list.add(readValue());
+				}
+				return list;
+			}
+			case INDEX_VALUE: {
+				long validatorHandle = in.readLong();
+				return IndexValue.make(validatorHandle, (RBTuple) readValue());
+			}
+			case OBJECT_TUPLE: {
+				Object[] objects = new Object[readSize()];
+				for (int i = 0; i < objects.length; i++) {
+					objects[i] = readValue();
+				}
+				return ObjectTuple.make(objects);
+			}
+			case TUPLE: {
+				RBTerm[] terms = new RBTerm[readSize()];
+				for (int i = 0; i < terms.length; i++) {
+					terms[i] = (RBTerm) readValue();
+				}
+				return RBTuple.make(terms);
+			}
+			case JAVA_OBJECT_TERM:
+				return new RBJavaObjectCompoundTerm(readValue());
+			case SERIALIZED: {
+				byte[] bytes = new byte[readSize()];
+				in.readFully(bytes);
+				try {
+					return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+				} catch (ClassNotFoundException e) {
+					throw new Error("Could not page in because of ClassNotFoundException: " + e.getMessage());
+				}
+			}
+			default:
+				throw new IOException("Unknown value tag: " + tag);
+			}
+		}
+	}
+
+}
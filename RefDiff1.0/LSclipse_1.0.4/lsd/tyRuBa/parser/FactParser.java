@@ -0,0 +1,290 @@
+/*
+ * Created on Oct 19, 2026
+ */
+package tyRuBa.parser;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.PredicateIdentifier;
+import tyRuBa.engine.QueryEngine;
+import tyRuBa.engine.RBFact;
+import tyRuBa.engine.RBPredicateExpression;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.RBTuple;
+import tyRuBa.modes.TypeModeError;
+
+/**
+ * Loads files of ground facts, such as the fact bases written by a fact
+ * extractor, without going through the TyRuBaParser. A fact is a predicate
+ * name followed by a list of string and integer constants:
+ * <pre>
+ *    calls("p%.A#m()", "p%.B#n()").
+ * </pre>
+ * The facts are grouped by predicate and the facts of a predicate are
+ * inserted all at once, so that its factbase is built in one pass.
+ * Constants that occur more than once are only made once.
+ * <br>
+ * A file that contains anything else (rules, declarations, queries,
+ * directives, other kinds of terms...) is parsed by the TyRuBaParser
+ * instead.
+ */
+public class FactParser {
+
+	private final Reader in;
+
+	private final char[] buf = new char[1 << 16];
+
+	private int pos = 0;
+
+	private int len = 0;
+
+	/** The terms made so far, by string or integer literal. */
+	private final Map/*<String, RBTerm>*/ constants = new HashMap();
+
+	private final StringBuffer image = new StringBuffer();
+
+	private FactParser(Reader in) {
+		this.in = in;
+	}
+
+	/** Thrown at anything but ground facts. */
+	private static class NotAFact extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static final NotAFact notAFact = new NotAFact();
+
+	/** Load a file of ground facts into the rulebase. Any other file is
+		parsed by the TyRuBaParser. */
+	public static void parse(QueryEngine rules, String fileName, PrintStream os)
+	throws ParseException, IOException, TypeModeError {
+		Map groups;
+		Reader in = new FileReader(fileName);
+		try {
+			groups = new FactParser(in).facts();
+		}
+		catch (NotAFact e) {
+			groups = null;
+		}
+		finally {
+			in.close();
+		}
+		if (groups == null) {
+			TyRuBaParser.parse(rules, fileName, os);
+			return;
+		}
+		for (Iterator iter = groups.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry group = (Map.Entry) iter.next();
+			rules.insertFacts((PredicateIdentifier) group.getKey(), (ArrayList) group.getValue());
+		}
+	}
+
+	/** Reads all the facts, grouped by predicate in the order the predicates
+		first appear. */
+	private Map/*<PredicateIdentifier, ArrayList<RBFact>>*/ facts() throws IOException, NotAFact {
+		Map groups = new LinkedHashMap();
+		PredicateIdentifier last = null;
+		ArrayList lastGroup = null;
+		ArrayList terms = new ArrayList();
+		while (skipBlanks()) {
+			String name = predicateName();
+			skipBlanksInFact();
+			expect('(');
+			terms.clear();
+			do {
+				skipBlanksInFact();
+				terms.add(constant());
+				skipBlanksInFact();
+			} while (accept(','));
+			expect(')');
+			skipBlanksInFact();
+			expect('.');
+
+			if (last == null || last.getArity() != terms.size() || !last.getName().equals(name)) {
+				last = new PredicateIdentifier(name, terms.size());
+				lastGroup = (ArrayList) groups.get(last);
+				if (lastGroup == null) {
+					lastGroup = new ArrayList();
+					groups.put(last, lastGroup);
+				}
+			}
+			lastGroup.add(new RBFact(new RBPredicateExpression(last, RBTuple.make(terms))));
+		}
+		return groups;
+	}
+
+	/** The next character, without consuming it, or -1 at the end. */
+	private int peek() throws IOException {
+		if (pos == len) {
+			len = in.read(buf, 0, buf.length);
+			pos = 0;
+			if (len <= 0) {
+				len = 0;
+				return -1;
+			}
+		}
+		return buf[pos];
+	}
+
+	private boolean accept(char c) throws IOException {
+		if (peek() == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char c) throws IOException, NotAFact {
+		if (!accept(c))
+			throw notAFact;
+	}
+
+	/** Skips white space and comments. Returns false at the end of the input.
+		Backslashes in comments may be unicode escapes, which the TyRuBaParser
+		reads differently, so they are not skipped. */
+	private boolean skipBlanks() throws IOException, NotAFact {
+		while (true) {
+			int c = peek();
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+				pos++;
+			}
+			else if (c == '/') {
+				pos++;
+				if (accept('/')) {
+					for (c = peek(); c != '\n' && c != '\r'; c = peek()) {
+						if (c == -1 || c == '\\')
+							throw notAFact;
+						pos++;
+					}
+				}
+				else if (accept('*')) {
+					int prev = 0;
+					for (c = 0; !(prev == '*' && c == '/'); pos++) {
+						prev = c;
+						c = peek();
+						if (c == -1 || c == '\\')
+							throw notAFact;
+					}
+				}
+				else
+					throw notAFact;
+			}
+			else
+				return c != -1;
+		}
+	}
+
+	private void skipBlanksInFact() throws IOException, NotAFact {
+		if (!skipBlanks())
+			throw notAFact;
+	}
+
+	/** Reads a predicate name. Only plain names are read: reserved words
+		start with an upper case letter, and names with dots and the like are
+		left to the TyRuBaParser. */
+	private String predicateName() throws IOException, NotAFact {
+		int c = peek();
+		if (!(c >= 'a' && c <= 'z' || c == '_'))
+			throw notAFact;
+		image.setLength(0);
+		for (; isNameChar(c); c = peek()) {
+			image.append((char) c);
+			pos++;
+		}
+		if (c == '.' || c == '#' || c == '*' || c == '+' || c >= 0x80)
+			throw notAFact;
+		return image.toString();
+	}
+
+	private static boolean isNameChar(int c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+			|| c == '_' || c == '$';
+	}
+
+	/** Reads a string or integer constant. */
+	private RBTerm constant() throws IOException, NotAFact {
+		int c = peek();
+		if (c == '"' || c == '\'')
+			return stringConstant((char) c);
+		else if (c == '-' || c >= '0' && c <= '9')
+			return integerConstant();
+		else
+			throw notAFact;
+	}
+
+	/** Same as FrontEnd.makeName(TyRuBaParser.stringLiteral(...)) */
+	private RBTerm stringConstant(char quote) throws IOException, NotAFact {
+		pos++;
+		image.setLength(0);
+		while (true) {
+			if (peek() == -1)
+				throw notAFact;
+			int start = pos;
+			char c = 0;
+			while (pos < len) {
+				c = buf[pos];
+				if (c == quote || c == '\\' || c == '\n' || c == '\r')
+					break;
+				pos++;
+			}
+			image.append(buf, start, pos - start);
+			if (pos == len)
+				continue;
+			pos++;
+			if (c == quote)
+				break;
+			if (c != '\\')
+				throw notAFact;
+			int escaped = peek();
+			if ("ntbrf\\'\"01234567".indexOf(escaped) < 0)
+				throw notAFact;
+			image.append((char) escaped);
+			pos++;
+		}
+		String value = image.toString();
+		RBTerm term = (RBTerm) constants.get(value);
+		if (term == null) {
+			term = FrontEnd.makeName(value);
+			constants.put(value, term);
+		}
+		return term;
+	}
+
+	/** Reads a decimal integer. Hexadecimal, octal, long and floating point
+		literals are left to the TyRuBaParser. */
+	private RBTerm integerConstant() throws IOException, NotAFact {
+		image.setLength(0);
+		if (accept('-'))
+			image.append('-');
+		int c = peek();
+		if (c < '0' || c > '9')
+			throw notAFact;
+		for (; c >= '0' && c <= '9'; c = peek()) {
+			image.append((char) c);
+			pos++;
+		}
+		if (isNameChar(c) || c == '.' || c >= 0x80)
+			throw notAFact;
+		String digits = image.toString();
+		if (digits.startsWith("0") && digits.length() > 1 || digits.startsWith("-0"))
+			throw notAFact;
+		// integers are told apart from strings by a leading space
+		String key = " " + digits;
+		RBTerm term = (RBTerm) constants.get(key);
+		if (term == null) {
+			term = FrontEnd.makeInteger(digits);
+			constants.put(key, term);
+		}
+		return term;
+	}
+
+}
@@ -0,0 +1,112 @@
+package tyRuBa.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+public class FactParserTest extends TyrubaTest {
+
+	File factFile;
+
+	public FactParserTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		frontend.parse("calls :: String, String\n" +
+			"MODES (F,F) IS NONDET\n" +
+			"      (B,F) IS NONDET END\n");
+		frontend.parse("size :: String, Integer\n" +
+			"MODES (F,F) IS NONDET END\n");
+		frontend.parse("stored :: String, String\n" +
+			"PERSISTENT MODES (F,F) IS NONDET\n" +
+			"      (B,F) IS NONDET\n" +
+			"      (F,B) IS NONDET END\n");
+		factFile = File.createTempFile("facts", ".rub");
+	}
+
+	protected void tearDown() throws Exception {
+		factFile.delete();
+		super.tearDown();
+	}
+
+	private void loadFacts(String contents) throws IOException, ParseException, TypeModeError {
+		FileWriter out = new FileWriter(factFile);
+		out.write(contents);
+		out.close();
+		frontend.loadFacts(factFile.getPath());
+	}
+
+	public void testLoadFacts() throws ParseException, TypeModeError, IOException {
+		loadFacts("calls(\"a\",\"b\").\n" +
+			"size(\"a\", 3).\n" +
+			"// comment\n" +
+			"calls( \"a\" , 'c' ) .\n" +
+			"/* comment */ size(\"b\",-12).\n" +
+			"calls(\"b\",\"c\").");
+		test_must_succeed("calls(a,b)");
+		test_must_succeed("calls(a,c)");
+		test_must_fail("calls(c,?x)");
+		test_must_equal("calls(b,?x)", "?x", "c");
+		test_must_equal("size(a,?x)", "?x", new Integer(3));
+		test_must_equal("size(b,?x)", "?x", new Integer(-12));
+	}
+
+	public void testLoadPersistentFacts() throws ParseException, TypeModeError, IOException {
+		StringBuffer facts = new StringBuffer();
+		for (int i = 0; i < 100; i++) {
+			facts.append("stored(\"k" + (i % 10) + "\",\"v" + i + "\").\n");
+		}
+		loadFacts(facts.toString());
+		test_must_succeed("stored(k3,v93)");
+		test_must_fail("stored(k3,v94)");
+		test_must_equal("stored(?k,v42)", "?k", "k2");
+		test_must_equal("COUNTALL(stored(k7,?v),?v,?n)", "?n", new Integer(10));
+		for (int i = 0; i < 100; i++) {
+			test_must_succeed("stored(?k,v" + i + ")");
+		}
+	}
+
+	public void testEscapes() throws ParseException, TypeModeError, IOException {
+		loadFacts("calls(\"say \\\"hi\\\"\",\"back\\\\slash\").");
+		test_must_equal("calls(?x,?y)", "?x", (Object) "say \"hi\"");
+		test_must_equal("calls(?x,?y)", "?y", (Object) "back\\slash");
+	}
+
+	public void testNoFacts() throws ParseException, TypeModeError, IOException {
+		loadFacts("");
+		test_must_fail("calls(?x,?y)");
+	}
+
+	public void testNotOnlyFacts() throws ParseException, TypeModeError, IOException {
+		loadFacts("calls(\"a\",\"b\").\n" +
+			"calls(?x,\"z\") :- calls(?x,\"b\").\n" +
+			"calls(d, \"e\").");
+		test_must_succeed("calls(a,b)");
+		test_must_succeed("calls(a,z)");
+		test_must_equal("calls(d,?x)", "?x", "e");
+	}
+
+	public void testUnknownPredicate() throws ParseException, IOException {
+		try {
+			loadFacts("unknown(\"a\").");
+			fail("Should throw a type error");
+		}
+		catch (TypeModeError e) {
+		}
+	}
+
+	public void testWrongType() throws ParseException, IOException {
+		try {
+			loadFacts("size(\"a\",\"b\").");
+			fail("Should throw a type error");
+		}
+		catch (TypeModeError e) {
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package tyRuBa.tests;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import tyRuBa.util.pager.FileLocation;
+import tyRuBa.util.pager.Pager;
+import tyRuBa.util.pager.Pager.Resource;
+import tyRuBa.util.pager.Pager.ResourceId;
+
+public class PagerTest extends TestCase {
+
+	private static class Page implements Resource {
+		private static final long serialVersionUID = 1L;
+		String contents;
+		Page(String contents) {
+			this.contents = contents;
+		}
+	}
+
+	private File dir;
+	private FileLocation location;
+
+	public PagerTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("pagertest", "");
+		dir.delete();
+		dir.mkdir();
+		location = new FileLocation(dir);
+		Pager writer = new Pager(10, 10, 0, false);
+		for (int i = 0; i < 3; i++) {
+			store(writer, location.getResourceID("page" + i), "contents" + i);
+		}
+		writer.shutdown();
+	}
+
+	protected void tearDown() throws Exception {
+		File[] files = dir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		dir.delete();
+	}
+
+	private void store(Pager pager, ResourceId id, final String contents) {
+		pager.synchDoTask(id, new Pager.Task(true) {
+			public Object doIt(Resource rsrc) {
+				changedResource(new Page(contents));
+				return null;
+			}
+		});
+	}
+
+	private String read(Pager pager, ResourceId id) {
+		return (String) pager.synchDoTask(id, new Pager.Task(false) {
+			public Object doIt(Resource rsrc) {
+				return ((Page) rsrc).contents;
+			}
+		});
+	}
+
+	public void testReadOnceStaysInProbation() throws IOException {
+		Pager pager = new Pager(10, 10, 0, false);
+		ResourceId id = location.getResourceID("page0");
+		assertEquals("contents0", read(pager, id));
+		assertTrue(pager.isInMemory(id));
+		assertFalse(pager.isProtected(id));
+		assertEquals(1, pager.getStats().getMisses());
+		pager.shutdown();
+	}
+
+	public void testReadTwiceIsProtected() throws IOException {
+		Pager pager = new Pager(10, 10, 0, false);
+		ResourceId id = location.getResourceID("page1");
+		read(pager, id);
+		assertEquals("contents1", read(pager, id));
+		assertTrue(pager.isProtected(id));
+		assertEquals(1, pager.getStats().getHits());
+		pager.shutdown();
+	}
+
+	public void testScanDoesNotFlushProtected() {
+		Pager pager = new Pager(2, 10, 0, false);
+		ResourceId hot = location.getResourceID("page0");
+		read(pager, hot);
+		read(pager, hot);
+		read(pager, location.getResourceID("page1"));
+		read(pager, location.getResourceID("page2"));
+		assertTrue(pager.isProtected(hot));
+		assertFalse(pager.isInMemory(location.getResourceID("page1")));
+		pager.shutdown();
+	}
+
+}
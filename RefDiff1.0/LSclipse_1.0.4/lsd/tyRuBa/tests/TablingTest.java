@@ -0,0 +1,79 @@
+package tyRuBa.tests;
+
+import tyRuBa.engine.SimpleRuleBaseBucket;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+public class TablingTest extends TyrubaTest {
+
+	public TablingTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		TyrubaTest.initfile = true;
+		super.setUp();
+		frontend.setTabling(true);
+		frontend.parse("calls :: String, String\n" +
+			"MODES (F,F) IS NONDET END\n");
+		frontend.parse("field :: String, String, Integer\n" +
+			"MODES (F,F,F) IS NONDET\n" +
+			"      (B,B,F) IS SEMIDET END\n");
+		frontend.parse(
+			"calls(a,b). calls(a,c). calls(b,c). calls(c,d).\n" +
+			"field(A,x,1). field(A,y,2). field(B,x,3).");
+	}
+
+	public void testBound() throws ParseException, TypeModeError {
+		test_must_succeed("calls(a,b)");
+		test_must_fail("calls(b,a)");
+		test_must_findall("calls(a,?x)", "?x", new String[] {"b", "c"});
+		test_must_findall("calls(?x,c)", "?x", new String[] {"a", "b"});
+		test_must_fail("calls(d,?x)");
+		test_resultcount("calls(?x,?y)", 4);
+	}
+
+	public void testSemiDet() throws ParseException, TypeModeError {
+		test_must_equal("field(A,y,?n)", "?n", "2");
+		test_must_equal("field(B,x,?n)", "?n", "3");
+		test_must_fail("field(B,y,?n)");
+		test_must_findall("field(?c,x,?n)", "?c", new String[] {"A", "B"});
+	}
+
+	public void testJoin() throws ParseException, TypeModeError {
+		test_must_findall("calls(a,?x),calls(?x,?y)", "?y", new String[] {"c", "d"});
+		test_must_findall("calls(?x,?y),calls(?y,d)", "?x", new String[] {"a", "b"});
+	}
+
+	public void testInsertAfterLookup() throws ParseException, TypeModeError {
+		test_must_findall("calls(b,?x)", "?x", new String[] {"c"});
+		frontend.parse("calls(b,d).");
+		test_must_findall("calls(b,?x)", "?x", new String[] {"c", "d"});
+		test_must_findall("calls(?x,d)", "?x", new String[] {"b", "c"});
+		frontend.parse("field(B,y,4).");
+		test_must_equal("field(B,y,?n)", "?n", "4");
+	}
+
+	public void testOutdatedFacts() throws ParseException, TypeModeError {
+		SimpleRuleBaseBucket bucket = new SimpleRuleBaseBucket(frontend);
+		bucket.addStuff("field(C,x,5). field(C,y,6).");
+		test_must_equal("field(C,x,?n)", "?n", "5");
+		test_must_findall("field(?c,x,?n)", "?c", new String[] {"A", "B", "C"});
+		// the facts of the bucket are invalid once it is cleared
+		bucket.clearStuff();
+		test_must_fail("field(C,x,?n)");
+		test_must_fail("field(C,x,?n)");
+		test_must_fail("field(C,y,?n)");
+		test_must_findall("field(?c,x,?n)", "?c", new String[] {"A", "B"});
+		test_must_equal("field(A,x,?n)", "?n", "1");
+	}
+
+	public void testNotTabled() throws ParseException, TypeModeError {
+		frontend.parse("uses :: String, [String]\n" +
+			"MODES (F,F) IS NONDET END\n");
+		frontend.parse("uses(a,[b,c]). uses(b,[c]).");
+		test_must_equal("uses(?x,[c])", "?x", "b");
+		test_must_equal("uses(a,[?x|?r])", "?x", "b");
+	}
+
+}
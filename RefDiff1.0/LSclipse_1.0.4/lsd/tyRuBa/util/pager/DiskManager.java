@@ -3,60 +3,55 @@
  */
 package tyRuBa.util.pager;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
-import serp.util.Semaphore;
 import tyRuBa.util.Aurelizer;
-import tyRuBa.util.DoubleLinkedList;
 import tyRuBa.util.pager.Pager.ResourceId;
 import tyRuBa.util.pager.Pager.Resource;
 
 /**
  * Manages disk reads and writes. Writes are done in a separate thread as to
- * allow other operations to occur concurrently. A resource cannot be written
- * out if it is currently being read and vice versa.
+ * allow other operations to occur concurrently (write-behind). A resource
+ * cannot be written out if it is currently being read and vice versa.
+ * <br>
+ * A resource has at most one pending write: writing it out again before it
+ * has been written only replaces what will be written. Reading a resource that
+ * is waiting to be written returns it without going to disk.
  * @category FactBase
  * @author riecken
  */
 public class DiskManager extends Thread {
 
-    /** Maxiumum size that the taskQueue can be. */
-    private int maxSize;
+    /** Format of the resources on disk. */
+    private final PageFormat format;
 
-    /** Semaphore to ensure mutual exclusion on queue operations. */
-    Semaphore queueMutex;
+    /** Ids of the resources waiting to be written, in order. */
+    private BlockingQueue/*<ResourceId>*/ taskQueue;
 
     /**
-     * Semaphore that will block the write operation until there is room in the
-     * queue to add another task.
+     * The resources waiting to be written or being written. Also the monitor
+     * that guards pending, writing and reading.
      */
-    Semaphore queueAvailable;
+    private Map/*<ResourceId, Resource>*/ pending = new HashMap();
 
-    /**
-     * Semaphore that will block the writer thread until there is something in
-     * the task queue.
-     */
-    Semaphore queueSize;
+    /** The resources being written right now. */
+    private Set/*<ResourceId>*/ writing = new HashSet();
 
-    /**
-     * Semaphore to ensure mutual exclusion on operations on the resourceLocks
-     * map.
-     */
-    Semaphore resourceLocksMutex;
+    /** The resources being read right now. */
+    private Set/*<ResourceId>*/ reading = new HashSet();
 
     /** Flag that tells the thread when to die. */
-    boolean alive;
-
-    /** The task queue. */
-    DoubleLinkedList taskQueue = new DoubleLinkedList();
-
-    /** A Map of resourceId => semaphore that provide locks on resources. */
-    Map resourceLocks = new HashMap();
+    private volatile boolean alive;
 
     /**
      * number of times a read operation occured for a resource that was
@@ -64,6 +59,9 @@ public class DiskManager extends Thread {
      */
     public int couldHaveCanceledPageout;
 
+    /** Number of times a write replaced a pending write of the same resource. */
+    private int coalescedPageouts = 0;
+
     /** maximum size that the queue grew to. */
     private int highWaterMark = 0;
 
@@ -73,207 +71,247 @@ public class DiskManager extends Thread {
     /** Number of page in requests. */
     private int pageInRequests = 0;
 
-    /** A write out task */
-    private static class Task extends DoubleLinkedList.Entry {
-        /** Resource to write out */
-        Resource rsrc;
-
-        /** Id for the resource. */
-        ResourceId resourceID;
-
-        /** Creates a new Task */
-        Task(ResourceId resourceID, Resource rsrc) {
-            this.resourceID = resourceID;
-            this.rsrc = rsrc;
-        }
-
-        /** Write out the resource */
-        void doIt() {
-            try {
-                OutputStream os = resourceID.writeResource();
-                if (os != null) { //does resource support writing out
-                    ObjectOutputStream oos = new ObjectOutputStream(os);
-                    oos.writeObject(rsrc);
-                    oos.close();
-                }
-            } catch (IOException e) {
-                throw new Error("Could not page because of an IOException: " + e.getMessage());
-            }
-        }
+    /**
+     * Creates a new DiskManager.
+     * @param maxQueueSize maximum size of the task queue.
+     */
+    public DiskManager(int maxQueueSize) {
+        this(maxQueueSize, PageFormat.serialized);
     }
 
     /**
      * Creates a new DiskManager.
      * @param maxQueueSize maximum size of the task queue.
+     * @param format format of the resources on disk.
      */
-    public DiskManager(int maxQueueSize) {
-        maxSize = maxQueueSize;
-        resourceLocksMutex = new Semaphore();
-        queueMutex = new Semaphore();
-        queueAvailable = new Semaphore(maxSize);
-        queueSize = new Semaphore(0);
+    public DiskManager(int maxQueueSize, PageFormat format) {
+        super("tyRuBa.DiskManager");
+        this.format = format;
+        taskQueue = new ArrayBlockingQueue(maxQueueSize);
         alive = true;
     }
-    
+
     /**
      * Ask the DiskManager whether it is currently idle. This method is intended
      * to be used to check whether it might now be a good time to perform some
      * pro-active saving of dirty resources.
-     * 
+     *
      * It doesn't make much sense to queue up more work unless the DiskManager is
      * idle.
      */
-    synchronized public boolean isIdle() {
-    		return this.taskQueue.isEmpty();
+    public boolean isIdle() {
+        synchronized (pending) {
+            return pending.isEmpty();
+        }
     }
-    
+
     /**
      * Write out thread run method. Pages out everything in the queue. Blocks
      * until there is something to do.
      */
     public void run() {
         while (alive) {
-            //wait until there is something in the queue
-            queueSize.down();
-            if (!alive) {
-                break;
+            ResourceId resourceID;
+            Resource rsrc;
+            try {
+                resourceID = (ResourceId) taskQueue.take();
+            } catch (InterruptedException e) {
+                continue; // killed or crashed
             }
-            queueMutex.down();
-            Task nextTask = (Task) taskQueue.dequeue();
-            queueMutex.up();
-            //let whoever is waiting on queueAvailable to wake up because
-            //there is room in the queue now
-            queueAvailable.up();
+            synchronized (pending) {
+                while (alive && reading.contains(resourceID)) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                    }
+                }
+                if (!alive) {
+                    break;
+                }
+                rsrc = (Resource) pending.get(resourceID);
+                writing.add(resourceID);
+            }
+            try {
+                write(resourceID, rsrc);
+            } finally {
+                synchronized (pending) {
+                    writing.remove(resourceID);
+                    pending.remove(resourceID);
+                    pending.notifyAll();
+                }
+            }
+        }
+    }
 
-            nextTask.doIt();
-            releaseResourceLock(nextTask.resourceID);
+    /** Write out a resource */
+    private void write(ResourceId resourceID, Resource rsrc) {
+        try {
+            OutputStream os = resourceID.writeResource();
+            if (os != null) { //does resource support writing out
+                os = new BufferedOutputStream(os);
+                try {
+                    format.write(rsrc, os);
+                } finally {
+                    os.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new Error("Could not page because of an IOException: " + e.getMessage());
         }
     }
 
     /**
-     * Gets a lock on a resource.
-     * @param resID resource to get the lock for.
+     * Waits until a resource is not being written. Must be called holding the
+     * pending monitor.
      */
-    void getResourceLock(ResourceId resID) {
-        resourceLocksMutex.down();
-        Semaphore lock = (Semaphore) resourceLocks.get(resID);
-        if (lock == null) {
-            lock = new Semaphore(1);
-            resourceLocks.put(resID, lock);
+    private void waitWhileWriting(ResourceId resID) {
+        while (writing.contains(resID)) {
+            awaitChange();
+        }
+    }
+
+    private void awaitChange() {
+        try {
+            pending.wait();
+        } catch (InterruptedException e) {
+            throw new Error("Don't interrupt me!!!");
         }
-        resourceLocksMutex.up();
-        lock.down();
     }
 
     /**
-     * Releases a lock on a resource.
-     * @param resID resource to release the lock for.
+     * Waits until the pending write of a resource (if any) is done, so that
+     * the resource can be changed.
      */
-    void releaseResourceLock(ResourceId resID) {
-        resourceLocksMutex.down();
-        Semaphore lock = (Semaphore) resourceLocks.get(resID);
-        if (lock != null) {
-            resourceLocks.remove(resID);
-            lock.up();
+    void waitUntilWritten(ResourceId resID) {
+        synchronized (pending) {
+            while (pending.containsKey(resID)) {
+                awaitChange();
+            }
         }
-        resourceLocksMutex.up();
     }
 
     /**
      * Write out a resource to disk. Puts the resource on the task queue, then
-     * returns immediately without actually having done the task yet.
+     * returns immediately without actually having done the task yet. Blocks
+     * while the task queue is full.
      */
-    public synchronized void writeOut(ResourceId resourceID, Resource rsrc) {
-        Task task = new Task(resourceID, rsrc);
-        getResourceLock(resourceID);
-        queueAvailable.down();
-        queueMutex.down();
-        taskQueue.enqueue(task);
-        queueMutex.up();
-        queueSize.up();
-        int waterLevel;
-        if ((waterLevel = queueSize.getAvailable()) > highWaterMark)
-            highWaterMark = waterLevel;
-        pageOutRequests++;
+    public void writeOut(ResourceId resourceID, Resource rsrc) {
+        synchronized (pending) {
+            pageOutRequests++;
+            waitWhileWriting(resourceID);
+            if (pending.put(resourceID, rsrc) != null) {
+                coalescedPageouts++;
+                return;
+            }
+        }
+        try {
+            taskQueue.put(resourceID);
+        } catch (InterruptedException e) {
+            throw new Error("Don't interrupt me!!!");
+        }
+        synchronized (pending) {
+            highWaterMark = Math.max(highWaterMark, taskQueue.size());
+        }
     }
 
 	/**
-	 * Check whether a resource exists. Note that if a writeOut task for 
+	 * Check whether a resource exists. Note that if a writeOut task for
 	 * this resource is in the queue the resource is considered to exist
 	 * even though its actual representation on the storage device may
 	 * not yet have been created.
 	 */
-	public synchronized boolean resourceExists(ResourceId rsrcID) {
-		return (resourceLocks.get(rsrcID) != null) // Resource exists in the writeOut task queue
-			|| rsrcID.resourceExists();
+	public boolean resourceExists(ResourceId rsrcID) {
+		synchronized (pending) {
+			if (pending.containsKey(rsrcID)) // Resource exists in the writeOut task queue
+				return true;
+		}
+		return rsrcID.resourceExists();
 	}
-	
+
     /** Read in a resource from disk. */
-    public synchronized Resource readIn(ResourceId rsrcID) {
-        pageInRequests++;
-        Resource resource;
-        if (resourceLocks.get(rsrcID) != null) {
-            couldHaveCanceledPageout++;
+    public Resource readIn(ResourceId rsrcID) {
+        synchronized (pending) {
+            pageInRequests++;
+            waitWhileWriting(rsrcID);
+            Resource queued = (Resource) pending.get(rsrcID);
+            if (queued != null) {
+                couldHaveCanceledPageout++;
+                return queued;
+            }
+            reading.add(rsrcID);
         }
-        getResourceLock(rsrcID);
+        InputStream is = null;
         try {
-            ObjectInputStream ois = new ObjectInputStream(rsrcID.readResource());
-            resource = (Resource) ois.readObject();
+            is = new BufferedInputStream(rsrcID.readResource());
+            return format.read(is);
         } catch (IOException e) {
             throw new Error("Could not page in because of IOException: " + e.getMessage());
-        } catch (ClassNotFoundException e) {
-            throw new Error("Could not page in because of ClassNotFoundException: " + e.getMessage());
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                }
+            }
+            synchronized (pending) {
+                reading.remove(rsrcID);
+                pending.notifyAll();
+            }
         }
-        releaseResourceLock(rsrcID);
-        return resource;
     }
 
     /** Kill the write out thread */
-    public synchronized void killMe() {
+    public void killMe() {
         alive = false;
-        queueSize.up(); //make sure that the thread exits
+        interrupt(); //make sure that the thread exits
     }
 
 	/**
-	 * Like kill, but more abrupt (used to simulate system crash).
+	 * Like kill, but more abrupt (used to simulate system crash): the pending
+	 * writes are dropped.
 	 */
 	public void crash() {
-		stop(); // stop thread abrubptly and unsafely
-		taskQueue = null;
-		resourceLocks = null;
-		resourceLocksMutex = null;
-		queueSize = null;
-		queueMutex = null;
-		queueAvailable = null;
+		synchronized (pending) {
+			alive = false;
+			taskQueue.clear();
+			pending.clear();
+			pending.notifyAll();
+		}
+		interrupt();
 	}
-    
+
     /**
      * Forces the pending writeOuts to happen right now and waits for it to
      * complete.
      */
-    public synchronized void flush() {
-        while (queueSize.getAvailable() > 0) {
-            try {
-                sleep(500);
-            } catch (InterruptedException e) {
-                if (Aurelizer.debug_sounds != null)
-                    Aurelizer.debug_sounds.enter("error");
-                throw new Error("Don't interrupt me!!!");
+    public void flush() {
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                try {
+                    pending.wait();
+                } catch (InterruptedException e) {
+                    if (Aurelizer.debug_sounds != null)
+                        Aurelizer.debug_sounds.enter("error");
+                    throw new Error("Don't interrupt me!!!");
+                }
             }
         }
     }
 
     /** Prints out some statistics about the diskmanager. */
     public void printStats() {
-        System.err.println("Diskman.couldHaveCanceledPageout = " + couldHaveCanceledPageout);
-        couldHaveCanceledPageout = 0;
-        System.err.println("Diskman.biggestQueueSize = " + highWaterMark);
-        highWaterMark = 0;
-        System.err.println("Diskman.pageOutRequests = " + pageOutRequests);
-        pageOutRequests = 0;
-        System.err.println("Diskman.pageInRequests = " + pageInRequests);
-        pageInRequests = 0;
+        synchronized (pending) {
+            System.err.println("Diskman.couldHaveCanceledPageout = " + couldHaveCanceledPageout);
+            couldHaveCanceledPageout = 0;
+            System.err.println("Diskman.coalescedPageouts = " + coalescedPageouts);
+            coalescedPageouts = 0;
+            System.err.println("Diskman.biggestQueueSize = " + highWaterMark);
+            highWaterMark = 0;
+            System.err.println("Diskman.pageOutRequests = " + pageOutRequests);
+            pageOutRequests = 0;
+            System.err.println("Diskman.pageInRequests = " + pageInRequests);
+            pageInRequests = 0;
+        }
     }
 
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+/*
+ * Created on Oct 19, 2026
+ */
+package tyRuBa.util.pager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import tyRuBa.util.pager.Pager.Resource;
+
+/**
+ * How resources are written to and read from their storage location.
+ * @category FactBase
+ */
+public abstract class PageFormat {
+
+	/** Pages written with Java serialization. */
+	public static final PageFormat serialized = new PageFormat() {
+
+		public void write(Resource rsrc, OutputStream os) throws IOException {
+			ObjectOutputStream oos = new ObjectOutputStream(os);
+			oos.writeObject(rsrc);
+			oos.flush();
+		}
+
+		public Resource read(InputStream is) throws IOException {
+			try {
+				return (Resource) new ObjectInputStream(is).readObject();
+			} catch (ClassNotFoundException e) {
+				throw new Error("Could not page in because of ClassNotFoundException: " + e.getMessage());
+			}
+		}
+	};
+
+	/** Writes a resource. The stream is not closed. */
+	public abstract void write(Resource rsrc, OutputStream os) throws IOException;
+
+	/** Reads a resource. The stream is not closed. */
+	public abstract Resource read(InputStream is) throws IOException;
+
+}
@@ -8,16 +8,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.LinkedHashMap;
 import java.util.Set;
 
 import junit.framework.Assert;
 
-import tyRuBa.util.DoubleLinkedList;
-
 /**
  * This is an object that allows operations to be performed on files. The
  * responsibilty of the pager is to manage a queue of tasks and make sure that
@@ -115,11 +113,59 @@ public class Pager {
 		}
 	}
 	
+	/** Hit, miss and eviction counts of the pager cache. */
+	public static final class Stats {
+
+		private final long hits;
+
+		private final long misses;
+
+		private final long evictions;
+
+		private final long writes;
+
+		Stats(long hits, long misses, long evictions, long writes) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.writes = writes;
+		}
+
+		/** Number of times a resource was found in memory. */
+		public long getHits() {
+			return hits;
+		}
+
+		/** Number of times a resource was not in memory. */
+		public long getMisses() {
+			return misses;
+		}
+
+		/** Number of resources paged out to make room for others. */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/** Number of resources written out. */
+		public long getWrites() {
+			return writes;
+		}
+
+		public double getHitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 0 : (double) hits / requests;
+		}
+
+		public String toString() {
+			return "Pager(hits=" + hits + ", misses=" + misses + ", evictions="
+				+ evictions + ", writes=" + writes + ")";
+		}
+	}
+
 	/**
-	 * Information about a reference that the pager uses to determine what gets
-	 * paged out.
+	 * Information about a resource in memory.
 	 */
-	private final class ResourceReferenceInfo extends DoubleLinkedList.Entry {
+	private final class ResourceReferenceInfo {
 		
 		/** The resource id. */
 		private ResourceId resId;
@@ -127,14 +173,8 @@ public class Pager {
 		/** The resource. */
 		private Resource resource;
 		
-		/** Whether the resource has been referenced. */
-		private boolean referenced;
-		
-		/** When the resource was last referenced. */
-		private long timeLastReferenced;
-		
-		/** Number of times the resource has been referenced since last paged. */
-		private int numReferences;
+		/** Whether the resource is in the protected segment. */
+		private boolean isProtected;
 		
 		/** Whether the resource has been modified since the last page. */
 		private boolean dirty;
@@ -143,10 +183,8 @@ public class Pager {
 			// Assert.assertNotNull(resource);
 			this.resId = resId;
 			this.resource = resource;
-			this.referenced = false;
-			this.timeLastReferenced = 0;
+			this.isProtected = false;
 			this.dirty = false;
-			this.numReferences = 0;
 		}
 		
 		public ResourceId getResourceID() {
@@ -162,30 +200,6 @@ public class Pager {
 			this.resource = newResource;
 		}
 		
-		public boolean isReferenced() {
-			return referenced;
-		}
-		
-		public void setReferenced(boolean referenced) {
-			if (referenced == true) {
-				incrementReferenceCounter();
-				setTimeLastReferenced(System.currentTimeMillis());
-			}
-			this.referenced = referenced;
-		}
-		
-		private void setTimeLastReferenced(long timeLastReferenced) {
-			this.timeLastReferenced = timeLastReferenced;
-		}
-		
-		private void incrementReferenceCounter() {
-			this.numReferences++;
-		}
-		
-		public void resetReferenceCounter() {
-			this.numReferences = 0;
-		}
-		
 		public boolean isDirty() {
 			return dirty;
 		}
@@ -204,21 +218,6 @@ public class Pager {
 			}
 		}
 		
-		public int compareTo(Object o) {
-			ResourceReferenceInfo other = (ResourceReferenceInfo) o;
-			
-			long myCompareNumber = this.timeLastReferenced + this.numReferences;
-			long otherCompareNumber = other.timeLastReferenced + other.numReferences;
-			
-			if (otherCompareNumber > myCompareNumber) {
-				return -1;
-			} else if (otherCompareNumber < myCompareNumber) {
-				return 1;
-			} else {
-				return 0;
-			}
-		}
-		
 		public String toString() {
 			return "Rsrc("+resId+ (dirty?"=DIRTY":"") +")";
 		}
@@ -226,13 +225,24 @@ public class Pager {
 	
 	/** Register last task time so we can detect if the QueryEngine is idle for some time 
 	 * and take advantage to do some stuff, like cleaning pages. */
-	private long lastTaskTime = System.currentTimeMillis();
+	private volatile long lastTaskTime = System.currentTimeMillis();
 
 	/** The maximum number of files the pager keeps in memory. */
 	private int cacheSize;
 	
-	/** The map that tracks resources that are in memory. */
-	private Map inMemory = new HashMap();
+	/**
+	 * Resources referenced once since they were paged in, least recently
+	 * used first. Resources are paged out from this segment first.
+	 */
+	private LinkedHashMap/*<ResourceId, ResourceReferenceInfo>*/ probation = new LinkedHashMap(16, 0.75f, true);
+	
+	/**
+	 * Resources referenced again while in memory, least recently used first.
+	 * When it is full, its least recently used resource goes back to
+	 * probation, so a scan of many resources referenced once can not push the
+	 * frequently used ones out.
+	 */
+	private LinkedHashMap/*<ResourceId, ResourceReferenceInfo>*/ protectedSegment = new LinkedHashMap(16, 0.75f, true);
 	
 	/** A Set that tracks all dirty ResourceReferenceInfo objects. */
 	private Set/*<ResourceReferenceInfo>*/ dirtyResources = new HashSet/*<ResourceReferenceInfo>*/();
@@ -240,14 +250,19 @@ public class Pager {
 	/** A Thread dedicated to writing out and reading from disk. */
 	private DiskManager diskMan;
 	
-	/** Least Recently Used queue that is used to determine what gets paged out. */
-	private DoubleLinkedList lruQueue;
-	
 	/** Flag to tell us whether we need to call backup. */
 	private boolean needToCallBackup;
 	
 	private PageCleaner pageCleaner = null;
 	
+	private long hits = 0;
+	
+	private long misses = 0;
+	
+	private long evictions = 0;
+	
+	private long writes = 0;
+	
 	/**
 	 * Page cleaner is a thread which runs in background periodically checking
 	 * if there are dirty resources and cleaning them (writing to disk) if 
@@ -272,8 +287,6 @@ public class Pager {
 						toClean = (ResourceReferenceInfo) dirtyResources.iterator().next();
 				}
 				if (cleaningTime) {
-					//TODO: The writing of the resource should be able to live
-					// outside the sunchronized block!
 					writeResourceToDisk(toClean);
 //					System.err.println("Background cleaning: "+next.getResourceID());
 				}
@@ -293,10 +306,14 @@ public class Pager {
 	
 	/** Creates a new Pager. */
 	public Pager(int cacheSize, int queueSize, long lastBackupTime, boolean backgrounCleaning) {
+		this(cacheSize, queueSize, lastBackupTime, backgrounCleaning, PageFormat.serialized);
+	}
+	
+	/** Creates a new Pager that stores resources in the given format. */
+	public Pager(int cacheSize, int queueSize, long lastBackupTime, boolean backgrounCleaning, PageFormat format) {
 		this.cacheSize = cacheSize;
 		this.needToCallBackup = false;
-		this.lruQueue = new DoubleLinkedList();
-		this.diskMan = new DiskManager(queueSize);
+		this.diskMan = new DiskManager(queueSize, format);
 		diskMan.setPriority(Thread.MAX_PRIORITY);
 		diskMan.start();
 		if (backgrounCleaning) {
@@ -314,23 +331,15 @@ public class Pager {
 	 * run.
 	 */
 	public Object synchDoTask(ResourceId rsrcID, Task task) {
-		boolean lockHeld = false;
 		this.lastTaskTime = System.currentTimeMillis();
-		Resource rsrc = getResource(rsrcID);
-		try {
-			if (task.mayChangeResource()) {
-				diskMan.getResourceLock(rsrcID);
-				lockHeld = true;
-			}
+		Retrieved retrieved = getResource(rsrcID);
+		if (task.mayChangeResource()) {
+			diskMan.waitUntilWritten(rsrcID);
 		}
-		finally {
-			if (lockHeld)
-				diskMan.releaseResourceLock(rsrcID);
-		}
-		Object result = task.doIt(rsrc);
+		Object result = task.doIt(retrieved.resource);
 		if (task.resourceIsChanged()) {
-			changeResource(rsrcID, task.getChangedResource());
-		} else {
+			changeResource(rsrcID, task.getChangedResource(), retrieved.hit);
+		} else if (retrieved.hit) {
 			referenceResource(rsrcID);
 		}
 		return result;
@@ -345,57 +354,107 @@ public class Pager {
 		synchDoTask(rsrcID, task);
 	}
 	
+	/** Finds the reference info of a resource in memory. */
+	private ResourceReferenceInfo lookUp(ResourceId rsrcID) {
+		ResourceReferenceInfo rsrc_ref = (ResourceReferenceInfo) probation.get(rsrcID);
+		if (rsrc_ref == null) {
+			rsrc_ref = (ResourceReferenceInfo) protectedSegment.get(rsrcID);
+		}
+		return rsrc_ref;
+	}
+	
 	/** Update the reference info for a resource. */
-	private void referenceResource(ResourceId rsrcID) {
-		ResourceReferenceInfo rsrc_ref = (ResourceReferenceInfo) inMemory.get(rsrcID);
+	private synchronized void referenceResource(ResourceId rsrcID) {
+		ResourceReferenceInfo rsrc_ref = lookUp(rsrcID);
 		if (rsrc_ref != null) {
-			rsrc_ref.setReferenced(true);
-			rsrc_ref.incrementReferenceCounter();
-			lruQueue.remove(rsrc_ref);
-			lruQueue.enqueue(rsrc_ref);
+			promote(rsrc_ref);
 		}
 	}
 	
-	/** Change a resource. May cause paging to occur. */
-	private void changeResource(ResourceId rsrcID, Resource newResource) {
+	/**
+	 * Moves a resource referenced again to the protected segment (the lookup
+	 * already made it its most recently used one if it was there).
+	 */
+	private void promote(ResourceReferenceInfo rsrc_ref) {
+		if (rsrc_ref.isProtected)
+			return;
+		probation.remove(rsrc_ref.getResourceID());
+		rsrc_ref.isProtected = true;
+		protectedSegment.put(rsrc_ref.getResourceID(), rsrc_ref);
+		int protectedSize = protectedSize();
+		while (protectedSegment.size() > protectedSize) {
+			Iterator eldest = protectedSegment.values().iterator();
+			ResourceReferenceInfo demoted = (ResourceReferenceInfo) eldest.next();
+			eldest.remove();
+			demoted.isProtected = false;
+			probation.put(demoted.getResourceID(), demoted);
+		}
+	}
+	
+	/** Maximum number of resources in the protected segment. */
+	private int protectedSize() {
+		return Math.max(1, cacheSize * 4 / 5);
+	}
+	
+	/**
+	 * Change a resource. May cause paging to occur. An updated resource is
+	 * only promoted if it was already in memory when the task referenced it.
+	 */
+	private synchronized void changeResource(ResourceId rsrcID, Resource newResource, boolean referencedAgain) {
 		needToCallBackup = true;
-		ResourceReferenceInfo rsrc_ref = (ResourceReferenceInfo) inMemory.get(rsrcID);
+		ResourceReferenceInfo rsrc_ref = lookUp(rsrcID);
 		if (rsrc_ref == null) {
 			//NEW
 			ResourceReferenceInfo newInfo = new ResourceReferenceInfo(rsrcID, newResource);
 			newInfo.setDirty(true);
-			newInfo.setReferenced(true);
 			if (needToPageOutIfOneMoreAdded()) {
 				pageOutOne();
 			}
-			inMemory.put(rsrcID, newInfo);
-			lruQueue.enqueue(newInfo);
+			probation.put(rsrcID, newInfo);
 		} else {
 			if (newResource == null) {
 				//DELETED
 				rsrcID.removeResource();
-				inMemory.remove(rsrcID);
-				lruQueue.remove(rsrc_ref);
+				if (rsrc_ref.isProtected)
+					protectedSegment.remove(rsrcID);
+				else
+					probation.remove(rsrcID);
+				rsrc_ref.setDirty(false);
 			} else {
 				//UPDATED
 				rsrc_ref.updateResource(newResource);
 				rsrc_ref.setDirty(true);
-				rsrc_ref.setReferenced(true);
-				lruQueue.remove(rsrc_ref);
-				lruQueue.enqueue(rsrc_ref);
+				if (referencedAgain) {
+					promote(rsrc_ref);
+				}
 			}
 		}
 	}
 	
+	/** A retrieved resource and whether it was already in memory. */
+	private static final class Retrieved {
+		
+		private final Resource resource;
+		
+		private final boolean hit;
+		
+		private Retrieved(Resource resource, boolean hit) {
+			this.resource = resource;
+			this.hit = hit;
+		}
+	}
+	
 	/** Retrieve a resource. May cause paging to occur. */
-	private Resource getResource(ResourceId rsrcID) {
-		ResourceReferenceInfo rsrc_ref = (ResourceReferenceInfo) inMemory.get(rsrcID);
+	private synchronized Retrieved getResource(ResourceId rsrcID) {
+		ResourceReferenceInfo rsrc_ref = lookUp(rsrcID);
 		if (rsrc_ref == null) {
+			misses++;
 			Resource result = getResourceFromDisk(rsrcID);
-			return result;
+			return new Retrieved(result, false);
 		} else {
+			hits++;
 			Resource result = rsrc_ref.getResource();
-			return result;
+			return new Retrieved(result, true);
 		}
 	}
 	
@@ -403,11 +462,13 @@ public class Pager {
 	public void backup() {
 		//TODO: make backup work more as we would expect it to
 		if (needToCallBackup) {
-			for (Iterator iter = inMemory.values().iterator(); iter.hasNext();) {
+			ArrayList/*<ResourceReferenceInfo>*/ dirty;
+			synchronized (dirtyResources) {
+				dirty = new ArrayList(dirtyResources);
+			}
+			for (Iterator iter = dirty.iterator(); iter.hasNext();) {
 				ResourceReferenceInfo refInfo = (ResourceReferenceInfo) iter.next();
-				if (refInfo.isDirty()) {
-					writeResourceToDisk(refInfo);
-				}
+				writeResourceToDisk(refInfo);
 			}
 			needToCallBackup = false;
 		}
@@ -429,7 +490,7 @@ public class Pager {
 	}
 	
 	/** Change the amount of data that is cached in memory. */
-	public void setCacheSize(int cacheSize) {
+	public synchronized void setCacheSize(int cacheSize) {
 		this.cacheSize = cacheSize;
 		pageUntilNonNeeded();
 	}
@@ -439,31 +500,31 @@ public class Pager {
 		return cacheSize;
 	}
 	
+	/** Number of resources in memory. */
+	private int inMemorySize() {
+		return probation.size() + protectedSegment.size();
+	}
+	
 	/** Whether we need to page out. */
 	private boolean needToPageOut() {
-		return inMemory.size() > cacheSize;
+		return inMemorySize() > cacheSize;
 	}
 	
 	/** Whether we need to page out if we add one more resource to memory. */
 	private boolean needToPageOutIfOneMoreAdded() {
-		return (inMemory.size() + 1) > cacheSize;
+		return (inMemorySize() + 1) > cacheSize;
 	}
 	
 	/** Page out one resource. */
 	private void pageOutOne() {
-		if (inMemory.size() > 0) {
-			ResourceReferenceInfo victim = null;
-			
-			//Get the Least recently used resource to page out
-			victim = (ResourceReferenceInfo) lruQueue.dequeue();
-			inMemory.remove(victim.getResourceID());
-			
-			if (victim != null) {
-				if (victim.isDirty()) {
-					writeResourceToDisk(victim);
-				}
-			} else {
-				throw new Error("Could not find a victim to page, probably a coding error somewhere.");
+		if (inMemorySize() > 0) {
+			//Get the Least recently used resource on probation to page out
+			Iterator lru = (probation.isEmpty() ? protectedSegment : probation).values().iterator();
+			ResourceReferenceInfo victim = (ResourceReferenceInfo) lru.next();
+			lru.remove();
+			evictions++;
+			if (victim.isDirty()) {
+				writeResourceToDisk(victim);
 			}
 		}
 	}
@@ -477,6 +538,9 @@ public class Pager {
 	
 	/** Write a resource to disk. */
 	private void writeResourceToDisk(ResourceReferenceInfo victim) {
+		synchronized (this) {
+			writes++;
+		}
 		diskMan.writeOut(victim.getResourceID(), victim.getResource());
 		victim.setDirty(false);
 	}
@@ -489,15 +553,34 @@ public class Pager {
 			}
 			
 			Resource resource = diskMan.readIn(rsrcID);
-			changeResource(rsrcID, resource);
+			changeResource(rsrcID, resource, false);
 			return resource;
 		} else {
 			return null;
 		}
 	}
 	
+	/** Whether a resource is in memory (used for testing). */
+	public synchronized boolean isInMemory(ResourceId rsrcID) {
+		return probation.containsKey(rsrcID) || protectedSegment.containsKey(rsrcID);
+	}
+	
+	/**
+	 * Whether a resource is in memory in the protected segment, that is it has
+	 * been referenced again since it was paged in (used for testing).
+	 */
+	public synchronized boolean isProtected(ResourceId rsrcID) {
+		return protectedSegment.containsKey(rsrcID);
+	}
+	
+	/** Get the hit, miss and eviction counts since the pager was created. */
+	public synchronized Stats getStats() {
+		return new Stats(hits, misses, evictions, writes);
+	}
+	
 	/** Print some statistics. */
 	public void printStats() {
+		System.err.println(getStats());
 		diskMan.printStats();
 	}
 
@@ -507,4 +590,4 @@ public class Pager {
 		}
 	}
 	
-}
\ No newline at end of file
+}
@@ -1,40 +1,303 @@
 
 package lsclipse;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Longest common subsequences of strings, such as method bodies.
+ * <p>
+ * The dynamic programming rows are bit-parallel (Allison-Dix, Hyyro): a row
+ * is kept as one bit per character of y, telling whether the LCS length goes
+ * up at that character, and the next row is computed with a few word
+ * operations per 64 characters.
+ */
 public class LCS {
-	
-	public static String getLCS (String x, String y){
-		int M = x.length();
-        int N = y.length();
-
-        // opt[i][j] = length of LCS of x[i..M] and y[j..N]
-        int[][] opt = new int[M+1][N+1];
-
-        // compute length of LCS and all subproblems via dynamic programming
-        for (int i = M-1; i >= 0; i--) {
-            for (int j = N-1; j >= 0; j--) {
-                if (x.charAt(i) == y.charAt(j))
-                    opt[i][j] = opt[i+1][j+1] + 1;
-                else 
-                    opt[i][j] = Math.max(opt[i+1][j], opt[i][j+1]);
-            }
-        }
-
-        String output = "";
-        int i = 0, j = 0;
-        while(i < M && j < N) {
-            if (x.charAt(i) == y.charAt(j)) {
-                output = output + x.charAt(i);
-                i++;
-                j++;
-            }
-            else if (opt[i+1][j] >= opt[i][j+1]) i++;
-            else                                 j++;
-        }
-        return output;
-
-    }
-	
+
+	/** The number of words of rows kept at once by getLCS */
+	private static final int BAND_WORDS = 1 << 15;
+
+	/**
+	 * Returns a longest common subsequence of x and y. Among the longest ones,
+	 * it is the one found by walking the table of suffix LCS lengths from the
+	 * start, taking matches first and skipping a character of x rather than
+	 * one of y on ties.
+	 * <p>
+	 * The table is not kept: like in Hirschberg's algorithm, the rows are
+	 * recomputed by halves, so that only O((|y|/64) log |x|) words are used.
+	 */
+	public static String getLCS(String x, String y) {
+		int prefix = commonPrefix(x, y);
+		StringBuilder output = new StringBuilder(Math.min(x.length(),
+				y.length()));
+		output.append(x, 0, prefix);
+		if (prefix < x.length() && prefix < y.length())
+			new Traceback(x.substring(prefix), y.substring(prefix), output)
+					.run();
+		return output.toString();
+	}
+
+	/** Returns the length of the longest common subsequences of x and y. */
+	public static int getLCSLength(String x, String y) {
+		return length(x, y, -1);
+	}
+
+	/**
+	 * Returns whether x and y have a common subsequence of at least minLength
+	 * characters. The computation stops as soon as the answer is known.
+	 */
+	public static boolean hasCommonSubsequence(String x, String y,
+			int minLength) {
+		return length(x, y, Math.max(minLength, 0)) >= minLength;
+	}
+
+	/**
+	 * The LCS length of x and y. With a minLength >= 0, stops early with a
+	 * lower bound once it is at least minLength, or with an upper bound once
+	 * it can't get there.
+	 */
+	private static int length(String x, String y, int minLength) {
+		int prefix = commonPrefix(x, y);
+		int suffix = commonSuffix(x, y, prefix);
+		int common = prefix + suffix;
+		if (minLength >= 0 && common >= minLength)
+			return common;
+		// bits for the longer string, one row per character of the shorter
+		String outer = x, inner = y;
+		if (x.length() > y.length()) {
+			outer = y;
+			inner = x;
+		}
+		int m = outer.length() - common;
+		int n = inner.length() - common;
+		if (m == 0)
+			return common;
+		if (minLength >= 0
+				&& common + commonCharacters(outer, inner, prefix, common) < minLength)
+			return common;
+
+		PatternMasks masks = new PatternMasks(inner, prefix, n, false);
+		long[] row = new long[words(n)];
+		Arrays.fill(row, -1L);
+		for (int i = 0; i < m; i++) {
+			step(row, masks.get(outer.charAt(prefix + i)));
+			if (minLength >= 0) {
+				int length = common + zeros(row, n);
+				if (length >= minLength || length + m - i - 1 < minLength)
+					return length;
+			}
+		}
+		return common + zeros(row, n);
+	}
+
+	/** Walks the suffix LCS table of x and y from (0, 0). */
+	private static class Traceback {
+
+		private final String x;
+		private final String y;
+		private final int M;
+		private final int N;
+		private final PatternMasks masks;
+		private final int band;
+		private final StringBuilder output;
+
+		/** The current cell */
+		private int i = 0, j = 0;
+
+		Traceback(String x, String y, StringBuilder output) {
+			this.x = x;
+			this.y = y;
+			this.M = x.length();
+			this.N = y.length();
+			this.masks = new PatternMasks(y, 0, N, true);
+			this.band = Math.max(2, BAND_WORDS / words(N));
+			this.output = output;
+		}
+
+		void run() {
+			// row M: the LCS with an empty suffix of x is empty everywhere
+			long[] last = new long[words(N)];
+			Arrays.fill(last, -1L);
+			walk(0, M, last);
+		}
+
+		/**
+		 * Walks through rows lo to hi - 1, given row hi. Bands of rows that
+		 * don't fit are split at their middle row.
+		 */
+		private void walk(int lo, int hi, long[] rowHi) {
+			if (i >= hi || j >= N)
+				return;
+			if (hi - lo >= band) {
+				int mid = (lo + hi) >>> 1;
+				long[] rowMid = rowHi.clone();
+				for (int r = hi - 1; r >= mid; r--)
+					step(rowMid, masks.get(x.charAt(r)));
+				walk(lo, mid, rowMid);
+				walk(mid, hi, rowHi);
+				return;
+			}
+			long[][] rows = new long[hi - lo + 1][];
+			rows[hi - lo] = rowHi;
+			for (int r = hi - 1; r >= Math.max(lo, i); r--) {
+				rows[r - lo] = rows[r - lo + 1].clone();
+				step(rows[r - lo], masks.get(x.charAt(r)));
+			}
+			while (i < hi && j < N) {
+				long[] row = rows[i - lo];
+				long[] below = rows[i - lo + 1];
+				// opt[i][j] and opt[i+1][j]
+				int opt = zeros(row, N - j);
+				int optBelow = zeros(below, N - j);
+				while (true) {
+					if (x.charAt(i) == y.charAt(j)) {
+						output.append(x.charAt(i));
+						i++;
+						j++;
+						break;
+					}
+					int d = up(row, N - 1 - j);
+					if (optBelow >= opt - d) {
+						i++;
+						break;
+					}
+					opt -= d;
+					optBelow -= up(below, N - 1 - j);
+					j++;
+					if (j == N)
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The next row: bit k of a row is 0 when the LCS length goes up at the
+	 * k-th character, and the row for one more character c of the other
+	 * string is (row + (row & mask(c))) | (row & ~mask(c)).
+	 */
+	private static void step(long[] row, long[] mask) {
+		if (mask == null)
+			return;
+		long carry = 0;
+		for (int w = 0; w < row.length; w++) {
+			long v = row[w];
+			long u = v & mask[w];
+			long sum = v + u + carry;
+			carry = (carry == 0 ? unsignedLess(sum, v) : !unsignedLess(v, sum)) ? 1
+					: 0;
+			row[w] = sum | (v & ~mask[w]);
+		}
+	}
+
+	private static boolean unsignedLess(long a, long b) {
+		return a + Long.MIN_VALUE < b + Long.MIN_VALUE;
+	}
+
+	/** The number of 0 bits among the first n bits of a row */
+	private static int zeros(long[] row, int n) {
+		int ones = 0;
+		int w = 0;
+		for (; w < n >>> 6; w++)
+			ones += Long.bitCount(row[w]);
+		if ((n & 63) != 0)
+			ones += Long.bitCount(row[w] & ((1L << n) - 1));
+		return n - ones;
+	}
+
+	/** 1 if bit k of the row is 0 */
+	private static int up(long[] row, int k) {
+		return (int) (~row[k >>> 6] >>> k) & 1;
+	}
+
+	private static int words(int n) {
+		return Math.max(1, (n + 63) >>> 6);
+	}
+
+	private static int commonPrefix(String x, String y) {
+		int n = Math.min(x.length(), y.length());
+		int k = 0;
+		while (k < n && x.charAt(k) == y.charAt(k))
+			k++;
+		return k;
+	}
+
+	private static int commonSuffix(String x, String y, int prefix) {
+		int n = Math.min(x.length(), y.length()) - prefix;
+		int k = 0;
+		while (k < n
+				&& x.charAt(x.length() - 1 - k) == y.charAt(y.length() - 1 - k))
+			k++;
+		return k;
+	}
+
+	/**
+	 * The number of characters x and y have in common, counting repeats, apart
+	 * from their common prefix and suffix: a bound on their LCS length.
+	 */
+	private static int commonCharacters(String x, String y, int prefix,
+			int common) {
+		Map<Character, Integer> counts = new HashMap<Character, Integer>();
+		int[] ascii = new int[128];
+		for (int k = prefix; k < x.length() - common + prefix; k++) {
+			char c = x.charAt(k);
+			if (c < 128)
+				ascii[c]++;
+			else {
+				Integer count = counts.get(c);
+				counts.put(c, count == null ? 1 : count + 1);
+			}
+		}
+		int total = 0;
+		for (int k = prefix; k < y.length() - common + prefix; k++) {
+			char c = y.charAt(k);
+			if (c < 128) {
+				if (ascii[c] > 0) {
+					ascii[c]--;
+					total++;
+				}
+			} else {
+				Integer count = counts.get(c);
+				if (count != null && count > 0) {
+					counts.put(c, count - 1);
+					total++;
+				}
+			}
+		}
+		return total;
+	}
+
+	/** The positions of each character in a part of a string, as bits */
+	private static class PatternMasks {
+
+		private final long[][] ascii = new long[128][];
+		private final Map<Character, long[]> others = new HashMap<Character, long[]>();
+
+		/**
+		 * The masks of s[from .. from + n - 1]. Reversed, bit k stands for the
+		 * k-th character from the end.
+		 */
+		PatternMasks(String s, int from, int n, boolean reversed) {
+			for (int k = 0; k < n; k++) {
+				char c = s.charAt(reversed ? from + n - 1 - k : from + k);
+				long[] mask = get(c);
+				if (mask == null) {
+					mask = new long[words(n)];
+					if (c < 128)
+						ascii[c] = mask;
+					else
+						others.put(c, mask);
+				}
+				mask[k >>> 6] |= 1L << k;
+			}
+		}
+
+		long[] get(char c) {
+			return c < 128 ? ascii[c] : others.get(c);
+		}
+	}
+
 	public static void allSubSequences(String x, String y){
 		
 	}
@@ -0,0 +1,159 @@
+package lsclipse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import lsclipse.utils.CodeCompare;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+
+/**
+ * Times the LCS computations of the rules on the method bodies of two
+ * versions of a project:
+ *
+ * <pre>
+ * LCSBenchmark &lt;old folder&gt; &lt;new folder&gt; [&lt;rounds&gt;]
+ * </pre>
+ *
+ * The bodies of the methods with the same name and number of parameters in
+ * both versions, such as moved methods, are compared when they differ. The
+ * first round warms up the JIT and is not counted.
+ */
+public class LCSBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: LCSBenchmark <old folder> <new folder> [<rounds>]");
+			System.exit(1);
+		}
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		Map<String, List<String>> oldBodies = readBodies(new File(args[0]));
+		Map<String, List<String>> newBodies = readBodies(new File(args[1]));
+		List<String[]> pairs = new ArrayList<String[]>();
+		long cells = 0;
+		for (Map.Entry<String, List<String>> bodies : oldBodies.entrySet()) {
+			if (!newBodies.containsKey(bodies.getKey()))
+				continue;
+			for (String oldBody : bodies.getValue()) {
+				for (String newBody : newBodies.get(bodies.getKey())) {
+					if (!newBody.equals(oldBody)) {
+						pairs.add(new String[] { oldBody, newBody });
+						cells += (long) oldBody.length() * newBody.length();
+					}
+				}
+			}
+		}
+		if (pairs.isEmpty()) {
+			System.out.println("No changed method bodies");
+			return;
+		}
+		System.out.println(pairs.size() + " pairs of method bodies, "
+				+ cells / pairs.size() / 1000 + "K cells on average");
+
+		long lcsTime = 0, lengthTime = 0, compareTime = 0;
+		int check = 0;
+		for (int round = 0; round <= rounds; round++) {
+			long start = System.nanoTime();
+			for (String[] pair : pairs)
+				check += LCS.getLCS(pair[0], pair[1]).length();
+			long afterLCS = System.nanoTime();
+			for (String[] pair : pairs)
+				check += LCS.getLCSLength(pair[0], pair[1]);
+			long afterLength = System.nanoTime();
+			for (String[] pair : pairs) {
+				if (CodeCompare.compare(pair[0], pair[1]))
+					check++;
+				if (CodeCompare.contrast(pair[0], pair[1]))
+					check++;
+			}
+			long afterCompare = System.nanoTime();
+			if (round > 0) {
+				lcsTime += afterLCS - start;
+				lengthTime += afterLength - afterLCS;
+				compareTime += afterCompare - afterLength;
+			}
+		}
+		System.out.println("getLCS(ms/round): " + lcsTime / rounds / 1000000);
+		System.out.println("getLCSLength(ms/round): " + lengthTime / rounds
+				/ 1000000);
+		System.out.println("compare and contrast(ms/round): " + compareTime
+				/ rounds / 1000000);
+		System.out.println("(" + check + ")");
+	}
+
+	/** The method bodies of the java files under a folder, as in the facts */
+	private static Map<String, List<String>> readBodies(File dir)
+			throws IOException {
+		List<File> files = new ArrayList<File>();
+		collectJavaFiles(dir, files);
+		final Map<String, List<String>> bodies = new TreeMap<String, List<String>>();
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
+		Map<String, String> options = JavaCore.getOptions();
+		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+		for (File file : files) {
+			parser.setCompilerOptions(options);
+			parser.setKind(ASTParser.K_COMPILATION_UNIT);
+			parser.setSource(readFile(file));
+			CompilationUnit unit = (CompilationUnit) parser.createAST(null);
+			unit.accept(new ASTVisitor() {
+				@Override
+				public boolean visit(MethodDeclaration node) {
+					if (node.getBody() != null) {
+						String body = node.getBody().toString();
+						body = body.replace('\n', ' ').replace('"', ' ')
+								.replace('\\', ' ');
+						String key = node.getName() + "/"
+								+ node.parameters().size();
+						if (!bodies.containsKey(key))
+							bodies.put(key, new ArrayList<String>());
+						bodies.get(key).add(body);
+					}
+					return true;
+				}
+			});
+		}
+		return bodies;
+	}
+
+	private static void collectJavaFiles(File dir, List<File> files)
+			throws IOException {
+		File[] children = dir.listFiles();
+		if (children == null)
+			throw new IOException("Not a folder: " + dir);
+		for (File child : children) {
+			if (child.isDirectory())
+				collectJavaFiles(child, files);
+			else if (child.getName().endsWith(".java"))
+				files.add(child);
+		}
+	}
+
+	private static char[] readFile(File file) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			StringBuilder contents = new StringBuilder();
+			char[] buf = new char[8192];
+			int len;
+			while ((len = in.read(buf)) > 0)
+				contents.append(buf, 0, len);
+			char[] source = new char[contents.length()];
+			contents.getChars(0, source.length, source, 0);
+			return source;
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -2,12 +2,16 @@ package lsclipse;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -15,6 +19,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -42,9 +47,15 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
 
 import changetypes.ASTVisitorAtomicChange;
 import changetypes.AtomicChange;
@@ -54,7 +65,6 @@ import changetypes.Fact;
 import changetypes.FactBase;
 
 public class LSDiffRunner {
-	private static final int NUM_THREADS = 4;
 	private static final long TIMEOUT = 60; //wait 60 minutes for fact extraction
 	private static Map<String, IJavaElement> oldTypeToFileMap_ = new ConcurrentHashMap<String, IJavaElement>();
 	
@@ -68,6 +78,19 @@ public class LSDiffRunner {
 		return Collections.unmodifiableMap(newTypeToFileMap_);
 	}
 	
+	/** The number of threads extracting facts. */
+	private final int numThreads;
+	
+	public LSDiffRunner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public LSDiffRunner(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("numThreads must be at least 1");
+		this.numThreads = numThreads;
+	}
+	
 	public boolean doFactExtractionForRefFinder(String proj1, String proj2, ProgressBarDialog progbar) {
 		if(!doFactExtraction(proj1, proj2, progbar))
 			return false;
@@ -147,7 +170,7 @@ public class LSDiffRunner {
 			return false;
 		progbar.appendLog("Scanning " + allFiles.size() + " files...");
 		Iterator<ICompilationUnit> iter = allFiles.iterator();
-		ExecutorService execService = Executors.newFixedThreadPool(NUM_THREADS);
+		ExecutorService execService = Executors.newFixedThreadPool(numThreads);
 		List<Future<FactBase>> futures = new LinkedList<Future<FactBase>>();
 		while (iter.hasNext()) {
 			ICompilationUnit file = iter.next();
@@ -196,7 +219,7 @@ public class LSDiffRunner {
 			return false;
 		progbar.appendLog("Scanning " + allFiles.size() + " files...");
 		iter = allFiles.iterator();
-		execService = Executors.newFixedThreadPool(NUM_THREADS);
+		execService = Executors.newFixedThreadPool(numThreads);
 		futures.clear();
 		while (iter.hasNext()) {
 			ICompilationUnit file = iter.next();
@@ -246,71 +269,16 @@ public class LSDiffRunner {
 		long afterdiff = System.currentTimeMillis();
 		//LSDiff action
 		progbar.setStep(4);
-		//Convert into LSDFact/Rule format
+		//Convert into LSDFact/Rule format and write to LSDiff input files
 		progbar.setMessage("Preparing to run LSDiff...\n");
-		progbar.appendLog("Converting atomic change to LSDiff changes... ");
-		long beforeconversion = System.currentTimeMillis();
-		ArrayList<LSDFact> input2kbFacts = new ArrayList<LSDFact>();
-		ArrayList<LSDFact> inputDeltaFacts = new ArrayList<LSDFact>();
-		
-		for (Fact f : fb1) {
-			input2kbFacts.add(makeLSDFact(f, "before"));
-		}
-		System.out.println("***************************************");
-		for (Fact f : fb2) {
-			input2kbFacts.add(makeLSDFact(f, "after"));
-		}
-		
-		
-		for (AtomicChange ac : cs) {
-		    LSDFact f = makeLSDFact(ac);
-		   if (f != null)
-				inputDeltaFacts.add(f);
-		}
-		
-		progbar.appendLog("OK\n");
-		long afterconversion = System.currentTimeMillis();
-
-		//write to LSDiff input file
 		progbar.appendLog("Writing to LSDiff input files... \n");
-		BufferedWriter lsd2kbfile = null;
 		long beforeoutput = System.currentTimeMillis();
 		try {
-			//First check if path exists -- if not, create it
-			File f2KBfile = new File(MetaInfo.lsclipse2KB);
-			File dir = f2KBfile.getParentFile();
-			if (!dir.exists()) {
-				dir.mkdirs();
-			}
-			//write away!
 			progbar.appendLog("  Writing 2KB to "+MetaInfo.lsclipse2KB+"\n");
-			lsd2kbfile = new BufferedWriter(new FileWriter(MetaInfo.lsclipse2KB));
-			
-			int counter = 0;
-			for (LSDFact f : input2kbFacts) {
-				counter = counter + 1;
-				// System.out.println(counter);
-				if (f != null)
-					lsd2kbfile.append(f.toString()+".\n");
-			}
-			lsd2kbfile.close();
-		} catch (IOException e) {
-			progbar.appendError("Unable to create 2KB input file! Exiting...");
-			progbar.dispose();
-			return false;
-		}
-		BufferedWriter lsddeltafile = null;
-		try {
 			progbar.appendLog("  Writing deltas to "+MetaInfo.lsclipseDelta+"\n");
-			lsddeltafile = new BufferedWriter(new FileWriter(MetaInfo.lsclipseDelta));
-			lsddeltafile.close();
-			for (LSDFact f : inputDeltaFacts) {
-				lsddeltafile = new BufferedWriter(new FileWriter(MetaInfo.lsclipseDelta, true));
-				lsddeltafile.append(f.toString()+".\n");
-				lsddeltafile.close();
-			}
+			writeLSDiffInput(fb1, fb2, cs);
 		} catch (IOException e) {
-			progbar.appendError("Unable to create delta KB input file! Exiting...");
+			progbar.appendError("Unable to create LSDiff input files! Exiting...");
 			progbar.dispose();
 			return false;
 		}
@@ -319,12 +287,207 @@ public class LSDiffRunner {
 		progbar.appendLog("\nTotal time for fb1 extraction(ms): " + (afterderivedfacts1 - beforefacts1));
 		progbar.appendLog("\nTotal time for fb2 extraction(ms): " + (afterderivedfacts2 - beforefacts2));
 		progbar.appendLog("\nTotal time for diff(ms): " + (afterdiff - beforediff));
-		progbar.appendLog("\nTotal time for conversion to LSD(ms): " + (afterconversion - beforeconversion));
-		progbar.appendLog("\nTotal time for write to file(ms): " + (afteroutput - beforeoutput));
+		progbar.appendLog("\nTotal time for conversion and write to file(ms): " + (afteroutput - beforeoutput));
 		
 		return true;
 	}
 
+	/**
+	 * Same as doFactExtractionForRefFinder, but without an Eclipse workspace:
+	 * the facts are extracted from the java files under two folders (e.g.
+	 * projects/name/prev and projects/name/curr) parsed with their source
+	 * folders as environment. Both versions are extracted at the same time.
+	 */
+	public boolean doHeadlessFactExtraction(File dir1, File dir2) {
+		long beforefacts = System.currentTimeMillis();
+		ExecutorService execService = Executors.newFixedThreadPool(numThreads);
+		FactBase fb1, fb2;
+		try {
+			List<Future<FactBase>> futures1 = submitSourceFactGetters(execService, dir1, numThreads);
+			List<Future<FactBase>> futures2 = submitSourceFactGetters(execService, dir2, numThreads);
+			fb1 = collectFacts(futures1);
+			fb2 = collectFacts(futures2);
+		} catch (IOException e) {
+			System.err.println("Unable to read the java files: " + e.getMessage());
+			return false;
+		} catch (InterruptedException e) {
+			return false;
+		} catch (ExecutionException e) {
+			System.err.println("Fact extraction failed: " + e.getCause());
+			return false;
+		} finally {
+			execService.shutdownNow();
+		}
+		System.out.println("Extracted " + fb1.size() + " facts for FB1 and "
+				+ fb2.size() + " facts for FB2");
+		fb1.deriveFacts();
+		fb2.deriveFacts();
+		long afterfacts = System.currentTimeMillis();
+
+		ChangeSet cs = fb2.diff(fb1);
+		System.out.println(cs.size() + " changes found");
+		long afterdiff = System.currentTimeMillis();
+
+		try {
+			writeLSDiffInput(fb1, fb2, cs);
+		} catch (IOException e) {
+			System.err.println("Unable to create LSDiff input files: " + e.getMessage());
+			return false;
+		}
+		installLSDiff();
+		long afteroutput = System.currentTimeMillis();
+		System.out.println("Total time for extraction(ms): " + (afterfacts - beforefacts));
+		System.out.println("Total time for diff(ms): " + (afterdiff - afterfacts));
+		System.out.println("Total time for write to file(ms): " + (afteroutput - afterdiff));
+		return true;
+	}
+
+	/**
+	 * Splits the java files under a folder in one batch per thread, and
+	 * submits the extraction of each batch.
+	 */
+	private static List<Future<FactBase>> submitSourceFactGetters(
+			ExecutorService execService, File dir, int numThreads) throws IOException {
+		List<String> files = new ArrayList<String>();
+		collectJavaFiles(dir, files);
+		Collections.sort(files);
+		String[] sourceFolders = inferSourceFolders(files);
+		List<Future<FactBase>> futures = new ArrayList<Future<FactBase>>();
+		// consecutive files are mostly in the same package and so use the
+		// same types
+		int batchSize = (files.size() + numThreads - 1) / numThreads;
+		for (int i = 0; i < files.size(); i += batchSize) {
+			List<String> batch = files.subList(i, Math.min(files.size(), i + batchSize));
+			futures.add(execService.submit(new SourceFactGetter(
+					batch.toArray(new String[batch.size()]), sourceFolders)));
+		}
+		return futures;
+	}
+
+	private static FactBase collectFacts(List<Future<FactBase>> futures)
+			throws InterruptedException, ExecutionException {
+		FactBase fb = new FactBase();
+		for (Future<FactBase> f : futures) {
+			fb.addAll(f.get());
+		}
+		return fb;
+	}
+
+	private static void collectJavaFiles(File dir, List<String> files) throws IOException {
+		File[] children = dir.listFiles();
+		if (children == null)
+			throw new IOException("Not a folder: " + dir);
+		for (File child : children) {
+			if (child.isDirectory())
+				collectJavaFiles(child, files);
+			else if (child.getName().endsWith(".java"))
+				files.add(child.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * The source folders of the files, found from the package declarations
+	 * (files under a source folder already found are not read).
+	 */
+	private static String[] inferSourceFolders(List<String> files) throws IOException {
+		IScanner scanner = ToolFactory.createScanner(false, false, false, JavaCore.VERSION_1_8);
+		Set<String> sourceFolders = new TreeSet<String>();
+		nextFile: for (String file : files) {
+			for (String sourceFolder : sourceFolders) {
+				if (file.startsWith(sourceFolder + File.separator))
+					continue nextFile;
+			}
+			String packageName = scanPackageName(readFile(file), scanner);
+			String packagePath = File.separator;
+			if (packageName != null && packageName.length() > 0)
+				packagePath = File.separator + packageName.replace('.', File.separatorChar) + File.separator;
+			int index = file.lastIndexOf(packagePath);
+			if (index >= 0)
+				sourceFolders.add(file.substring(0, index));
+		}
+		return sourceFolders.toArray(new String[sourceFolders.size()]);
+	}
+
+	// the name in the package declaration, or null
+	private static String scanPackageName(char[] source, IScanner scanner) {
+		scanner.setSource(source);
+		try {
+			int token;
+			while ((token = scanner.getNextToken()) != ITerminalSymbols.TokenNameEOF) {
+				if (token == ITerminalSymbols.TokenNameAT) {
+					continue; // annotations of the package
+				} else if (token != ITerminalSymbols.TokenNamepackage) {
+					return null;
+				}
+				StringBuilder packageName = new StringBuilder();
+				while ((token = scanner.getNextToken()) != ITerminalSymbols.TokenNameSEMICOLON) {
+					if (token == ITerminalSymbols.TokenNameIdentifier)
+						packageName.append(scanner.getCurrentTokenSource());
+					else if (token == ITerminalSymbols.TokenNameDOT)
+						packageName.append('.');
+					else
+						return null;
+				}
+				return packageName.toString();
+			}
+		} catch (InvalidInputException e) {
+		}
+		return null;
+	}
+
+	private static char[] readFile(String file) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			StringBuilder contents = new StringBuilder();
+			char[] buf = new char[8192];
+			int len;
+			while ((len = in.read(buf)) > 0)
+				contents.append(buf, 0, len);
+			char[] source = new char[contents.length()];
+			contents.getChars(0, source.length, source, 0);
+			return source;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Converts the facts of both versions and their changes to LSDiff facts,
+	 * and writes them to the LSDiff input files (the 2KB and delta files of
+	 * MetaInfo).
+	 */
+	private static void writeLSDiffInput(FactBase fb1, FactBase fb2, ChangeSet cs) throws IOException {
+		File dir = new File(MetaInfo.lsclipse2KB).getParentFile();
+		if (!dir.exists()) {
+			dir.mkdirs();
+		}
+		BufferedWriter lsd2kbfile = new BufferedWriter(new FileWriter(MetaInfo.lsclipse2KB));
+		try {
+			for (Fact f : fb1) {
+				LSDFact lsdf = makeLSDFact(f, "before");
+				if (lsdf != null)
+					lsd2kbfile.append(lsdf.toString()+".\n");
+			}
+			for (Fact f : fb2) {
+				LSDFact lsdf = makeLSDFact(f, "after");
+				if (lsdf != null)
+					lsd2kbfile.append(lsdf.toString()+".\n");
+			}
+		} finally {
+			lsd2kbfile.close();
+		}
+		BufferedWriter lsddeltafile = new BufferedWriter(new FileWriter(MetaInfo.lsclipseDelta));
+		try {
+			for (AtomicChange ac : cs) {
+				LSDFact lsdf = makeLSDFact(ac);
+				if (lsdf != null)
+					lsddeltafile.append(lsdf.toString()+".\n");
+			}
+		} finally {
+			lsddeltafile.close();
+		}
+	}
+
 	//if LSDiff is not installed, install the necessary files into metainfo directories 
 	private static void installLSDiff() {	
 		//first check if folders: input, output, and fdb are present
@@ -337,37 +500,37 @@ public class LSDiffRunner {
 		//if 2KB_lsdPred not installed, install it now
 		File included2KBFile = MetaInfo.included2kb;
 		if (!included2KBFile.exists()) {
-			InputStream is = lsclipse.LSclipse.getDefault().getClass().getResourceAsStream("/lib/"+included2KBFile.getName());
+			InputStream is = LSDiffRunner.class.getResourceAsStream("/lib/"+included2KBFile.getName());
 			writeStreamToFile(is, included2KBFile);
 		}
 		//if deltaKB_lsdPred not installed, install it now
 		File includedDeltaKBFile = MetaInfo.includedDelta;
 		if (!includedDeltaKBFile.exists()) {
-			InputStream is = lsclipse.LSclipse.getDefault().getClass().getResourceAsStream("/lib/"+includedDeltaKBFile.getName());
+			InputStream is = LSDiffRunner.class.getResourceAsStream("/lib/"+includedDeltaKBFile.getName());
 			writeStreamToFile(is, includedDeltaKBFile);
 		}
 		//if winnowingrules not installed, install it now
 		File winnowingRulesFile = new File(MetaInfo.winnowings);
 		if (!winnowingRulesFile.exists()) {
-			InputStream is = lsclipse.LSclipse.getDefault().getClass().getResourceAsStream("/lib/"+winnowingRulesFile.getName());
+			InputStream is = LSDiffRunner.class.getResourceAsStream("/lib/"+winnowingRulesFile.getName());
 			writeStreamToFile(is, winnowingRulesFile);
 		}
 		//if newwinnowingrules not installed, install it now
 		File typeLevelWinnowingRulesFile = new File(MetaInfo.winnowings);
 		if (!typeLevelWinnowingRulesFile.exists()) {
-			InputStream is = lsclipse.LSclipse.getDefault().getClass().getResourceAsStream("/lib/"+typeLevelWinnowingRulesFile.getName());
+			InputStream is = LSDiffRunner.class.getResourceAsStream("/lib/"+typeLevelWinnowingRulesFile.getName());
 			writeStreamToFile(is, typeLevelWinnowingRulesFile);
 		}
 		//if deltaKB_primed_lsdPred not installed, install it now
 		File includedPrimedDeltaKBFile = new File(MetaInfo.lsclipseRefactorDeltaPrimed);
 		if (!includedPrimedDeltaKBFile.exists()) {
-			InputStream is = lsclipse.LSclipse.getDefault().getClass().getResourceAsStream("/lib/"+includedPrimedDeltaKBFile.getName());
+			InputStream is = LSDiffRunner.class.getResourceAsStream("/lib/"+includedPrimedDeltaKBFile.getName());
 			writeStreamToFile(is, includedPrimedDeltaKBFile);
 		}
 		// if primed1 is not installed, install it now 
 		File includedPred1File = new File(MetaInfo.lsclipseRefactorPred);
 		if (!includedPred1File.exists()) {
-			InputStream is = lsclipse.LSclipse.getDefault().getClass().getResourceAsStream("/lib/"+includedPred1File.getName());
+			InputStream is = LSDiffRunner.class.getResourceAsStream("/lib/"+includedPred1File.getName());
 			writeStreamToFile(is, includedPred1File);
 		}
 	}
@@ -414,6 +577,50 @@ public class LSDiffRunner {
 		
 	}
 
+	/** Extracts the facts of java files that are not in a workspace. */
+	static class SourceFactGetter implements Callable<FactBase> {
+		String[] files_;
+		String[] sourceFolders_;
+
+		public SourceFactGetter(String[] files, String[] sourceFolders) {
+			super();
+			files_ = files;
+			sourceFolders_ = sourceFolders;
+		}
+
+		@Override
+		public FactBase call() throws Exception {
+			ASTParser parser = ASTParser.newParser(AST.JLS8);
+			Map<String, String> options = JavaCore.getOptions();
+			JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+			parser.setCompilerOptions(options);
+			parser.setResolveBindings(true);
+			parser.setBindingsRecovery(true);
+			parser.setEnvironment(new String[0], sourceFolders_, null, true);
+			final FactBase facts = new FactBase();
+			FileASTRequestor requestor = new FileASTRequestor() {
+				@Override
+				public void acceptAST(String sourceFilePath, CompilationUnit ast) {
+					try {
+						ASTVisitorAtomicChange acvisitor = new ASTVisitorAtomicChange();
+						ast.accept(acvisitor);
+						for (Fact f : acvisitor.facts) {
+							// bindings that could not be resolved give null names
+							if (!f.params.contains(null))
+								facts.add(f);
+						}
+					} catch (Exception e) {
+						System.out.println("Exception in " + sourceFilePath + ": " + e.getMessage());
+					}
+				}
+			};
+			String[] encodings = new String[files_.length];
+			Arrays.fill(encodings, "UTF-8");
+			parser.createASTs(files_, encodings, new String[0], requestor, null);
+			return facts;
+		}
+	}
+
 	private static LSDPredicate makeLSDPredicate(Fact.FactTypes type, String modifier) {
 		switch (type) {
 		case PACKAGE: 			return LSDPredicate.getPredicate(modifier+"_"+"package");
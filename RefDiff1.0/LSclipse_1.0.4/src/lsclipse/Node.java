@@ -8,6 +8,7 @@ public class Node {
 	private boolean visited;
 	private RefactoringQuery refQry;
 	private int numFound_;
+	private long evalTime_;
 	
 	public Node(){
 		this.children = new ArrayList<Node>(); 
@@ -37,6 +38,17 @@ public class Node {
 	public int numFound() {
 		return numFound_;
 	}
+
+	public void setEvalTime(long evalTime) {
+		evalTime_ = evalTime;
+	}
+
+	/**
+	 * @return The time, in milliseconds, the rule took to evaluate.
+	 */
+	public long evalTime() {
+		return evalTime_;
+	}
 	
 	@Override
 	public String toString() {
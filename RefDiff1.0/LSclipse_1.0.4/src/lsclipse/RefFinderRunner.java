@@ -0,0 +1,138 @@
+package lsclipse;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs RefFinder on pairs of project versions without Eclipse:
+ *
+ * <pre>
+ * RefFinderRunner [-threads &lt;n&gt;] &lt;projects folder&gt; &lt;output folder&gt; [&lt;project&gt;...]
+ * </pre>
+ *
+ * The old version of a project is in &lt;projects folder&gt;/&lt;project&gt;/prev
+ * and the new one in &lt;projects folder&gt;/&lt;project&gt;/curr. The refactorings
+ * found are written to &lt;output folder&gt;/&lt;project&gt;.rub, and the number
+ * of refactorings found by each rule and the time it took to evaluate, in
+ * milliseconds, to &lt;output folder&gt;/&lt;project&gt;.rules. Without project
+ * names, all the projects of the projects folder are run. The facts are
+ * extracted by as many threads as there are processors, unless -threads is
+ * given.
+ */
+public class RefFinderRunner {
+
+	private static final String USAGE = "Usage: RefFinderRunner [-threads <n>] <projects folder> <output folder> [<project>...]";
+
+	public static void main(String[] args) {
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int first = 0;
+		if (args.length > 1 && args[0].equals("-threads")) {
+			try {
+				numThreads = Integer.parseInt(args[1]);
+			} catch (NumberFormatException e) {
+				numThreads = 0;
+			}
+			if (numThreads < 1) {
+				System.err.println("Not a number of threads: " + args[1]);
+				System.exit(1);
+			}
+			first = 2;
+		}
+		if (args.length < first + 2) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		File projectsDir = new File(args[first]);
+		File outputDir = new File(args[first + 1]);
+
+		List<String> projects = new ArrayList<String>();
+		if (args.length > first + 2) {
+			projects.addAll(Arrays.asList(args).subList(first + 2, args.length));
+		} else {
+			String[] names = projectsDir.list();
+			if (names == null) {
+				System.err.println("Not a folder: " + projectsDir);
+				System.exit(1);
+			}
+			Arrays.sort(names);
+			for (String name : names) {
+				if (new File(new File(projectsDir, name), "prev").isDirectory())
+					projects.add(name);
+			}
+		}
+
+		int status = run(projectsDir, outputDir, projects, numThreads);
+		// the DiskManager thread of the TyRuBa pager outlives the FrontEnds
+		System.exit(status);
+	}
+
+	/**
+	 * Runs RefFinder on the given projects of the projects folder.
+	 *
+	 * @return 0 if the refactorings of all the projects were found, 1 if the
+	 *         fact extraction failed for some of them.
+	 */
+	public static int run(File projectsDir, File outputDir, List<String> projects, int numThreads) {
+		outputDir.mkdirs();
+		// the LSDiff input files and the fact database (see MetaInfo)
+		if (System.getProperty("lsclipse.base") == null)
+			System.setProperty("lsclipse.base",
+					new File(outputDir, "lsclipse").getAbsolutePath());
+
+		int status = 0;
+		for (String project : projects) {
+			long start = System.currentTimeMillis();
+			File projectDir = new File(projectsDir, project);
+			System.out.println("Running RefFinder on " + project);
+			if (!new LSDiffRunner(numThreads).doHeadlessFactExtraction(new File(
+					projectDir, "prev"), new File(projectDir, "curr"))) {
+				System.out.println("Fact extraction failed for " + project);
+				status = 1;
+				continue;
+			}
+			TopologicalSort tSort = new TopologicalSort();
+			tSort.sort(new File(outputDir, project + ".rub").getAbsolutePath());
+			try {
+				writeRuleReport(tSort, new File(outputDir, project + ".rules"));
+			} catch (IOException e) {
+				System.out.println("IO Exception: " + e.getMessage());
+			}
+			System.out.println("Total time for " + project + "(ms): "
+					+ (System.currentTimeMillis() - start));
+		}
+		return status;
+	}
+
+	/**
+	 * Writes one line per rule evaluated by the sort: its name, the number of
+	 * refactorings it found and the time it took to evaluate, in milliseconds.
+	 */
+	static void writeRuleReport(TopologicalSort tSort, File reportFile)
+			throws IOException {
+		List<Node> rules = new ArrayList<Node>(tSort.getGraph());
+		Collections.sort(rules, new Comparator<Node>() {
+			public int compare(Node n1, Node n2) {
+				return n1.getRefQry().getName().compareTo(
+						n2.getRefQry().getName());
+			}
+		});
+		PrintWriter out = new PrintWriter(new FileWriter(reportFile));
+		try {
+			out.println("rule\tfound\ttime");
+			for (Node rule : rules) {
+				out.println(rule.getRefQry().getName() + "\t" + rule.numFound()
+						+ "\t" + rule.evalTime());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package lsclipse;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+/**
+ * Collects the refactorings inferred in a run of {@link TopologicalSort}. Each
+ * distinct result is written once to the output file and asserted as a fact,
+ * so that the rules that depend on it can use it. Facts are asserted in
+ * batches, each parsed at once, when {@link #flush()} is called.
+ */
+class ResultSink implements Closeable {
+	private final FrontEnd frontend;
+	private final Writer writer;
+	private final Set<String> written = new HashSet<String>();
+	private final StringBuilder pending = new StringBuilder();
+
+	ResultSink(FrontEnd frontend, File outputFile) throws IOException {
+		this.frontend = frontend;
+		this.writer = new BufferedWriter(new FileWriter(outputFile));
+	}
+
+	/**
+	 * @return false if the result was added before.
+	 */
+	boolean add(String result) throws IOException {
+		if (!written.add(result))
+			return false;
+		String pred = "\n" + result + ".";
+		writer.write(pred);
+		pending.append(pred);
+		return true;
+	}
+
+	/**
+	 * Asserts the facts added since the last flush. No rule queries the
+	 * refactoring it infers, so the facts of a rule are only needed once it
+	 * has been fully evaluated.
+	 */
+	void flush() throws IOException, ParseException, TypeModeError {
+		writer.flush();
+		if (pending.length() > 0) {
+			String facts = pending.toString();
+			pending.setLength(0);
+			frontend.parse(facts);
+		}
+	}
+
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,86 @@
+package lsclipse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Times the refactoring inference of {@link TopologicalSort} on the facts of
+ * two versions of a project, with and without tabling the facts:
+ *
+ * <pre>
+ * TablingBenchmark &lt;old folder&gt; &lt;new folder&gt; [&lt;rounds&gt;]
+ * </pre>
+ *
+ * The facts are extracted once. Each round sorts them without tabling and
+ * then with tabling, and the refactorings found both ways are compared. The
+ * first round warms up the JIT and is not counted.
+ */
+public class TablingBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: TablingBenchmark <old folder> <new folder> [<rounds>]");
+			System.exit(1);
+		}
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		File outputDir = File.createTempFile("tabling", "");
+		if (!outputDir.delete() || !outputDir.mkdir())
+			throw new IOException("Could not create " + outputDir);
+		// the LSDiff input files and the fact database (see MetaInfo)
+		if (System.getProperty("lsclipse.base") == null)
+			System.setProperty("lsclipse.base",
+					new File(outputDir, "lsclipse").getAbsolutePath());
+		if (!new LSDiffRunner().doHeadlessFactExtraction(new File(args[0]),
+				new File(args[1]))) {
+			System.err.println("Fact extraction failed");
+			System.exit(1);
+		}
+
+		File untabledFile = new File(outputDir, "untabled.rub");
+		File tabledFile = new File(outputDir, "tabled.rub");
+		long untabledTime = 0, tabledTime = 0;
+		for (int round = 0; round <= rounds; round++) {
+			long start = System.nanoTime();
+			sort(false, untabledFile);
+			long afterUntabled = System.nanoTime();
+			sort(true, tabledFile);
+			long afterTabled = System.nanoTime();
+			if (round > 0) {
+				untabledTime += afterUntabled - start;
+				tabledTime += afterTabled - afterUntabled;
+			}
+		}
+		System.out.println("untabled(ms/round): " + untabledTime / rounds
+				/ 1000000);
+		System.out.println("tabled(ms/round): " + tabledTime / rounds
+				/ 1000000);
+		System.out.println("same refactorings: "
+				+ readLines(untabledFile).equals(readLines(tabledFile)));
+		// the DiskManager thread of the TyRuBa pager outlives the FrontEnds
+		System.exit(0);
+	}
+
+	private static void sort(boolean tabling, File outputFile) {
+		TopologicalSort tSort = new TopologicalSort();
+		tSort.tabling = tabling;
+		tSort.sort(outputFile.getAbsolutePath());
+	}
+
+	private static Set<String> readLines(File file) throws IOException {
+		Set<String> lines = new HashSet<String>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null)
+				lines.add(line);
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+
+}
@@ -1,16 +1,21 @@
 package lsclipse;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,9 +55,7 @@ import lsclipse.rules.SeparateQueryFromModifier;
 import metapackage.MetaInfo;
 import tyRuBa.engine.FrontEnd;
 import tyRuBa.modes.TypeModeError;
-import tyRuBa.parser.ParseException;
 import tyRuBa.tdbc.Connection;
-import tyRuBa.tdbc.PreparedQuery;
 import tyRuBa.tdbc.ResultSet;
 import tyRuBa.tdbc.TyrubaException;
 
@@ -63,6 +66,10 @@ public class TopologicalSort {
 	File dbDir = null;
 	int cachesize = FrontEnd.defaultPagerCacheSize;
 	private boolean backgroundPageCleaning = false;
+	int nThreads = Runtime.getRuntime().availableProcessors();
+	// the rules join the same fact predicates over and over with different
+	// bound arguments
+	boolean tabling = true;
 
 	public Map<String, List<String>> dependents = new HashMap<String, List<String>>();
 
@@ -71,11 +78,9 @@ public class TopologicalSort {
 	}
 
 	private Set<Node> graph;
-	private ArrayList<String> written_strs;
 
 	public TopologicalSort() {
 		graph = new HashSet<Node>();
-		written_strs = new ArrayList<String>();
 
 		RefactoringQuery move_field = new RefactoringQuery(
 				"move_field",
@@ -698,37 +703,115 @@ public class TopologicalSort {
 		// ////////////////////////////////
 	}
 
-	public void inferRefactoring(File fileName, Node curr) {
-		if (curr.isVisited())
-			return;
+	/**
+	 * Evaluates the rules of the graph level by level. A rule is one level
+	 * above the highest of its children, so the rules of a level only use the
+	 * results of lower levels: they are evaluated concurrently, and their
+	 * results are asserted together once the whole level is done.
+	 */
+	void inferRefactorings(ResultSink results) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		try {
+			for (List<Node> level : computeLevels()) {
+				List<Future<Map<String, List<String>>>> futures = new ArrayList<Future<Map<String, List<String>>>>();
+				for (final Node curr : level) {
+					futures.add(executor.submit(new Callable<Map<String, List<String>>>() {
+						public Map<String, List<String>> call() {
+							return inferRefactoring(curr);
+						}
+					}));
+				}
+				for (int i = 0; i < level.size(); i++) {
+					Node curr = level.get(i);
+					try {
+						for (Map.Entry<String, List<String>> found : futures
+								.get(i).get().entrySet()) {
+							if (results.add(found.getKey())) {
+								curr.incrementNumFound();
+								dependents.put(found.getKey(), found.getValue());
+							}
+						}
+					} catch (ExecutionException e) {
+						System.out.println("Got exception: "
+								+ e.getCause().getMessage());
+					} catch (IOException e) {
+						System.out.println("IO Exception: " + e.getMessage());
+					}
+				}
+				try {
+					results.flush();
+				} catch (IOException e) {
+					System.out.println("IO Exception: " + e.getMessage());
+				} catch (Exception e) {
+					System.out.println("Got exception: " + e.getMessage());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The levels of the rules not visited yet, lowest first.
+	 */
+	private List<List<Node>> computeLevels() {
+		Map<Node, Integer> levelOf = new HashMap<Node, Integer>();
+		List<List<Node>> levels = new ArrayList<List<Node>>();
+		for (Node query : graph) {
+			computeLevel(query, levelOf, levels);
+		}
+		return levels;
+	}
 
-		curr.setVisited(true);
+	private int computeLevel(Node curr, Map<Node, Integer> levelOf,
+			List<List<Node>> levels) {
+		Integer known = levelOf.get(curr);
+		if (known != null)
+			return known;
+
+		int level = 0;
 		for (Node child : curr.getChildren()) {
-			inferRefactoring(fileName, child);
+			level = Math.max(level, computeLevel(child, levelOf, levels) + 1);
+		}
+		levelOf.put(curr, level);
+		if (!curr.isVisited()) {
+			curr.setVisited(true);
+			while (levels.size() <= level)
+				levels.add(new ArrayList<Node>());
+			levels.get(level).add(curr);
 		}
+		return level;
+	}
 
+	/**
+	 * Runs the query of a rule. The fact base is shared and is not thread-safe,
+	 * so only the checks of the results run concurrently with other rules.
+	 * 
+	 * @return The results found, each with its dependents.
+	 */
+	private Map<String, List<String>> inferRefactoring(Node curr) {
+		Map<String, List<String>> found = new LinkedHashMap<String, List<String>>();
+		long start = System.currentTimeMillis();
 		try {
 			Connection con = new Connection(frontend);
 			RefactoringQuery refactoring = curr.getRefQry();
 			System.out.println("REF BEING CHECKED: " + refactoring.getName());
-			PreparedQuery query = con.prepareQuery(refactoring.getQuery());
-			ResultSet rs = query.executeQuery();
+			ResultSet rs = executeQuery(con, refactoring.getQuery());
 
-			while (rs.next()) {
+			while (next(rs)) {
 				Rule currentRule = ruleFactory.returnRuleByName(refactoring
 						.getName());
 				if (currentRule != null) {
 					String result = currentRule.checkAdherence(rs);
-					storeResult(fileName, curr, rs, result);
+					storeResult(found, curr, rs, result);
 				} else if (refactoring.getName().equals(
 						"self_encapsulate_field")) {
 					String fieldName = rs.getString("?fFullName");
 					String checkForStragglers = "before_accesses(\""
 							+ fieldName + "\", ?mFullName), after_accesses(\""
 							+ fieldName + "\", ?mFullName)";
-					PreparedQuery query2 = con.prepareQuery(checkForStragglers);
-					ResultSet rs2 = query2.executeQuery();
-					if (rs2.next())
+					ResultSet rs2 = executeQuery(con, checkForStragglers);
+					if (next(rs2))
 						continue;
 
 					checkForStragglers = "added_accesses(\""
@@ -736,23 +819,35 @@ public class TopologicalSort {
 							+ "\", ?mFullName), NOT(added_getter(?mFullName, \""
 							+ fieldName + "\");added_setter(?mFullName, \""
 							+ fieldName + "\"))";
-					query2 = con.prepareQuery(checkForStragglers);
-					rs2 = query2.executeQuery();
-					if (rs2.next())
+					rs2 = executeQuery(con, checkForStragglers);
+					if (next(rs2))
 						continue;
 
 					String writeTo = buildResult(refactoring, rs);
-					storeResult(fileName, curr, rs, writeTo);
+					storeResult(found, curr, rs, writeTo);
 				} else {
 					String writeTo = buildResult(refactoring, rs);
-					storeResult(fileName, curr, rs, writeTo);
+					storeResult(found, curr, rs, writeTo);
 				}
 			}
-		} catch (IOException e) {
-			System.out.println("IO Exception: " + e.getMessage());
 		} catch (Exception e) {
 			System.out.println("Got exception: " + e.getMessage());
 		}
+		curr.setEvalTime(System.currentTimeMillis() - start);
+		return found;
+	}
+
+	private ResultSet executeQuery(Connection con, String query)
+			throws TyrubaException {
+		synchronized (frontend) {
+			return con.prepareQuery(query).executeQuery();
+		}
+	}
+
+	private boolean next(ResultSet rs) throws TyrubaException {
+		synchronized (frontend) {
+			return rs.next();
+		}
 	}
 
 	private String buildResult(RefactoringQuery rq, ResultSet rs)
@@ -772,22 +867,12 @@ public class TopologicalSort {
 		return result + ")";
 	}
 
-	private void storeResult(File fileName, Node curr, ResultSet rs,
-			String result) throws IOException, ParseException, TypeModeError {
-		if (result != null && !written_strs.contains(result)) {
-			written_strs.add(result);
-			curr.incrementNumFound();
-			String pred = "\n" + result + ".";
+	private void storeResult(Map<String, List<String>> found, Node curr,
+			ResultSet rs, String result) {
+		if (result != null && !found.containsKey(result)) {
 			List<String> vars1 = substituteInQueryString(curr.getRefQry()
 					.getQuery(), rs);
-			dependents.put(result, vars1);
-			
-			FileWriter fileWriter = new FileWriter(fileName, true);
-			fileWriter.write(pred);
-			fileWriter.flush();
-			fileWriter.close();
-
-			frontend.parse(pred);
+			found.put(result, vars1);
 		}
 	}
 
@@ -802,6 +887,7 @@ public class TopologicalSort {
 						backgroundPageCleaning);
 		}
 		frontend.setCacheSize(this.cachesize);
+		frontend.setTabling(tabling);
 	}
 
 	public void sort(String outputFile) {
@@ -809,21 +895,18 @@ public class TopologicalSort {
 			frontend = null;
 			ensureFrontEnd();
 			frontend.load(MetaInfo.lsclipseRefactorPred);
-			frontend.load(MetaInfo.lsclipse2KB);
-			frontend.load(MetaInfo.lsclipseDelta);
-			// Delete the output file
-			File f = new File(outputFile);
-			if (f.exists()) {
-				// delete if exists
-				f.delete();
-			}
-			for (Node query : graph) {
-				inferRefactoring(f, query);
+			frontend.loadFacts(MetaInfo.lsclipse2KB);
+			frontend.loadFacts(MetaInfo.lsclipseDelta);
+			// The output file is overwritten
+			ResultSink results = new ResultSink(frontend, new File(outputFile));
+			try {
+				inferRefactorings(results);
+			} finally {
+				results.close();
 			}
 			frontend.shutdown();
 			//frontend.finalize();
 			frontend = null;
-			written_strs = null;
 		} catch (Exception e) {
 			System.out.println("Something REALLY BAD has happened!");
 			e.printStackTrace();
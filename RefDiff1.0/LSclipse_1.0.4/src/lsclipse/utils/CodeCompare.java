@@ -10,24 +10,38 @@ public class CodeCompare {
 	// the shorter code fragment.
 	public static boolean compare(String left, String right) {
 		String shorter = getShorterString(left, right);
-		String lcs = LCS.getLCS(left, right);
-		double similarity = (double) lcs.length() / (double) shorter.length();
-		if (similarity >= SIMILARITY_THRESHOLD)
-			return true;
-
-		return false;
+		if (shorter.length() == 0)
+			return false;
+		return LCS.hasCommonSubsequence(left, right,
+				minLength(SIMILARITY_THRESHOLD, shorter.length(), false));
 	}
 
 	// Make sure the longest common string is at most SIMILARITY_THRESHOLD of
 	// the longer code fragment.
 	public static boolean contrast(String left, String right) {
 		String longer = getLongerString(left, right);
-		String lcs = LCS.getLCS(left, right);
-		double similarity = (double) lcs.length() / (double) longer.length();
-		if (similarity <= DIFFERNCE_THRESHOLD)
-			return true;
+		if (longer.length() == 0)
+			return false;
+		return !LCS.hasCommonSubsequence(left, right,
+				minLength(DIFFERNCE_THRESHOLD, longer.length(), true));
+	}
+
+	// The smallest LCS length whose similarity to length is at least (or, if
+	// strict, above) the threshold.
+	private static int minLength(double threshold, int length, boolean strict) {
+		int lcsLength = (int) Math.ceil(threshold * length);
+		while (lcsLength > 0
+				&& isSimilar(lcsLength - 1, length, threshold, strict))
+			lcsLength--;
+		while (!isSimilar(lcsLength, length, threshold, strict))
+			lcsLength++;
+		return lcsLength;
+	}
 
-		return false;
+	private static boolean isSimilar(int lcsLength, int length,
+			double threshold, boolean strict) {
+		double similarity = (double) lcsLength / (double) length;
+		return strict ? similarity > threshold : similarity >= threshold;
 	}
 
 	private static String getShorterString(String left, String right) {
@@ -10,7 +10,10 @@ public class MetaInfo {
 	public static final double accuracy =0.75;
 	public static final int maxException=10;
 
-	public static final String baseDir = lsclipse.LSclipse.getDefault().getStateLocation().toOSString();
+	// outside of Eclipse (see lsclipse.RefFinderRunner) the lsclipse.base folder
+	public static final String baseDir = System.getProperty("lsclipse.base") != null
+			? System.getProperty("lsclipse.base")
+			: lsclipse.LSclipse.getDefault().getStateLocation().toOSString();
 //	public static String srcDir = baseDir+"\\input";
 //	public static String resDir = baseDir+"\\output";
 //	public static String fdbDir = baseDir+"\\fdb";
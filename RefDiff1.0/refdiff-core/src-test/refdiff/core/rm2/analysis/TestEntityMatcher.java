@@ -0,0 +1,67 @@
+package refdiff.core.rm2.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import refdiff.core.rm2.analysis.EntityMatcher.Criterion;
+import refdiff.core.rm2.model.RelationshipType;
+import refdiff.core.rm2.model.SDModel;
+import refdiff.core.rm2.model.SDPackage;
+import refdiff.core.rm2.model.SDType;
+
+public class TestEntityMatcher {
+
+	@Test
+	public void shouldReportComparedPairs() {
+		SDModel model = new SDModel();
+		SDPackage p1 = model.before().getOrCreatePackage("p", "");
+		SDType a = model.before().createType("A", p1, "A.java");
+		SDType b = model.before().createType("B", p1, "B.java");
+		SDPackage p2 = model.after().getOrCreatePackage("q", "");
+		SDType a2 = model.after().createType("A2", p2, "A2.java");
+		model.after().createType("C", p2, "C.java");
+		model.after().createType("D", p2, "D.java");
+		model.initRelationships();
+
+		AnalysisMetrics metrics = new AnalysisMetrics();
+		new EntityMatcher<SDType>()
+			.reportingTo(metrics)
+			.using(new SimilarityIndex<SDType>() {
+				public double similarity(SDType e1, SDType e2) {
+					return 1.0;
+				}
+			})
+			// only pairs with the same initial are compared
+			.addCriterion(new Criterion<SDType>(RelationshipType.MOVE_TYPE, 0.5) {
+				protected Object keyBefore(SDModel m, SDType typeBefore) {
+					return typeBefore.simpleName().charAt(0);
+				}
+
+				protected Object keyAfter(SDModel m, SDType typeAfter) {
+					return typeAfter.simpleName().charAt(0);
+				}
+			})
+			// D is never compared, and comparing B with C fails
+			.addCriterion(new Criterion<SDType>(RelationshipType.RENAME_TYPE, 0.5) {
+				protected boolean canMatch(SDModel m, SDType typeBefore, SDType typeAfter) {
+					if (typeBefore.simpleName().equals("B") && typeAfter.simpleName().equals("C")) {
+						throw new IllegalStateException();
+					}
+					return false;
+				}
+
+				protected Object keyAfter(SDModel m, SDType typeAfter) {
+					return typeAfter.simpleName().equals("D") ? null : super.keyAfter(m, typeAfter);
+				}
+			})
+			.match(model, model.before().getUnmatchedTypes(), model.after().getUnmatchedTypes());
+
+		assertTrue(model.hasRelationship(RelationshipType.MOVE_TYPE, a, a2));
+		assertEquals(1, metrics.getScoredPairs());
+		assertEquals(2, metrics.getSkippedPairs());
+		assertEquals(1, metrics.getFailedPairs());
+	}
+
+}
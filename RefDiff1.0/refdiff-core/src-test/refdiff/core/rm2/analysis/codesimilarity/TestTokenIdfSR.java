@@ -0,0 +1,35 @@
+package refdiff.core.rm2.analysis.codesimilarity;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.junit.Test;
+
+public class TestTokenIdfSR {
+
+	@Test
+	public void shouldIgnoreTokensNotCounted() {
+		TokenIdfSRBuilder builder = new TokenIdfSRBuilder();
+		TokenIdfSR counted = (TokenIdfSR) builder.buildSourceRepresentation(null, "a b c".toCharArray(), node(5));
+		// partial representations are not counted, so z is in no document
+		TokenIdfSR partial = (TokenIdfSR) builder.buildPartialSourceRepresentation("a b z".toCharArray(), node(5));
+		TokenIdfSR notCounted = (TokenIdfSR) builder.buildPartialSourceRepresentation("y z".toCharArray(), node(3));
+		builder.onComplete();
+
+		assertEquals(0.1, builder.idf("a"), 1e-9);
+		assertEquals(0.0, builder.idf("z"), 0.0);
+		// a and b in common, c and z weighing nothing
+		assertEquals(2.0 / 3.0, counted.similarity(partial), 1e-9);
+		assertEquals(1.0, partial.partialSimilarity(counted), 1e-9);
+		assertEquals(0.0, counted.similarity(notCounted), 0.0);
+		assertEquals(0.0, notCounted.partialSimilarity(counted), 0.0);
+	}
+
+	private static ASTNode node(int length) {
+		ASTNode node = AST.newAST(AST.JLS8).newBlock();
+		node.setSourceRange(0, length);
+		return node;
+	}
+
+}
@@ -0,0 +1,95 @@
+package refdiff.core.rm2.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestSDModel {
+
+	@Test
+	public void shouldMatchEntitiesWithTheSameKey() {
+		SDModel model = new SDModel();
+		SDType typeBefore = model.before().createType("A", model.before().getOrCreatePackage("p", ""), "A.java");
+		SDMethod m = model.before().createMethod("m()", typeBefore, false);
+		SDMethod n = model.before().createMethod("n()", typeBefore, false);
+		SDType typeAfter = model.after().createType("A", model.after().getOrCreatePackage("p", ""), "A.java");
+		SDMethod mAfter = model.after().createMethod("m()", typeAfter, false);
+		SDMethod o = model.after().createMethod("o()", typeAfter, false);
+
+		model.initRelationships();
+
+		assertTrue(model.entitiesMatch(typeBefore, typeAfter));
+		assertTrue(model.entitiesMatch(m, mAfter));
+		assertSame(mAfter, model.after(m));
+		assertSame(m, model.before(mAfter));
+		assertTrue(model.hasRelationship(RelationshipType.SAME, m, mAfter));
+		assertFalse(model.hasRelationship(RelationshipType.SAME, n, mAfter));
+		assertFalse(model.isMatched(n));
+		assertTrue(model.before().getUnmatchedTypes().isEmpty());
+		assertEquals(Arrays.asList(n), new ArrayList<SDMethod>(model.before().getUnmatchedMethods()));
+		assertEquals(Arrays.asList(o), new ArrayList<SDMethod>(model.after().getUnmatchedMethods()));
+	}
+
+	@Test
+	public void shouldKeepRelationshipsOfEachEntityInOrder() {
+		SDModel model = new SDModel();
+		SDType typeBefore = model.before().createType("A", model.before().getOrCreatePackage("p", ""), "A.java");
+		List<SDMethod> methods = new ArrayList<SDMethod>();
+		for (int i = 0; i < 20; i++) {
+			methods.add(model.before().createMethod("m" + i + "()", typeBefore, false));
+		}
+		SDType typeAfter = model.after().createType("A", model.after().getOrCreatePackage("p", ""), "A.java");
+		SDMethod extracted = model.after().createMethod("extracted()", typeAfter, false);
+		SDMethod other = model.after().createMethod("other()", typeAfter, false);
+
+		model.initRelationships();
+		// more relationships than entities, so that the relationship arrays grow
+		for (SDMethod method : methods) {
+			assertTrue(model.addRelationship(RelationshipType.EXTRACT_METHOD, method, extracted, 1));
+			assertTrue(model.addRelationship(RelationshipType.EXTRACT_METHOD, method, other, 1));
+			assertTrue(model.addRelationship(RelationshipType.INLINE_METHOD, method, extracted, 1));
+		}
+
+		for (SDMethod method : methods) {
+			assertTrue(model.hasRelationship(RelationshipType.EXTRACT_METHOD, method, extracted));
+			assertTrue(model.hasRelationship(RelationshipType.EXTRACT_METHOD, method, other));
+			assertTrue(model.hasRelationship(RelationshipType.INLINE_METHOD, method, extracted));
+			assertFalse(model.hasRelationship(RelationshipType.INLINE_METHOD, method, other));
+			assertFalse(model.isMatched(method));
+		}
+		assertTrue(model.entitiesMatch(typeBefore, typeAfter));
+		assertFalse(model.isMatched(extracted));
+	}
+
+	@Test
+	public void shouldDiscardRelationshipsWhenInitializedAgain() {
+		SDModel model = new SDModel();
+		SDType typeBefore = model.before().createType("A", model.before().getOrCreatePackage("p", ""), "A.java");
+		SDMethod m = model.before().createMethod("m()", typeBefore, false);
+		SDType typeAfter = model.after().createType("A", model.after().getOrCreatePackage("p", ""), "A.java");
+		SDMethod n = model.after().createMethod("n()", typeAfter, false);
+
+		model.initRelationships();
+		assertTrue(model.addRelationship(RelationshipType.RENAME_METHOD, m, n, 1));
+		assertTrue(model.entitiesMatch(m, n));
+		assertTrue(model.before().getUnmatchedMethods().isEmpty());
+		assertTrue(model.after().getUnmatchedMethods().isEmpty());
+		// a method can only be matched once
+		assertFalse(model.addRelationship(RelationshipType.MOVE_METHOD, m, n, 1));
+
+		model.initRelationships();
+		assertFalse(model.isMatched(m));
+		assertFalse(model.hasRelationship(RelationshipType.RENAME_METHOD, m, n));
+		assertTrue(model.entitiesMatch(typeBefore, typeAfter));
+		assertEquals(Arrays.asList(m), new ArrayList<SDMethod>(model.before().getUnmatchedMethods()));
+		assertEquals(Arrays.asList(n), new ArrayList<SDMethod>(model.after().getUnmatchedMethods()));
+	}
+
+}
@@ -0,0 +1,122 @@
+package refdiff.core.rm2.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestSortedEntitySet {
+
+	@Test
+	public void shouldKeepFirstEntityAddedWithEachName() {
+		SDModel model = new SDModel();
+		SDPackage p = model.before().getOrCreatePackage("p", "");
+		SDType b = model.before().createType("B", p, "B.java");
+		SDType a1 = model.before().createType("A", p, "A.java");
+		SDType a2 = model.before().createType("A", p, "A2.java");
+
+		SortedEntitySet<SDType> set = new SortedEntitySet<SDType>();
+		set.add(b);
+		set.add(a1);
+		set.add(a2);
+
+		assertEquals(2, set.size());
+		assertEquals(Arrays.asList(a1, b), list(set));
+		assertSame(a1, set.iterator().next());
+		// the duplicate stands for the entity kept with its name
+		assertTrue(set.contains(a2));
+		assertTrue(set.remove(a2));
+		assertFalse(set.contains(a1));
+		assertEquals(Arrays.asList(b), list(set));
+	}
+
+	@Test
+	public void shouldFindEntitiesOfAnotherModelByName() {
+		SDModel model = new SDModel();
+		SDPackage p = model.before().getOrCreatePackage("p", "");
+		SDType a = model.before().createType("A", p, "A.java");
+		SDType b = model.before().createType("B", p, "B.java");
+		SortedEntitySet<SDType> set = new SortedEntitySet<SDType>();
+		set.add(a);
+		set.add(b);
+
+		// same ids as a and b, other names
+		SDModel other = new SDModel();
+		SDPackage q = other.before().getOrCreatePackage("q", "");
+		SDType otherB = other.before().createType("B", q, "B.java");
+		SDType otherA = other.before().createType("A", q, "A.java");
+		assertEquals(a.getId(), otherB.getId());
+		assertFalse(set.contains(otherB));
+		assertFalse(set.remove(otherA));
+
+		// ids out of the range of the set, same names
+		SDModel same = new SDModel();
+		SDPackage samePackage = same.before().getOrCreatePackage("p", "");
+		for (int i = 0; i < 10; i++) {
+			same.before().createType("C" + i, samePackage, "C" + i + ".java");
+		}
+		SDType sameB = same.before().createType("B", samePackage, "B.java");
+		SDType sameA = same.before().createType("A", samePackage, "A.java");
+		assertTrue(set.contains(sameB));
+		assertTrue(set.remove(sameA));
+		assertFalse(set.contains(a));
+		assertEquals(Arrays.asList(b), list(set));
+	}
+
+	@Test
+	public void shouldBringBackMarkedEntitiesOnReset() {
+		SDModel model = new SDModel();
+		SDPackage p = model.before().getOrCreatePackage("p", "");
+		SDType a = model.before().createType("A", p, "A.java");
+		SDType b = model.before().createType("B", p, "B.java");
+		SDType c = model.before().createType("C", p, "C.java");
+		SortedEntitySet<SDType> set = new SortedEntitySet<SDType>();
+		set.add(c);
+		set.add(a);
+		set.add(b);
+
+		set.mark();
+		set.remove(a);
+		Iterator<SDType> iterator = set.iterator();
+		assertSame(b, iterator.next());
+		iterator.remove();
+		assertEquals(Arrays.asList(c), list(set));
+
+		set.reset();
+		assertEquals(Arrays.asList(a, b, c), list(set));
+
+		// the mark is kept, so the set can be reset again
+		set.clear();
+		assertTrue(set.isEmpty());
+		set.reset();
+		assertEquals(Arrays.asList(a, b, c), list(set));
+	}
+
+	@Test
+	public void shouldNotAddAfterTheSetIsRead() {
+		SDModel model = new SDModel();
+		SDPackage p = model.before().getOrCreatePackage("p", "");
+		SortedEntitySet<SDType> set = new SortedEntitySet<SDType>();
+		set.add(model.before().createType("A", p, "A.java"));
+		assertEquals(1, set.size());
+		try {
+			set.add(model.before().createType("B", p, "B.java"));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static <T extends SDEntity> List<T> list(SortedEntitySet<T> set) {
+		return new ArrayList<T>(set);
+	}
+
+}
@@ -11,6 +11,7 @@ import refdiff.core.rm2.model.refactoring.SDMoveAndRenameClass;
 import refdiff.core.rm2.model.refactoring.SDMoveClass;
 import refdiff.core.rm2.model.refactoring.SDRenameClass;
 import refdiff.core.util.GitServiceImpl;
+import refdiff.core.util.SnapshotProvisioner;
 
 import java.io.*;
 import java.math.BigInteger;
@@ -20,6 +21,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class TestBuilderRD {
@@ -30,6 +34,7 @@ public class TestBuilderRD {
 	private final String outputPath;
 	private boolean verbose;
 	private boolean aggregate;
+	private int nThreads;
 	private int commitsCount;
 	private int errorCommitsCount;
 	private Counter c;// = new Counter();
@@ -49,6 +54,7 @@ public class TestBuilderRD {
 		this.tempDir = tempDir;
 		this.verbose = false;
 		this.aggregate = false;
+		this.nThreads = 1;
 	}
 
 //	public TestBuilder(GitHistoryRefactoringMiner detector, String tempDir, BigInteger refactorings) {
@@ -67,6 +73,20 @@ public class TestBuilderRD {
 		return this;
 	}
 
+	/**
+	 * Analyzes the commits of each project using {@code nThreads} threads. The snapshots of the commits are
+	 * provisioned from the object database first, so that no commit is checked out (the detector should be safe to
+	 * use from several threads, as RefDiff is, which checks out the commits whose snapshots have no source files
+	 * one at a time).
+	 */
+	public TestBuilderRD parallel(int nThreads) {
+		if (nThreads < 1) {
+			throw new IllegalArgumentException("nThreads should be at least 1");
+		}
+		this.nThreads = nThreads;
+		return this;
+	}
+
 	private static class Counter {
 		int[] c = new int[5];
 	}
@@ -117,13 +137,20 @@ public class TestBuilderRD {
 			try (Repository rep = gitService.cloneIfNotExists(folder,
 					m.cloneUrl/* , m.branch */)) {
 				if (m.ignoreNonSpecifiedCommits) {
+					List<String> pending = new ArrayList<>();
 					for (String commitId : m.getCommits()) {
 						if (!readResult(commitId, outputPath).isPresent()) {
+							pending.add(commitId);
+						}
+					}
+					if (nThreads > 1) {
+						detectInParallel(rep, folder, pending, m);
+					} else {
+						for (String commitId : pending) {
 							System.out.println("Processing " + commitId + " " + folder);
 							refactoringDetector.detectAtCommit(rep, commitId, m);
 						}
 					}
-//					}
 				}
 			}
 		}
@@ -147,6 +174,50 @@ public class TestBuilderRD {
 		Assert.assertTrue(mainResultMessage, success);
 	}
 
+	private void detectInParallel(Repository rep, String folder, List<String> commitIds, ProjectMatcher m) throws Exception {
+		Set<String> provisioned = new SnapshotProvisioner(rep).provision(commitIds, nThreads);
+		// The counters are shared by every project, so results are handled one at a time
+		RefactoringHandler handler = new RefactoringHandler() {
+			@Override
+			public void handle(String commitId, List<? extends Refactoring> refactorings) {
+				synchronized (TestBuilderRD.this) {
+					m.handle(commitId, refactorings);
+				}
+			}
+
+			@Override
+			public void handleException(String commitId, Exception e) {
+				synchronized (TestBuilderRD.this) {
+					m.handleException(commitId, e);
+				}
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (String commitId : commitIds) {
+				if (provisioned.contains(commitId)) {
+					futures.add(executor.submit(() -> {
+						System.out.println("Processing " + commitId + " " + folder);
+						refactoringDetector.detectAtCommit(rep, commitId, handler);
+					}));
+				}
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		// The others are checked out, so they are analyzed one at a time
+		for (String commitId : commitIds) {
+			if (!provisioned.contains(commitId)) {
+				System.out.println("Processing " + commitId + " " + folder);
+				refactoringDetector.detectAtCommit(rep, commitId, m);
+			}
+		}
+	}
+
 	private String buildResultMessage(Counter c) {
 		double precision = ((double) get(TP, c) / (get(TP, c) + get(FP, c)));
 		double recall = ((double) get(TP, c)) / (get(TP, c) + get(FN, c));
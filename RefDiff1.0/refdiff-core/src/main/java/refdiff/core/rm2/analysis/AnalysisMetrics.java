@@ -0,0 +1,101 @@
+package refdiff.core.rm2.analysis;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in each phase of the structural diff of a commit, in nanoseconds, and the number of pairs of entities
+ * considered while matching them.
+ *
+ * <ul>
+ * <li>parse: reading the files, building their ASTs with resolved bindings and adding their entities to the model,
+ * one compilation unit at a time (both versions).</li>
+ * <li>post-process: resolving the references, supertypes and client code of the entities.</li>
+ * <li>match: relating entities that have the same key in both versions.</li>
+ * <li>detect: finding the refactorings among the remaining entities.</li>
+ * </ul>
+ *
+ * <ul>
+ * <li>scored pairs: pairs whose similarity was computed.</li>
+ * <li>skipped pairs: pairs no criterion could match, left out without being compared.</li>
+ * <li>failed pairs: pairs that could not be compared because of an error.</li>
+ * </ul>
+ */
+public class AnalysisMetrics {
+
+    private long parseTime;
+    private long postProcessTime;
+    private long matchTime;
+    private long detectTime;
+    private long scoredPairs;
+    private long skippedPairs;
+    private long failedPairs;
+
+    void addParseTime(long nanos) {
+        parseTime += nanos;
+    }
+
+    void addPostProcessTime(long nanos) {
+        postProcessTime += nanos;
+    }
+
+    void addMatchTime(long nanos) {
+        matchTime += nanos;
+    }
+
+    void addDetectTime(long nanos) {
+        detectTime += nanos;
+    }
+
+    void addPairs(long scored, long skipped, long failed) {
+        scoredPairs += scored;
+        skippedPairs += skipped;
+        failedPairs += failed;
+    }
+
+    public long getParseTime() {
+        return parseTime;
+    }
+
+    public long getPostProcessTime() {
+        return postProcessTime;
+    }
+
+    public long getMatchTime() {
+        return matchTime;
+    }
+
+    public long getDetectTime() {
+        return detectTime;
+    }
+
+    public long getScoredPairs() {
+        return scoredPairs;
+    }
+
+    public long getSkippedPairs() {
+        return skippedPairs;
+    }
+
+    public long getFailedPairs() {
+        return failedPairs;
+    }
+
+    public long getTotalTime() {
+        return parseTime + postProcessTime + matchTime + detectTime;
+    }
+
+    public long getTotalTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(getTotalTime());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("parse: %d ms, post-process: %d ms, match: %d ms, detect: %d ms, pairs scored: %d, skipped: %d, failed: %d",
+            TimeUnit.NANOSECONDS.toMillis(parseTime),
+            TimeUnit.NANOSECONDS.toMillis(postProcessTime),
+            TimeUnit.NANOSECONDS.toMillis(matchTime),
+            TimeUnit.NANOSECONDS.toMillis(detectTime),
+            scoredPairs, skippedPairs, failedPairs);
+    }
+
+}
@@ -8,20 +8,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
 import org.eclipse.jdt.core.dom.Annotation;
 import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
 import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
 import org.eclipse.jdt.core.dom.Block;
-import org.eclipse.jdt.core.dom.ClassInstanceCreation;
 import org.eclipse.jdt.core.dom.EnumDeclaration;
 import org.eclipse.jdt.core.dom.Expression;
 import org.eclipse.jdt.core.dom.FieldDeclaration;
-import org.eclipse.jdt.core.dom.IMethodBinding;
-import org.eclipse.jdt.core.dom.ITypeBinding;
-import org.eclipse.jdt.core.dom.IVariableBinding;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.Modifier;
 import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
@@ -40,9 +35,14 @@ import refdiff.core.rm2.model.SourceRepresentation;
 import refdiff.core.rm2.model.Visibility;
 import refdiff.core.util.AstUtils;
 
+/**
+ * Adds the entities of a compilation unit to the model. It takes what it needs from the bindings of the unit from
+ * {@link UnitBindings}, so it does not have to run in the thread that parsed the unit.
+ */
 public class BindingsRecoveryAstVisitor extends ASTVisitor {
 
     private final SDModel.Snapshot model;
+    private final UnitBindings bindings;
     private final String sourceFilePath;
     private final char[] fileContent;
     private final LinkedList<SDContainerEntity> containerStack;
@@ -53,9 +53,10 @@ public class BindingsRecoveryAstVisitor extends ASTVisitor {
     private final SourceRepresentationBuilder srbForMethods;
     private final SourceRepresentationBuilder srbForAttributes;
 
-    public BindingsRecoveryAstVisitor(SDModel.Snapshot model, String sourceFilePath, char[] fileContent, SDPackage sdPackage, Map<SDEntity, List<String>> postProcessReferences,
+    BindingsRecoveryAstVisitor(SDModel.Snapshot model, UnitBindings bindings, String sourceFilePath, char[] fileContent, SDPackage sdPackage, Map<SDEntity, List<String>> postProcessReferences,
         Map<SDType, List<String>> postProcessSupertypes, Map<String, List<SourceRepresentation>> postProcessClientCode, SourceRepresentationBuilder srbForTypes, SourceRepresentationBuilder srbForMethods, SourceRepresentationBuilder srbForAttributes) {
         this.model = model;
+        this.bindings = bindings;
         this.sourceFilePath = sourceFilePath;
         this.fileContent = fileContent;
         this.containerStack = new LinkedList<SDContainerEntity>();
@@ -70,27 +71,20 @@ public class BindingsRecoveryAstVisitor extends ASTVisitor {
 
     @Override
     public boolean visit(AnonymousClassDeclaration node) {
-        if (node.getParent() instanceof ClassInstanceCreation) {
-            ClassInstanceCreation parent = (ClassInstanceCreation) node.getParent();
-            ITypeBinding typeBinding = parent.getType().resolveBinding();
-            if (typeBinding != null && typeBinding.isFromSource()) {
-                SDType type = model.createAnonymousType(containerStack.peek(), sourceFilePath, "");
-                containerStack.push(type);
-                extractSupertypesForPostProcessing(type, typeBinding);
-                return true;
-            }
+        List<String> supertypes = bindings.getAnonymousClassSupertypes(node);
+        if (supertypes != null) {
+            SDType type = model.createAnonymousType(containerStack.peek(), sourceFilePath, "");
+            containerStack.push(type);
+            extractSupertypesForPostProcessing(type, supertypes);
+            return true;
         }
         return false;
     }
 
     @Override
     public void endVisit(AnonymousClassDeclaration node) {
-        if (node.getParent() instanceof ClassInstanceCreation) {
-            ClassInstanceCreation parent = (ClassInstanceCreation) node.getParent();
-            ITypeBinding typeBinding = parent.getType().resolveBinding();
-            if (typeBinding != null && typeBinding.isFromSource()) {
-                containerStack.pop();
-            }
+        if (bindings.getAnonymousClassSupertypes(node) != null) {
+            containerStack.pop();
         }
     }
 
@@ -141,8 +135,7 @@ public class BindingsRecoveryAstVisitor extends ASTVisitor {
         type.setDeprecatedAnnotation(annotations.contains("Deprecated"));
 
         for (Type superType : supertypes) {
-            ITypeBinding superTypeBinding = superType.resolveBinding();
-            extractSupertypesForPostProcessing(type, superTypeBinding);
+            extractSupertypesForPostProcessing(type, bindings.getSupertypes(superType));
         }
 
 //        final List<String> references = new ArrayList<String>();
@@ -158,17 +151,13 @@ public class BindingsRecoveryAstVisitor extends ASTVisitor {
         return type;
     }
 
-    private void extractSupertypesForPostProcessing(SDType type, ITypeBinding superTypeBinding) {
+    private void extractSupertypesForPostProcessing(SDType type, List<String> superTypeNames) {
         List<String> supertypes = postProcessSupertypes.get(type);
         if (supertypes == null) {
             supertypes = new ArrayList<String>();
             postProcessSupertypes.put(type, supertypes);
         }
-        while (superTypeBinding != null && superTypeBinding.isFromSource()) {
-            String superTypeName = superTypeBinding.getErasure().getQualifiedName();
-            supertypes.add(superTypeName);
-            superTypeBinding = superTypeBinding.getSuperclass();
-        }
+        supertypes.addAll(superTypeNames);
     }
 
     public boolean visit(MethodDeclaration methodDeclaration) {
@@ -207,27 +196,17 @@ public class BindingsRecoveryAstVisitor extends ASTVisitor {
             //method.setSourceCode(srbForMethods.buildSourceRepresentation(this.fileContent, body.getStartPosition() + 1, body.getLength() - 2));
             method.setSourceCode(srbForMethods.buildSourceRepresentation(method, this.fileContent, body));
             final List<String> references = new ArrayList<String>();
-            body.accept(new DependenciesAstVisitor(true) {
-                @Override
-                protected void onMethodAccess(ASTNode node, IMethodBinding binding) {
-                    String methodKey = AstUtils.getKeyFromMethodBinding(binding);
-                    references.add(methodKey);
-                }
-
-                @Override
-                protected void onFieldAccess(ASTNode node, IVariableBinding binding) {
-                    String attributeKey = AstUtils.getKeyFromFieldBinding(binding);
-                    references.add(attributeKey);
-
-                    Statement stm = AstUtils.getEnclosingStatement(node);
+            for (UnitBindings.Access access : bindings.getAccesses(body)) {
+                references.add(access.key);
+                if (access.field) {
+                    Statement stm = AstUtils.getEnclosingStatement(access.node);
                     // if (stm == null) {
                     // System.out.println("null");
                     // }
                     SourceRepresentation code = srbForAttributes.buildPartialSourceRepresentation(fileContent, stm);
-                    addClientCode(attributeKey, code);
+                    addClientCode(access.key, code);
                 }
-
-            });
+            }
             postProcessReferences.put(method, references);
         }
 
@@ -2,6 +2,14 @@ package refdiff.core.rm2.analysis;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import refdiff.core.rm2.model.RelationshipType;
 import refdiff.core.rm2.model.SDEntity;
@@ -11,6 +19,10 @@ public class EntityMatcher<T extends SDEntity> {
 
     private final ArrayList<Criterion<T>> criteria = new ArrayList<Criterion<T>>();
     private final ArrayList<SimilarityIndex<? super T>> similarityIndexes = new ArrayList<SimilarityIndex<? super T>>();
+    private SimilarityCache similarityCache = null;
+    private AnalysisMetrics metrics = null;
+    
+    private static final Logger logger = LoggerFactory.getLogger(EntityMatcher.class);
 
     public EntityMatcher<T> addCriterion(Criterion<T> criterion) {
         this.criteria.add(criterion);
@@ -22,6 +34,19 @@ public class EntityMatcher<T extends SDEntity> {
         return this;
     }
 
+    public EntityMatcher<T> cachingIn(SimilarityCache similarityCache) {
+        this.similarityCache = similarityCache;
+        return this;
+    }
+
+    /**
+     * Adds the number of pairs each call to match scores, skips and fails to compare to the given metrics.
+     */
+    public EntityMatcher<T> reportingTo(AnalysisMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
     protected int getPriority(SDModel m, T entityBefore, T entityAfter) {
         return 0;
     }
@@ -31,32 +56,71 @@ public class EntityMatcher<T extends SDEntity> {
 //    }
     
     public void match(SDModel m, Iterable<T> unmatchedBefore, Iterable<T> unmatchedAfter) {
-        ArrayList<MatchCandidate<T>> candidates = new ArrayList<MatchCandidate<T>>(); 
+        ArrayList<MatchCandidate<T>> candidates = new ArrayList<MatchCandidate<T>>();
+        long scoredPairs = 0;
+        long skippedPairs = 0;
+        long failedPairs = 0;
+        
+        // Entities after are grouped by the key each criterion requires, so a criterion only sees pairs that share it
+        List<Map<Object, List<T>>> indexes = new ArrayList<Map<Object, List<T>>>(criteria.size());
+        for (int i = 0; i < criteria.size(); i++) {
+            indexes.add(new HashMap<Object, List<T>>());
+        }
+        int afterCount = 0;
+        for (T eAfter : unmatchedAfter) {
+            afterCount++;
+            for (int i = 0; i < criteria.size(); i++) {
+                Object key = criteria.get(i).keyAfter(m, eAfter);
+                if (key != null) {
+                    indexes.get(i).computeIfAbsent(key, k -> new ArrayList<T>()).add(eAfter);
+                }
+            }
+        }
+        
         for (T eBefore : unmatchedBefore) {
-            for (T eAfter : unmatchedAfter) {
-                for (int i = 0; i < criteria.size(); i++) {
-                    Criterion<T> matcher = criteria.get(i);
+            // A pair is decided by the first criterion that can match it, as criteria are ordered by priority
+            Set<T> claimed = new HashSet<T>();
+            Set<T> examined = new HashSet<T>();
+            for (int i = 0; i < criteria.size(); i++) {
+                Criterion<T> matcher = criteria.get(i);
+                Object key = matcher.keyBefore(m, eBefore);
+                List<T> sameKey = key != null ? indexes.get(i).get(key) : null;
+                if (sameKey == null) {
+                    continue;
+                }
+                for (T eAfter : sameKey) {
+                    if (claimed.contains(eAfter)) {
+                        continue;
+                    }
+                    examined.add(eAfter);
                     try {
                         if (matcher.canMatch(m, eBefore, eAfter)) {
                             double maxSim = 0.0;
                             double averageSim = 0.0;
                             for (SimilarityIndex<? super T> index : similarityIndexes) {
-                                double sim = index.similarity(eBefore, eAfter);
+                                double sim = similarityCache != null ? similarityCache.similarity(index, eBefore, eAfter) : index.similarity(eBefore, eAfter);
                                 averageSim += sim;
                                 maxSim = Math.max(sim, maxSim);
                             }
+                            scoredPairs++;
                             averageSim = averageSim / similarityIndexes.size();
                             if (maxSim >= matcher.threshold) {
                                 candidates.add(new MatchCandidate<T>(eBefore, eAfter, matcher, getPriority(m, eBefore, eAfter), i, averageSim));
                             }
-                            break;
+                            claimed.add(eAfter);
                         }
-                    }catch (Exception e){
-                        System.out.println("Let it be!");
+                    } catch (Exception e) {
+                        // the pair is left to the next criteria
+                        failedPairs++;
+                        logger.debug(String.format("Could not compare %s with %s", eBefore, eAfter), e);
                     }
                 }
-                
             }
+            skippedPairs += afterCount - examined.size();
+        }
+        logger.debug(String.format("Pairs scored: %d, skipped: %d, failed: %d", scoredPairs, skippedPairs, failedPairs));
+        if (metrics != null) {
+            metrics.addPairs(scoredPairs, skippedPairs, failedPairs);
         }
         Collections.sort(candidates);
         for (MatchCandidate<T> candidate : candidates) {
@@ -83,6 +147,8 @@ public class EntityMatcher<T extends SDEntity> {
     }
 
     public static class Criterion<T extends SDEntity> {
+        private static final Object ANY = new Object();
+        
         private final double threshold;
         private final RelationshipType relationshipType;
         
@@ -99,6 +165,22 @@ public class EntityMatcher<T extends SDEntity> {
             return true;
         }
         
+        /**
+         * Key an entity before must share with an entity after for {@link #canMatch} to possibly hold,
+         * or null if the entity cannot be matched by this criterion. By default, every pair is compared.
+         */
+        protected Object keyBefore(SDModel m, T entityBefore) {
+            return ANY;
+        }
+        
+        /**
+         * Key an entity after must share with an entity before for {@link #canMatch} to possibly hold,
+         * or null if the entity cannot be matched by this criterion. By default, every pair is compared.
+         */
+        protected Object keyAfter(SDModel m, T entityAfter) {
+            return ANY;
+        }
+        
         protected void onMatch(SDModel m, T entityBefore, T entityAfter) {
             // override
         }
@@ -116,13 +116,19 @@ public class GitHistoryStructuralDiffAnalyzer {
 				File f1 = new File(projectFolder.getParentFile(), projectFolder.getName() + "-" + parentCommit.getId().getName());
 				if(f.exists() && f1.exists() ){
 					if(Files.walk(f1.toPath()).anyMatch(x -> x.toString().endsWith(".java")) && Files.walk(f.toPath()).anyMatch(x -> x.toString().endsWith(".java"))) {
-						this.detectRefactorings(handler, projectFolder, cloneURL, commitId);
+						this.detectRefactorings(gitService, repository, handler, f1, f, commit);
 					}else{
-						boolean b = Files.deleteIfExists(f1.toPath()) && Files.deleteIfExists(f.toPath());
-						this.detectRefactorings(gitService, repository, handler, projectFolder, commit);
+						// The working tree and the snapshots are shared by every thread analyzing commits of the
+						// repository, so the commits that are checked out are analyzed one at a time
+						synchronized (repository) {
+							boolean b = Files.deleteIfExists(f1.toPath()) && Files.deleteIfExists(f.toPath());
+							this.detectRefactorings(gitService, repository, handler, projectFolder, commit);
+						}
 					}
 				}else {
-					this.detectRefactorings(gitService, repository, handler, projectFolder, commit);
+					synchronized (repository) {
+						this.detectRefactorings(gitService, repository, handler, projectFolder, commit);
+					}
 				}
 			}
 		}catch (MissingObjectException | FileNotFoundException | JGitInternalException | CheckoutConflictException moe) {
@@ -157,65 +163,20 @@ public class GitHistoryStructuralDiffAnalyzer {
 
 
 
-			// Checkout and build model for current commit
+			// Both versions are downloaded to their own folders, so they can be parsed concurrently
 			File folderAfter = new File(projectFolder.getParentFile(), projectFolder.getName() + "-" + commitId);
 			if (!folderAfter.exists()) {
 				downloadAndExtractZipFile(projectFolder, cloneURL,commitId);
 			}
-//	    if (folderAfter.exists()) {
-//	        logger.info(String.format("Analyzing code after (%s) ...", commitId));
-//	        builder.analyzeAfter(folderAfter, filesCurrent);
-//	    } else {
-			//gitService.checkout(repository, commitId);
-			logger.info(String.format("Analyzing code after (%s) ...", commitId));
-
-			long createModel1StartTimeNano = System.nanoTime();
-			long createModel1StartTimeMilli = System.currentTimeMillis();
-
-			builder.analyzeAfter(folderAfter, filesCurrent);
-
-			long createModel1EndTimeNano = System.nanoTime();
-			long createModel1EndTimeMilli = System.currentTimeMillis();
-//	    }
-
-//		String parentCommit = currentCommit.getParent(0).getName();
 			File folderBefore = new File(projectFolder.getParentFile(), projectFolder.getName() + "-" + parentCommitId);
-
 			if (!folderBefore.exists()) {
 				downloadAndExtractZipFile(projectFolder, cloneURL, parentCommitId);
 			}
-//		if (folderBefore.exists()) {
-//		    logger.info(String.format("Analyzing code before (%s) ...", parentCommit));
-//            builder.analyzeBefore(projectFolder, filesBefore);
-//		} else {
-			// Checkout and build model for parent commit
-//		gitService.checkout(repository, parentCommit);
-//		logger.info(String.format("Analyzing code before (%s) ...", parentCommit));
-
-			long createModel2StartTimeNano = System.nanoTime();
-			long createModel2StartTimeMilli = System.currentTimeMillis();
-
-			builder.analyzeBefore(folderBefore, filesBefore);
-
-			long createModel2EndTimeNano = System.nanoTime();
-			long createModel2EndTimeMilli = System.currentTimeMillis();
-			long diffStartTimeNano = System.nanoTime();
-			long diffStartTimeMilli = System.currentTimeMillis();
+			logger.info(String.format("Analyzing code before (%s) and after (%s) ...", parentCommitId, commitId));
+			builder.analyzeBeforeAndAfter(folderBefore, filesBefore, folderAfter, filesCurrent);
+
 			final SDModel model = builder.buildModel();
-			long diffEndTimeNano = System.nanoTime();
-			long diffEndTimeMilli = System.currentTimeMillis();
-
-			String timing = String.format("TIME: %s|%s|%s|%s|%s|%s|%s",
-					commitId,
-					createModel1EndTimeNano - createModel1StartTimeNano,
-					createModel1EndTimeMilli - createModel1StartTimeMilli,
-					createModel2EndTimeNano - createModel2StartTimeNano,
-					createModel2EndTimeMilli - createModel2StartTimeMilli,
-					diffEndTimeNano - diffStartTimeNano,
-					diffEndTimeMilli - diffStartTimeMilli
-			)+ "\n";
-
-			System.out.println(timing);
+			reportMetrics(handler, commitId, builder.getMetrics());
 			handler.handle(commitId, model);
 		}catch (Exception e){
 			e.printStackTrace();
@@ -240,48 +201,50 @@ public class GitHistoryStructuralDiffAnalyzer {
 		gitService.checkout(repository, commitId);
 		logger.info(String.format("Analyzing code after (%s) ...", commitId));
 
-		long createModel1StartTimeNano = System.nanoTime();
-		long createModel1StartTimeMilli = System.currentTimeMillis();
-
 		builder.analyzeAfter(projectFolder, filesCurrent);
-		long createModel1EndTimeNano = System.nanoTime();
-		long createModel1EndTimeMilli = System.currentTimeMillis();
 
 		String parentCommit = currentCommit.getParent(0).getName();
 
 		gitService.checkout(repository, parentCommit);
 		logger.info(String.format("Analyzing code before (%s) ...", parentCommit));
 
-		long createModel2StartTimeNano = System.nanoTime();
-		long createModel2StartTimeMilli = System.currentTimeMillis();
-
 		builder.analyzeBefore(projectFolder, filesBefore);
-		long createModel2EndTimeNano = System.nanoTime();
-		long createModel2EndTimeMilli = System.currentTimeMillis();
-
-		long diffStartTimeNano = System.nanoTime();
-		long diffStartTimeMilli = System.currentTimeMillis();
 
 		final SDModel model = builder.buildModel();
+		reportMetrics(handler, commitId, builder.getMetrics());
+
+		handler.handle(currentCommit.getId().getName(), model);
+	}
 
-		long diffEndTimeNano = System.nanoTime();
-		long diffEndTimeMilli = System.currentTimeMillis();
 
-		String timing = String.format("TIME: %s|%s|%s|%s|%s|%s|%s",
-				commitId,
-				createModel1EndTimeNano - createModel1StartTimeNano,
-				createModel1EndTimeMilli - createModel1StartTimeMilli,
-				createModel2EndTimeNano - createModel2StartTimeNano,
-				createModel2EndTimeMilli - createModel2StartTimeMilli,
-				diffEndTimeNano - diffStartTimeNano,
-				diffEndTimeMilli - diffStartTimeMilli
-		)+ "\n";
+	private void detectRefactorings(GitService gitService, Repository repository, final StructuralDiffHandler handler, File folderBefore, File folderAfter, RevCommit currentCommit) throws Exception {
+		String commitId = currentCommit.getId().getName();
+		List<String> filesBefore = new ArrayList<String>();
+		List<String> filesCurrent = new ArrayList<String>();
+		Map<String, String> renamedFilesHint = new HashMap<String, String>();
+		// The commit is in the local repository, so the changed files are listed from it rather than from GitHub
+		gitService.fileTreeDiff(repository, currentCommit, filesBefore, filesCurrent, renamedFilesHint, false);
+		// If no java files changed, there is no refactoring. Also, if there are
+		// only ADD's or only REMOVE's there is no refactoring
 
-		System.out.println(timing);
+		SDModelBuilder builder = new SDModelBuilder(config);
+		if (filesBefore.isEmpty() || filesCurrent.isEmpty()) {
+			return;
+		}
 
-		handler.handle(currentCommit.getId().getName(), model);
+		// Each version is in its own snapshot folder, so nothing is checked out
+		logger.info(String.format("Analyzing code before (%s) and after (%s) ...", currentCommit.getParent(0).getName(), commitId));
+		builder.analyzeBeforeAndAfter(folderBefore, filesBefore, folderAfter, filesCurrent);
+
+		final SDModel model = builder.buildModel();
+		reportMetrics(handler, commitId, builder.getMetrics());
+		handler.handle(commitId, model);
 	}
 
+	private void reportMetrics(StructuralDiffHandler handler, String commitId, AnalysisMetrics metrics) {
+		logger.debug(String.format("Analyzed %s in %d ms (%s)", commitId, metrics.getTotalTimeMillis(), metrics));
+		handler.handleMetrics(commitId, metrics);
+	}
 
 	private void downloadAndExtractZipFile(File projectFolder, String cloneURL, String commitId)
 			throws IOException {
@@ -1,10 +1,13 @@
 package refdiff.core.rm2.analysis;
 
+import java.util.Arrays;
+
 import refdiff.core.rm2.analysis.EntityMatcher.Criterion;
 import refdiff.core.rm2.model.Filter;
 import refdiff.core.rm2.model.MembersRepresentation;
 import refdiff.core.rm2.model.RelationshipType;
 import refdiff.core.rm2.model.SDAttribute;
+import refdiff.core.rm2.model.SDEntity;
 import refdiff.core.rm2.model.SDMethod;
 import refdiff.core.rm2.model.SDModel;
 import refdiff.core.rm2.model.SDType;
@@ -26,9 +29,24 @@ import refdiff.core.rm2.model.refactoring.SDRenameMethod;
 public class RefactoringDetector {
 
     private final RefDiffConfig config;
+    private final SimilarityCache similarityCache;
+    private final AnalysisMetrics metrics;
 
     public RefactoringDetector(RefDiffConfig config) {
+        this(config, null);
+    }
+
+    public RefactoringDetector(RefDiffConfig config, SimilarityCache similarityCache) {
+        this(config, similarityCache, null);
+    }
+
+    /**
+     * @param metrics Where the number of pairs of entities compared by the matchers is added, or null.
+     */
+    public RefactoringDetector(RefDiffConfig config, SimilarityCache similarityCache, AnalysisMetrics metrics) {
         this.config = config;
+        this.similarityCache = similarityCache;
+        this.metrics = metrics;
     }
 
     public void analyze(SDModel model) {
@@ -42,6 +60,8 @@ public class RefactoringDetector {
 
     private void identifyMatchingTypes(SDModel m) {
         new TypeMatcher()
+            .cachingIn(similarityCache)
+            .reportingTo(metrics)
             .addCriterion(new Criterion<SDType>(RelationshipType.MOVE_TYPE, config.getThreshold(RelationshipType.MOVE_TYPE)) {
                 protected boolean canMatch(SDModel m, SDType entityBefore, SDType entityAfter) {
                     return entityBefore.simpleName().equals(entityAfter.simpleName());
@@ -53,6 +73,14 @@ public class RefactoringDetector {
                         m.addRefactoring(new SDMoveClass(entityBefore, entityAfter));
                     }
                 }
+
+                protected Object keyBefore(SDModel m, SDType entityBefore) {
+                    return entityBefore.simpleName();
+                }
+
+                protected Object keyAfter(SDModel m, SDType entityAfter) {
+                    return entityAfter.simpleName();
+                }
             })
             .addCriterion(new Criterion<SDType>(RelationshipType.RENAME_TYPE, config.getThreshold(RelationshipType.RENAME_TYPE)) {
                 protected boolean canMatch(SDModel m, SDType entityBefore, SDType entityAfter) {
@@ -62,6 +90,14 @@ public class RefactoringDetector {
                 protected void onMatch(SDModel m, SDType entityBefore, SDType entityAfter) {
                     m.addRefactoring(new SDRenameClass(entityBefore, entityAfter));
                 }
+
+                protected Object keyBefore(SDModel m, SDType entityBefore) {
+                    return m.after(entityBefore.container());
+                }
+
+                protected Object keyAfter(SDModel m, SDType entityAfter) {
+                    return entityAfter.container();
+                }
             })
             .addCriterion(new Criterion<SDType>(RelationshipType.MOVE_AND_RENAME_TYPE, config.getThreshold(RelationshipType.MOVE_AND_RENAME_TYPE)) {
                 protected boolean canMatch(SDModel m, SDType entityBefore, SDType entityAfter) {
@@ -97,6 +133,8 @@ public class RefactoringDetector {
 
     private void identifyMatchingMethods(SDModel m) {
         new MethodMatcher()
+            .cachingIn(similarityCache)
+            .reportingTo(metrics)
             .addCriterion(new Criterion<SDMethod>(RelationshipType.CHANGE_METHOD_SIGNATURE, config.getThreshold(RelationshipType.CHANGE_METHOD_SIGNATURE)) {
                 protected boolean canMatch(SDModel m, SDMethod methodBefore, SDMethod methodAfter) {
                     return methodBefore.identifier().equals(methodAfter.identifier()) &&
@@ -107,6 +145,15 @@ public class RefactoringDetector {
                 protected void onMatch(SDModel m, SDMethod methodBefore, SDMethod methodAfter) {
                     // change signature
                 }
+
+                protected Object keyBefore(SDModel m, SDMethod methodBefore) {
+                    SDEntity containerAfter = m.after(methodBefore.container());
+                    return containerAfter != null ? Arrays.asList(methodBefore.identifier(), containerAfter) : null;
+                }
+
+                protected Object keyAfter(SDModel m, SDMethod methodAfter) {
+                    return Arrays.asList(methodAfter.identifier(), methodAfter.container());
+                }
             })
             .addCriterion(new Criterion<SDMethod>(RelationshipType.RENAME_METHOD, config.getThreshold(RelationshipType.RENAME_METHOD)) {
                 protected boolean canMatch(SDModel m, SDMethod methodBefore, SDMethod methodAfter) {
@@ -118,6 +165,14 @@ public class RefactoringDetector {
                 protected void onMatch(SDModel m, SDMethod methodBefore, SDMethod methodAfter) {
                     m.addRefactoring(new SDRenameMethod(methodBefore, methodAfter));
                 }
+
+                protected Object keyBefore(SDModel m, SDMethod entityBefore) {
+                    return m.after(entityBefore.container());
+                }
+
+                protected Object keyAfter(SDModel m, SDMethod entityAfter) {
+                    return entityAfter.container();
+                }
             })
             .addCriterion(new Criterion<SDMethod>(RelationshipType.PULL_UP_METHOD, config.getThreshold(RelationshipType.PULL_UP_METHOD)) {
                 protected boolean canMatch(SDModel m, SDMethod methodBefore, SDMethod methodAfter) {
@@ -134,6 +189,14 @@ public class RefactoringDetector {
                         m.addRefactoring(new SDPullUpMethod(methodBefore, methodAfter));
                     }
                 }
+
+                protected Object keyBefore(SDModel m, SDMethod methodBefore) {
+                    return methodBefore.identifier();
+                }
+
+                protected Object keyAfter(SDModel m, SDMethod methodAfter) {
+                    return methodAfter.identifier();
+                }
             })
             .addCriterion(new Criterion<SDMethod>(RelationshipType.PUSH_DOWN_METHOD, config.getThreshold(RelationshipType.PUSH_DOWN_METHOD)) {
                 protected boolean canMatch(SDModel m, SDMethod methodBefore, SDMethod methodAfter) {
@@ -148,6 +211,14 @@ public class RefactoringDetector {
                     // pull up method
                     m.addRefactoring(new SDPushDownMethod(methodBefore, methodAfter));
                 }
+
+                protected Object keyBefore(SDModel m, SDMethod methodBefore) {
+                    return methodBefore.identifier();
+                }
+
+                protected Object keyAfter(SDModel m, SDMethod methodAfter) {
+                    return methodAfter.identifier();
+                }
             })
             .addCriterion(new Criterion<SDMethod>(RelationshipType.MOVE_METHOD, config.getThreshold(RelationshipType.MOVE_METHOD)) {
                 protected boolean canMatch(SDModel m, SDMethod methodBefore, SDMethod methodAfter) {
@@ -161,12 +232,22 @@ public class RefactoringDetector {
                     // move method, possibly with a new signature
                     m.addRefactoring(new SDMoveMethod(methodBefore, methodAfter));
                 }
+
+                protected Object keyBefore(SDModel m, SDMethod methodBefore) {
+                    return methodBefore.identifier();
+                }
+
+                protected Object keyAfter(SDModel m, SDMethod methodAfter) {
+                    return methodAfter.identifier();
+                }
             })
             .match(m, m.before().getUnmatchedMethods(), m.after().getUnmatchedMethods());
     }
 
     private void identifyMatchingAttributes(SDModel m) {
         new AttributeMatcher()
+            .cachingIn(similarityCache)
+            .reportingTo(metrics)
             .addCriterion(new Criterion<SDAttribute>(RelationshipType.PULL_UP_FIELD, config.getThreshold(RelationshipType.PULL_UP_FIELD)) {
                 protected boolean canMatch(SDModel m, SDAttribute attributeBefore, SDAttribute attributeAfter) {
                     return attributeBefore.simpleName().equals(attributeAfter.simpleName()) &&
@@ -180,6 +261,14 @@ public class RefactoringDetector {
                         m.addRefactoring(new SDPullUpAttribute(attributeBefore, attributeAfter));
                     }
                 }
+
+                protected Object keyBefore(SDModel m, SDAttribute attributeBefore) {
+                    return Arrays.asList(attributeBefore.simpleName(), attributeBefore.type());
+                }
+
+                protected Object keyAfter(SDModel m, SDAttribute attributeAfter) {
+                    return Arrays.asList(attributeAfter.simpleName(), attributeAfter.type());
+                }
             })
             .addCriterion(new Criterion<SDAttribute>(RelationshipType.PUSH_DOWN_FIELD, config.getThreshold(RelationshipType.PUSH_DOWN_FIELD)) {
                 protected boolean canMatch(SDModel m, SDAttribute attributeBefore, SDAttribute attributeAfter) {
@@ -192,6 +281,14 @@ public class RefactoringDetector {
                 protected void onMatch(SDModel m, SDAttribute attributeBefore, SDAttribute attributeAfter) {
                     m.addRefactoring(new SDPushDownAttribute(attributeBefore, attributeAfter));
                 }
+
+                protected Object keyBefore(SDModel m, SDAttribute attributeBefore) {
+                    return Arrays.asList(attributeBefore.simpleName(), attributeBefore.type());
+                }
+
+                protected Object keyAfter(SDModel m, SDAttribute attributeAfter) {
+                    return Arrays.asList(attributeAfter.simpleName(), attributeAfter.type());
+                }
             })
             .addCriterion(new Criterion<SDAttribute>(RelationshipType.MOVE_FIELD, config.getThreshold(RelationshipType.MOVE_FIELD)) {
                 protected boolean canMatch(SDModel m, SDAttribute attributeBefore, SDAttribute attributeAfter) {
@@ -202,6 +299,14 @@ public class RefactoringDetector {
                 protected void onMatch(SDModel m, SDAttribute attributeBefore, SDAttribute attributeAfter) {
                     m.addRefactoring(new SDMoveAttribute(attributeBefore, attributeAfter));
                 }
+
+                protected Object keyBefore(SDModel m, SDAttribute attributeBefore) {
+                    return Arrays.asList(attributeBefore.simpleName(), attributeBefore.type());
+                }
+
+                protected Object keyAfter(SDModel m, SDAttribute attributeAfter) {
+                    return Arrays.asList(attributeAfter.simpleName(), attributeAfter.type());
+                }
             })
             .match(m, m.before().getUnmatchedAttributes(), m.after().getUnmatchedAttributes());
     }
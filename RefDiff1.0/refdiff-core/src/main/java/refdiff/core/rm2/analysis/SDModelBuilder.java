@@ -6,9 +6,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.CompilationUnit;
@@ -37,6 +49,10 @@ public class SDModelBuilder {
     }
 
     private SDModel model = new SDModel();
+    private final AnalysisMetrics metrics = new AnalysisMetrics();
+    
+    private static final int UNITS_IN_FLIGHT = 16;
+    private static final ParsedUnit END_OF_UNITS = new ParsedUnit(null, null, null, null);
     
 	private static final String systemFileSeparator = Matcher.quoteReplacement(File.separator);
 	
@@ -82,20 +98,115 @@ public class SDModelBuilder {
 	}
 
 	public void analyzeAfter(File rootFolder, List<String> javaFiles) throws IOException {
-	    this.analyze(rootFolder, javaFiles, model.after());
+	    long t0 = System.nanoTime();
+	    final SDModel.Snapshot after = model.after();
+	    beginBuild();
+	    parse(rootFolder, javaFiles, unit -> processCompilationUnit(unit, after));
+	    long t1 = System.nanoTime();
+	    endBuild(after);
+	    metrics.addParseTime(t1 - t0);
+	    metrics.addPostProcessTime(System.nanoTime() - t1);
 	}
 
 	public void analyzeBefore(File rootFolder, List<String> javaFiles) throws IOException {
-	    this.analyze(rootFolder, javaFiles, model.before());
+	    long t0 = System.nanoTime();
+	    final SDModel.Snapshot before = model.before();
+	    beginBuild();
+	    parse(rootFolder, javaFiles, unit -> processCompilationUnit(unit, before));
+	    long t1 = System.nanoTime();
+	    endBuild(before);
 	    srbForTypes.onComplete();
 	    srbForMethods.onComplete();
 	    srbForAttributes.onComplete();
+	    metrics.addParseTime(t1 - t0);
+	    metrics.addPostProcessTime(System.nanoTime() - t1);
 	}
 
-	private void analyze(File rootFolder, List<String> javaFiles, final SDModel.Snapshot model) throws IOException {
-	    postProcessReferences = new HashMap<SDEntity, List<String>>();
-		postProcessSupertypes = new HashMap<SDType, List<String>>();
-		postProcessClientCode = new HashMap<String, List<SourceRepresentation>>();
+	/**
+	 * Same as {@link #analyzeAfter(File, List)} followed by {@link #analyzeBefore(File, List)}, but both
+	 * versions are parsed concurrently. The folders must be distinct (e.g., not a single working tree
+	 * checked out at each commit).
+	 */
+	public void analyzeBeforeAndAfter(File rootFolderBefore, List<String> javaFilesBefore, File rootFolderAfter, List<String> javaFilesAfter) throws IOException {
+	    long t0 = System.nanoTime();
+	    long postProcessTime = 0;
+	    // Entity ids and token statistics depend on the order entities are created, so the model is still built
+	    // one version at a time, in the same order as analyzeAfter and analyzeBefore do. Each parser thread resolves
+	    // the bindings of its compilation units itself (see UnitBindings) and hands them over a bounded queue, so
+	    // the before version gets at most UNITS_IN_FLIGHT units ahead while the after version is being built.
+	    ExecutorService executor = Executors.newFixedThreadPool(2);
+	    try {
+	        BlockingQueue<ParsedUnit> unitsAfter = new ArrayBlockingQueue<ParsedUnit>(UNITS_IN_FLIGHT);
+	        BlockingQueue<ParsedUnit> unitsBefore = new ArrayBlockingQueue<ParsedUnit>(UNITS_IN_FLIGHT);
+	        Future<?> parseAfter = executor.submit(() -> parseInto(rootFolderAfter, javaFilesAfter, unitsAfter));
+	        Future<?> parseBefore = executor.submit(() -> parseInto(rootFolderBefore, javaFilesBefore, unitsBefore));
+	        
+	        beginBuild();
+	        drain(unitsAfter, parseAfter, model.after());
+	        long t1 = System.nanoTime();
+	        endBuild(model.after());
+	        postProcessTime += System.nanoTime() - t1;
+	        
+	        beginBuild();
+	        drain(unitsBefore, parseBefore, model.before());
+	        long t2 = System.nanoTime();
+	        endBuild(model.before());
+	        postProcessTime += System.nanoTime() - t2;
+	    } finally {
+	        executor.shutdownNow();
+	    }
+	    srbForTypes.onComplete();
+	    srbForMethods.onComplete();
+	    srbForAttributes.onComplete();
+	    metrics.addParseTime(System.nanoTime() - t0 - postProcessTime);
+	    metrics.addPostProcessTime(postProcessTime);
+	}
+
+	private Void parseInto(File rootFolder, List<String> javaFiles, BlockingQueue<ParsedUnit> units) throws IOException, InterruptedException {
+	    try {
+	        parse(rootFolder, javaFiles, unit -> {
+	            try {
+	                units.put(unit);
+	            } catch (InterruptedException e) {
+	                Thread.currentThread().interrupt();
+	                throw new CancellationException();
+	            }
+	        });
+	    } finally {
+	        // Also sent when the parse fails, so that the builder stops waiting and gets the failure from the future
+	        units.put(END_OF_UNITS);
+	    }
+	    return null;
+	}
+
+	private void drain(BlockingQueue<ParsedUnit> units, Future<?> parse, SDModel.Snapshot model) throws IOException {
+	    try {
+	        ParsedUnit unit;
+	        while ((unit = units.take()) != END_OF_UNITS) {
+	            processCompilationUnit(unit, model);
+	        }
+	        parse.get();
+	    } catch (ExecutionException e) {
+	        if (e.getCause() instanceof IOException) {
+	            throw (IOException) e.getCause();
+	        }
+	        if (e.getCause() instanceof RuntimeException) {
+	            throw (RuntimeException) e.getCause();
+	        }
+	        throw new RuntimeException(e.getCause());
+	    } catch (InterruptedException e) {
+	        Thread.currentThread().interrupt();
+	        throw new RuntimeException(e);
+	    }
+	}
+
+	/**
+	 * Parses the files and resolves their bindings, handing each compilation unit to the consumer as soon as
+	 * JDT has built it, so that it can be released before the next one is parsed. The bindings the model needs
+	 * are resolved before the unit is handed over, while JDT is still on it, so the consumer may run in another
+	 * thread. Parsing does not touch the model, so it may run in any thread.
+	 */
+	private void parse(File rootFolder, List<String> javaFiles, final Consumer<ParsedUnit> consumer) throws IOException {
 		final String projectRoot = rootFolder.getPath();
 		final String[] emptyArray = new String[0];
 		
@@ -103,7 +214,12 @@ public class SDModelBuilder {
 		for (int i = 0; i < filesArray.length; i++) {
 			filesArray[i] = rootFolder + File.separator + javaFiles.get(i).replaceAll("/", systemFileSeparator);
 		}
-		final String[] sourceFolders = this.inferSourceFolders(filesArray);
+		// Every file is read once: its content serves both to infer the source folders and to build the model
+		final Map<String, char[]> contents = new HashMap<String, char[]>();
+		for (String file : filesArray) {
+			contents.put(file, Util.getFileCharContent(new File(file), null));
+		}
+		final String[] sourceFolders = this.inferSourceFolders(filesArray, contents);
 		final ASTParser parser = buildAstParser(sourceFolders);
 
 		FileASTRequestor fileASTRequestor = new FileASTRequestor() { 
@@ -116,8 +232,11 @@ public class SDModelBuilder {
 //				}
 				//
 				try {
-					char[] charArray = Util.getFileCharContent(new File(sourceFilePath), null);
-					processCompilationUnit(relativePath, charArray, ast, model);
+					char[] charArray = contents.remove(sourceFilePath);
+					if (charArray == null) {
+						charArray = Util.getFileCharContent(new File(sourceFilePath), null);
+					}
+					consumer.accept(new ParsedUnit(relativePath, charArray, ast, UnitBindings.resolve(ast)));
 				} catch (IOException e) {
 					throw new RuntimeException(e);
 				}
@@ -127,7 +246,15 @@ public class SDModelBuilder {
 			}
 		};
 		parser.createASTs((String[]) filesArray, null, emptyArray, fileASTRequestor, null);
-		
+	}
+
+	private void beginBuild() {
+	    postProcessReferences = new HashMap<SDEntity, List<String>>();
+		postProcessSupertypes = new HashMap<SDType, List<String>>();
+		postProcessClientCode = new HashMap<String, List<SourceRepresentation>>();
+	}
+
+	private void endBuild(final SDModel.Snapshot model) {
 		postProcessReferences(model, postProcessReferences);
 		postProcessReferences = null;
 		postProcessSupertypes(model);
@@ -149,7 +276,9 @@ public class SDModelBuilder {
 		return parser;
 	}
 
-	protected void processCompilationUnit(String sourceFilePath, char[] fileContent, CompilationUnit compilationUnit, SDModel.Snapshot model) {
+	private void processCompilationUnit(ParsedUnit unit, SDModel.Snapshot model) {
+		String sourceFilePath = unit.sourceFilePath;
+		CompilationUnit compilationUnit = unit.compilationUnit;
 		PackageDeclaration packageDeclaration = compilationUnit.getPackage();
 		String packageName = "";
 		if (packageDeclaration != null) {
@@ -161,11 +290,12 @@ public class SDModelBuilder {
 		  sourceFolder = sourceFilePath.substring(0, sourceFilePath.indexOf(packagePath));
 		}
 		SDPackage sdPackage = model.getOrCreatePackage(packageName, sourceFolder);
-		BindingsRecoveryAstVisitor visitor = new BindingsRecoveryAstVisitor(model, sourceFilePath, fileContent, sdPackage, postProcessReferences, postProcessSupertypes, postProcessClientCode, srbForTypes, srbForMethods, srbForAttributes);
+		BindingsRecoveryAstVisitor visitor = new BindingsRecoveryAstVisitor(model, unit.bindings, sourceFilePath, unit.fileContent, sdPackage, postProcessReferences, postProcessSupertypes, postProcessClientCode, srbForTypes, srbForMethods, srbForAttributes);
 		compilationUnit.accept(visitor);
 	}
 
-	private String[] inferSourceFolders(String[] filesArray) throws IOException {
+	private String[] inferSourceFolders(String[] filesArray, Map<String, char[]> contents) {
+		IScanner scanner = ToolFactory.createScanner(false, false, false, JavaCore.VERSION_1_8);
 		Set<String> sourceFolders = new TreeSet<String>();
 		nextFile: for (String file : filesArray) {
 			for (String sourceFolder : sourceFolders) {
@@ -173,46 +303,96 @@ public class SDModelBuilder {
 					continue nextFile;
 				}
 			}
-			String otherSourceFolder = extractSourceFolderFromPath(file);
+			String otherSourceFolder = extractSourceFolderFromPath(file, contents.get(file), scanner);
 			if (otherSourceFolder != null) {
 				sourceFolders.add(otherSourceFolder);
-//				System.out.print("source folder: ");
-//				System.out.println(otherSourceFolder);
 			}
 		}
 		return sourceFolders.toArray(new String[sourceFolders.size()]);
 	}
 
-	private String extractSourceFolderFromPath(String sourceFilePath) throws IOException {
-
-		BufferedReader scanner = new BufferedReader(new FileReader(sourceFilePath));
-			String lineFromFile;
-			while ((lineFromFile = scanner.readLine()) != null) {
-				if (lineFromFile.startsWith("package ")) { 
-					// a match!
-					//System.out.print("package declaration: ");
-					String packageName = lineFromFile.substring(8, lineFromFile.indexOf(';'));
-					//System.out.println(packageName);
-					
-					String packagePath = packageName.replace('.', File.separator.charAt(0));
-					int indexOfPackagePath = sourceFilePath.lastIndexOf(packagePath + File.separator);
-					if (indexOfPackagePath >= 0) {
-						return sourceFilePath.substring(0, indexOfPackagePath - 1);
+	private String extractSourceFolderFromPath(String sourceFilePath, char[] fileContent, IScanner scanner) {
+		String packageName = scanPackageName(fileContent, scanner);
+		if (packageName != null) {
+			String packagePath = packageName.replace('.', File.separator.charAt(0));
+			int indexOfPackagePath = sourceFilePath.lastIndexOf(packagePath + File.separator);
+			if (indexOfPackagePath >= 0) {
+				return sourceFilePath.substring(0, indexOfPackagePath - 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Lexes the file only up to its package declaration (annotations and comments before it are skipped).
+	 * 
+	 * @return the package name, or null when the file has no package declaration.
+	 */
+	private static String scanPackageName(char[] fileContent, IScanner scanner) {
+		scanner.setSource(fileContent);
+		try {
+			int token;
+			while ((token = scanner.getNextToken()) != ITerminalSymbols.TokenNameEOF) {
+				switch (token) {
+				case ITerminalSymbols.TokenNamepackage:
+					StringBuilder packageName = new StringBuilder();
+					while ((token = scanner.getNextToken()) != ITerminalSymbols.TokenNameSEMICOLON) {
+						if (token == ITerminalSymbols.TokenNameIdentifier) {
+							packageName.append(scanner.getCurrentTokenSource());
+						} else if (token == ITerminalSymbols.TokenNameDOT) {
+							packageName.append('.');
+						} else {
+							return null;
+						}
 					}
+					return packageName.toString();
+				case ITerminalSymbols.TokenNameimport:
+				case ITerminalSymbols.TokenNameclass:
+				case ITerminalSymbols.TokenNameinterface:
+				case ITerminalSymbols.TokenNameenum:
 					return null;
+				default:
+					// annotations of the package, keep looking
 				}
 			}
-
+		} catch (InvalidInputException e) {
+			// not valid Java, so no source folder can be inferred from it
+		}
 		return null;
 	}
 	
 	/////////////////
 	
     public SDModel buildModel() {
+        long t0 = System.nanoTime();
         model.initRelationships();
-        RefactoringDetector rbuilder = new RefactoringDetector(config);
+        long t1 = System.nanoTime();
+        RefactoringDetector rbuilder = new RefactoringDetector(config, null, metrics);
         rbuilder.analyze(model);
+        metrics.addMatchTime(t1 - t0);
+        metrics.addDetectTime(System.nanoTime() - t1);
         return model;
     }
+
+    /**
+     * @return The time spent so far in each phase of the analysis.
+     */
+    public AnalysisMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static class ParsedUnit {
+        private final String sourceFilePath;
+        private final char[] fileContent;
+        private final CompilationUnit compilationUnit;
+        private final UnitBindings bindings;
+
+        ParsedUnit(String sourceFilePath, char[] fileContent, CompilationUnit compilationUnit, UnitBindings bindings) {
+            this.sourceFilePath = sourceFilePath;
+            this.fileContent = fileContent;
+            this.compilationUnit = compilationUnit;
+            this.bindings = bindings;
+        }
+    }
 	
 }
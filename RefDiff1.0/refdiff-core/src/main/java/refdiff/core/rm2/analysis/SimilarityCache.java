@@ -0,0 +1,27 @@
+package refdiff.core.rm2.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import refdiff.core.rm2.model.SDEntity;
+
+/**
+ * Remembers the similarity of each pair of entities, so that detecting refactorings again on the same
+ * model (e.g., with other thresholds) does not compare the same source code twice.
+ */
+public class SimilarityCache {
+
+    private final Map<SimilarityIndex<?>, Map<Long, Double>> scores = new HashMap<>();
+
+    public <T extends SDEntity> double similarity(SimilarityIndex<? super T> index, T entityBefore, T entityAfter) {
+        Map<Long, Double> indexScores = scores.computeIfAbsent(index, k -> new HashMap<>());
+        long key = ((long) entityBefore.getId() << 32) | (entityAfter.getId() & 0xFFFFFFFFL);
+        Double sim = indexScores.get(key);
+        if (sim == null) {
+            sim = index.similarity(entityBefore, entityAfter);
+            indexScores.put(key, sim);
+        }
+        return sim;
+    }
+
+}
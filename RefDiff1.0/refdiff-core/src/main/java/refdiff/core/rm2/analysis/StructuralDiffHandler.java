@@ -25,6 +25,15 @@ public abstract class StructuralDiffHandler {
 	 */
 	public void handle(String commitData, SDModel sdModel) {}
 
+	/**
+	 * This method is called after each commit is analyzed, before {@link #handle(String, SDModel)}.
+	 * You may override this method to record how long each phase of the analysis took.
+	 * 
+	 * @param commitId The SHA key that identifies the commit.
+	 * @param metrics The time spent in each phase of the analysis.
+	 */
+	public void handleMetrics(String commitId, AnalysisMetrics metrics) {}
+
 	/**
      * This method is called whenever an exception is thrown during the analysis of the given commit.
      * You should override this method to do your custom logic in the case of exceptions (e.g. skip or rethrow).
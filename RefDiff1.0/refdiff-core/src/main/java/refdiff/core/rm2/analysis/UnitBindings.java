@@ -0,0 +1,159 @@
+package refdiff.core.rm2.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import refdiff.core.util.AstUtils;
+
+/**
+ * What {@link BindingsRecoveryAstVisitor} takes from the bindings of a compilation unit. JDT bindings are only
+ * resolved in the thread running {@code ASTParser.createASTs}, while the unit is handed to
+ * {@code FileASTRequestor.acceptAST}, as the parser environment is shared by every unit of the batch and is
+ * cleaned up once the unit is accepted. The rest of the model is built from the AST alone, so it may be built
+ * later and in another thread.
+ */
+class UnitBindings {
+
+    /**
+     * A method or field used in a method body.
+     */
+    static final class Access {
+        final String key;
+        final ASTNode node;
+        final boolean field;
+
+        Access(String key, ASTNode node, boolean field) {
+            this.key = key;
+            this.node = node;
+            this.field = field;
+        }
+    }
+
+    private final Map<Type, List<String>> supertypes = new HashMap<Type, List<String>>();
+    private final Map<AnonymousClassDeclaration, List<String>> anonymousClassSupertypes = new HashMap<AnonymousClassDeclaration, List<String>>();
+    private final Map<Block, List<Access>> accesses = new HashMap<Block, List<Access>>();
+
+    private UnitBindings() {}
+
+    /**
+     * Resolves the bindings of the unit. It must be called from {@code FileASTRequestor.acceptAST}.
+     */
+    static UnitBindings resolve(CompilationUnit compilationUnit) {
+        final UnitBindings bindings = new UnitBindings();
+        // Same traversal as BindingsRecoveryAstVisitor
+        compilationUnit.accept(new ASTVisitor() {
+            @Override
+            public boolean visit(AnonymousClassDeclaration node) {
+                if (node.getParent() instanceof ClassInstanceCreation) {
+                    ITypeBinding typeBinding = ((ClassInstanceCreation) node.getParent()).getType().resolveBinding();
+                    if (typeBinding != null && typeBinding.isFromSource()) {
+                        bindings.anonymousClassSupertypes.put(node, sourceSupertypes(typeBinding));
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public boolean visit(AnnotationTypeDeclaration node) {
+                return false;
+            }
+
+            @Override
+            public boolean visit(EnumDeclaration node) {
+                resolveSupertypes(node.superInterfaceTypes());
+                return true;
+            }
+
+            @Override
+            public boolean visit(TypeDeclaration node) {
+                if (node.getSuperclassType() != null) {
+                    resolveSupertypes(Collections.singletonList(node.getSuperclassType()));
+                }
+                resolveSupertypes(node.superInterfaceTypes());
+                return true;
+            }
+
+            private void resolveSupertypes(List<?> types) {
+                for (Object type : types) {
+                    bindings.supertypes.put((Type) type, sourceSupertypes(((Type) type).resolveBinding()));
+                }
+            }
+
+            @Override
+            public boolean visit(MethodDeclaration node) {
+                Block body = node.getBody();
+                if (body != null) {
+                    final List<Access> bodyAccesses = new ArrayList<Access>();
+                    body.accept(new DependenciesAstVisitor(true) {
+                        @Override
+                        protected void onMethodAccess(ASTNode node, IMethodBinding binding) {
+                            bodyAccesses.add(new Access(AstUtils.getKeyFromMethodBinding(binding), node, false));
+                        }
+
+                        @Override
+                        protected void onFieldAccess(ASTNode node, IVariableBinding binding) {
+                            bodyAccesses.add(new Access(AstUtils.getKeyFromFieldBinding(binding), node, true));
+                        }
+                    });
+                    bindings.accesses.put(body, bodyAccesses);
+                }
+                return true;
+            }
+        });
+        return bindings;
+    }
+
+    /**
+     * @return The names of the type and of its superclasses, up to the first one that is not from source.
+     */
+    private static List<String> sourceSupertypes(ITypeBinding typeBinding) {
+        List<String> names = new ArrayList<String>();
+        while (typeBinding != null && typeBinding.isFromSource()) {
+            names.add(typeBinding.getErasure().getQualifiedName());
+            typeBinding = typeBinding.getSuperclass();
+        }
+        return names;
+    }
+
+    /**
+     * @return The source supertypes of a supertype of a type declaration.
+     */
+    List<String> getSupertypes(Type supertype) {
+        List<String> names = supertypes.get(supertype);
+        return names != null ? names : Collections.<String>emptyList();
+    }
+
+    /**
+     * @return The source supertypes of an anonymous class, or null if the type it instantiates is not from source.
+     */
+    List<String> getAnonymousClassSupertypes(AnonymousClassDeclaration anonymousClass) {
+        return anonymousClassSupertypes.get(anonymousClass);
+    }
+
+    /**
+     * @return The methods and fields used in a method body, in the order they appear.
+     */
+    List<Access> getAccesses(Block body) {
+        List<Access> bodyAccesses = accesses.get(body);
+        return bodyAccesses != null ? bodyAccesses : Collections.<Access>emptyList();
+    }
+
+}
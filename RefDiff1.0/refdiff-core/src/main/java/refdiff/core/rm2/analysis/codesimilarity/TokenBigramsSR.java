@@ -1,8 +1,6 @@
 package refdiff.core.rm2.analysis.codesimilarity;
 
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 
 import refdiff.core.rm2.model.HashArray;
@@ -46,25 +44,8 @@ class TokenBigramsSR extends HashArray implements SourceRepresentation {
 
     @Override
     public TokenBigramsSR combine(SourceRepresentation other) {
-        int totalLength = this.hashes.length;
-        List<SourceRepresentation> others = Collections.singletonList(other);
-        for (SourceRepresentation sr : others) {
-            long[] hashes = ((TokenBigramsSR) sr).hashes;
-            totalLength += hashes.length;
-        }
-        long[] hs = new long[totalLength];
-        int j = 0;
-        for (int i = 0; i < this.hashes.length; i++) {
-            hs[j++] = this.hashes[i];
-        }
-        for (SourceRepresentation sr : others) {
-            long[] hashes = ((TokenBigramsSR) sr).hashes;
-            for (int i = 0; i < hashes.length; i++) {
-                hs[j++] = hashes[i];
-            }
-        }
-        Arrays.sort(hs);
-        return new TokenBigramsSR(hs);
+        // both arrays are sorted, so they are merged instead of concatenated and sorted again
+        return new TokenBigramsSR(merge(this.hashes, ((TokenBigramsSR) other).hashes));
     }
 
     @Override
@@ -1,77 +1,157 @@
 package refdiff.core.rm2.analysis.codesimilarity;
 
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
-import refdiff.core.rm2.model.Multiset;
 import refdiff.core.rm2.model.SourceRepresentation;
 
+/**
+ * A multiset of tokens, stored as the sorted ids the builder interned for each token and the multiplicity of each one.
+ */
 class TokenIdfSR implements SourceRepresentation {
 
-    private final Multiset<String> tokens;
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] tokens;
+    private final int[] counts;
     private final TokenIdfSRBuilder builder;
 
-    public TokenIdfSR(Multiset<String> tokens, TokenIdfSRBuilder builder) {
+    public TokenIdfSR(int[] tokens, int[] counts, TokenIdfSRBuilder builder) {
         this.tokens = tokens;
+        this.counts = counts;
         this.builder = builder;
     }
 
+    public TokenIdfSR(TokenIdfSRBuilder builder) {
+        this(EMPTY, EMPTY, builder);
+    }
+
     @Override
-    public TokenIdfSR minus(SourceRepresentation other) {
-        return new TokenIdfSR(tokens.minus(((TokenIdfSR) other).tokens), builder);
+    public TokenIdfSR minus(SourceRepresentation sr) {
+        TokenIdfSR other = (TokenIdfSR) sr;
+        int[] resultTokens = new int[tokens.length];
+        int[] resultCounts = new int[tokens.length];
+        int k = 0;
+        int j = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            while (j < other.tokens.length && other.tokens[j] < tokens[i]) {
+                j++;
+            }
+            int diff = counts[i];
+            if (j < other.tokens.length && other.tokens[j] == tokens[i]) {
+                diff -= other.counts[j];
+            }
+            if (diff > 0) {
+                resultTokens[k] = tokens[i];
+                resultCounts[k] = diff;
+                k++;
+            }
+        }
+        return new TokenIdfSR(Arrays.copyOf(resultTokens, k), Arrays.copyOf(resultCounts, k), builder);
     }
 
     @Override
     public String toString() {
-        return tokens.toString();
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(builder.token(tokens[i])).append('=').append(counts[i]);
+        }
+        return sb.append('}').toString();
     }
 
     public Set<String> getTokenSet() {
-        return tokens.asSet();
+        Set<String> tokenSet = new LinkedHashSet<String>();
+        for (int token : tokens) {
+            tokenSet.add(builder.token(token));
+        }
+        return tokenSet;
+    }
+
+    int[] getTokenIds() {
+        return tokens;
     }
 
+    /**
+     * Keeps the tokens of the other representation, adding the multiplicity each one has in this representation
+     * (as Multiset.plus did when tokens were kept as strings).
+     */
     @Override
     public TokenIdfSR combine(SourceRepresentation sr) {
-        Multiset<String> multisetUnion = tokens;
-        TokenIdfSR tokenIdfSR = (TokenIdfSR) sr;
-        multisetUnion = multisetUnion.plus(tokenIdfSR.tokens);
-        return new TokenIdfSR(multisetUnion, builder);
+        TokenIdfSR other = (TokenIdfSR) sr;
+        int[] resultCounts = new int[other.tokens.length];
+        int i = 0;
+        for (int j = 0; j < other.tokens.length; j++) {
+            while (i < tokens.length && tokens[i] < other.tokens[j]) {
+                i++;
+            }
+            resultCounts[j] = other.counts[j];
+            if (i < tokens.length && tokens[i] == other.tokens[j]) {
+                resultCounts[j] += counts[i];
+            }
+        }
+        return new TokenIdfSR(other.tokens, resultCounts, builder);
     }
 
     @Override
     public double similarity(SourceRepresentation other) {
-        return jaccardSimilarity(((TokenIdfSR) other).tokens, false);
+        return jaccardSimilarity((TokenIdfSR) other, false);
     }
 
     @Override
     public double partialSimilarity(SourceRepresentation other) {
-        return jaccardSimilarity(((TokenIdfSR) other).tokens, true);
+        return jaccardSimilarity((TokenIdfSR) other, true);
     }
 
-    public double jaccardSimilarity(Multiset<String> tokens2, boolean partial) {
-        if (tokens.isEmpty() || tokens2.isEmpty()) {
+    /**
+     * Weighted Jaccard similarity of the two multisets, each token weighing its idf. The weights are summed in token id
+     * order, which is not the order the multisets of strings were summed in, so results may differ from those in the
+     * last digits. When no token weighs anything the similarity is 0.
+     */
+    public double jaccardSimilarity(TokenIdfSR other, boolean partial) {
+        int n = tokens.length;
+        int m = other.tokens.length;
+        if (n == 0 || m == 0) {
             return 0.0;
         }
-        Set<String> keys = new HashSet<String>();
-        keys.addAll(tokens.asSet());
-        keys.addAll(tokens2.asSet());
+        double[] idf = builder.idfs();
         double idfu = 0.0;
         double idfd = 0.0;
-        for (String key : keys) {
-            int c1 = tokens.getMultiplicity(key);
-            int c2 = tokens2.getMultiplicity(key);
-            idfu += Math.min(c1, c2) * builder.idf(key);
-            idfd += Math.max(c1, c2) * builder.idf(key);
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            int t1 = tokens[i];
+            int t2 = other.tokens[j];
+            if (t1 == t2) {
+                int c1 = counts[i++];
+                int c2 = other.counts[j++];
+                idfu += Math.min(c1, c2) * idf[t1];
+                idfd += Math.max(c1, c2) * idf[t1];
+            } else if (t1 < t2) {
+                idfd += counts[i++] * idf[t1];
+            } else {
+                idfd += other.counts[j++] * idf[t2];
+            }
+        }
+        while (i < n) {
+            idfd += counts[i] * idf[tokens[i]];
+            i++;
+        }
+        while (j < m) {
+            idfd += other.counts[j] * idf[other.tokens[j]];
+            j++;
         }
         if (partial) {
             double idfp = 0.0;
-            for (String key : tokens.asSet()) {
-                int c1 = tokens.getMultiplicity(key);
-                idfp += c1 * builder.idf(key);
+            for (int k = 0; k < n; k++) {
+                idfp += counts[k] * idf[tokens[k]];
             }
-            return idfu / idfp;
+            return idfp == 0.0 ? 0.0 : idfu / idfp;
         }
-        return idfu / idfd;
+        return idfd == 0.0 ? 0.0 : idfu / idfd;
     }
 
 }
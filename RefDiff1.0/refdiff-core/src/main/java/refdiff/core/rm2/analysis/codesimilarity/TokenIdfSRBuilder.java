@@ -1,9 +1,8 @@
 package refdiff.core.rm2.analysis.codesimilarity;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -13,14 +12,17 @@ import org.eclipse.jdt.core.compiler.ITerminalSymbols;
 import org.eclipse.jdt.core.compiler.InvalidInputException;
 import org.eclipse.jdt.core.dom.ASTNode;
 import refdiff.core.rm2.analysis.SourceRepresentationBuilder;
-import refdiff.core.rm2.model.Multiset;
 import refdiff.core.rm2.model.SDEntity;
 import refdiff.core.rm2.model.SourceRepresentation;
 
 class TokenIdfSRBuilder implements SourceRepresentationBuilder {
 
     IScanner scanner = ToolFactory.createScanner(false, true, false, "1.8");
-    Map<String, Integer> df = new HashMap<String, Integer>();
+    // Tokens are interned once per builder, so representations and document frequencies are indexed by token id
+    private final Map<String, Integer> tokenIds = new HashMap<String, Integer>();
+    private final List<String> tokenNames = new ArrayList<String>();
+    private int[] df = new int[256];
+    private double[] idfs = null;
     int dc = 0;
     
     private static final int TOKENS = 0;
@@ -37,23 +39,51 @@ class TokenIdfSRBuilder implements SourceRepresentationBuilder {
 //        }
 //    }
     
-    private void countDf(Collection<String> debug) {
+    private void countDf(TokenIdfSR sr) {
         dc++;
-        HashSet<String> tokens = new HashSet<String>(debug);
-        for (String token : tokens) {
-            if (df.containsKey(token)) {
-                df.put(token, df.get(token) + 1);
-            } else {
-                df.put(token, 1);
-            }
+        for (int token : sr.getTokenIds()) {
+            df[token]++;
         }
+        idfs = null;
     }
 
     public double idf(String key) {
         if (key == null) {
             throw new NullPointerException("key cannot be null");
         }
-        return 0.1 + Math.log(((double) dc)/df.get(key));
+        return idfs()[tokenIds.get(key)];
+    }
+
+    /**
+     * @return The idf of each token, indexed by token id. A token only seen in partial representations is in no
+     * counted document, so it has an idf of 0 and does not weigh in the similarity of the representations holding it.
+     */
+    double[] idfs() {
+        if (idfs == null) {
+            double[] values = new double[tokenNames.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = df[i] == 0 ? 0.0 : 0.1 + Math.log(((double) dc)/df[i]);
+            }
+            idfs = values;
+        }
+        return idfs;
+    }
+
+    String token(int id) {
+        return tokenNames.get(id);
+    }
+
+    private int intern(String token) {
+        Integer id = tokenIds.get(token);
+        if (id == null) {
+            id = tokenNames.size();
+            tokenIds.put(token, id);
+            tokenNames.add(token);
+            if (id == df.length) {
+                df = Arrays.copyOf(df, df.length * 2);
+            }
+        }
+        return id;
     }
 
     @Override
@@ -81,13 +111,13 @@ class TokenIdfSRBuilder implements SourceRepresentationBuilder {
         for (SourceRepresentation sr : parts) {
             result = result.combine(sr);
         }
-        countDf(((TokenIdfSR) result).getTokenSet());
+        countDf((TokenIdfSR) result);
         return result;
     }
 
     @Override
     public TokenIdfSR buildEmptySourceRepresentation() {
-        return new TokenIdfSR(new Multiset<String>(), this);
+        return new TokenIdfSR(this);
     }
 
     private TokenIdfSR getTokenBasedSourceRepresentation(char[] charArray, int start, int length, boolean count) {
@@ -97,10 +127,26 @@ class TokenIdfSRBuilder implements SourceRepresentationBuilder {
         }catch (Exception e){
             System.out.println("Let if be");
         }
-        if (count) countDf(debug);
-        Multiset<String> multiset = new Multiset<String>();
-        multiset.addAll(debug);
-        return new TokenIdfSR(multiset, this);
+        int[] ids = new int[debug.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = intern(debug.get(i));
+        }
+        Arrays.sort(ids);
+        int[] tokens = new int[ids.length];
+        int[] counts = new int[ids.length];
+        int k = -1;
+        for (int i = 0; i < ids.length; i++) {
+            if (k >= 0 && tokens[k] == ids[i]) {
+                counts[k]++;
+            } else {
+                k++;
+                tokens[k] = ids[i];
+                counts[k] = 1;
+            }
+        }
+        TokenIdfSR sr = new TokenIdfSR(Arrays.copyOf(tokens, k + 1), Arrays.copyOf(counts, k + 1), this);
+        if (count) countDf(sr);
+        return sr;
     }
 
     private List<Integer> computeHashes(char[] charArray, int start, int length, int granularity, List<String> debug) {
@@ -39,16 +39,26 @@ public class HashArray {
         int n = sPairs.length * sFactor;
         int m = tPairs.length;
 
-        int matches = 0, i = 0, j = 0;
-        while (i < n && j < m) {
-            if (sPairs[i / sFactor] == tPairs[j]) {
+        // Each element of sPairs counts sFactor times: si is the element and r how many of its copies were consumed
+        int matches = 0, si = 0, r = 0, j = 0;
+        while (si < sPairs.length && j < m) {
+            long s = sPairs[si];
+            long t = tPairs[j];
+            if (s == t) {
                 matches += 1;
-                i++;
                 j++;
-            } else if (sPairs[i / sFactor] < tPairs[j])
-                i++;
-            else
+                if (++r == sFactor) {
+                    si++;
+                    r = 0;
+                }
+            } else if (s < t) {
+                if (++r == sFactor) {
+                    si++;
+                    r = 0;
+                }
+            } else {
                 j++;
+            }
         }
         if (partialSimilarity) {
             return (double) (matches) / n;
@@ -56,6 +66,25 @@ public class HashArray {
         return (double) (2 * matches) / (n + m);
     }
     
+    protected static long[] merge(long[] sHashes, long[] tHashes) {
+        long[] result = new long[sHashes.length + tHashes.length];
+        int i = 0, j = 0, k = 0;
+        while (i < sHashes.length && j < tHashes.length) {
+            if (sHashes[i] <= tHashes[j]) {
+                result[k++] = sHashes[i++];
+            } else {
+                result[k++] = tHashes[j++];
+            }
+        }
+        while (i < sHashes.length) {
+            result[k++] = sHashes[i++];
+        }
+        while (j < tHashes.length) {
+            result[k++] = tHashes[j++];
+        }
+        return result;
+    }
+    
     protected static long[] computeMinus(long[] sHashes, long[] tHashes) {
         int n = sHashes.length;
         int m = tHashes.length;
@@ -36,6 +36,10 @@ public abstract class SDEntity implements Comparable<SDEntity> {
 		return this.id = id;
 	}
 	
+	void clearMatchingState() {
+	    // override
+	}
+	
 	public String fullName() {
 		return fullName;
 	}
@@ -136,6 +136,12 @@ public class SDMethod extends SDEntity {
 	public void addInlinedTo(SDMethod method, int multiplicity) {
 	    this.inlinedTo.add(method, multiplicity);
 	}
+	
+	@Override
+	void clearMatchingState() {
+	    this.origins = new Multiset<SDMethod>();
+	    this.inlinedTo = new Multiset<SDMethod>();
+	}
 
 	public void setTestAnnotation(boolean testAnnotation) {
 		this.testAnnotation = testAnnotation;
@@ -1,13 +1,12 @@
 package refdiff.core.rm2.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import refdiff.core.rm2.exception.DuplicateEntityException;
 import refdiff.core.rm2.model.refactoring.SDRefactoring;
@@ -76,6 +75,10 @@ public class SDModel {
 
 		SDType createAnonymousType(SDContainerEntity peek, String sourceFilePath, String localName);
 		
+		/**
+		 * The entities of this snapshot that are not matched yet. The unmatched sets are filled as entities are
+		 * created, and no entity can be added to them once they are read.
+		 */
 		Set<SDType> getUnmatchedTypes();
 
         Set<SDMethod> getUnmatchedMethods();
@@ -87,9 +90,11 @@ public class SDModel {
 		private final Map<EntityKey, SDEntity> map = new HashMap<EntityKey, SDEntity>();
 		private final Map<String, EntityKey> nameToKey = new HashMap<String, EntityKey>();
 
-		private final Set<SDType> unmatchedTypes = new TreeSet<SDType>();
-	    private final Set<SDMethod> unmatchedMethods = new TreeSet<SDMethod>();
-	    private final Set<SDAttribute> unmatchedAttributes = new TreeSet<SDAttribute>();
+		private final SortedEntitySet<SDType> unmatchedTypes = new SortedEntitySet<SDType>();
+	    private final SortedEntitySet<SDMethod> unmatchedMethods = new SortedEntitySet<SDMethod>();
+	    private final SortedEntitySet<SDAttribute> unmatchedAttributes = new SortedEntitySet<SDAttribute>();
+	    
+	    private boolean unmatchedSaved = false;
 		
 		public <T extends SDEntity> T find(Class<T> entityType, EntityKey key) {
 			SDEntity sdEntity = map.get(key);
@@ -173,6 +178,22 @@ public class SDModel {
 			return sdMethod;
 		}
 		
+		private void saveOrRestoreUnmatched() {
+		    if (!unmatchedSaved) {
+		        unmatchedTypes.mark();
+		        unmatchedMethods.mark();
+		        unmatchedAttributes.mark();
+		        unmatchedSaved = true;
+		    } else {
+		        unmatchedTypes.reset();
+		        unmatchedMethods.reset();
+		        unmatchedAttributes.reset();
+		        for (SDEntity entity : map.values()) {
+		            entity.clearMatchingState();
+		        }
+		    }
+		}
+		
 		public SDAttribute createAttribute(String attributeName, SDContainerEntity container) {
 		  EntityKey key = new EntityKey(container.key() + "#" + attributeName);
 			SDAttribute sdAttribute = new SDAttribute(this, getId(), attributeName, container);
@@ -189,17 +210,38 @@ public class SDModel {
 //	EntitySet<SDMethod> extractedMethods = new EntitySet<SDMethod>();
 	List<SDRefactoring> refactorings = new ArrayList<SDRefactoring>();
 	
-	private ArrayList<LinkedList<Relationship>> relationships;
+	// Relationships of each entity, in the order they were added, as linked lists of slots kept in int arrays.
+	// Relationship i has slot 2i in the list of its entity before and slot 2i + 1 in the list of its entity after.
+	private Relationship[] relationships;
+	private int relationshipsCount;
+	private int[] firstSlot;
+	private int[] lastSlot;
+	private int[] nextSlot;
+	// The first matching relationship of each entity, or -1
+	private int[] matchRelationship;
 	
 	private int getId() {
 		return nextId++;
 	}
 	
+	/**
+	 * Sets up the relationships between entities with the same key. It may be called again after the
+	 * refactorings are detected, which discards every relationship, refactoring and origin found so far
+	 * so that detection can be repeated on the same model (e.g., with other thresholds).
+	 */
 	public void initRelationships() {
-	    relationships = new ArrayList<LinkedList<Relationship>>(nextId);
-	    for (int i = 0; i < nextId; i++) {
-	        relationships.add(new LinkedList<Relationship>());
-	    }
+	    BEFORE.saveOrRestoreUnmatched();
+	    AFTER.saveOrRestoreUnmatched();
+	    refactorings.clear();
+	    relationships = new Relationship[Math.max(nextId, 16)];
+	    relationshipsCount = 0;
+	    nextSlot = new int[2 * relationships.length];
+	    firstSlot = new int[nextId];
+	    lastSlot = new int[nextId];
+	    matchRelationship = new int[nextId];
+	    Arrays.fill(firstSlot, -1);
+	    Arrays.fill(lastSlot, -1);
+	    Arrays.fill(matchRelationship, -1);
 	    for (SDEntity entityBefore : BEFORE.getAllEntities()) {
 	        if (!entityBefore.isAnonymous()) {
 	            SDEntity entityAfter = AFTER.find(SDEntity.class, entityBefore.key());
@@ -276,8 +318,22 @@ public class SDModel {
             return false;
         }
         
-        relationships.get(entityBefore.getId()).add(r);
-        relationships.get(entityAfter.getId()).add(r);
+        int i = relationshipsCount++;
+        if (i == relationships.length) {
+            relationships = Arrays.copyOf(relationships, 2 * i);
+            nextSlot = Arrays.copyOf(nextSlot, 4 * i);
+        }
+        relationships[i] = r;
+        appendSlot(entityBefore.getId(), 2 * i);
+        appendSlot(entityAfter.getId(), 2 * i + 1);
+        if (type.isMatching()) {
+            if (matchRelationship[entityBefore.getId()] == -1) {
+                matchRelationship[entityBefore.getId()] = i;
+            }
+            if (matchRelationship[entityAfter.getId()] == -1) {
+                matchRelationship[entityAfter.getId()] = i;
+            }
+        }
         
         if (type.isMatching()) {
             BEFORE.unmatchedTypes.remove(entityBefore);
@@ -299,17 +355,24 @@ public class SDModel {
         return true;
     }
 
-    public Relationship getMatchRelationship(SDEntity entity) {
-        for (Relationship r : relationships.get(entity.getId())) {
-            if (r.getType().isMatching()) {
-                return r;
-            }
+    private void appendSlot(int entityId, int slot) {
+        nextSlot[slot] = -1;
+        if (lastSlot[entityId] == -1) {
+            firstSlot[entityId] = slot;
+        } else {
+            nextSlot[lastSlot[entityId]] = slot;
         }
-        return null;
+        lastSlot[entityId] = slot;
+    }
+
+    public Relationship getMatchRelationship(SDEntity entity) {
+        int i = matchRelationship[entity.getId()];
+        return i != -1 ? relationships[i] : null;
     }
 
     public boolean hasRelationship(RelationshipType relationshipType, SDEntity entityBefore, SDEntity entityAfter) {
-        for (Relationship r : relationships.get(entityBefore.getId())) {
+        for (int slot = firstSlot[entityBefore.getId()]; slot != -1; slot = nextSlot[slot]) {
+            Relationship r = relationships[slot >> 1];
             if (r.getType() == relationshipType && r.getEntityAfter().equals(entityAfter)) {
                 return true;
             }
@@ -158,4 +158,9 @@ public class SDType extends SDContainerEntity {
 	public void addOrigin(SDType type, int multiplicity) {
         this.origins.add(type, multiplicity);
     }
+	
+	@Override
+	void clearMatchingState() {
+	    this.origins = new Multiset<SDType>();
+	}
 }
@@ -0,0 +1,177 @@
+package refdiff.core.rm2.model;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of entities ordered by full name which, like a {@code TreeSet<SDEntity>}, keeps a single entity per name
+ * (the first one added). Entities are added while the model is built. Once the set is read, entities are sorted
+ * a single time and afterwards only a bit per entity is flipped on removal, so removing and iterating allocate nothing.
+ * <p>
+ * The set is sealed the first time it is read (by any method other than {@link #add(SDEntity)}): entities can
+ * still be removed, and brought back with {@link #mark()} and {@link #reset()}, but adding one throws an
+ * {@link IllegalStateException}.
+ */
+class SortedEntitySet<T extends SDEntity> extends AbstractSet<T> {
+
+    private static final Comparator<SDEntity> BY_NAME = new Comparator<SDEntity>() {
+        @Override
+        public int compare(SDEntity e1, SDEntity e2) {
+            return e1.compareTo(e2);
+        }
+    };
+
+    private List<T> added = new ArrayList<T>();
+    private SDEntity[] elements;
+    private int[] positionById;
+    private BitSet present;
+    private BitSet marked;
+
+    /**
+     * Adds an entity, unless an entity with the same name was added before (which is found once the set is read).
+     * 
+     * @throws IllegalStateException if the set was already read.
+     */
+    @Override
+    public boolean add(T entity) {
+        if (added == null) {
+            throw new IllegalStateException("Entities can not be added after the set is read");
+        }
+        added.add(entity);
+        return true;
+    }
+
+    private void ensureSorted() {
+        if (added == null) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        T[] sorted = added.toArray((T[]) new SDEntity[added.size()]);
+        // the sort is stable, so the first entity added with each name comes first
+        Arrays.sort(sorted, BY_NAME);
+        int maxId = -1;
+        for (T entity : sorted) {
+            maxId = Math.max(maxId, entity.getId());
+        }
+        elements = new SDEntity[sorted.length];
+        positionById = new int[maxId + 1];
+        Arrays.fill(positionById, -1);
+        int n = 0;
+        for (T entity : sorted) {
+            if (n > 0 && elements[n - 1].compareTo(entity) == 0) {
+                positionById[entity.getId()] = n - 1;
+            } else {
+                positionById[entity.getId()] = n;
+                elements[n++] = entity;
+            }
+        }
+        elements = Arrays.copyOf(elements, n);
+        present = new BitSet(n);
+        present.set(0, n);
+        added = null;
+    }
+
+    private int positionOf(Object o) {
+        if (!(o instanceof SDEntity)) {
+            return -1;
+        }
+        SDEntity entity = (SDEntity) o;
+        int id = entity.getId();
+        if (id >= 0 && id < positionById.length && positionById[id] != -1) {
+            int position = positionById[id];
+            // ids are only unique within a model, so check the name of an entity of another model
+            if (elements[position] == entity || elements[position].compareTo(entity) == 0) {
+                return position;
+            }
+        }
+        // an entity that was never added may still have the name of one that was
+        int position = Arrays.binarySearch(elements, entity, BY_NAME);
+        return position >= 0 ? position : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        ensureSorted();
+        int position = positionOf(o);
+        return position != -1 && present.get(position);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        ensureSorted();
+        int position = positionOf(o);
+        if (position != -1 && present.get(position)) {
+            present.clear(position);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        ensureSorted();
+        present.clear();
+    }
+
+    @Override
+    public int size() {
+        ensureSorted();
+        return present.cardinality();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        ensureSorted();
+        return new Iterator<T>() {
+            int next = present.nextSetBit(0);
+            int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next != -1;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (next == -1) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = present.nextSetBit(next + 1);
+                return (T) elements[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last == -1) {
+                    throw new IllegalStateException();
+                }
+                present.clear(last);
+                last = -1;
+            }
+        };
+    }
+
+    /**
+     * Remembers the entities currently in the set, so that {@link #reset()} can bring them back.
+     */
+    void mark() {
+        ensureSorted();
+        marked = (BitSet) present.clone();
+    }
+
+    /**
+     * Brings back the entities that were in the set when {@link #mark()} was called.
+     */
+    void reset() {
+        present = (BitSet) marked.clone();
+    }
+
+}
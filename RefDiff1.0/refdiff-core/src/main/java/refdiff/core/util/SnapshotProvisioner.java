@@ -0,0 +1,180 @@
+package refdiff.core.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the Java files of commits and of their parents to snapshot folders next to the project folder
+ * ({@code <project>-<sha1>}, the folders {@code GitHistoryStructuralDiffAnalyzer} looks for), reading them straight
+ * from the object database. Nothing is checked out, so many commits can be provisioned and then analyzed at the
+ * same time.
+ *
+ * Each file content is written once to a content-addressed store ({@code <project>-objects}) and the snapshots hard
+ * link to it, so a file that is the same in several snapshots takes space only once. Where hard links are not
+ * supported the file is copied instead. Snapshot files should therefore never be written to.
+ */
+public class SnapshotProvisioner {
+
+	Logger logger = LoggerFactory.getLogger(SnapshotProvisioner.class);
+
+	private final Repository repository;
+	private final File projectFolder;
+	private final File objectsFolder;
+	private final ConcurrentMap<String, Object> snapshotLocks = new ConcurrentHashMap<>();
+	private volatile boolean linksSupported = true;
+
+	public SnapshotProvisioner(Repository repository) {
+		this.repository = repository;
+		this.projectFolder = repository.getDirectory().getParentFile();
+		this.objectsFolder = new File(projectFolder.getParentFile(), projectFolder.getName() + "-objects");
+	}
+
+	public File getSnapshotFolder(String commitId) {
+		return new File(projectFolder.getParentFile(), projectFolder.getName() + "-" + commitId);
+	}
+
+	/**
+	 * Provisions the snapshots of a commit and of its parent.
+	 *
+	 * @return false if the commit is not analyzed because it has no parent or more than one.
+	 */
+	public boolean provision(String commitId) throws Exception {
+		try (RevWalk walk = new RevWalk(repository)) {
+			RevCommit commit = walk.parseCommit(repository.resolve(commitId));
+			if (commit.getParentCount() != 1) {
+				return false;
+			}
+			RevCommit parentCommit = walk.parseCommit(commit.getParent(0));
+			materialize(commit);
+			materialize(parentCommit);
+			return true;
+		}
+	}
+
+	/**
+	 * Provisions the snapshots of several commits (and of their parents) using {@code nThreads} threads.
+	 *
+	 * @return The commits whose snapshots are ready. The others failed (the error is logged) or have no parent or
+	 * more than one.
+	 */
+	public Set<String> provision(Collection<String> commitIds, int nThreads) throws InterruptedException {
+		if (nThreads < 1) {
+			throw new IllegalArgumentException("nThreads should be at least 1");
+		}
+		Set<String> provisioned = new HashSet<>();
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		try {
+			List<String> submitted = new ArrayList<>(commitIds);
+			List<Future<Boolean>> futures = new ArrayList<>(submitted.size());
+			for (String commitId : submitted) {
+				futures.add(executor.submit(() -> provision(commitId)));
+			}
+			for (int i = 0; i < submitted.size(); i++) {
+				try {
+					if (futures.get(i).get()) {
+						provisioned.add(submitted.get(i));
+					}
+				} catch (ExecutionException e) {
+					logger.warn(String.format("Could not provision the snapshots of %s", submitted.get(i)), e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return provisioned;
+	}
+
+	private void materialize(RevCommit commit) throws IOException {
+		String commitId = commit.getId().getName();
+		File folder = getSnapshotFolder(commitId);
+		// The parent of a commit may be another commit being provisioned
+		synchronized (snapshotLocks.computeIfAbsent(commitId, k -> new Object())) {
+			if (folder.exists()) {
+				return;
+			}
+			// The snapshot is written to a temporary folder and renamed when complete, so that a partial snapshot is
+			// never taken for a complete one
+			File tempFolder = new File(folder.getParentFile(), folder.getName() + ".tmp");
+			FileUtils.deleteDirectory(tempFolder);
+			Files.createDirectories(tempFolder.toPath());
+			try (ObjectReader reader = repository.newObjectReader(); TreeWalk treeWalk = new TreeWalk(reader)) {
+				treeWalk.addTree(commit.getTree());
+				treeWalk.setRecursive(true);
+				treeWalk.setFilter(PathSuffixFilter.create(".java"));
+				while (treeWalk.next()) {
+					// Symbolic links and submodules are skipped
+					if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE) {
+						Path file = tempFolder.toPath().resolve(treeWalk.getPathString());
+						Files.createDirectories(file.getParent());
+						link(store(reader, treeWalk.getObjectId(0)), file);
+					}
+				}
+			}
+			Files.move(tempFolder.toPath(), folder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	private Path store(ObjectReader reader, ObjectId blobId) throws IOException {
+		String name = blobId.getName();
+		Path blob = objectsFolder.toPath().resolve(name.substring(0, 2)).resolve(name.substring(2));
+		if (!Files.exists(blob)) {
+			Files.createDirectories(blob.getParent());
+			Path tempFile = Files.createTempFile(blob.getParent(), name.substring(2), ".tmp");
+			try {
+				try (OutputStream out = Files.newOutputStream(tempFile)) {
+					reader.open(blobId).copyTo(out);
+				}
+				Files.move(tempFile, blob, StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException e) {
+				// Stored by another thread meanwhile
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		}
+		return blob;
+	}
+
+	private void link(Path blob, Path file) throws IOException {
+		if (linksSupported) {
+			try {
+				Files.createLink(file, blob);
+				return;
+			} catch (UnsupportedOperationException e) {
+				linksSupported = false;
+			} catch (IOException e) {
+				// e.g., the file system does not support hard links or the blob has too many of them
+				logger.debug(String.format("Could not link %s, copying it instead", file), e);
+			}
+		}
+		Files.copy(blob, file);
+	}
+
+}
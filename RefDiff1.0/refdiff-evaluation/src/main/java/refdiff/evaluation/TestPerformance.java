@@ -59,17 +59,9 @@ public class TestPerformance {
 
         @Override
         public void run(String... args) throws Exception {
-            mine("ReactiveX/RxJava", "2.x", "D:/Danilo/Workspaces/refdiff-eval-2/RxJava");
-            mine("elastic/elasticsearch", "master", "D:/Danilo/Workspaces/refdiff-eval-2/elasticsearch");
-            mine("square/okhttp", "master", "D:/Danilo/Workspaces/refdiff-eval-2/okhttp");
-            //mine("nostra13/Android-Universal-Image-Loader", "master", "D:/Danilo/Workspaces/refdiff-eval-2/Android-Universal-Image-Loader");
-            mine("androidannotations/androidannotations", "develop", "D:/Danilo/Workspaces/refdiff-eval-2/androidannotations");
-            mine("PhilJay/MPAndroidChart", "master", "D:/Danilo/Workspaces/refdiff-eval-2/MPAndroidChart");
-            mine("bumptech/glide", "master", "D:/Danilo/Workspaces/refdiff-eval-2/glide");
-            mine("zxing/zxing", "master", "D:/Danilo/Workspaces/refdiff-eval-2/zxing");
-            mine("spring-projects/spring-framework", "master", "D:/Danilo/Workspaces/refdiff-eval-2/spring-framework");
-            mine("libgdx/libgdx", "master", "D:/Danilo/Workspaces/refdiff-eval-2/libgdx");
-            mine("netty/netty", "4.1", "D:/Danilo/Workspaces/refdiff-eval-2/netty");
+            for (String[] repository : REPOSITORIES) {
+                mine(repository[0], repository[1], repository[2]);
+            }
         }
 
         private void mine(String fullName, String branch, String folder) {
@@ -82,27 +74,7 @@ public class TestPerformance {
         private void mine(String fullName, String branch, String folder, GitRefactoringDetector algo) {
             process(fullName, branch, folder, (repository, commit, dbCommit) -> {
                 if (commitResultDao.findOneByCommitAndTool(dbCommit, algo.getConfigId()) == null) {
-                    String sha1 = commit.getId().getName();
-                    RefactoringCollector rc = new RefactoringCollector(fullName, sha1);
-                    long t0 = System.currentTimeMillis();
-                    algo.detectAtCommit(repository, commit.getId().getName(), rc);
-                    long tf = System.currentTimeMillis();
-                    final DbCommitResult result = new DbCommitResult(dbCommit, algo.getConfigId());
-                    result.setExecTime(tf - t0);
-                    try {
-                        RefactoringSet set = rc.assertAndGetResult();
-                        result.setSuccess(true);
-                        Set<RefactoringRelationship> refactoringsFound = set.getRefactorings();
-                        result.setRefactorings(refactoringsFound.stream()
-                            .map(r -> new DbRefactoringRelationship(result, r.getRefactoringType().getDisplayName(), r.getEntityBefore(), r.getEntityAfter()))
-                            .collect(Collectors.toSet()));
-                    } catch (Exception e) {
-                        result.setSuccess(false);
-                        result.setErrorLog(e.getMessage());
-                    } finally {
-                        commitResultDao.save(result);
-                        System.out.println(String.format("%s %s %s", algo.getConfigId(), fullName, sha1));
-                    }
+                    commitResultDao.save(detect(algo, repository, fullName, dbCommit));
                 }
             });
         }
@@ -118,20 +90,14 @@ public class TestPerformance {
                     dbRepository = repositoryDao.save(new DbRepository(fullName));
                 }
                 for (RevCommit commit : walk) {
-                    LocalDateTime ldt = LocalDateTime.ofEpochSecond(commit.getCommitTime(), 0, ZoneOffset.UTC);
-                    int parentsCount = commit.getParents().length;
-                    if (ldt.isAfter(LocalDateTime.of(2017, 1, 1, 0, 0)) && parentsCount == 1) {
+                    if (isMined(commit)) {
                         String sha1 = commit.getId().getName();
                         DbCommit dbCommit = commitDao.findOneByRepositoryAndSha1(dbRepository, sha1);
                         if (dbCommit == null) {
                             dbCommit = commitDao.save(new DbCommit(dbRepository, sha1));
                         }
                         if (dbCommit.getAffectedFiles() == null) {
-                            List<String> javaFiles = new ArrayList<>();
-                            Map<String, String> renamed = new HashMap<>();
-                            gitService.fileTreeDiff(repository, commit, javaFiles, javaFiles, renamed, false);
-                            Set<String> distinctFiles = new HashSet<>(javaFiles);
-                            dbCommit.setAffectedFiles(distinctFiles.size());
+                            dbCommit.setAffectedFiles(countAffectedFiles(gitService, repository, commit));
                             commitDao.save(dbCommit);
                         }
                         processCommitFn.processCommit(repository, commit, dbCommit);
@@ -144,6 +110,61 @@ public class TestPerformance {
         }
     }
 
+    /**
+     * Repositories mined, as full name, branch and local folder.
+     */
+    static final String[][] REPOSITORIES = {
+        {"ReactiveX/RxJava", "2.x", "D:/Danilo/Workspaces/refdiff-eval-2/RxJava"},
+        {"elastic/elasticsearch", "master", "D:/Danilo/Workspaces/refdiff-eval-2/elasticsearch"},
+        {"square/okhttp", "master", "D:/Danilo/Workspaces/refdiff-eval-2/okhttp"},
+        //{"nostra13/Android-Universal-Image-Loader", "master", "D:/Danilo/Workspaces/refdiff-eval-2/Android-Universal-Image-Loader"},
+        {"androidannotations/androidannotations", "develop", "D:/Danilo/Workspaces/refdiff-eval-2/androidannotations"},
+        {"PhilJay/MPAndroidChart", "master", "D:/Danilo/Workspaces/refdiff-eval-2/MPAndroidChart"},
+        {"bumptech/glide", "master", "D:/Danilo/Workspaces/refdiff-eval-2/glide"},
+        {"zxing/zxing", "master", "D:/Danilo/Workspaces/refdiff-eval-2/zxing"},
+        {"spring-projects/spring-framework", "master", "D:/Danilo/Workspaces/refdiff-eval-2/spring-framework"},
+        {"libgdx/libgdx", "master", "D:/Danilo/Workspaces/refdiff-eval-2/libgdx"},
+        {"netty/netty", "4.1", "D:/Danilo/Workspaces/refdiff-eval-2/netty"},
+    };
+
+    static boolean isMined(RevCommit commit) {
+        LocalDateTime ldt = LocalDateTime.ofEpochSecond(commit.getCommitTime(), 0, ZoneOffset.UTC);
+        int parentsCount = commit.getParents().length;
+        return ldt.isAfter(LocalDateTime.of(2017, 1, 1, 0, 0)) && parentsCount == 1;
+    }
+
+    static int countAffectedFiles(GitService gitService, Repository repository, RevCommit commit) throws Exception {
+        List<String> javaFiles = new ArrayList<>();
+        Map<String, String> renamed = new HashMap<>();
+        gitService.fileTreeDiff(repository, commit, javaFiles, javaFiles, renamed, false);
+        Set<String> distinctFiles = new HashSet<>(javaFiles);
+        return distinctFiles.size();
+    }
+
+    static DbCommitResult detect(GitRefactoringDetector algo, Repository repository, String fullName, DbCommit dbCommit) {
+        String sha1 = dbCommit.getSha1();
+        RefactoringCollector rc = new RefactoringCollector(fullName, sha1);
+        long t0 = System.currentTimeMillis();
+        algo.detectAtCommit(repository, sha1, rc);
+        long tf = System.currentTimeMillis();
+        final DbCommitResult result = new DbCommitResult(dbCommit, algo.getConfigId());
+        result.setExecTime(tf - t0);
+        try {
+            RefactoringSet set = rc.assertAndGetResult();
+            result.setSuccess(true);
+            Set<RefactoringRelationship> refactoringsFound = set.getRefactorings();
+            result.setRefactorings(refactoringsFound.stream()
+                .map(r -> new DbRefactoringRelationship(result, r.getRefactoringType().getDisplayName(), r.getEntityBefore(), r.getEntityAfter()))
+                .collect(Collectors.toSet()));
+        } catch (Exception e) {
+            result.setSuccess(false);
+            result.setErrorLog(e.getMessage());
+        } finally {
+            System.out.println(String.format("%s %s %s", algo.getConfigId(), fullName, sha1));
+        }
+        return result;
+    }
+
     @FunctionalInterface
     interface ProcessCommitFn {
         void processCommit(Repository repository, RevCommit commit, DbCommit dbCommit);
@@ -0,0 +1,139 @@
+package refdiff.evaluation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.refactoringminer.rm1.GitHistoryRefactoringMinerImpl;
+
+import refdiff.core.RefDiff;
+import refdiff.core.api.GitRefactoringDetector;
+import refdiff.core.api.GitService;
+import refdiff.core.util.GitServiceImpl;
+import refdiff.evaluation.db.LocalResultsStore;
+import refdiff.evaluation.db.model.DbCommit;
+import refdiff.evaluation.db.model.DbCommitResult;
+import refdiff.evaluation.db.model.DbRepository;
+import refdiff.evaluation.rm.RmAdapter;
+
+/**
+ * Same as {@link TestPerformance}, but keeps the results in a {@link LocalResultsStore}, so it needs no database
+ * server, and mines the commits of each repository in parallel. Every worker has its own clone of the repository,
+ * as the tools check out the commits they analyze. The commits mined at the same time compete for the machine, so
+ * the number of workers is saved with each result: exec_time is only comparable between results with the same
+ * number of workers, and not with those of {@link TestPerformance}, which mines one commit at a time.
+ *
+ * Usage: TestPerformanceLocal [store-file] [workers]. When it finishes, the results are also exported to
+ * store-file.sql.
+ */
+public class TestPerformanceLocal {
+
+    private final LocalResultsStore store;
+    private final int nWorkers;
+
+    public TestPerformanceLocal(LocalResultsStore store, int nWorkers) {
+        if (nWorkers < 1) {
+            throw new IllegalArgumentException("nWorkers should be at least 1");
+        }
+        this.store = store;
+        this.nWorkers = nWorkers;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File storeFile = new File(args.length > 0 ? args[0] : "refdiff-performance");
+        int nWorkers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        try (LocalResultsStore store = new LocalResultsStore(storeFile)) {
+            TestPerformanceLocal runner = new TestPerformanceLocal(store, nWorkers);
+            for (String[] repository : TestPerformance.REPOSITORIES) {
+                runner.mine(repository[0], repository[1], repository[2]);
+            }
+            store.exportTo(new File(storeFile.getPath() + ".sql"));
+        }
+    }
+
+    public void mine(String fullName, String branch, String folder) throws Exception {
+        List<DbCommit> commits = listCommits(fullName, branch, folder);
+        mine(fullName, folder, commits, () -> new RmAdapter(new GitHistoryRefactoringMinerImpl()));
+        mine(fullName, folder, commits, () -> new RefDiff());
+    }
+
+    private List<DbCommit> listCommits(String fullName, String branch, String folder) throws Exception {
+        List<DbCommit> commits = new ArrayList<>();
+        GitService gitService = new GitServiceImpl();
+        try (
+            Repository repository = gitService.cloneIfNotExists(folder, cloneUrl(fullName));
+            RevWalk walk = gitService.createAllRevsWalk(repository, branch);) {
+
+            for (RevCommit commit : walk) {
+                if (TestPerformance.isMined(commit)) {
+                    String sha1 = commit.getId().getName();
+                    DbCommit dbCommit = store.findCommit(fullName, sha1);
+                    if (dbCommit == null) {
+                        dbCommit = new DbCommit(new DbRepository(fullName), sha1);
+                    }
+                    if (dbCommit.getAffectedFiles() == null) {
+                        dbCommit.setAffectedFiles(TestPerformance.countAffectedFiles(gitService, repository, commit));
+                        store.saveCommit(dbCommit);
+                    }
+                    commits.add(dbCommit);
+                }
+            }
+            gitService.checkout(repository, branch);
+        }
+        return commits;
+    }
+
+    private void mine(String fullName, String folder, List<DbCommit> commits, Supplier<GitRefactoringDetector> detectorFactory) throws Exception {
+        String tool = detectorFactory.get().getConfigId();
+        Queue<DbCommit> pending = new ConcurrentLinkedQueue<>();
+        for (DbCommit dbCommit : commits) {
+            if (!store.isProcessed(dbCommit, tool)) {
+                pending.add(dbCommit);
+            }
+        }
+        int n = Math.min(nWorkers, Math.max(pending.size(), 1));
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                String workerFolder = folder + "-worker" + i;
+                futures.add(executor.submit(() -> {
+                    GitRefactoringDetector algo = detectorFactory.get();
+                    try (Repository repository = new GitServiceImpl().cloneIfNotExists(workerFolder, cloneUrl(fullName))) {
+                        for (DbCommit dbCommit = pending.poll(); dbCommit != null; dbCommit = pending.poll()) {
+                            DbCommitResult result = TestPerformance.detect(algo, repository, fullName, dbCommit);
+                            result.setWorkers(n);
+                            store.saveResult(result);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace(System.err);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        store.flush();
+    }
+
+    private static String cloneUrl(String fullName) {
+        return "https://github.com/" + fullName + ".git";
+    }
+
+}
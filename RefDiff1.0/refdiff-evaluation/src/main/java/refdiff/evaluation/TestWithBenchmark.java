@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import refdiff.core.RefDiff;
 import refdiff.core.api.RefactoringType;
@@ -11,12 +12,15 @@ import refdiff.core.rm2.analysis.RefDiffConfigImpl;
 import refdiff.core.rm2.analysis.codesimilarity.CodeSimilarityStrategy;
 import refdiff.core.rm2.model.RelationshipType;
 import refdiff.evaluation.benchmark.AbstractDataset;
+import refdiff.evaluation.utils.CalibrationEngine;
+import refdiff.evaluation.utils.RefactoringSet;
 import refdiff.evaluation.utils.ResultComparator;
 import refdiff.evaluation.utils.ResultComparator.CompareResult;
 
 public class TestWithBenchmark {
 
 	private AbstractDataset oracle;
+	private CalibrationEngine engine;
 
 	public static void main(String[] args) {
 		new TestWithBenchmark(new BenchmarkDataset()).calibrate();
@@ -41,6 +45,9 @@ public class TestWithBenchmark {
 //        config.setThreshold(RelationshipType.PULL_UP_FIELD, 0.2);
 //        config.setThreshold(RelationshipType.PUSH_DOWN_FIELD, 0.2);
 
+        // Every commit is parsed once here; each calibration step below only replays the detection
+        engine = new CalibrationEngine(config, oracle.getExpected());
+
 //        config = calibrate(config, RelationshipType.MOVE_TYPE, RefactoringType.MOVE_CLASS);
 //        config = calibrate(config, RelationshipType.RENAME_TYPE, RefactoringType.RENAME_CLASS);
 //        config = calibrate(config, RelationshipType.EXTRACT_SUPERTYPE, RefactoringType.EXTRACT_SUPERCLASS, RefactoringType.EXTRACT_INTERFACE);
@@ -73,8 +80,9 @@ public class TestWithBenchmark {
         double maxF1 = 0.0;
         RefDiffConfigImpl maxConfig = configurations.get(0);
         
+        Map<String, RefactoringSet[]> results = engine.detect(configurations);
         for (RefDiffConfigImpl config : configurations) {
-            rc1.compareWith(config.getId(), ResultComparator.collectRmResult(new RefDiff(config), oracle.getExpected()));
+            rc1.compareWith(config.getId(), results.get(config.getId()));
             CompareResult result = rc1.getCompareResult(config.getId(), refTypeSet);
             double f1 = result.getF1();
             if (f1 >= maxF1) {
@@ -0,0 +1,307 @@
+package refdiff.evaluation.db;
+
+import java.io.Closeable;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import refdiff.evaluation.db.model.DbCommit;
+import refdiff.evaluation.db.model.DbCommitResult;
+import refdiff.evaluation.db.model.DbRefactoringRelationship;
+import refdiff.evaluation.db.model.DbRepository;
+
+/**
+ * A results store kept in an embedded H2 database file, so that mining needs no database server.
+ *
+ * The tables and columns are the ones the JPA entities in {@link refdiff.evaluation.db.model} are mapped to, so
+ * the results can be exported (see {@link #exportTo(File)}) and loaded into the database used by the Spring DAOs.
+ * Which commits were already processed by each tool is loaded in memory when the store is opened, and writes are
+ * buffered and sent in batches. All methods are thread-safe.
+ */
+public class LocalResultsStore implements Closeable {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final Connection connection;
+    private final int batchSize;
+
+    private final Map<String, DbRepository> repositories = new HashMap<>();
+    private final Map<String, DbCommit> commits = new HashMap<>();
+    private final Set<String> processed = new HashSet<>();
+
+    private final List<DbRepository> pendingRepositories = new ArrayList<>();
+    private final Map<Integer, DbCommit> pendingCommits = new LinkedHashMap<>();
+    private final List<DbCommitResult> pendingResults = new ArrayList<>();
+
+    private int lastRepositoryId;
+    private int lastCommitId;
+    private int lastCommitResultId;
+    private int lastRefactoringRelationshipId;
+
+    public LocalResultsStore(File file) throws SQLException {
+        this(file, DEFAULT_BATCH_SIZE);
+    }
+
+    public LocalResultsStore(File file, int batchSize) throws SQLException {
+        this("jdbc:h2:file:" + file.getAbsolutePath(), batchSize);
+    }
+
+    /**
+     * @param url The JDBC URL of an H2 database, such as jdbc:h2:mem:results.
+     */
+    public LocalResultsStore(String url, int batchSize) throws SQLException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize should be at least 1");
+        }
+        this.batchSize = batchSize;
+        this.connection = DriverManager.getConnection(url, "sa", "");
+        try {
+            createTables();
+            load();
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private void createTables() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("create table if not exists repository (id integer primary key, full_name varchar(200) unique)");
+            st.execute("create table if not exists commit (id integer primary key, sha1 varchar(100), repository integer references repository(id), affected_files integer, unique (repository, sha1))");
+            st.execute("create table if not exists commit_result (id integer primary key, commit integer references commit(id), tool varchar(200), exec_time bigint, workers integer, success boolean not null, error_log varchar(2000), unique (commit, tool))");
+            // stores created before the number of workers was recorded
+            st.execute("alter table commit_result add column if not exists workers integer");
+            st.execute("create table if not exists refactoring_relationship (id integer primary key, commit_result integer references commit_result(id), refactoring_type varchar(200), entity_before varchar(1000), entity_after varchar(1000))");
+        }
+    }
+
+    private void load() throws SQLException {
+        Map<Integer, DbRepository> repositoriesById = new HashMap<>();
+        Map<Integer, DbCommit> commitsById = new HashMap<>();
+        try (Statement st = connection.createStatement()) {
+            try (ResultSet rs = st.executeQuery("select id, full_name from repository")) {
+                while (rs.next()) {
+                    DbRepository repository = new DbRepository(rs.getString(2));
+                    repository.setId(rs.getInt(1));
+                    repositories.put(repository.getFullName(), repository);
+                    repositoriesById.put(repository.getId(), repository);
+                    lastRepositoryId = Math.max(lastRepositoryId, repository.getId());
+                }
+            }
+            try (ResultSet rs = st.executeQuery("select id, sha1, repository, affected_files from commit")) {
+                while (rs.next()) {
+                    DbRepository repository = repositoriesById.get(rs.getInt(3));
+                    DbCommit commit = new DbCommit(repository, rs.getString(2));
+                    commit.setId(rs.getInt(1));
+                    int affectedFiles = rs.getInt(4);
+                    commit.setAffectedFiles(rs.wasNull() ? null : affectedFiles);
+                    commits.put(commitKey(repository.getFullName(), commit.getSha1()), commit);
+                    commitsById.put(commit.getId(), commit);
+                    lastCommitId = Math.max(lastCommitId, commit.getId());
+                }
+            }
+            try (ResultSet rs = st.executeQuery("select id, commit, tool from commit_result")) {
+                while (rs.next()) {
+                    processed.add(processedKey(commitsById.get(rs.getInt(2)), rs.getString(3)));
+                    lastCommitResultId = Math.max(lastCommitResultId, rs.getInt(1));
+                }
+            }
+            try (ResultSet rs = st.executeQuery("select max(id) from refactoring_relationship")) {
+                rs.next();
+                lastRefactoringRelationshipId = rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * @return The commit, or null if it was never saved.
+     */
+    public synchronized DbCommit findCommit(String repositoryFullName, String sha1) {
+        return commits.get(commitKey(repositoryFullName, sha1));
+    }
+
+    /**
+     * Saves a new commit (along with its repository, if it is new as well) or the affected files of a commit
+     * already saved.
+     */
+    public synchronized DbCommit saveCommit(DbCommit commit) throws SQLException {
+        if (commit.getId() == null) {
+            commit.setRepository(getOrCreateRepository(commit.getRepository().getFullName()));
+            commit.setId(++lastCommitId);
+            commits.put(commitKey(commit.getRepository().getFullName(), commit.getSha1()), commit);
+        }
+        pendingCommits.put(commit.getId(), commit);
+        flushIfNeeded();
+        return commit;
+    }
+
+    private DbRepository getOrCreateRepository(String fullName) {
+        DbRepository repository = repositories.get(fullName);
+        if (repository == null) {
+            repository = new DbRepository(fullName);
+            repository.setId(++lastRepositoryId);
+            repositories.put(fullName, repository);
+            pendingRepositories.add(repository);
+        }
+        return repository;
+    }
+
+    public synchronized boolean isProcessed(DbCommit commit, String tool) {
+        return processed.contains(processedKey(commit, tool));
+    }
+
+    /**
+     * Saves the result of a tool in a commit (which should have been saved before) and its refactorings.
+     *
+     * @throws IllegalStateException if there is a result for the same commit and tool already.
+     */
+    public synchronized void saveResult(DbCommitResult result) throws SQLException {
+        if (!processed.add(processedKey(result.getCommit(), result.getTool()))) {
+            throw new IllegalStateException(String.format("Commit %s already has a result for %s", result.getCommit().getSha1(), result.getTool()));
+        }
+        result.setId(++lastCommitResultId);
+        if (result.getRefactorings() != null) {
+            for (DbRefactoringRelationship r : result.getRefactorings()) {
+                r.setId(++lastRefactoringRelationshipId);
+            }
+        }
+        pendingResults.add(result);
+        flushIfNeeded();
+    }
+
+    private void flushIfNeeded() throws SQLException {
+        if (pendingCommits.size() + pendingResults.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes every pending change in a single transaction.
+     */
+    public synchronized void flush() throws SQLException {
+        if (pendingRepositories.isEmpty() && pendingCommits.isEmpty() && pendingResults.isEmpty()) {
+            return;
+        }
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement("insert into repository (id, full_name) values (?, ?)")) {
+                for (DbRepository repository : pendingRepositories) {
+                    ps.setInt(1, repository.getId());
+                    ps.setString(2, repository.getFullName());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = connection.prepareStatement("merge into commit (id, sha1, repository, affected_files) key (id) values (?, ?, ?, ?)")) {
+                for (DbCommit commit : pendingCommits.values()) {
+                    ps.setInt(1, commit.getId());
+                    ps.setString(2, commit.getSha1());
+                    ps.setInt(3, commit.getRepository().getId());
+                    if (commit.getAffectedFiles() == null) {
+                        ps.setNull(4, Types.INTEGER);
+                    } else {
+                        ps.setInt(4, commit.getAffectedFiles());
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement psResult = connection.prepareStatement("insert into commit_result (id, commit, tool, exec_time, workers, success, error_log) values (?, ?, ?, ?, ?, ?, ?)");
+                PreparedStatement psRefactoring = connection.prepareStatement("insert into refactoring_relationship (id, commit_result, refactoring_type, entity_before, entity_after) values (?, ?, ?, ?, ?)")) {
+                for (DbCommitResult result : pendingResults) {
+                    psResult.setInt(1, result.getId());
+                    psResult.setInt(2, result.getCommit().getId());
+                    psResult.setString(3, result.getTool());
+                    if (result.getExecTime() == null) {
+                        psResult.setNull(4, Types.BIGINT);
+                    } else {
+                        psResult.setLong(4, result.getExecTime());
+                    }
+                    if (result.getWorkers() == null) {
+                        psResult.setNull(5, Types.INTEGER);
+                    } else {
+                        psResult.setInt(5, result.getWorkers());
+                    }
+                    psResult.setBoolean(6, result.getSuccess());
+                    psResult.setString(7, truncate(result.getErrorLog(), 2000));
+                    psResult.addBatch();
+                    if (result.getRefactorings() != null) {
+                        for (DbRefactoringRelationship r : result.getRefactorings()) {
+                            psRefactoring.setInt(1, r.getId());
+                            psRefactoring.setInt(2, result.getId());
+                            psRefactoring.setString(3, r.getRefactoringType());
+                            psRefactoring.setString(4, truncate(r.getEntityBefore(), 1000));
+                            psRefactoring.setString(5, truncate(r.getEntityAfter(), 1000));
+                            psRefactoring.addBatch();
+                        }
+                    }
+                }
+                psResult.executeBatch();
+                psRefactoring.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        pendingRepositories.clear();
+        pendingCommits.clear();
+        pendingResults.clear();
+    }
+
+    /**
+     * Writes a SQL script with the schema and every row in the store.
+     */
+    public synchronized void exportTo(File script) throws SQLException {
+        flush();
+        try (PreparedStatement ps = connection.prepareStatement("script to ?")) {
+            ps.setString(1, script.getAbsolutePath());
+            ps.execute();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static String commitKey(String repositoryFullName, String sha1) {
+        return repositoryFullName + "@" + sha1;
+    }
+
+    private static String processedKey(DbCommit commit, String tool) {
+        return commit.getId() + "@" + tool;
+    }
+
+    private static String truncate(String s, int length) {
+        if (s == null || s.length() <= length) {
+            return s;
+        }
+        return s.substring(0, length);
+    }
+
+}
@@ -33,6 +33,12 @@ public class DbCommitResult {
 
     private Long execTime;
 
+    /**
+     * How many commits were mined in parallel while execTime was measured, or null if they were mined one at a time.
+     * Times measured with different numbers of workers are not comparable.
+     */
+    private Integer workers;
+
     private boolean success = true;
 
     @Column(length = 2000)
@@ -81,6 +87,14 @@ public class DbCommitResult {
         this.execTime = execTime;
     }
 
+    public Integer getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(Integer workers) {
+        this.workers = workers;
+    }
+
     public Set<DbRefactoringRelationship> getRefactorings() {
         return refactorings;
     }
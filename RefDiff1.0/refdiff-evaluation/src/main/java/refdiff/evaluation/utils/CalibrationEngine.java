@@ -0,0 +1,109 @@
+package refdiff.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.eclipse.jgit.lib.Repository;
+
+import refdiff.core.api.GitService;
+import refdiff.core.rm2.analysis.GitHistoryStructuralDiffAnalyzer;
+import refdiff.core.rm2.analysis.RefDiffConfig;
+import refdiff.core.rm2.analysis.RefactoringDetector;
+import refdiff.core.rm2.analysis.SimilarityCache;
+import refdiff.core.rm2.analysis.StructuralDiffHandler;
+import refdiff.core.rm2.model.SDModel;
+import refdiff.core.rm2.model.refactoring.SDRefactoring;
+import refdiff.core.util.GitServiceImpl;
+
+/**
+ * Evaluates many threshold configurations over the same commits while parsing each commit only once.
+ *
+ * The structural diff model of every commit is built up front and kept in memory. Each configuration then
+ * only repeats the refactoring detection over those models, reusing the similarity already computed for
+ * each pair of entities. Commits are replayed in parallel.
+ */
+public class CalibrationEngine {
+
+    private final RefDiffConfig baseConfig;
+    private final List<RefactoringSet> commits;
+    private final List<ParsedCommit> parsedCommits;
+
+    public CalibrationEngine(RefDiffConfig baseConfig, List<RefactoringSet> commits) {
+        this.baseConfig = baseConfig;
+        this.commits = commits;
+        this.parsedCommits = new ArrayList<>(commits.size());
+        for (RefactoringSet commit : commits) {
+            parsedCommits.add(parse(commit.getProject(), commit.getRevision()));
+        }
+    }
+
+    private ParsedCommit parse(String cloneUrl, String commitId) {
+        GitService git = new GitServiceImpl();
+        String tempDir = "c:/tmp";
+        String projectName = cloneUrl.substring(cloneUrl.lastIndexOf('/') + 1, cloneUrl.lastIndexOf('.'));
+        String folder = tempDir + "/" + projectName;
+        ParsedCommit parsedCommit = new ParsedCommit();
+        try (Repository repo = git.cloneIfNotExists(folder, cloneUrl)) {
+            new GitHistoryStructuralDiffAnalyzer(baseConfig).detectAtCommit(repo, commitId, new StructuralDiffHandler() {
+                @Override
+                public void handle(String commitData, SDModel sdModel) {
+                    parsedCommit.model = sdModel;
+                }
+            });
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return parsedCommit;
+    }
+
+    public RefactoringSet[] detect(RefDiffConfig config) {
+        List<RefDiffConfig> configs = new ArrayList<>();
+        configs.add(config);
+        return detect(configs).get(config.getId());
+    }
+
+    /**
+     * Detects the refactorings of every commit under each configuration.
+     *
+     * @param configs Configurations that differ only in their thresholds from the one used to parse the commits.
+     * @return The refactorings found in each commit (in the same order the commits were given), by configuration id.
+     */
+    public Map<String, RefactoringSet[]> detect(List<? extends RefDiffConfig> configs) {
+        Map<String, RefactoringSet[]> results = new LinkedHashMap<>();
+        for (RefDiffConfig config : configs) {
+            if (config.getCodeSimilarityStrategy() != baseConfig.getCodeSimilarityStrategy()) {
+                throw new IllegalArgumentException("Configuration " + config.getId() + " uses a code similarity strategy other than the one the commits were parsed with");
+            }
+            results.put(config.getId(), new RefactoringSet[commits.size()]);
+        }
+        // A model is mutated while detecting refactorings, so each commit replays its configurations sequentially
+        IntStream.range(0, commits.size()).parallel().forEach(i -> {
+            ParsedCommit parsedCommit = parsedCommits.get(i);
+            for (RefDiffConfig config : configs) {
+                results.get(config.getId())[i] = parsedCommit.detect(config, commits.get(i));
+            }
+        });
+        return results;
+    }
+
+    private static class ParsedCommit {
+        private SDModel model;
+        private final SimilarityCache similarityCache = new SimilarityCache();
+
+        RefactoringSet detect(RefDiffConfig config, RefactoringSet commit) {
+            RefactoringSet rs = new RefactoringSet(commit.getProject(), commit.getRevision());
+            if (model != null) {
+                model.initRelationships();
+                new RefactoringDetector(config, similarityCache).analyze(model);
+                for (SDRefactoring r : model.getRefactorings()) {
+                    rs.add(new RefactoringRelationship(r.getRefactoringType(), r.getEntityBefore().toString(), r.getEntityAfter().toString()));
+                }
+            }
+            return rs;
+        }
+    }
+
+}
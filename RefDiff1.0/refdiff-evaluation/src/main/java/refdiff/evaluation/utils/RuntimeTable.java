@@ -0,0 +1,79 @@
+package refdiff.evaluation.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Repository;
+
+import refdiff.core.api.GitService;
+import refdiff.core.rm2.analysis.AnalysisMetrics;
+import refdiff.core.rm2.analysis.GitHistoryStructuralDiffAnalyzer;
+import refdiff.core.rm2.analysis.StructuralDiffHandler;
+import refdiff.core.util.GitServiceImpl;
+
+/**
+ * Records the metrics reported for each analyzed commit and writes them as the runtime tables in
+ * Runtimes (e.g., Runtime011_analyzed.txt), with one line per commit holding its total runtime in milliseconds.
+ *
+ * Usage: RuntimeTable tool-name output-file commits-file, where each line of commits-file holds the folder of a
+ * local repository and the SHA1 of a commit, separated by whitespace. For instance:
+ * RuntimeTable "RefDiff 0.1.1" Runtimes/Runtime011_analyzed.txt commits.txt
+ */
+public class RuntimeTable extends StructuralDiffHandler {
+
+    private final String tool;
+    private final Map<String, AnalysisMetrics> metricsByCommit = new LinkedHashMap<>();
+
+    public RuntimeTable(String tool) {
+        this.tool = tool;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Usage: RuntimeTable <tool-name> <output-file> <commits-file>");
+        }
+        RuntimeTable table = new RuntimeTable(args[0]);
+        GitService gitService = new GitServiceImpl();
+        GitHistoryStructuralDiffAnalyzer analyzer = new GitHistoryStructuralDiffAnalyzer();
+        for (String line : Files.readAllLines(new File(args[2]).toPath(), StandardCharsets.UTF_8)) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length < 2) {
+                continue;
+            }
+            try (Repository repository = gitService.openRepository(columns[0])) {
+                analyzer.detectAtCommit(repository, columns[1], table);
+            }
+        }
+        table.write(new File(args[1]));
+    }
+
+    @Override
+    public void handleMetrics(String commitId, AnalysisMetrics metrics) {
+        metricsByCommit.put(commitId, metrics);
+    }
+
+    @Override
+    public void handleException(String commitId, Exception e) {
+        System.err.println("Error processing commit " + commitId);
+        e.printStackTrace(System.err);
+    }
+
+    public Map<String, AnalysisMetrics> getMetricsByCommit() {
+        return metricsByCommit;
+    }
+
+    public void write(File file) throws IOException {
+        try (PrintWriter pw = new PrintWriter(file, "UTF-8")) {
+            pw.println("Tool, Runtime");
+            for (AnalysisMetrics metrics : metricsByCommit.values()) {
+                pw.println(tool + ", " + metrics.getTotalTimeMillis());
+            }
+        }
+    }
+
+}
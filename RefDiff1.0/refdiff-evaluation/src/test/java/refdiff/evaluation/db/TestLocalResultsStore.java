@@ -0,0 +1,102 @@
+package refdiff.evaluation.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import refdiff.evaluation.db.model.DbCommit;
+import refdiff.evaluation.db.model.DbCommitResult;
+import refdiff.evaluation.db.model.DbRefactoringRelationship;
+import refdiff.evaluation.db.model.DbRepository;
+
+public class TestLocalResultsStore {
+
+    // kept open so that the in-memory database outlives the stores
+    private static final String URL = "jdbc:h2:mem:results";
+    private Connection keepAlive;
+
+    @Before
+    public void openDatabase() throws SQLException {
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute("drop all objects");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    public void shouldFindSavedResultsWhenReopened() throws SQLException {
+        try (LocalResultsStore store = new LocalResultsStore(URL, 2)) {
+            DbCommit commit = store.saveCommit(new DbCommit(new DbRepository("owner/project"), "abc"));
+            assertEquals(commit, store.findCommit("owner/project", "abc"));
+            assertFalse(store.isProcessed(commit, "RefDiff"));
+
+            DbCommitResult result = new DbCommitResult(commit, "RefDiff");
+            result.setExecTime(42L);
+            result.setWorkers(4);
+            result.setRefactorings(Collections.singleton(new DbRefactoringRelationship(result, "Rename Method", "A#m()", "A#n()")));
+            store.saveResult(result);
+            assertTrue(store.isProcessed(commit, "RefDiff"));
+            assertFalse(store.isProcessed(commit, "RefactoringMiner"));
+        }
+
+        try (LocalResultsStore store = new LocalResultsStore(URL, 2)) {
+            DbCommit commit = store.findCommit("owner/project", "abc");
+            assertEquals("owner/project", commit.getRepository().getFullName());
+            assertTrue(store.isProcessed(commit, "RefDiff"));
+            assertNull(store.findCommit("owner/project", "def"));
+
+            DbCommitResult other = new DbCommitResult(store.saveCommit(new DbCommit(commit.getRepository(), "def")), "RefDiff");
+            other.setSuccess(false);
+            other.setErrorLog("error");
+            store.saveResult(other);
+        }
+
+        try (Statement st = keepAlive.createStatement();
+            ResultSet rs = st.executeQuery("select c.sha1, r.tool, r.exec_time, r.workers, r.success, r.error_log, count(rr.id) "
+                + "from commit_result r join commit c on c.id = r.commit left join refactoring_relationship rr on rr.commit_result = r.id "
+                + "group by r.id order by c.sha1")) {
+            assertTrue(rs.next());
+            assertEquals("abc", rs.getString(1));
+            assertEquals("RefDiff", rs.getString(2));
+            assertEquals(42L, rs.getLong(3));
+            assertEquals(4, rs.getInt(4));
+            assertTrue(rs.getBoolean(5));
+            assertEquals(1, rs.getInt(7));
+            assertTrue(rs.next());
+            assertEquals("def", rs.getString(1));
+            rs.getLong(3);
+            assertTrue(rs.wasNull());
+            assertFalse(rs.getBoolean(5));
+            assertEquals("error", rs.getString(6));
+            assertEquals(0, rs.getInt(7));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectASecondResultOfTheSameTool() throws SQLException {
+        try (LocalResultsStore store = new LocalResultsStore(URL, 2)) {
+            DbCommit commit = store.saveCommit(new DbCommit(new DbRepository("owner/project"), "abc"));
+            store.saveResult(new DbCommitResult(commit, "RefDiff"));
+            store.saveResult(new DbCommitResult(commit, "RefDiff"));
+        }
+    }
+
+}
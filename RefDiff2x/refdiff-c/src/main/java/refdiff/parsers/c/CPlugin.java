@@ -1,86 +1,152 @@
 package refdiff.parsers.c;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.cdt.core.dom.ast.ASTVisitor;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
 import org.eclipse.cdt.core.dom.ast.gnu.c.GCCLanguage;
-import org.eclipse.cdt.core.index.IIndex;
 import org.eclipse.cdt.core.parser.DefaultLogService;
 import org.eclipse.cdt.core.parser.FileContent;
 import org.eclipse.cdt.core.parser.IParserLogService;
 import org.eclipse.cdt.core.parser.IScannerInfo;
+import org.eclipse.cdt.core.parser.IToken;
 import org.eclipse.cdt.core.parser.IncludeFileContentProvider;
+import org.eclipse.cdt.core.parser.OffsetLimitReachedException;
 import org.eclipse.cdt.core.parser.ScannerInfo;
+import org.eclipse.cdt.internal.core.parser.scanner.ILexerLog;
+import org.eclipse.cdt.internal.core.parser.scanner.Lexer;
+import org.eclipse.cdt.internal.core.parser.scanner.Lexer.LexerOptions;
+import org.eclipse.cdt.internal.core.parser.scanner.Token;
 import org.eclipse.core.runtime.CoreException;
 
 import refdiff.core.cst.CstRoot;
 import refdiff.core.cst.TokenPosition;
 import refdiff.core.cst.TokenizedSource;
+import refdiff.core.diff.CstComparatorMonitor;
 import refdiff.core.io.FilePathFilter;
 import refdiff.core.io.SourceFile;
 import refdiff.core.io.SourceFileSet;
 import refdiff.parsers.LanguagePlugin;
 
 public class CPlugin implements LanguagePlugin {
-	
+
+	// The scanner configuration is immutable and the include provider is stateless,
+	// so a single instance of each is shared by every translation unit we parse.
+	private static final IScannerInfo SCANNER_INFO = new ScannerInfo(Collections.emptyMap(), new String[0]);
+	private static final IncludeFileContentProvider INCLUDE_FILE_CONTENT_PROVIDER = IncludeFileContentProvider.getEmptyFilesProvider();
+	private static final IParserLogService LOG_SERVICE = new DefaultLogService();
+
+	private final int nThreads;
+
+	public CPlugin() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public CPlugin(int nThreads) {
+		if (nThreads < 1) {
+			throw new IllegalArgumentException("nThreads should be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+
 	@Override
 	public CstRoot parse(SourceFileSet sources) throws Exception {
+		return parse(sources, new CstComparatorMonitor() {});
+	}
+
+	@Override
+	public CstRoot parse(SourceFileSet sources, CstComparatorMonitor monitor) throws Exception {
 		CstRoot root = new CstRoot();
-		
+
 		AtomicInteger id = new AtomicInteger(1);
-		
-		for (SourceFile sourceFile : sources.getSourceFiles()) {
-			String sourceCode = sources.readContent(sourceFile);
-			FileContent fileContent = FileContent.create("temp.source", sourceCode.toCharArray());
-			IASTTranslationUnit translationUnit = parseAST(fileContent);
-			
-//			System.out.println(sourceFile.getPath());
-//			ASTPrinter.print(translationUnit);
-
-			ASTVisitor cCstVisitor = new CCstVisitor(root, sourceFile.getPath(), sourceCode, id);
-			translationUnit.accept(cCstVisitor);
-			
-			root.addTokenizedFile(new TokenizedSource(sourceFile.getPath(), tokenize(sourceCode)));
+
+		List<SourceFile> sourceFiles = sources.getSourceFiles();
+		int poolSize = Math.min(nThreads, Math.max(sourceFiles.size(), 1));
+		// At most this many files are read or parsed but not yet visited, so memory does not grow with the project
+		int maxInFlight = 2 * poolSize;
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		try {
+			Deque<Future<ParsedFile>> inFlight = new ArrayDeque<>(maxInFlight);
+			Iterator<SourceFile> pending = sourceFiles.iterator();
+			while (pending.hasNext() || !inFlight.isEmpty()) {
+				while (pending.hasNext() && inFlight.size() < maxInFlight) {
+					SourceFile sourceFile = pending.next();
+					String sourceCode = sources.readContent(sourceFile);
+					inFlight.addLast(executor.submit(() -> parseFile(sourceFile, sourceCode)));
+				}
+
+				// Node ids are assigned while visiting, so the visits run in file order to keep ids stable.
+				// The translation unit is dropped as soon as it has been visited.
+				ParsedFile parsedFile = getResult(inFlight.removeFirst());
+				String path = parsedFile.sourceFile.getPath();
+
+				ASTVisitor cCstVisitor = new CCstVisitor(root, path, parsedFile.sourceCode, id);
+				parsedFile.translationUnit.accept(cCstVisitor);
+
+				root.addTokenizedFile(new TokenizedSource(path, parsedFile.tokens));
+				monitor.reportFileParsed(path, parsedFile.elapsedTime);
+			}
+		} finally {
+			executor.shutdownNow();
 		}
-		
-//		ObjectMapper jacksonObjectMapper = new ObjectMapper();
-//		String jsonInString = jacksonObjectMapper.writeValueAsString(root);
-//		System.out.println(jsonInString);
-		
+
 		return root;
 	}
-	
+
+	private ParsedFile parseFile(SourceFile sourceFile, String sourceCode) throws CoreException {
+		long start = System.currentTimeMillis();
+		char[] source = sourceCode.toCharArray();
+		IASTTranslationUnit translationUnit = parseAST(FileContent.create("temp.source", source));
+		// Lexes with the options the translation unit was parsed with (as ASTNode.getSyntax() does), so token offsets match the AST
+		List<TokenPosition> tokens = tokenize(source, (LexerOptions) translationUnit.getAdapter(LexerOptions.class));
+		long end = System.currentTimeMillis();
+		return new ParsedFile(sourceFile, sourceCode, translationUnit, tokens, end - start);
+	}
+
+	private static ParsedFile getResult(Future<ParsedFile> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
 	private static IASTTranslationUnit parseAST(FileContent fileContent) throws CoreException {
-		GCCLanguage gccLanguage = GCCLanguage.getDefault();
-		Map<String, String> macroDefinitions = new HashMap<String, String>();
-		String[] includeSearchPaths = new String[0];
-		IScannerInfo si = new ScannerInfo(macroDefinitions, includeSearchPaths);
-		IncludeFileContentProvider ifcp = IncludeFileContentProvider.getEmptyFilesProvider();
-		IIndex idx = null;
-		int options = 0;
-		IParserLogService log = new DefaultLogService();
-		return gccLanguage.getASTTranslationUnit(fileContent, si, ifcp, idx, options, log);
+		return GCCLanguage.getDefault().getASTTranslationUnit(fileContent, SCANNER_INFO, INCLUDE_FILE_CONTENT_PROVIDER, null, 0, LOG_SERVICE);
 	}
-	
+
 	public List<TokenPosition> tokenize(String source) {
+		return tokenize(source.toCharArray(), null);
+	}
+
+	private static List<TokenPosition> tokenize(char[] source, LexerOptions lexerOptions) {
 		List<TokenPosition> tokens = new ArrayList<>();
-		
-		ASTVisitor tokenVisitor = new TokenVisitor(tokens);
-		FileContent fileContent = FileContent.create("temp.source", source.toCharArray());
-		IASTTranslationUnit translationUnit = null;
+
+		Lexer lexer = new Lexer(source, lexerOptions != null ? lexerOptions : new LexerOptions(), ILexerLog.NULL, null);
 		try {
-			translationUnit = parseAST(fileContent);
-		} catch (CoreException e) {
+			for (Token token = lexer.nextToken(); token.getType() != IToken.tEND_OF_INPUT; token = lexer.nextToken()) {
+				if (token.getType() != Lexer.tNEWLINE) {
+					tokens.add(new TokenPosition(token.getOffset(), token.getEndOffset()));
+				}
+			}
+		} catch (OffsetLimitReachedException e) {
 			throw new RuntimeException(e);
 		}
-		translationUnit.accept(tokenVisitor);
-		
+
 		return tokens;
 	}
 
@@ -89,4 +155,20 @@ public class CPlugin implements LanguagePlugin {
 		return new FilePathFilter(Arrays.asList(".c", ".h"));
 	}
 
+	private static class ParsedFile {
+		private final SourceFile sourceFile;
+		private final String sourceCode;
+		private final IASTTranslationUnit translationUnit;
+		private final List<TokenPosition> tokens;
+		private final long elapsedTime;
+
+		ParsedFile(SourceFile sourceFile, String sourceCode, IASTTranslationUnit translationUnit, List<TokenPosition> tokens, long elapsedTime) {
+			this.sourceFile = sourceFile;
+			this.sourceCode = sourceCode;
+			this.translationUnit = translationUnit;
+			this.tokens = tokens;
+			this.elapsedTime = elapsedTime;
+		}
+	}
+
 }
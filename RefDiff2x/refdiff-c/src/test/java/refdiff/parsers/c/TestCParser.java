@@ -8,6 +8,7 @@ import static org.junit.Assert.fail;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -242,4 +243,28 @@ public class TestCParser {
 		CstNode functionNode = program.getNodes().get(0);
 		assertThat(functionNode.getLocalName(), is("Curl_cookie_add(Curl_easy, CookieInfo, bool, bool, char, char, char)"));
 	}
+	
+	@Test
+	public void shouldAssignSameIdsWhenParsingMoreFilesThanInFlight() throws Exception {
+		Path basePath = Paths.get("test-data/c/parser");
+		SourceFolder sources = SourceFolder.from(basePath,
+			Paths.get("dir1/hello.c"), Paths.get("file1.c"), Paths.get("arrayModifier.c"), Paths.get("structParams.c"),
+			Paths.get("locationIssue.c"), Paths.get("locationIssue2.c"), Paths.get("functionWithNoName.c"),
+			Paths.get("functionWithStructReturn.c"), Paths.get("functionWithStructAndPointerReturn.c"));
+
+		CstRoot sequential = new CPlugin(1).parse(sources);
+		CstRoot concurrent = new CPlugin(4).parse(sources);
+
+		assertThat(describe(concurrent.getNodes()), is(describe(sequential.getNodes())));
+		assertThat(concurrent.getRelationships(), is(sequential.getRelationships()));
+	}
+
+	private static List<String> describe(List<CstNode> nodes) {
+		List<String> description = new ArrayList<>();
+		for (CstNode node : nodes) {
+			description.add(node.getId() + " " + node.getLocalName() + " " + node.getLocation());
+			description.addAll(describe(node.getNodes()));
+		}
+		return description;
+	}
 }
@@ -0,0 +1,354 @@
+package refdiff.core;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+import refdiff.core.cst.CstRoot;
+import refdiff.core.diff.CstComparator;
+import refdiff.core.diff.CstComparatorMonitor;
+import refdiff.core.diff.CstDiff;
+import refdiff.core.io.FilePathFilter;
+import refdiff.core.io.GitHelper;
+import refdiff.core.io.GitSourceTree;
+import refdiff.core.io.SourceFile;
+import refdiff.core.io.SourceFileSet;
+import refdiff.parsers.LanguagePlugin;
+
+/**
+ * Mines a commit history as a three stage pipeline:
+ * <ol>
+ * <li>a prefetch thread walks the history and reads the changed blobs of the next commits through a single {@link ObjectReader};</li>
+ * <li>a pool parses and compares the prefetched commits, reusing the CST of a source set when an adjacent commit has exactly the same one;</li>
+ * <li>the calling thread hands the diffs to the consumer in commit order.</li>
+ * </ol>
+ * Memory is bounded by the number of prefetched commits and by the total size of the blobs held in the pipeline.
+ * The language plugin must be thread safe when more than one parser thread is used.
+ */
+public class CommitHistoryMiner {
+
+	public static final int DEFAULT_PREFETCH_DEPTH = 8;
+	public static final long DEFAULT_MAX_BUFFERED_BYTES = 256L * 1024 * 1024;
+
+	private final LanguagePlugin languagePlugin;
+	private final CstComparator comparator;
+	private final FilePathFilter fileFilter;
+	private final int prefetchDepth;
+	private final int nThreads;
+	private final long maxBufferedBytes;
+	private final CommitSources endOfHistory = new CommitSources(null, null, null, null, null, 0, 0);
+
+	public CommitHistoryMiner(LanguagePlugin languagePlugin) {
+		this(languagePlugin, DEFAULT_PREFETCH_DEPTH, 1, DEFAULT_MAX_BUFFERED_BYTES);
+	}
+
+	public CommitHistoryMiner(LanguagePlugin languagePlugin, int prefetchDepth, int nThreads, long maxBufferedBytes) {
+		if (prefetchDepth < 1 || nThreads < 1 || maxBufferedBytes < 1) {
+			throw new IllegalArgumentException("prefetchDepth, nThreads and maxBufferedBytes should be positive");
+		}
+		this.languagePlugin = languagePlugin;
+		this.comparator = new CstComparator(languagePlugin);
+		this.fileFilter = languagePlugin.getAllowedFilesFilter();
+		this.prefetchDepth = prefetchDepth;
+		this.nThreads = nThreads;
+		this.maxBufferedBytes = maxBufferedBytes;
+	}
+
+	public Metrics mine(Repository repo, String startAt, int maxDepth, BiConsumer<RevCommit, CstDiff> diffConsumer) {
+		Metrics metrics = new Metrics();
+		// Permits are counted in KB so that large budgets still fit in an int
+		int budget = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBufferedBytes / 1024));
+		Semaphore memory = new Semaphore(budget);
+		BlockingQueue<CommitSources> queue = new ArrayBlockingQueue<>(prefetchDepth);
+		Prefetcher prefetcher = new Prefetcher(repo, startAt, maxDepth, queue, memory, budget, metrics);
+		Thread prefetchThread = new Thread(prefetcher, "refdiff-prefetch");
+		prefetchThread.setDaemon(true);
+
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		Deque<PendingDiff> pending = new ArrayDeque<>();
+		long start = System.currentTimeMillis();
+		prefetchThread.start();
+		try {
+			CommitSources previous = null;
+			while (true) {
+				// Never wait on the prefetcher while holding finished work, as it may be waiting for that memory
+				CommitSources current = pending.isEmpty() ? queue.take() : queue.poll();
+				if (current == null) {
+					deliver(pending.removeFirst(), memory, metrics, diffConsumer);
+					continue;
+				}
+				if (current == endOfHistory) {
+					break;
+				}
+				current.scheduleParse(executor, previous, metrics);
+				Future<CstDiff> diff = executor.submit(() -> comparator.compare(
+					current.sourcesBefore, current.cstRootBefore.get(),
+					current.sourcesAfter, current.cstRootAfter.get(),
+					new CstComparatorMonitor() {}));
+				pending.addLast(new PendingDiff(current, diff));
+				previous = current;
+
+				while (!pending.isEmpty() && (pending.size() > nThreads || pending.peekFirst().diff.isDone())) {
+					deliver(pending.removeFirst(), memory, metrics, diffConsumer);
+				}
+			}
+			while (!pending.isEmpty()) {
+				deliver(pending.removeFirst(), memory, metrics, diffConsumer);
+			}
+			prefetcher.rethrowFailure();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			prefetcher.stop();
+			prefetchThread.interrupt();
+			executor.shutdownNow();
+			metrics.elapsedTime = System.currentTimeMillis() - start;
+		}
+		return metrics;
+	}
+
+	private void deliver(PendingDiff pendingDiff, Semaphore memory, Metrics metrics, BiConsumer<RevCommit, CstDiff> diffConsumer) throws InterruptedException {
+		CstDiff diff = getResult(pendingDiff.diff);
+		memory.release(pendingDiff.commit.permits);
+		metrics.bufferedBytes.addAndGet(-pendingDiff.commit.sizeInBytes);
+		diffConsumer.accept(pendingDiff.commit.revAfter, diff);
+		metrics.commits.incrementAndGet();
+	}
+
+	private static <T> T getResult(Future<T> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private CstRoot parse(SourceFileSet sources, Metrics metrics) throws Exception {
+		metrics.parsedSourceSets.incrementAndGet();
+		return languagePlugin.parse(sources);
+	}
+
+	private class CommitSources {
+		private final RevCommit revAfter;
+		private final Map<String, ObjectId> blobsBefore;
+		private final Map<String, ObjectId> blobsAfter;
+		private final SourceFileSet sourcesBefore;
+		private final SourceFileSet sourcesAfter;
+		private final long sizeInBytes;
+		private final int permits;
+		private Future<CstRoot> cstRootBefore;
+		private Future<CstRoot> cstRootAfter;
+
+		CommitSources(RevCommit revAfter, Map<String, ObjectId> blobsBefore, SourceFileSet sourcesBefore, Map<String, ObjectId> blobsAfter, SourceFileSet sourcesAfter, long sizeInBytes, int permits) {
+			this.revAfter = revAfter;
+			this.blobsBefore = blobsBefore;
+			this.blobsAfter = blobsAfter;
+			this.sourcesBefore = sourcesBefore;
+			this.sourcesAfter = sourcesAfter;
+			this.sizeInBytes = sizeInBytes;
+			this.permits = permits;
+		}
+
+		void scheduleParse(ExecutorService executor, CommitSources previous, Metrics metrics) {
+			cstRootBefore = reuseOrParse(executor, previous, blobsBefore, sourcesBefore, metrics);
+			cstRootAfter = reuseOrParse(executor, previous, blobsAfter, sourcesAfter, metrics);
+		}
+
+		private Future<CstRoot> reuseOrParse(ExecutorService executor, CommitSources previous, Map<String, ObjectId> blobs, SourceFileSet sources, Metrics metrics) {
+			if (previous != null) {
+				// Walking backwards, the files changed in a commit at its parent are often the files changed by the parent itself
+				if (previous.blobsBefore.equals(blobs)) {
+					metrics.reusedSourceSets.incrementAndGet();
+					return previous.cstRootBefore;
+				}
+				if (previous.blobsAfter.equals(blobs)) {
+					metrics.reusedSourceSets.incrementAndGet();
+					return previous.cstRootAfter;
+				}
+			}
+			return executor.submit(() -> parse(sources, metrics));
+		}
+	}
+
+	private static class PendingDiff {
+		private final CommitSources commit;
+		private final Future<CstDiff> diff;
+
+		PendingDiff(CommitSources commit, Future<CstDiff> diff) {
+			this.commit = commit;
+			this.diff = diff;
+		}
+	}
+
+	private class Prefetcher implements Runnable {
+		private final Repository repo;
+		private final String startAt;
+		private final int maxDepth;
+		private final BlockingQueue<CommitSources> queue;
+		private final Semaphore memory;
+		private final int budget;
+		private final Metrics metrics;
+		private volatile boolean stopped = false;
+		private volatile RuntimeException failure;
+
+		Prefetcher(Repository repo, String startAt, int maxDepth, BlockingQueue<CommitSources> queue, Semaphore memory, int budget, Metrics metrics) {
+			this.repo = repo;
+			this.startAt = startAt;
+			this.maxDepth = maxDepth;
+			this.queue = queue;
+			this.memory = memory;
+			this.budget = budget;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void run() {
+			try (ObjectReader reader = repo.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+				revWalk.markStart(revWalk.parseCommit(repo.resolve(startAt)));
+				revWalk.setRevFilter(RevFilter.NO_MERGES);
+				int count = 0;
+				for (RevCommit commit : revWalk) {
+					if (stopped) {
+						return;
+					}
+					if (commit.getParentCount() == 1) {
+						RevCommit parent = revWalk.parseCommit(commit.getParent(0));
+						queue.put(read(reader, parent, commit));
+					}
+					count++;
+					if (count >= maxDepth) {
+						break;
+					}
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (RuntimeException e) {
+				failure = e;
+			} catch (Exception e) {
+				failure = new RuntimeException(e);
+			}
+			putEnd();
+		}
+
+		private CommitSources read(ObjectReader reader, RevCommit revBefore, RevCommit revAfter) throws Exception {
+			Map<String, ObjectId> blobsBefore = new HashMap<>();
+			Map<String, ObjectId> blobsAfter = new HashMap<>();
+			GitHelper.changedBlobs(reader, revBefore, revAfter, fileFilter, blobsBefore, blobsAfter);
+
+			long size = 0;
+			for (ObjectId blob : blobsBefore.values()) {
+				size += reader.getObjectSize(blob, ObjectReader.OBJ_ANY);
+			}
+			for (ObjectId blob : blobsAfter.values()) {
+				size += reader.getObjectSize(blob, ObjectReader.OBJ_ANY);
+			}
+			// A single commit larger than the whole budget is let through alone
+			int permits = (int) Math.min(budget, Math.max(1, size / 1024));
+			memory.acquire(permits);
+			metrics.recordBuffered(size);
+
+			SourceFileSet sourcesBefore = new GitSourceTree(repo, revBefore.getId(), readBlobs(reader, blobsBefore));
+			SourceFileSet sourcesAfter = new GitSourceTree(repo, revAfter.getId(), readBlobs(reader, blobsAfter));
+			return new CommitSources(revAfter, blobsBefore, sourcesBefore, blobsAfter, sourcesAfter, size, permits);
+		}
+
+		private Map<SourceFile, String> readBlobs(ObjectReader reader, Map<String, ObjectId> blobs) throws Exception {
+			Map<SourceFile, String> contents = new HashMap<>();
+			for (Map.Entry<String, ObjectId> entry : blobs.entrySet()) {
+				byte[] bytes = reader.open(entry.getValue()).getBytes();
+				contents.put(new SourceFile(Paths.get(entry.getKey())), new String(bytes, StandardCharsets.UTF_8));
+			}
+			return contents;
+		}
+
+		private void putEnd() {
+			try {
+				queue.put(endOfHistory);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void stop() {
+			stopped = true;
+		}
+
+		void rethrowFailure() {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	public static class Metrics {
+		private final AtomicInteger commits = new AtomicInteger();
+		private final AtomicInteger parsedSourceSets = new AtomicInteger();
+		private final AtomicInteger reusedSourceSets = new AtomicInteger();
+		private final AtomicLong bufferedBytes = new AtomicLong();
+		private final AtomicLong peakBufferedBytes = new AtomicLong();
+		private volatile long elapsedTime;
+
+		private void recordBuffered(long size) {
+			long buffered = bufferedBytes.addAndGet(size);
+			peakBufferedBytes.accumulateAndGet(buffered, Math::max);
+		}
+
+		public int getCommits() {
+			return commits.get();
+		}
+
+		public int getParsedSourceSets() {
+			return parsedSourceSets.get();
+		}
+
+		public int getReusedSourceSets() {
+			return reusedSourceSets.get();
+		}
+
+		public long getBufferedBytes() {
+			return bufferedBytes.get();
+		}
+
+		public long getPeakBufferedBytes() {
+			return peakBufferedBytes.get();
+		}
+
+		public long getElapsedTime() {
+			return elapsedTime;
+		}
+
+		public double getCommitsPerSecond() {
+			return elapsedTime == 0 ? 0.0 : getCommits() * 1000.0 / elapsedTime;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d commits in %d ms (%.2f commits/s), %d source sets parsed, %d reused, peak buffer %d bytes",
+				getCommits(), getElapsedTime(), getCommitsPerSecond(), getParsedSourceSets(), getReusedSourceSets(), getPeakBufferedBytes());
+		}
+	}
+}
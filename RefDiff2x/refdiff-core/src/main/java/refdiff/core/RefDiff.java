@@ -20,10 +20,12 @@ import refdiff.parsers.LanguagePlugin;
 
 public class RefDiff {
 	
+	private final LanguagePlugin parser;
 	private final CstComparator comparator;
 	private final FilePathFilter fileFilter;
 	
 	public RefDiff(LanguagePlugin parser) {
+		this.parser = parser;
 		this.comparator = new CstComparator(parser);
 		this.fileFilter = parser.getAllowedFilesFilter();
 	}
@@ -70,12 +72,12 @@ public class RefDiff {
 	}
 	
 	public void computeDiffForCommitHistory(File gitRepository, String startAt, int maxDepth, BiConsumer<RevCommit, CstDiff> diffConsumer) {
+		computeDiffForCommitHistory(gitRepository, startAt, maxDepth, new CommitHistoryMiner(parser), diffConsumer);
+	}
+	
+	public CommitHistoryMiner.Metrics computeDiffForCommitHistory(File gitRepository, String startAt, int maxDepth, CommitHistoryMiner miner, BiConsumer<RevCommit, CstDiff> diffConsumer) {
 		try (Repository repo = GitHelper.openRepository(gitRepository)) {
-			GitHelper.forEachNonMergeCommit(repo, startAt, maxDepth, (revBefore, revAfter) -> {
-				PairBeforeAfter<SourceFileSet> beforeAndAfter = GitHelper.getSourcesBeforeAndAfterCommit(repo, revBefore, revAfter, fileFilter);
-				CstDiff diff = comparator.compare(beforeAndAfter);
-				diffConsumer.accept(revAfter, diff);
-			});
+			return miner.mine(repo, startAt, maxDepth, diffConsumer);
 		}
 	}
 	
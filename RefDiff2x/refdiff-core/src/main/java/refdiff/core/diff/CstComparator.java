@@ -57,6 +57,24 @@ public class CstComparator {
 		}
 	}
 	
+	/**
+	 * Compares two source sets whose CSTs were already parsed by this comparator's language plugin.
+	 * The given roots are only read, so the same root may take part in more than one comparison.
+	 */
+	public CstDiff compare(SourceFileSet sourcesBefore, CstRoot cstRootBefore, SourceFileSet sourcesAfter, CstRoot cstRootAfter, CstComparatorMonitor monitor) {
+		try {
+			long start = System.currentTimeMillis();
+			DiffBuilder<?> diffBuilder = new DiffBuilder<>(new TfIdfSourceRepresentationBuilder(), sourcesBefore, cstRootBefore, sourcesAfter, cstRootAfter, monitor);
+			CstDiff diff = diffBuilder.computeDiff();
+			long end = System.currentTimeMillis();
+			monitor.afterCompare(end - start, diffBuilder);
+			return diff;
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new RuntimeException(e);
+		}
+	}
+	
 	public class DiffBuilder<T> {
 		private final SourceRepresentationBuilder<T> srb;
 		private CstDiff diff;
@@ -72,14 +90,16 @@ public class CstComparator {
 		private final Map<CstNode, CstNode> mapAfterToBefore = new HashMap<>();
 		
 		DiffBuilder(SourceRepresentationBuilder<T> srb, SourceFileSet sourcesBefore, SourceFileSet sourcesAfter, CstComparatorMonitor monitor) throws Exception {
+			this(srb, sourcesBefore, languagePlugin.parse(sourcesBefore, monitor), sourcesAfter, languagePlugin.parse(sourcesAfter, monitor), monitor);
+		}
+		
+		DiffBuilder(SourceRepresentationBuilder<T> srb, SourceFileSet sourcesBefore, CstRoot cstRootBefore, SourceFileSet sourcesAfter, CstRoot cstRootAfter, CstComparatorMonitor monitor) throws Exception {
 			this.srb = srb;
-			CstRoot cstRootBefore = languagePlugin.parse(sourcesBefore);
-			CstRoot cstRootAfter = languagePlugin.parse(sourcesAfter);
+			this.monitor = monitor;
 			this.diff = new CstDiff(cstRootBefore, cstRootAfter);
 			this.before = new CstRootHelper<>(this.diff.getBefore(), sourcesBefore, srb, true);
 			this.after = new CstRootHelper<>(this.diff.getAfter(), sourcesAfter, srb, false);
 			this.removed = new HashSet<>();
-			this.monitor = monitor;
 			
 			Map<String, String> fileMapBefore = new HashMap<>();
 			Map<String, String> fileMapAfter = new HashMap<>();
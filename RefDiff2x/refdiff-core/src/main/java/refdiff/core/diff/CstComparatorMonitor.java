@@ -5,6 +5,8 @@ import refdiff.core.cst.CstNode;
 
 public interface CstComparatorMonitor {
 	
+	default void reportFileParsed(String path, long elapsedTime) {}
+	
 	default void beforeCompare(CstRootHelper<?> before, CstRootHelper<?> after) {}
 	
 	default void reportDiscardedMatch(CstNode n1, CstNode n2, double score) {}
@@ -12,8 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import refdiff.core.diff.similarity.SourceRepresentationBuilder;
 import refdiff.core.io.SourceFile;
@@ -30,59 +29,151 @@ import refdiff.core.cst.TokenizedSource;
 public class CstRootHelper<T> {
 	
 	private final CstRoot cstRoot;
-	private final Map<Integer, CstNode> idMap = new HashMap<>();
-	private final Map<Integer, List<CstNodeRelationship>> edges = new HashMap<>();
-	private final Map<Integer, List<CstNodeRelationship>> reverseEdges = new HashMap<>();
-	private final Map<CstNode, Integer> depthMap = new HashMap<>();
 	private final Map<String, String> fileMap = new HashMap<>();
 	private final SourceRepresentationBuilder<T> srb;
-	private final Map<CstNode, T> srMap = new HashMap<>();
-	private final Map<CstNode, T> srBodyMap = new HashMap<>();
-	private final Map<CstNode, T> srNameMap = new HashMap<>();
 	private final Map<String, List<CstNode>> nameIndex = new HashMap<>();
 	private final boolean isBefore;
 	
+	// Nodes are numbered 0..n-1 in traversal order, and every per-node attribute is an array indexed by that number
+	private final CstNode[] nodes;
+	private final int[] depth;
+	private final Object[] srMap;
+	private final Object[] srBodyMap;
+	private final Object[] srNameMap;
+	
+	// Source representations of nodes that are not part of this tree (e.g., nodes of the other tree), keyed by node
+	private final Map<CstNode, Object[]> foreignSourceReps = new HashMap<>();
+	
+	// Maps node ids to node numbers: directly when ids are dense, otherwise by binary search over the sorted ids
+	private final int[] indexById;
+	private final int[] sortedIds;
+	
+	// Relationships in compressed sparse row form: the edges of node i are in [offsets[i], offsets[i + 1])
+	private final int[] edgeOffsets;
+	private final int[] edgeTargets;
+	private final byte[] edgeTypes;
+	private final int[] reverseEdgeOffsets;
+	private final int[] reverseEdgeTargets;
+	private final byte[] reverseEdgeTypes;
+	
 	public CstRootHelper(CstRoot cstRoot, SourceFileSet sources, SourceRepresentationBuilder<T> srb, boolean isBefore) throws IOException {
 		this.cstRoot = cstRoot;
 		this.srb = srb;
 		this.isBefore = isBefore;
 		
+		List<CstNode> nodeList = new ArrayList<>();
+		List<Integer> depthList = new ArrayList<>();
 		cstRoot.forEachNode((node, depth) -> {
-			idMap.put(node.getId(), node);
-			depthMap.put(node, depth);
+			nodeList.add(node);
+			depthList.add(depth);
 			nameIndex.computeIfAbsent(node.getLocalName(), k -> new ArrayList<>()).add(node);
 		});
 		
-		for (CstNodeRelationship relationship : cstRoot.getRelationships()) {
-			edges.compute(relationship.getN1(), (key, oldValue) -> {
-				if (oldValue == null) {
-					ArrayList<CstNodeRelationship> list = new ArrayList<>();
-					list.add(relationship);
-					return list;
-				} else {
-					oldValue.add(relationship);
-					return oldValue;
-				}
-			});
-			reverseEdges.compute(relationship.getN2(), (key, oldValue) -> {
-				if (oldValue == null) {
-					ArrayList<CstNodeRelationship> list = new ArrayList<>();
-					list.add(relationship);
-					return list;
-				} else {
-					oldValue.add(relationship);
-					return oldValue;
-				}
-			});
+		int n = nodeList.size();
+		nodes = nodeList.toArray(new CstNode[n]);
+		depth = new int[n];
+		srMap = new Object[n];
+		srBodyMap = new Object[n];
+		srNameMap = new Object[n];
+		
+		int minId = Integer.MAX_VALUE;
+		int maxId = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			depth[i] = depthList.get(i);
+			minId = Math.min(minId, nodes[i].getId());
+			maxId = Math.max(maxId, nodes[i].getId());
 		}
+		if (n == 0 || (minId >= 0 && maxId < 4 * n + 16)) {
+			indexById = new int[n == 0 ? 0 : maxId + 1];
+			Arrays.fill(indexById, -1);
+			for (int i = 0; i < n; i++) {
+				indexById[nodes[i].getId()] = i;
+			}
+			sortedIds = null;
+		} else {
+			long[] idAndIndex = new long[n];
+			for (int i = 0; i < n; i++) {
+				idAndIndex[i] = ((long) nodes[i].getId() << 32) | i;
+			}
+			Arrays.sort(idAndIndex);
+			sortedIds = new int[n];
+			indexById = new int[n];
+			for (int i = 0; i < n; i++) {
+				sortedIds[i] = (int) (idAndIndex[i] >> 32);
+				indexById[i] = (int) idAndIndex[i];
+			}
+		}
+		
+		Set<CstNodeRelationship> relationships = cstRoot.getRelationships();
+		int[] sources1 = new int[relationships.size()];
+		int[] targets2 = new int[relationships.size()];
+		byte[] types = new byte[relationships.size()];
+		int m = 0;
+		for (CstNodeRelationship relationship : relationships) {
+			int n1 = indexOf(relationship.getN1());
+			int n2 = indexOf(relationship.getN2());
+			if (n1 != -1 && n2 != -1) {
+				sources1[m] = n1;
+				targets2[m] = n2;
+				types[m] = (byte) relationship.getType().ordinal();
+				m++;
+			}
+		}
+		edgeOffsets = new int[n + 1];
+		edgeTargets = new int[m];
+		edgeTypes = new byte[m];
+		fillAdjacency(n, m, sources1, targets2, types, edgeOffsets, edgeTargets, edgeTypes);
+		reverseEdgeOffsets = new int[n + 1];
+		reverseEdgeTargets = new int[m];
+		reverseEdgeTypes = new byte[m];
+		fillAdjacency(n, m, targets2, sources1, types, reverseEdgeOffsets, reverseEdgeTargets, reverseEdgeTypes);
 		
 		for (SourceFile file : sources.getSourceFiles()) {
 			fileMap.put(file.getPath(), sources.readContent(file));
 		}
 	}
 	
+	private static void fillAdjacency(int n, int m, int[] from, int[] to, byte[] types, int[] offsets, int[] targets, byte[] targetTypes) {
+		for (int k = 0; k < m; k++) {
+			offsets[from[k] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, n);
+		for (int k = 0; k < m; k++) {
+			int slot = next[from[k]]++;
+			targets[slot] = to[k];
+			targetTypes[slot] = types[k];
+		}
+	}
+	
+	private int indexOf(int id) {
+		if (sortedIds == null) {
+			return id >= 0 && id < indexById.length ? indexById[id] : -1;
+		}
+		int pos = Arrays.binarySearch(sortedIds, id);
+		return pos >= 0 ? indexById[pos] : -1;
+	}
+	
+	/**
+	 * @return the number of the node in this tree, or -1 for a node that does not belong to it, even if it shares an id with one that does.
+	 */
+	private int indexOf(CstNode node) {
+		int index = indexOf(node.getId());
+		return index != -1 && nodes[index] == node ? index : -1;
+	}
+	
 	public int depth(CstNode node) {
-		return depthMap.get(node);
+		int i = indexOf(node);
+		if (i != -1) {
+			return depth[i];
+		}
+		int d = 0;
+		for (Optional<CstNode> parent = node.getParent(); parent.isPresent(); parent = parent.get().getParent()) {
+			d++;
+		}
+		return d;
 	}
 	
 	public List<CstNode> findByLocalName(String localName) {
@@ -90,7 +181,7 @@ public class CstRootHelper<T> {
 	}
 	
 	public Collection<CstNode> findRelationships(CstNodeRelationshipType type, CstNode node) {
-		return this.findRelationships(edges, type, node, rel -> idMap.get(rel.getN2()));
+		return findRelationships(edgeOffsets, edgeTargets, edgeTypes, type, node);
 	}
 	
 	public boolean hasRelationship(CstNodeRelationshipType type, Optional<CstNode> optN1, CstNode n2) {
@@ -99,23 +190,39 @@ public class CstRootHelper<T> {
 	
 	public boolean hasRelationship(CstNodeRelationshipType type, Optional<CstNode> optN1, Optional<CstNode> optN2) {
 		if (optN1.isPresent() && optN2.isPresent()) {
-			CstNode n1 = optN1.get();
+			// Relationships are looked up by id, as they are stored in the CstRoot
+			int n1 = indexOf(optN1.get().getId());
+			if (n1 == -1) {
+				return false;
+			}
 			CstNode n2 = optN2.get();
-			return edges.getOrDefault(n1.getId(), Collections.emptyList()).stream()
-				.filter(rel -> rel.getType().equals(type) && idMap.get(rel.getN2()).equals(n2))
-				.findFirst().isPresent();
+			byte typeCode = (byte) type.ordinal();
+			for (int k = edgeOffsets[n1]; k < edgeOffsets[n1 + 1]; k++) {
+				if (edgeTypes[k] == typeCode && nodes[edgeTargets[k]] == n2) {
+					return true;
+				}
+			}
 		}
 		return false;
 	}
 	
 	public Collection<CstNode> findReverseRelationships(CstNodeRelationshipType type, CstNode node) {
-		return this.findRelationships(reverseEdges, type, node, rel -> idMap.get(rel.getN1()));
+		return findRelationships(reverseEdgeOffsets, reverseEdgeTargets, reverseEdgeTypes, type, node);
 	}
 	
-	private Collection<CstNode> findRelationships(Map<Integer, List<CstNodeRelationship>> map, CstNodeRelationshipType type, CstNode node, Function<CstNodeRelationship, CstNode> mappingFn) {
-		return map.getOrDefault(node.getId(), Collections.emptyList()).stream()
-			.filter(rel -> rel.getType().equals(type))
-			.map(mappingFn).collect(Collectors.toList());
+	private Collection<CstNode> findRelationships(int[] offsets, int[] targets, byte[] types, CstNodeRelationshipType type, CstNode node) {
+		int i = indexOf(node.getId());
+		if (i == -1) {
+			return Collections.emptyList();
+		}
+		byte typeCode = (byte) type.ordinal();
+		List<CstNode> result = new ArrayList<>(offsets[i + 1] - offsets[i]);
+		for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+			if (types[k] == typeCode) {
+				result.add(nodes[targets[k]]);
+			}
+		}
+		return result;
 	}
 	
 	public Optional<CstNode> findByNamePath(String... namePath) {
@@ -191,20 +298,22 @@ public class CstRootHelper<T> {
 	public void printRelationships(PrintStream out) {
 		out.print("Relationships:\n");
 		for (CstNodeRelationship rel : cstRoot.getRelationships()) {
-			CstNode n1 = idMap.get(rel.getN1());
-			CstNode n2 = idMap.get(rel.getN2());
+			CstNode n1 = nodes[indexOf(rel.getN1())];
+			CstNode n2 = nodes[indexOf(rel.getN2())];
 			out.print(String.format("%s %s %s\n", n1.getLocalName(), rel.getType(), n2.getLocalName()));
 		}
 	}
 	
 	public void computeSourceRepresentation(CstNode node) {
-		if (!srMap.containsKey(node)) {
+		int i = indexOf(node);
+		if (i == -1 ? !foreignSourceReps.containsKey(node) : srMap[i] == null) {
 			String sourceCode = fileMap.entrySet().stream().filter(x -> x.getKey().endsWith(node.getLocation().getFile()))
 					.findFirst().map(x -> x.getValue()).get();
 //			String sourceCode = fileMap.get(node.getLocation().getFile());
 			List<String> nodeTokens = retrieveTokens(sourceCode, node, false);
-			srMap.put(node, srb.buildForNode(node, isBefore, nodeTokens));
-			srNameMap.put(node, srb.buildForName(node, isBefore));
+			T sourceRep = srb.buildForNode(node, isBefore, nodeTokens);
+			T nameSourceRep = srb.buildForName(node, isBefore);
+			T bodySourceRep;
 			
 			if (node.getLocation().getBegin() != node.getLocation().getBodyBegin()) {
 				List<String> nodeBodyTokens = retrieveTokens(sourceCode, node, true);
@@ -215,10 +324,18 @@ public class CstRootHelper<T> {
 				}
 				tokensToIgnore.addAll(getTokensToIgnoreInNodeBody(node));
 				T normalizedBody = srb.minus(body, tokensToIgnore);
-				srBodyMap.put(node, normalizedBody);
+				bodySourceRep = normalizedBody;
 				
 			} else {
-				srBodyMap.put(node, srMap.get(node));
+				bodySourceRep = sourceRep;
+			}
+			
+			if (i == -1) {
+				foreignSourceReps.put(node, new Object[] {sourceRep, bodySourceRep, nameSourceRep});
+			} else {
+				srMap[i] = sourceRep;
+				srBodyMap[i] = bodySourceRep;
+				srNameMap[i] = nameSourceRep;
 			}
 		}
 	}
@@ -259,24 +376,31 @@ public class CstRootHelper<T> {
 	}
 	
 	public T sourceRep(CstNode n) {
-		if (!srMap.containsKey(n)) {
-			throw new RuntimeException("Source representation not computed");
-		}
-		return srMap.get(n);
+		return computed(srMap, 0, n);
 	}
 	
 	public T bodySourceRep(CstNode n) {
-		if (!srBodyMap.containsKey(n)) {
-			throw new RuntimeException("Source representation not computed");
-		}
-		return srBodyMap.get(n);
+		return computed(srBodyMap, 1, n);
 	}
 	
 	public T nameSourceRep(CstNode n) {
-		if (!srNameMap.containsKey(n)) {
+		return computed(srNameMap, 2, n);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private T computed(Object[] representations, int foreignSlot, CstNode n) {
+		int i = indexOf(n);
+		Object sourceRep;
+		if (i != -1) {
+			sourceRep = representations[i];
+		} else {
+			Object[] foreign = foreignSourceReps.get(n);
+			sourceRep = foreign != null ? foreign[foreignSlot] : null;
+		}
+		if (sourceRep == null) {
 			throw new RuntimeException("Source representation not computed");
 		}
-		return srNameMap.get(n);
+		return (T) sourceRep;
 	}
 	
 	public static List<String> getNodePath(CstNode node) {
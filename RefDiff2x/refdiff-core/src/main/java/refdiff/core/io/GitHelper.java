@@ -17,6 +17,7 @@ import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.RenameDetector;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
@@ -29,6 +30,8 @@ import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.TrackingRefUpdate;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import refdiff.core.util.PairBeforeAfter;
 
@@ -449,6 +452,33 @@ public class GitHelper {
 		}
 	}
 	
+	public static void changedBlobs(ObjectReader reader, RevCommit commitBefore, RevCommit commitAfter, FilePathFilter fileExtensions, Map<String, ObjectId> blobsBefore, Map<String, ObjectId> blobsAfter) {
+		try (TreeWalk treeWalk = new TreeWalk(reader)) {
+			treeWalk.addTree(commitBefore.getTree());
+			treeWalk.addTree(commitAfter.getTree());
+			treeWalk.setRecursive(true);
+			treeWalk.setFilter(TreeFilter.ANY_DIFF);
+			while (treeWalk.next()) {
+				String path = treeWalk.getPathString();
+				if (!fileExtensions.isAllowed(path)) {
+					continue;
+				}
+				if (isFile(treeWalk.getRawMode(0))) {
+					blobsBefore.put(path, treeWalk.getObjectId(0));
+				}
+				if (isFile(treeWalk.getRawMode(1))) {
+					blobsAfter.put(path, treeWalk.getObjectId(1));
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static boolean isFile(int rawMode) {
+		return (rawMode & FileMode.TYPE_MASK) == FileMode.TYPE_FILE;
+	}
+	
 	public static void fileTreeDiff(Repository repository, RevCommit commitBefore, RevCommit commitAfter, List<SourceFile> filesBefore, List<SourceFile> filesAfter, FilePathFilter fileExtensions) {
 		try {
 			ObjectId oldHead = commitBefore.getTree();
@@ -1,5 +1,6 @@
 package refdiff.parsers;
 
+import refdiff.core.diff.CstComparatorMonitor;
 import refdiff.core.io.FilePathFilter;
 import refdiff.core.io.SourceFileSet;
 import refdiff.core.cst.CstRoot;
@@ -8,6 +9,10 @@ public interface LanguagePlugin {
 	
 	CstRoot parse(SourceFileSet sources) throws Exception;
 	
+	default CstRoot parse(SourceFileSet sources, CstComparatorMonitor monitor) throws Exception {
+		return parse(sources);
+	}
+	
 	FilePathFilter getAllowedFilesFilter();
 	
 }
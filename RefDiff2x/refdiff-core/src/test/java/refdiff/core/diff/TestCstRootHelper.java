@@ -0,0 +1,77 @@
+package refdiff.core.diff;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import refdiff.core.cst.CstNode;
+import refdiff.core.cst.CstNodeRelationship;
+import refdiff.core.cst.CstNodeRelationshipType;
+import refdiff.core.cst.CstRoot;
+import refdiff.core.diff.similarity.TfIdfSourceRepresentation;
+import refdiff.core.diff.similarity.TfIdfSourceRepresentationBuilder;
+import refdiff.core.io.SourceFolder;
+
+public class TestCstRootHelper {
+
+	@Test
+	public void shouldAnswerForNodeThatDoesNotBelongToTheTree() throws Exception {
+		CstRoot root = new CstRoot();
+		CstNode type = node(1, "A", null);
+		CstNode m1 = node(2, "m1()", type);
+		CstNode m2 = node(3, "m2()", type);
+		root.addNode(type);
+		root.getRelationships().add(new CstNodeRelationship(CstNodeRelationshipType.USE, 2, 3));
+		CstRootHelper<TfIdfSourceRepresentation> helper = helper(root);
+
+		CstNode foreignType = node(1, "A", null);
+		CstNode foreignM1 = node(2, "m1()", foreignType);
+		CstNode unknown = node(42, "m42()", foreignType);
+
+		assertThat(helper.depth(m1), is(1));
+		assertThat(helper.depth(foreignM1), is(1));
+		assertThat(helper.depth(unknown), is(1));
+
+		// A node sharing an id with a node of the tree has that node's relationships
+		assertThat(helper.findRelationships(CstNodeRelationshipType.USE, foreignM1), is(Collections.singletonList(m2)));
+		assertThat(helper.hasRelationship(CstNodeRelationshipType.USE, Optional.of(foreignM1), m2), is(true));
+		assertThat(helper.findRelationships(CstNodeRelationshipType.USE, unknown).isEmpty(), is(true));
+		assertThat(helper.findReverseRelationships(CstNodeRelationshipType.USE, unknown).isEmpty(), is(true));
+		assertThat(helper.hasRelationship(CstNodeRelationshipType.USE, Optional.of(unknown), m2), is(false));
+		assertThat(helper.hasRelationship(CstNodeRelationshipType.USE, Optional.of(m1), foreignM1), is(false));
+	}
+
+	@Test
+	public void shouldRequireSourceRepresentationOfForeignNodeToBeComputed() throws Exception {
+		CstRoot root = new CstRoot();
+		root.addNode(node(1, "A", null));
+
+		try {
+			helper(root).sourceRep(node(1, "A", null));
+			fail();
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage(), is("Source representation not computed"));
+		}
+	}
+
+	private static CstRootHelper<TfIdfSourceRepresentation> helper(CstRoot root) throws Exception {
+		SourceFolder sources = SourceFolder.from(Paths.get("."), Collections.emptyList());
+		return new CstRootHelper<>(root, sources, new TfIdfSourceRepresentationBuilder(), true);
+	}
+
+	private static CstNode node(int id, String localName, CstNode parent) {
+		CstNode node = new CstNode(id);
+		node.setType("Node");
+		node.setLocalName(localName);
+		node.setSimpleName(localName);
+		if (parent != null) {
+			parent.addNode(node);
+		}
+		return node;
+	}
+}
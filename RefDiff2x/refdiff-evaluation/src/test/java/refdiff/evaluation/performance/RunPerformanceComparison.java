@@ -3,6 +3,7 @@ package refdiff.evaluation.performance;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
@@ -16,7 +17,9 @@ import java.util.stream.Collectors;
 //import gr.uom.java.xmi.UMLModelASTReader;
 //import gr.uom.java.xmi.diff.UMLModelDiff;
 //import org.glassfish.jersey.internal.util.Producer;
+import refdiff.core.cst.CstRoot;
 import refdiff.core.diff.CstComparator;
+import refdiff.core.diff.CstComparatorMonitor;
 import refdiff.core.diff.CstDiff;
 import refdiff.core.io.SourceFolder;
 import refdiff.core.util.PairBeforeAfter;
@@ -29,10 +32,12 @@ import refdiff.parsers.java.JavaPlugin;
 public class RunPerformanceComparison {
 	
 	public static EnumSet<RefactoringType> refactoringTypes = EnumSet.complementOf(EnumSet.of(RefactoringType.PULL_UP_ATTRIBUTE, RefactoringType.PUSH_DOWN_ATTRIBUTE, RefactoringType.MOVE_ATTRIBUTE));
+	private final JavaPlugin plugin = new JavaPlugin();
+	private final CstComparator comparator = new CstComparator(plugin);
 	private EvaluationUtils evalUtils;
 	
 	public RunPerformanceComparison(String tempFolder) {
-		evalUtils = new EvaluationUtils(new CstComparator(new JavaPlugin()), tempFolder);
+		evalUtils = new EvaluationUtils(comparator, tempFolder);
 	}
 	
 	public static void main(String[] args) throws Exception {
@@ -48,6 +53,40 @@ public class RunPerformanceComparison {
 //		measureRMiner(expected, "data/performance/rminer2.txt");
 //		measureRefDiff(expected, "data/performance/refdiff3.txt");
 //		measureRMiner(expected, "data/performance/rminer3.txt");
+		measureRefDiffBatch(expected, "data/performance/refdiff-batch.txt");
+	}
+	
+	/**
+	 * Parses the sources of every commit with a single JavaPlugin.parseBatch call and then compares the parsed roots.
+	 * The time column holds only the comparison of each commit, the time of the whole batch parse is printed at the end.
+	 */
+	private void measureRefDiffBatch(List<RefactoringSet> expected, String file) throws Exception {
+		List<PairBeforeAfter<SourceFolder>> commits = new ArrayList<>();
+		for (RefactoringSet rs : expected) {
+			commits.add(evalUtils.getSourceBeforeAfter(rs.getProject(), rs.getRevision()));
+		}
+		
+		long timeBefore = System.currentTimeMillis();
+		List<PairBeforeAfter<CstRoot>> roots = plugin.parseBatch(commits);
+		long parseTime = System.currentTimeMillis() - timeBefore;
+		
+		try (PrintStream out = new PrintStream(file)) {
+			out.printf("tool\tproject\tcommit\ttime\tfiles\n");
+			for (int i = 0; i < expected.size(); i++) {
+				RefactoringSet rs = expected.get(i);
+				String project = rs.getProject();
+				String projectName = project.substring("https://github.com/icse18-refactorings/".length(), project.length() - 4);
+				PairBeforeAfter<SourceFolder> sources = commits.get(i);
+				int changedFiles = sources.getBefore().getSourceFiles().size() + sources.getAfter().getSourceFiles().size();
+				
+				System.out.printf("%d/%d - ", i + 1, expected.size());
+				long compareBefore = System.currentTimeMillis();
+				comparator.compare(sources.getBefore(), roots.get(i).getBefore(), sources.getAfter(), roots.get(i).getAfter(), new CstComparatorMonitor() {});
+				long compareTime = System.currentTimeMillis() - compareBefore;
+				out.printf("%s\t%s\t%s\t%d\t%d\n", "RefDiffBatch", projectName, rs.getRevision(), compareTime, changedFiles);
+			}
+			out.printf("%s\t%s\t%s\t%d\t%d\n", "RefDiffBatchParse", "-", "-", parseTime, 0);
+		}
 	}
 
 //	private void measureRMiner(List<RefactoringSet> expected, String file) throws FileNotFoundException {
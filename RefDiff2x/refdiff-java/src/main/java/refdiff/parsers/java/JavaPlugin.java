@@ -11,14 +11,15 @@ import refdiff.core.io.SourceFileSet;
 import refdiff.core.cst.CstNode;
 import refdiff.core.cst.CstRoot;
 import refdiff.core.cst.Stereotype;
+import refdiff.core.util.PairBeforeAfter;
 import refdiff.parsers.LanguagePlugin;
 
 import static java.util.stream.Collectors.toMap;
-import static refdiff.parsers.java.SDModelBuilder.systemFileSeparator;
 
 public class JavaPlugin implements LanguagePlugin {
 
 	private File tempDir = null;
+	private boolean inMemory = false;
 	private final JavaSourceTokenizer tokenizer = new JavaSourceTokenizer();
 	
 	public JavaPlugin() {}
@@ -26,14 +27,55 @@ public class JavaPlugin implements LanguagePlugin {
 	public JavaPlugin(File tempDir) {
 		this.tempDir = tempDir;
 	}
+	
+	/**
+	 * Creates a plugin that parses a SourceFileSet without a base path straight from the content it returns,
+	 * without writing it to disk. Each file is resolved on its own, as JDT only resolves a batch of units against
+	 * each other when they are files on disk. References and subtype relationships within a file are produced,
+	 * but those to types declared in other files of the set are not, e.g., a class extending a class of another file
+	 * has no SUBTYPE relationship. Use {@link #JavaPlugin(File)} when these relationships are needed.
+	 */
+	public static JavaPlugin inMemory() {
+		JavaPlugin plugin = new JavaPlugin();
+		plugin.inMemory = true;
+		return plugin;
+	}
 
 	@Override
 	public CstRoot parse(SourceFileSet sources) throws Exception {
+		return parse(sources, new SDModelBuilder());
+	}
+	
+	/**
+	 * Parses the (before, after) source sets of many commits with a single model builder and tokenizer,
+	 * returning one pair of roots per commit, in the same order.
+	 * When the sources before a commit are the same SourceFileSet instance as the sources after the previous one,
+	 * as when a caller walks consecutive commits, the root already built is returned again instead of parsing twice.
+	 * Roots may therefore be shared between pairs and must be treated as read-only.
+	 */
+	public List<PairBeforeAfter<CstRoot>> parseBatch(List<? extends PairBeforeAfter<? extends SourceFileSet>> commits) throws Exception {
+		List<PairBeforeAfter<CstRoot>> roots = new ArrayList<>(commits.size());
+		SDModelBuilder mb = new SDModelBuilder();
+		SourceFileSet previousSources = null;
+		CstRoot previousRoot = null;
+		for (PairBeforeAfter<? extends SourceFileSet> commit : commits) {
+			CstRoot before = commit.getBefore() == previousSources ? previousRoot : parse(commit.getBefore(), mb);
+			CstRoot after = parse(commit.getAfter(), mb);
+			roots.add(new PairBeforeAfter<>(before, after));
+			previousSources = commit.getAfter();
+			previousRoot = after;
+		}
+		return roots;
+	}
+	
+	private CstRoot parse(SourceFileSet sources, SDModelBuilder mb) throws Exception {
 		List<String> javaFiles = new ArrayList<>();
 		Optional<Path> optBasePath = sources.getBasePath();
 		if (!optBasePath.isPresent()) {
-			if (this.tempDir == null) {
-				throw new RuntimeException("The JavaParser requires a SourceFileSet that is materialized on the file system. Either pass a tempDir to JavaParser's contructor or call SourceFileSet::materializeAt before calling this method.");
+			if (this.inMemory) {
+				return parseInMemory(sources, mb);
+			} else if (this.tempDir == null) {
+				throw new RuntimeException("The JavaParser requires a SourceFileSet that is materialized on the file system. Either pass a tempDir to JavaParser's contructor, call SourceFileSet::materializeAt before calling this method or use JavaPlugin.inMemory().");
 			} else {
 				sources.materializeAtBase(tempDir.toPath());
 				optBasePath = sources.getBasePath();
@@ -51,8 +93,7 @@ public class JavaPlugin implements LanguagePlugin {
 			File rootFolder = optBasePath.get().toFile();
 
 			SDModel sdModel = new SDModel();
-			SDModelBuilder mb = new SDModelBuilder();
-			mb.analyze(rootFolder, map.entrySet().stream().collect(toMap(x ->  x.getKey().replaceAll("/", systemFileSeparator), Map.Entry::getValue))
+			mb.analyze(rootFolder, map.entrySet().stream().collect(toMap(x ->  x.getKey().replace('/', File.separatorChar), Map.Entry::getValue))
 					, sdModel, tokenizer);
 
 			return sdModel.getRoot();
@@ -64,7 +105,6 @@ public class JavaPlugin implements LanguagePlugin {
 			File rootFolder = optBasePath.get().toFile();
 
 			SDModel sdModel = new SDModel();
-			SDModelBuilder mb = new SDModelBuilder();
 			mb.analyze(rootFolder, javaFiles, sdModel, tokenizer);
 
 			return sdModel.getRoot();
@@ -73,6 +113,17 @@ public class JavaPlugin implements LanguagePlugin {
 
 	}
 
+	private CstRoot parseInMemory(SourceFileSet sources, SDModelBuilder mb) throws Exception {
+		// The content is decoded once and the same array is handed to both the parser and the tokenizer
+		Map<String, char[]> contents = new LinkedHashMap<>();
+		for (SourceFile sourceFile : sources.getSourceFiles()) {
+			contents.put(sourceFile.getPath(), sources.readContent(sourceFile).toCharArray());
+		}
+		SDModel sdModel = new SDModel();
+		mb.analyzeInMemory(contents, sdModel, tokenizer);
+		return sdModel.getRoot();
+	}
+
 	public static String getKey(CstNode node) {
 		String parentName;
 		if (node.getParent().isPresent()) {
@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +32,10 @@ public class SDModelBuilder {
 	
 	public static final String systemFileSeparator = Matcher.quoteReplacement(File.separator);
 	
+	// JavaCore.getOptions() copies the whole option table on every call, and the parser copies it again
+	// in setCompilerOptions, so the compliance settings are computed once and shared by every parser
+	private static final Map<String, String> COMPILER_OPTIONS = buildCompilerOptions();
+	
 	private Map<CstNode, List<String>> postProcessReferences;
 	private Map<CstNode, List<String>> postProcessSupertypes;
 	
@@ -71,7 +76,7 @@ public class SDModelBuilder {
 		String[] encodings = new String[javaFiles.size()];
 		for (int i = 0; i < filesArray.length; i++) {
 			//filesArray[i] = rootFolder + File.separator + javaFiles.get(i).replaceAll("/", systemFileSeparator);
-			filesArray[i] = javaFiles.get(i).replaceAll("/", systemFileSeparator);
+			filesArray[i] = javaFiles.get(i).replace('/', File.separatorChar);
 			encodings[i] = encoding;
 		}
 		final String[] sourceFolders = this.inferSourceFolders(filesArray);
@@ -80,7 +85,7 @@ public class SDModelBuilder {
 		FileASTRequestor fileASTRequestor = new FileASTRequestor() {
 			@Override
 			public void acceptAST(String sourceFilePath, CompilationUnit ast) {
-				String relativePath = sourceFilePath.substring(projectRoot.length() + 1).replaceAll(systemFileSeparator, "/");
+				String relativePath = sourceFilePath.substring(projectRoot.length() + 1).replace(File.separatorChar, '/');
 				// IProblem[] problems = ast.getProblems();
 				// if (problems.length > 0) {
 				// System.out.println("problems");
@@ -121,7 +126,7 @@ public class SDModelBuilder {
 		String[] encodings = new String[javaFiles.size()];
 		int i = 0;
 		for(Map.Entry<String,String> e: javaFiles.entrySet()){
-			filesArray[i] = e.getKey().replaceAll("/", systemFileSeparator);
+			filesArray[i] = e.getKey().replace('/', File.separatorChar);
 			encodings[i] = encoding;
 			i +=1;
 		}
@@ -136,7 +141,7 @@ public class SDModelBuilder {
 		FileASTRequestor fileASTRequestor = new FileASTRequestor() {
 			@Override
 			public void acceptAST(String sourceFilePath, CompilationUnit ast) {
-				String relativePath = sourceFilePath.substring(projectRoot.length() + 1).replaceAll(systemFileSeparator, "/");
+				String relativePath = sourceFilePath.substring(projectRoot.length() + 1).replace(File.separatorChar, '/');
 				// IProblem[] problems = ast.getProblems();
 				// if (problems.length > 0) {
 				// System.out.println("problems");
@@ -160,21 +165,62 @@ public class SDModelBuilder {
 		postProcessSupertypes = null;
 	}
 
+	/**
+	 * Parses source files straight from memory, without reading or writing anything on disk.
+	 * Each compilation unit is resolved on its own, so bindings to types declared in other files of the set
+	 * are recovered by name only and do not yield reference or subtype relationships.
+	 */
+	public void analyzeInMemory(Map<String, char[]> javaFiles, final SDModel model, JavaSourceTokenizer tokenizer) {
+		postProcessReferences = new HashMap<>();
+		postProcessSupertypes = new HashMap<>();
+		
+		for (Map.Entry<String, char[]> entry : javaFiles.entrySet()) {
+			String relativePath = entry.getKey();
+			char[] charArray = entry.getValue();
+			ASTParser parser = buildInMemoryAstParser(relativePath, charArray);
+			CompilationUnit ast = (CompilationUnit) parser.createAST(null);
+			processCompilationUnit(relativePath, charArray, ast, model);
+			TokenizedSource tokenizedSource = new TokenizedSource(relativePath, tokenizer.tokenize(charArray));
+			model.getRoot().addTokenizedFile(tokenizedSource);
+		}
+		
+		postProcessReferences(model, postProcessReferences);
+		postProcessReferences = null;
+		postProcessSupertypes(model);
+		postProcessSupertypes = null;
+	}
+	
+	private static ASTParser buildInMemoryAstParser(String relativePath, char[] content) {
+		ASTParser parser = newAstParser();
+		parser.setEnvironment(new String[0], new String[0], null, true);
+		parser.setUnitName("/" + relativePath);
+		parser.setSource(content);
+		return parser;
+	}
 	
 	private static ASTParser buildAstParser(String[] sourceFolders) {
+		ASTParser parser = newAstParser();
+		parser.setEnvironment(new String[0], sourceFolders, null, true);
+		// parser.setEnvironment(new String[0], new String[]{"tmp\\refactoring-toy-example\\src"}, null, false);
+		return parser;
+	}
+	
+	private static ASTParser newAstParser() {
 		@SuppressWarnings("deprecation")
 		ASTParser parser = ASTParser.newParser(AST.JLS8);
 		parser.setKind(ASTParser.K_COMPILATION_UNIT);
-		Map<String, String> options = JavaCore.getOptions();
-		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
-		parser.setCompilerOptions(options);
+		parser.setCompilerOptions(COMPILER_OPTIONS);
 		parser.setResolveBindings(true);
 		parser.setBindingsRecovery(true);
-		parser.setEnvironment(new String[0], sourceFolders, null, true);
-		// parser.setEnvironment(new String[0], new String[]{"tmp\\refactoring-toy-example\\src"}, null, false);
 		return parser;
 	}
 	
+	private static Map<String, String> buildCompilerOptions() {
+		Map<String, String> options = JavaCore.getOptions();
+		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+		return Collections.unmodifiableMap(options);
+	}
+	
 	private void processCompilationUnit(String sourceFilePath, char[] fileContent, CompilationUnit compilationUnit, SDModel model) {
 		PackageDeclaration packageDeclaration = compilationUnit.getPackage();
 		String packageName = "";
@@ -3,9 +3,12 @@ package refdiff.parsers.java;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Test;
@@ -16,7 +19,10 @@ import refdiff.core.cst.CstNodeRelationshipType;
 import refdiff.core.cst.CstRoot;
 import refdiff.core.cst.Location;
 import refdiff.core.diff.CstRootHelper;
+import refdiff.core.io.SourceFile;
+import refdiff.core.io.SourceFileSet;
 import refdiff.core.io.SourceFolder;
+import refdiff.core.util.PairBeforeAfter;
 import refdiff.parsers.LanguagePlugin;
 
 public class TestJavaParser {
@@ -88,6 +94,88 @@ public class TestJavaParser {
 		);
 	}
 	
+	@Test
+	public void shouldParseFilesInMemory() throws Exception {
+		SourceFileSet sources = inMemory(SourceFolder.from(Paths.get("test-data/parser/java"), Paths.get("p2/Foo.java"), Paths.get("p1/Bar.java")));
+		
+		CstRoot root = JavaPlugin.inMemory().parse(sources);
+		
+		assertThat(root.getNodes().size(), is(2));
+		CstNode classFoo = root.getNodes().get(0);
+		assertThat(classFoo.getNamespace(), is("p2."));
+		assertThat(classFoo.getLocation(), is(new Location("p2/Foo.java", 13, 121, 3)));
+		
+		CstNode classBar = root.getNodes().get(1);
+		CstNode barM1 = classBar.getNodes().get(0);
+		CstNode barM2 = classBar.getNodes().get(1);
+		assertThat(root.getRelationships(), hasItem(rel(CstNodeRelationshipType.USE, barM1, barM2)));
+		
+		String barSourceCode = sources.readContent(sources.getSourceFiles().get(1));
+		assertThat(
+			CstRootHelper.retrieveTokens(root, barSourceCode, barM1, true),
+			is(Arrays.asList("m2", "(", ")", ";"))
+		);
+	}
+	
+	@Test
+	public void shouldNotRelateNodesOfDifferentFilesInMemory() throws Exception {
+		SourceFileSet sources = inMemory(SourceFolder.from(Paths.get("test-data/parser/java"), Paths.get("p2/Foo.java"), Paths.get("p1/Bar.java")));
+		
+		CstRoot root = JavaPlugin.inMemory().parse(sources);
+		
+		CstNode classFoo = root.getNodes().get(0);
+		CstNode classBar = root.getNodes().get(1);
+		CstNode barM1 = classBar.getNodes().get(0);
+		CstNode barM2 = classBar.getNodes().get(1);
+		// Bar extends Foo, declared in another file, so only the relationship within Bar.java is produced
+		assertThat(root.getRelationships(), not(hasItem(rel(CstNodeRelationshipType.SUBTYPE, classBar, classFoo))));
+		assertThat(root.getRelationships(), is(Collections.singleton(rel(CstNodeRelationshipType.USE, barM1, barM2))));
+	}
+	
+	@Test(expected = RuntimeException.class)
+	public void shouldRequireMaterializedFilesByDefault() throws Exception {
+		parser.parse(inMemory(SourceFolder.from(Paths.get("test-data/parser/java"), Paths.get("p2/Foo.java"))));
+	}
+	
+	@Test
+	public void shouldParseBatchOfCommits() throws Exception {
+		SourceFileSet v1 = inMemory(SourceFolder.from(Paths.get("test-data/parser/java"), Paths.get("p2/Foo.java")));
+		SourceFileSet v2 = inMemory(SourceFolder.from(Paths.get("test-data/parser/java"), Paths.get("p2/Foo.java"), Paths.get("p1/Bar.java")));
+		SourceFileSet v3 = inMemory(SourceFolder.from(Paths.get("test-data/parser/java"), Paths.get("p1/Bar.java")));
+		SourceFileSet v2Copy = inMemory(SourceFolder.from(Paths.get("test-data/parser/java"), Paths.get("p2/Foo.java"), Paths.get("p1/Bar.java")));
+		
+		List<PairBeforeAfter<CstRoot>> roots = JavaPlugin.inMemory().parseBatch(Arrays.asList(
+			new PairBeforeAfter<>(v1, v2),
+			new PairBeforeAfter<>(v2, v3),
+			new PairBeforeAfter<>(v2Copy, v1)));
+		
+		assertThat(roots.size(), is(3));
+		assertThat(roots.get(0).getBefore().getNodes().size(), is(1));
+		assertThat(roots.get(0).getAfter().getNodes().size(), is(2));
+		// the sources after a commit are the sources before the next one
+		assertThat(roots.get(1).getBefore(), is(sameInstance(roots.get(0).getAfter())));
+		assertThat(roots.get(1).getAfter().getNodes().size(), is(1));
+		assertThat(roots.get(1).getAfter().getNodes().get(0).getLocalName(), is("Bar"));
+		// another source set with the same files is parsed again
+		assertThat(roots.get(2).getBefore(), is(not(sameInstance(roots.get(0).getAfter()))));
+		assertThat(roots.get(2).getBefore().getNodes().size(), is(2));
+		assertThat(roots.get(2).getAfter().getNodes().size(), is(1));
+	}
+	
+	private static SourceFileSet inMemory(SourceFolder folder) {
+		return new SourceFileSet(folder.getSourceFiles()) {
+			@Override
+			public String readContent(SourceFile sourceFile) throws IOException {
+				return folder.readContent(sourceFile);
+			}
+			
+			@Override
+			public String describeLocation(SourceFile sourceFile) {
+				return sourceFile.getPath();
+			}
+		};
+	}
+	
 	private CstNodeRelationship rel(CstNodeRelationshipType type, CstNode n1, CstNode n2) {
 		return new CstNodeRelationship(type, n1.getId(), n2.getId());
 	}